@@ -0,0 +1,118 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "execution/HelperThreadPool.h"
+
+#include <cassert>
+
+namespace voltdb {
+
+HelperThreadPool::HelperThreadPool(int threadCount)
+    : m_tasks(NULL)
+    , m_nextTask(0)
+    , m_unfinishedTasks(0)
+    , m_shutdown(false)
+{
+    for (int ii = 0; ii < threadCount; ii++) {
+        m_threads.push_back(std::thread(&HelperThreadPool::work, this));
+    }
+}
+
+HelperThreadPool::~HelperThreadPool()
+{
+    {
+        std::lock_guard<std::mutex> lock(m_mutex);
+        m_shutdown = true;
+    }
+    m_tasksAvailable.notify_all();
+    for (size_t ii = 0; ii < m_threads.size(); ii++) {
+        m_threads[ii].join();
+    }
+}
+
+void HelperThreadPool::run(std::vector<Task>& tasks)
+{
+    if (tasks.empty()) {
+        return;
+    }
+    {
+        std::lock_guard<std::mutex> lock(m_mutex);
+        assert(m_tasks == NULL);
+        m_tasks = &tasks;
+        m_nextTask = 0;
+        m_unfinishedTasks = tasks.size();
+        m_error = std::exception_ptr();
+    }
+    m_tasksAvailable.notify_all();
+
+    // The site thread would only be waiting, so it takes tasks too.
+    std::unique_lock<std::mutex> lock(m_mutex);
+    while (m_nextTask < tasks.size()) {
+        size_t taskIndex = m_nextTask++;
+        lock.unlock();
+        runTask(taskIndex);
+        lock.lock();
+    }
+    while (m_unfinishedTasks > 0) {
+        m_tasksDone.wait(lock);
+    }
+    m_tasks = NULL;
+    std::exception_ptr error = m_error;
+    m_error = std::exception_ptr();
+    lock.unlock();
+
+    if (error) {
+        std::rethrow_exception(error);
+    }
+}
+
+void HelperThreadPool::work()
+{
+    std::unique_lock<std::mutex> lock(m_mutex);
+    while (true) {
+        while ( ! m_shutdown && (m_tasks == NULL || m_nextTask >= m_tasks->size())) {
+            m_tasksAvailable.wait(lock);
+        }
+        if (m_shutdown) {
+            return;
+        }
+        size_t taskIndex = m_nextTask++;
+        lock.unlock();
+        runTask(taskIndex);
+        lock.lock();
+    }
+}
+
+void HelperThreadPool::runTask(size_t taskIndex)
+{
+    std::exception_ptr error;
+    try {
+        (*m_tasks)[taskIndex]();
+    }
+    catch (...) {
+        error = std::current_exception();
+    }
+    std::lock_guard<std::mutex> lock(m_mutex);
+    if (error && ! m_error) {
+        m_error = error;
+    }
+    if (--m_unfinishedTasks == 0) {
+        m_tasksDone.notify_one();
+    }
+}
+
+} // namespace voltdb
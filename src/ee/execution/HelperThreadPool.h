@@ -0,0 +1,70 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef HELPERTHREADPOOL_H
+#define HELPERTHREADPOOL_H
+
+#include <condition_variable>
+#include <exception>
+#include <functional>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+namespace voltdb {
+
+/**
+ * A fixed set of threads that an engine lends to its executors to split
+ * read-only work. run() hands out a batch of tasks, works on them from the
+ * calling site thread as well, and returns once all of them are done. The
+ * first exception thrown by a task is rethrown on the calling thread.
+ *
+ * The helper threads have no ExecutorContext and no thread local pools, so
+ * tasks must not evaluate expressions that allocate temporary values.
+ */
+class HelperThreadPool {
+public:
+    typedef std::function<void()> Task;
+
+    explicit HelperThreadPool(int threadCount);
+    ~HelperThreadPool();
+
+    int threadCount() const {
+        return static_cast<int>(m_threads.size());
+    }
+
+    void run(std::vector<Task>& tasks);
+
+private:
+    void work();
+    void runTask(size_t taskIndex);
+
+    std::vector<std::thread> m_threads;
+    std::mutex m_mutex;
+    std::condition_variable m_tasksAvailable;
+    std::condition_variable m_tasksDone;
+    // The batch being run, NULL between calls to run()
+    std::vector<Task>* m_tasks;
+    size_t m_nextTask;
+    size_t m_unfinishedTasks;
+    std::exception_ptr m_error;
+    bool m_shutdown;
+};
+
+} // namespace voltdb
+
+#endif // HELPERTHREADPOOL_H
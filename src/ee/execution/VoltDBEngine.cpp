@@ -46,6 +46,7 @@
 #include "VoltDBEngine.h"
 
 #include "ExecutorVector.h"
+#include "HelperThreadPool.h"
 
 #include "catalog/cluster.h"
 #include "catalog/column.h"
@@ -193,7 +194,8 @@ VoltDBEngine::initialize(int32_t clusterIndex,
                          int64_t tempTableMemoryLimit,
                          bool isLowestSiteId,
                          int32_t compactionThreshold,
-                         int32_t exportFlushTimeout)
+                         int32_t exportFlushTimeout,
+                         int32_t parallelScanThreads)
 {
     m_clusterIndex = clusterIndex;
     m_siteId = siteId;
@@ -203,6 +205,9 @@ VoltDBEngine::initialize(int32_t clusterIndex,
     m_compactionThreshold = compactionThreshold;
     assert(exportFlushTimeout > 0);
     s_exportFlushTimeout = exportFlushTimeout;
+    if (parallelScanThreads > 0) {
+        m_helperThreadPool.reset(new HelperThreadPool(parallelScanThreads));
+    }
 
     // Instantiate our catalog - it will be populated later on by load()
     m_catalog.reset(new catalog::Catalog());
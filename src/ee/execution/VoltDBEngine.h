@@ -94,6 +94,7 @@ class AbstractTempTable;
 class EnginePlanSet;  // Locally defined in VoltDBEngine.cpp
 class ExecutorContext;
 class ExecutorVector;
+class HelperThreadPool;
 class PersistentTable;
 class RecoveryProtoMsg;
 class StreamedTable;
@@ -146,7 +147,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
                         int64_t tempTableMemoryLimit,
                         bool createDrReplicatedStream,
                         int32_t compactionThreshold = 95,
-                        int32_t exportFlushTimeout = 4*1000);
+                        int32_t exportFlushTimeout = 4*1000,
+                        int32_t parallelScanThreads = 0);
         virtual ~VoltDBEngine();
 
         // ------------------------------------------------------------------
@@ -534,6 +536,10 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         int64_t tempTableMemoryLimit() const { return m_tempTableMemoryLimit; }
 
+        // Helper threads for large read-only scans of replicated tables,
+        // or NULL when parallel scans are disabled.
+        HelperThreadPool* getHelperThreadPool() const { return m_helperThreadPool.get(); }
+
         int64_t tempTableLogLimit() const {
             return (m_tempTableMemoryLimit * 3) / 4;
         }
@@ -798,6 +804,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         int32_t m_compactionThreshold;
 
+        boost::scoped_ptr<HelperThreadPool> m_helperThreadPool;
+
         /*
          * DR conflict streamed tables
          */
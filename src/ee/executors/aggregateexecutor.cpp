@@ -45,8 +45,13 @@
 
 #include "executors/aggregateexecutor.h"
 
+#include "common/LargeTempTableBlockCache.h"
+#include "execution/ExecutorVector.h"
+#include "expressions/tuplevalueexpression.h"
 #include "plannodes/aggregatenode.h"
 #include "plannodes/limitnode.h"
+#include "storage/LargeTempTable.h"
+#include "storage/tablefactory.h"
 #include "storage/temptable.h"
 
 #include "hyperloglog/hyperloglog.hpp" // for APPROX_COUNT_DISTINCT
@@ -195,6 +200,21 @@ public:
         return m_value.op_divide(ValueFactory::getBigIntValue(m_count)).castAs(type);
     }
 
+    virtual void merge(Agg* other)
+    {
+        AvgAgg* otherAvg = static_cast<AvgAgg*>(other);
+        if (otherAvg->m_count == 0) {
+            return;
+        }
+        if (m_count == 0) {
+            m_value = otherAvg->m_value;
+        }
+        else {
+            m_value = m_value.op_add(otherAvg->m_value);
+        }
+        m_count += otherAvg->m_count;
+    }
+
     virtual void resetAgg()
     {
         m_haveAdvanced = false;
@@ -232,6 +252,11 @@ public:
         return ValueFactory::getBigIntValue(m_count).castAs(type);
     }
 
+    virtual void merge(Agg* other)
+    {
+        m_count += static_cast<CountAgg*>(other)->m_count;
+    }
+
     virtual void resetAgg()
     {
         m_haveAdvanced = false;
@@ -258,6 +283,11 @@ public:
         return ValueFactory::getBigIntValue(m_count).castAs(type);
     }
 
+    virtual void merge(Agg* other)
+    {
+        m_count += static_cast<CountStarAgg*>(other)->m_count;
+    }
+
     virtual void resetAgg()
     {
         m_haveAdvanced = false;
@@ -413,6 +443,11 @@ public:
         Agg::resetAgg();
     }
 
+    virtual void merge(Agg* other)
+    {
+        hyperLogLog().merge(static_cast<ApproxCountDistinctAgg*>(other)->hyperLogLog());
+    }
+
 protected:
     hll::HyperLogLog& hyperLogLog() {
         return m_hyperLogLog;
@@ -589,7 +624,53 @@ bool AggregateExecutorBase::p_init(AbstractPlanNode*, const ExecutorVector& exec
         }
         m_groupByKeyPartialHashSchema = constructGroupBySchema(true);
     }
+    m_parallelizable = isParallelizable(node);
+
+    return true;
+}
 
+static bool isFixedWidthInputColumn(const AbstractExpression* expr)
+{
+    const TupleValueExpression* tve = dynamic_cast<const TupleValueExpression*>(expr);
+    return tve != NULL && tve->getTupleId() == 0 && ! isVariableLengthType(tve->getValueType());
+}
+
+bool AggregateExecutorBase::isParallelizable(AggregatePlanNode* node) const
+{
+    // Partial aggregation relies on its input arriving in order, and
+    // serial aggregation does too unless it aggregates a single group.
+    if (node->getPlanNodeType() == PLAN_NODE_TYPE_PARTIALAGGREGATE ||
+        (node->getPlanNodeType() == PLAN_NODE_TYPE_AGGREGATE && ! m_groupByExpressions.empty()) ||
+        m_prePredicate != NULL) {
+        return false;
+    }
+    for (int ii = 0; ii < m_aggTypes.size(); ii++) {
+        if (m_distinctAggs[ii]) {
+            return false;
+        }
+        switch (m_aggTypes[ii]) {
+        case EXPRESSION_TYPE_AGGREGATE_COUNT_STAR:
+            continue;
+        case EXPRESSION_TYPE_AGGREGATE_COUNT:
+        case EXPRESSION_TYPE_AGGREGATE_SUM:
+        case EXPRESSION_TYPE_AGGREGATE_AVG:
+        case EXPRESSION_TYPE_AGGREGATE_MIN:
+        case EXPRESSION_TYPE_AGGREGATE_MAX:
+        case EXPRESSION_TYPE_AGGREGATE_APPROX_COUNT_DISTINCT:
+        case EXPRESSION_TYPE_AGGREGATE_VALS_TO_HYPERLOGLOG:
+            if ( ! isFixedWidthInputColumn(m_inputExpressions[ii])) {
+                return false;
+            }
+            break;
+        default:
+            return false;
+        }
+    }
+    BOOST_FOREACH (AbstractExpression* expr, m_groupByExpressions) {
+        if ( ! isFixedWidthInputColumn(expr)) {
+            return false;
+        }
+    }
     return true;
 }
 
@@ -672,7 +753,7 @@ inline bool AggregateExecutorBase::insertOutputTuple(AggregateRow* aggregateRow)
     return needInsert;
 }
 
-inline void AggregateExecutorBase::advanceAggs(AggregateRow* aggregateRow, const TableTuple& tuple)
+inline void AggregateExecutorBase::advanceAggs(AggregateRow* aggregateRow, const TableTuple& tuple) const
 {
     Agg** aggs = aggregateRow->m_aggregates;
     for (int ii = 0; ii < m_aggTypes.size(); ii++) {
@@ -682,6 +763,14 @@ inline void AggregateExecutorBase::advanceAggs(AggregateRow* aggregateRow, const
     }
 }
 
+inline void AggregateExecutorBase::mergeAggs(AggregateRow* aggregateRow, AggregateRow* partialRow)
+{
+    Agg** aggs = aggregateRow->m_aggregates;
+    for (int ii = 0; ii < m_aggTypes.size(); ii++) {
+        aggs[ii]->merge(partialRow->m_aggregates[ii]);
+    }
+}
+
 /*
  * Create an instance of an aggregator for the specified aggregate type.
  * The object is constructed in memory from the provided memory pool.
@@ -709,6 +798,43 @@ void AggregateExecutorBase::initGroupByKeyTuple(const TableTuple& nextTuple)
     }
 }
 
+void AggregateExecutorBase::aggregatePartial(PartialAggregation& partial, const TableTuple& nextTuple) const
+{
+    TableTuple& nextGroupByKeyTuple = partial.m_nextGroupByKeyStorage;
+    if (nextGroupByKeyTuple.isNullTuple()) {
+        partial.m_nextGroupByKeyStorage.allocateActiveTuple();
+    }
+    for (int ii = 0; ii < m_groupByExpressions.size(); ii++) {
+        nextGroupByKeyTuple.setNValue(ii, m_groupByExpressions[ii]->eval(&nextTuple));
+    }
+
+    AggregateRow* aggregateRow;
+    HashAggregateMapType::const_iterator keyIter = partial.m_hash.find(nextGroupByKeyTuple);
+    if (keyIter == partial.m_hash.end()) {
+        aggregateRow = new (partial.m_memoryPool, m_aggTypes.size()) AggregateRow();
+        partial.m_hash.insert(HashAggregateMapType::value_type(nextGroupByKeyTuple, aggregateRow));
+
+        Agg** aggs = aggregateRow->m_aggregates;
+        for (int ii = 0; ii < m_aggTypes.size(); ii++) {
+            aggs[ii] = getAggInstance(partial.m_memoryPool, m_aggTypes[ii], false);
+        }
+
+        char* storage = reinterpret_cast<char*>(partial.m_memoryPool.allocateZeroes(m_inputSchema->tupleLength() + TUPLE_HEADER_SIZE));
+        TableTuple passThroughTupleSource = TableTuple(storage, m_inputSchema);
+        aggregateRow->recordPassThroughTuple(passThroughTupleSource, nextTuple);
+        nextGroupByKeyTuple.move(NULL);
+    } else {
+        aggregateRow = keyIter->second;
+    }
+    advanceAggs(aggregateRow, nextTuple);
+}
+
+void AggregateExecutorBase::mergePartial(PartialAggregation& partial)
+{
+    throwFatalException("Partial aggregates can't be merged into a %s",
+                        planNodeToString(m_abstractNode->getPlanNodeType()).c_str());
+}
+
 TableTuple& AggregateExecutorBase::swapWithInprogressGroupByKeyTuple() {
     TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
 
@@ -757,8 +883,29 @@ void AggregateExecutorBase::p_execute_finish()
     m_memoryPool.purge();
 }
 
+// Spilling more often than this means that a partition can't be split,
+// and its groups are kept in memory whatever their size.
+const static int MAX_SPILL_DEPTH = 4;
+
+// Upper bound on the number of partitions spilled to at once. Each one
+// pins a block of the large temp table cache while it is being written.
+const static int MAX_SPILL_PARTITIONS = 16;
+
+// Spilling pins a block to read the input, one to write the output and one
+// per partition, so it needs room for at least one partition.
+const static int MIN_SPILL_CACHE_BLOCKS = 3;
+
 AggregateHashExecutor::~AggregateHashExecutor() {}
 
+bool AggregateHashExecutor::p_init(AbstractPlanNode* abstractNode, const ExecutorVector& executorVector)
+{
+    if ( ! AggregateExecutorBase::p_init(abstractNode, executorVector)) {
+        return false;
+    }
+    m_spillable = executorVector.isLargeQuery();
+    return true;
+}
+
 TableTuple AggregateHashExecutor::p_execute_init(const NValueArray& params,
                                                  ProgressMonitorProxy* pmp,
                                                  const TupleSchema * schema,
@@ -767,6 +914,18 @@ TableTuple AggregateHashExecutor::p_execute_init(const NValueArray& params,
 {
     VOLT_TRACE("hash aggregate executor init..");
     m_hash.clear();
+    // Partitions left behind by a failed execution
+    releaseSpilledPartitions();
+    m_spillDepth = 0;
+    m_spillThreshold = -1;
+    if (m_spillable) {
+        // The groups in memory may take as much as the large temp table cache,
+        // which is the temp table memory limit of the query.
+        LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+        if (lttBlockCache->maxCacheSizeInBlocks() >= MIN_SPILL_CACHE_BLOCKS) {
+            m_spillThreshold = lttBlockCache->maxCacheSizeInBytes();
+        }
+    }
 
     return AggregateExecutorBase::p_execute_init(params, pmp, schema, newTempTable, parentPostfilter);
 }
@@ -786,54 +945,121 @@ bool AggregateHashExecutor::p_execute(const NValueArray& params)
     TableTuple nextTuple = AggregateHashExecutor::p_execute_init(params, &pmp, inputSchema, NULL);
 
     VOLT_TRACE("looping..");
-    while (it.next(nextTuple)) {
-        assert(m_postfilter.isUnderLimit()); // hash aggregation can not early return for limit
-        AggregateHashExecutor::p_execute_tuple(nextTuple);
+    try {
+        while (it.next(nextTuple)) {
+            assert(m_postfilter.isUnderLimit()); // hash aggregation can not early return for limit
+            AggregateHashExecutor::p_execute_tuple(nextTuple);
+        }
+        AggregateHashExecutor::p_execute_finish();
+    }
+    catch (...) {
+        // Spilled partitions hold blocks of the large temp table cache
+        releaseSpilledPartitions();
+        throw;
     }
-    AggregateHashExecutor::p_execute_finish();
 
     return true;
 }
 
 void AggregateHashExecutor::p_execute_tuple(const TableTuple& nextTuple) {
     m_pmp->countdownProgress();
+    aggregateTuple(nextTuple, NULL);
+}
+
+void AggregateHashExecutor::aggregateTuple(const TableTuple& nextTuple, TableTuple* staging) {
     initGroupByKeyTuple(nextTuple);
     AggregateRow* aggregateRow;
     TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
     // Search for the matching group.
     HashAggregateMapType::const_iterator keyIter = m_hash.find(nextGroupByKeyTuple);
 
+    if (keyIter != m_hash.end()) {
+        // the agg row is the second item of the pair...
+        aggregateRow = keyIter->second;
+        // No copy here: spilled tuples are volatile, so MIN, MAX and DISTINCT
+        // copy the values they keep themselves, and the pool only grows by group.
+        advanceAggs(aggregateRow, nextTuple);
+        return;
+    }
+
+    // Once spilling has started, only the groups in memory are aggregated in memory.
+    if ( ! m_spillPartitions.empty()) {
+        spillTuple(nextTuple);
+        return;
+    }
+
+    if (staging != NULL) {
+        staging->copyForPersistentInsert(nextTuple, &m_memoryPool);
+        // Have the key refer to the copied values too.
+        initGroupByKeyTuple(*staging);
+    }
+    const TableTuple& groupTuple = staging != NULL ? *staging : nextTuple;
+
     // Group not found. Make a new entry in the hash for this new group.
-    if (keyIter == m_hash.end()) {
-        VOLT_TRACE("hash aggregate: new group..");
-        aggregateRow = new (m_memoryPool, m_aggTypes.size()) AggregateRow();
-        m_hash.insert(HashAggregateMapType::value_type(nextGroupByKeyTuple, aggregateRow));
+    VOLT_TRACE("hash aggregate: new group..");
+    aggregateRow = new (m_memoryPool, m_aggTypes.size()) AggregateRow();
+    m_hash.insert(HashAggregateMapType::value_type(nextGroupByKeyTuple, aggregateRow));
 
-        initAggInstances(aggregateRow);
+    initAggInstances(aggregateRow);
 
-        char* storage = reinterpret_cast<char*>(m_memoryPool.allocateZeroes(m_inputSchema->tupleLength() + TUPLE_HEADER_SIZE));
-        TableTuple passThroughTupleSource = TableTuple(storage, m_inputSchema);
+    char* storage = reinterpret_cast<char*>(m_memoryPool.allocateZeroes(m_inputSchema->tupleLength() + TUPLE_HEADER_SIZE));
+    TableTuple passThroughTupleSource = TableTuple(storage, m_inputSchema);
 
-        aggregateRow->recordPassThroughTuple(passThroughTupleSource, nextTuple);
-        // The map is referencing the current key tuple for use by the new group,
-        // so force a new tuple allocation to hold the next candidate key.
-        nextGroupByKeyTuple.move(NULL);
+    aggregateRow->recordPassThroughTuple(passThroughTupleSource, groupTuple);
+    // The map is referencing the current key tuple for use by the new group,
+    // so force a new tuple allocation to hold the next candidate key.
+    nextGroupByKeyTuple.move(NULL);
 
-        if (m_aggTypes.size() == 0) {
-            insertOutputTuple(aggregateRow);
-            return;
-        }
-    } else {
-        // otherwise, the agg row is the second item of the pair...
-        aggregateRow = keyIter->second;
+    if (m_aggTypes.size() == 0) {
+        insertOutputTuple(aggregateRow);
+    }
+    else {
+        // update the aggregation calculation.
+        advanceAggs(aggregateRow, groupTuple);
+    }
+
+    if (m_spillThreshold >= 0 && m_spillDepth < MAX_SPILL_DEPTH &&
+        m_memoryPool.getAllocatedMemory() > m_spillThreshold) {
+        startSpilling();
     }
-    // update the aggregation calculation.
-    advanceAggs(aggregateRow, nextTuple);
 }
 
-void AggregateHashExecutor::p_execute_finish() {
-    VOLT_TRACE("finalizing..");
+void AggregateHashExecutor::startSpilling() {
+    // Leave a block for reading the input and one for the output. With a single
+    // partition, each pass still outputs the groups that fit in memory.
+    LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+    int partitionCount = std::min(MAX_SPILL_PARTITIONS, lttBlockCache->maxCacheSizeInBlocks() - 2);
+    VOLT_DEBUG("Hash aggregate spilling new groups into %d partitions at depth %d, with %d groups in memory",
+               partitionCount, m_spillDepth, (int)m_hash.size());
+
+    std::vector<std::string> columnNames(m_inputSchema->columnCount());
+    for (int ii = 0; ii < partitionCount; ii++) {
+        m_spillPartitions.push_back(TableFactory::buildLargeTempTable("hash aggregate spill",
+                                                                      TupleSchema::createTupleSchema(m_inputSchema),
+                                                                      columnNames));
+    }
+}
+
+void AggregateHashExecutor::spillTuple(const TableTuple& nextTuple) {
+    // The key hash is mixed with the depth, so that spilling a partition
+    // again splits it along different bits than the ones that formed it.
+    const TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
+    uint64_t hash = static_cast<uint64_t>(nextGroupByKeyTuple.hashCode()) ^ (m_spillDepth * 0x2545f4914f6cdd1dULL);
+    hash *= 0x9e3779b97f4a7c15ULL;
+    LargeTempTable* partition = m_spillPartitions[(hash >> 32) % m_spillPartitions.size()];
+    TableTuple tuple(nextTuple);
+    partition->insertTuple(tuple);
+}
 
+void AggregateHashExecutor::finishSpilling() {
+    BOOST_FOREACH(LargeTempTable* partition, m_spillPartitions) {
+        partition->finishInserts();
+        m_spilledPartitions.push_back(std::make_pair(partition, m_spillDepth + 1));
+    }
+    m_spillPartitions.clear();
+}
+
+void AggregateHashExecutor::outputGroups() {
     // If there is no aggregation, results are already inserted already
     if (m_aggTypes.size() != 0) {
         for (HashAggregateMapType::const_iterator iter = m_hash.begin(); iter != m_hash.end(); iter++) {
@@ -844,9 +1070,108 @@ void AggregateHashExecutor::p_execute_finish() {
             delete aggregateRow;
         }
     }
+    m_hash.clear();
+}
 
-    // Clean up
+/*
+ * Aggregate the spilled partitions one at a time. Their tuples are
+ * released block by block as they are scanned, so the tuple that starts
+ * a group is copied to the memory pool along with its non-inlined values
+ * before the group keeps any of them.
+ */
+void AggregateHashExecutor::aggregateSpilledGroups() {
+    const bool copyValues = m_inputSchema->getUninlinedObjectColumnCount() > 0;
+    while ( ! m_spilledPartitions.empty() && m_postfilter.isUnderLimit()) {
+        std::unique_ptr<LargeTempTable> partition(m_spilledPartitions.back().first);
+        m_spillDepth = m_spilledPartitions.back().second;
+        m_spilledPartitions.pop_back();
+        VOLT_DEBUG("Hash aggregate aggregating a spilled partition of %d tuples at depth %d",
+                   (int)partition->activeTupleCount(), m_spillDepth);
+
+        // The groups of the previous partition have been output.
+        TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
+        nextGroupByKeyTuple.move(NULL);
+        m_memoryPool.purge();
+
+        TableTuple staging;
+        if (copyValues) {
+            char* storage = reinterpret_cast<char*>(m_memoryPool.allocateZeroes(m_inputSchema->tupleLength() + TUPLE_HEADER_SIZE));
+            staging = TableTuple(storage, m_inputSchema);
+        }
+
+        TableTuple tuple(partition->schema());
+        TableIterator it = partition->iteratorDeletingAsWeGo();
+        while (it.next(tuple)) {
+            m_pmp->countdownProgress();
+            aggregateTuple(tuple, copyValues ? &staging : NULL);
+        }
+        outputGroups();
+        finishSpilling();
+    }
+    releaseSpilledPartitions();
+}
+
+void AggregateHashExecutor::releaseSpilledPartitions() {
+    BOOST_FOREACH(LargeTempTable* partition, m_spillPartitions) {
+        delete partition;
+    }
+    m_spillPartitions.clear();
+    for (size_t ii = 0; ii < m_spilledPartitions.size(); ii++) {
+        delete m_spilledPartitions[ii].first;
+    }
+    m_spilledPartitions.clear();
+}
+
+void AggregateHashExecutor::cleanupMemoryPool() {
     m_hash.clear();
+    releaseSpilledPartitions();
+    AggregateExecutorBase::cleanupMemoryPool();
+}
+
+void AggregateHashExecutor::mergePartial(PartialAggregation& partial) {
+    for (HashAggregateMapType::const_iterator iter = partial.m_hash.begin(); iter != partial.m_hash.end(); iter++) {
+        AggregateRow* partialRow = iter->second;
+        AggregateRow* aggregateRow;
+        HashAggregateMapType::const_iterator keyIter = m_hash.find(iter->first);
+
+        // Copy new groups over, so the partial aggregation can go right away.
+        if (keyIter == m_hash.end()) {
+            TableTuple& nextGroupByKeyTuple = m_nextGroupByKeyStorage;
+            if (nextGroupByKeyTuple.isNullTuple()) {
+                m_nextGroupByKeyStorage.allocateActiveTuple();
+            }
+            nextGroupByKeyTuple.copy(iter->first);
+            aggregateRow = new (m_memoryPool, m_aggTypes.size()) AggregateRow();
+            m_hash.insert(HashAggregateMapType::value_type(nextGroupByKeyTuple, aggregateRow));
+
+            initAggInstances(aggregateRow);
+
+            char* storage = reinterpret_cast<char*>(m_memoryPool.allocateZeroes(m_inputSchema->tupleLength() + TUPLE_HEADER_SIZE));
+            TableTuple passThroughTupleSource = TableTuple(storage, m_inputSchema);
+            aggregateRow->recordPassThroughTuple(passThroughTupleSource, partialRow->m_passThroughTuple);
+            nextGroupByKeyTuple.move(NULL);
+
+            if (m_aggTypes.size() == 0) {
+                insertOutputTuple(aggregateRow);
+                continue;
+            }
+        } else {
+            aggregateRow = keyIter->second;
+        }
+        mergeAggs(aggregateRow, partialRow);
+    }
+}
+
+void AggregateHashExecutor::p_execute_finish() {
+    VOLT_TRACE("finalizing..");
+
+    outputGroups();
+    if ( ! m_spillPartitions.empty()) {
+        finishSpilling();
+        aggregateSpilledGroups();
+    }
+
+    // Clean up
     AggregateExecutorBase::p_execute_finish();
 }
 
@@ -935,6 +1260,21 @@ void AggregateSerialExecutor::p_execute_tuple(const TableTuple& nextTuple) {
     advanceAggs(m_aggregateRow, nextTuple);
 }
 
+void AggregateSerialExecutor::mergePartial(PartialAggregation& partial)
+{
+    // Without GROUP BY there is at most one group in a partial aggregation.
+    assert(m_groupByKeySchema->columnCount() == 0 && partial.m_hash.size() <= 1);
+    for (HashAggregateMapType::const_iterator iter = partial.m_hash.begin(); iter != partial.m_hash.end(); iter++) {
+        AggregateRow* partialRow = iter->second;
+        if (m_noInputRows) {
+            initAggInstances(m_aggregateRow);
+            m_aggregateRow->recordPassThroughTuple(m_passThroughTupleSource, partialRow->m_passThroughTuple);
+            m_noInputRows = false;
+        }
+        mergeAggs(m_aggregateRow, partialRow);
+    }
+}
+
 void AggregateSerialExecutor::p_execute_finish()
 {
     if (m_postfilter.isUnderLimit()) {
@@ -58,6 +58,9 @@
 
 namespace voltdb {
 
+class AggregatePlanNode;
+class LargeTempTable;
+
 /*
  * Base class for an individual aggregate that aggregates a specific
  * column for a group
@@ -84,6 +87,15 @@ public:
         return m_value;
     }
 
+    /**
+     * Fold in an agg of the same type that aggregated another part of the
+     * input. Advancing by the other agg's value does for SUM, MIN and MAX.
+     */
+    virtual void merge(Agg* other)
+    {
+        advance(other->m_value);
+    }
+
     virtual void resetAgg()
     {
         m_haveAdvanced = false;
@@ -151,6 +163,36 @@ struct AggregateRow
     Agg* m_aggregates[0];
 };
 
+typedef boost::unordered_map<TableTuple,
+                             AggregateRow*,
+                             TableTupleHasher,
+                             TableTupleEqualityChecker> HashAggregateMapType;
+
+/**
+ * The groups a helper thread of a parallel scan builds from its share of
+ * the input, to be merged into the executor's aggregation afterwards.
+ * See AggregateExecutorBase::aggregatePartial.
+ */
+struct PartialAggregation
+{
+    explicit PartialAggregation(const TupleSchema* groupByKeySchema)
+    {
+        m_nextGroupByKeyStorage.init(groupByKeySchema, &m_memoryPool);
+    }
+
+    ~PartialAggregation()
+    {
+        for (HashAggregateMapType::const_iterator iter = m_hash.begin(); iter != m_hash.end(); iter++) {
+            delete iter->second;
+        }
+    }
+
+    // Declared first so that it goes last.
+    Pool m_memoryPool;
+    PoolBackedTupleStorage m_nextGroupByKeyStorage;
+    HashAggregateMapType m_hash;
+};
+
 /**
  * The base class for aggregate executors regardless of the type of grouping that should be performed.
  */
@@ -164,7 +206,8 @@ public:
         m_postPredicate(NULL),
         m_pmp(NULL),
         m_inputSchema(NULL),
-        m_groupByKeyPartialHashSchema(NULL)
+        m_groupByKeyPartialHashSchema(NULL),
+        m_parallelizable(false)
     { }
     ~AggregateExecutorBase()
     {
@@ -195,6 +238,35 @@ public:
         AggregateExecutorBase::p_execute_finish();
     }
 
+    /**
+     * True if the input may be split between helper threads, each one
+     * building a PartialAggregation with aggregatePartial, which are then
+     * merged with mergePartial. This needs aggregates that can be merged,
+     * and group by keys and aggregate inputs that are fixed width columns
+     * of the input tuple, since helper threads can't allocate temporary
+     * values.
+     */
+    bool canAggregateInParallel() const {
+        return m_parallelizable;
+    }
+
+    const TupleSchema* getGroupByKeySchema() const {
+        return m_groupByKeySchema;
+    }
+
+    /**
+     * Aggregate a tuple into a partial aggregation. This is called from
+     * helper threads, between p_execute_init and p_execute_finish, and
+     * only reads the state of the executor.
+     */
+    void aggregatePartial(PartialAggregation& partial, const TableTuple& nextTuple) const;
+
+    /**
+     * Merge the groups of a partial aggregation into this execution.
+     * Only called on the site thread.
+     */
+    virtual void mergePartial(PartialAggregation& partial);
+
 protected:
     virtual bool p_init(AbstractPlanNode*, const ExecutorVector& executorVector);
 
@@ -205,7 +277,9 @@ protected:
     /// through any additional columns from the input table.
     bool insertOutputTuple(AggregateRow* aggregateRow);
 
-    void advanceAggs(AggregateRow* aggregateRow, const TableTuple& tuple);
+    void advanceAggs(AggregateRow* aggregateRow, const TableTuple& tuple) const;
+
+    void mergeAggs(AggregateRow* aggregateRow, AggregateRow* partialRow);
 
     /*
      * Create an instance of an aggregator for the specified aggregate type.
@@ -254,25 +328,29 @@ protected:
     // used for inline limit for serial/partial aggregate
     CountingPostfilter m_postfilter;
 
+    // see canAggregateInParallel
+    bool m_parallelizable;
+
 private:
     TupleSchema* constructGroupBySchema(bool partial);
+    bool isParallelizable(AggregatePlanNode* node) const;
 };
 
-typedef boost::unordered_map<TableTuple,
-                             AggregateRow*,
-                             TableTupleHasher,
-                             TableTupleEqualityChecker> HashAggregateMapType;
-
-
 /**
  * The concrete executor class for PLAN_NODE_TYPE_HASHAGGREGATE
  * in which the input does not need to be sorted and execution will hash the group by key to aggregate the tuples.
+ *
+ * In large queries, once the groups outgrow the memory of the large temp table cache,
+ * the input tuples of groups that are not in memory yet are spilled to large temp table
+ * partitions by the hash of their group by key. The partitions are aggregated one at a
+ * time after the groups in memory have been output, spilling again if they must.
  */
 class AggregateHashExecutor : public AggregateExecutorBase
 {
 public:
     AggregateHashExecutor(VoltDBEngine* engine, AbstractPlanNode* abstract_node) :
-        AggregateExecutorBase(engine, abstract_node) { }
+        AggregateExecutorBase(engine, abstract_node),
+        m_spillable(false), m_spillThreshold(-1), m_spillDepth(0) { }
 
     // empty destructor defined in .cpp file because of it is called virtually (not inline)
     // same reason for serial and partial
@@ -283,10 +361,45 @@ public:
                               CountingPostfilter* parentPredicate = NULL);
     void p_execute_tuple(const TableTuple& nextTuple);
     void p_execute_finish();
+    void mergePartial(PartialAggregation& partial);
+
+    void cleanupMemoryPool();
+
+protected:
+    virtual bool p_init(AbstractPlanNode*, const ExecutorVector& executorVector);
 
 private:
     virtual bool p_execute(const NValueArray& params);
+
+    /**
+     * Aggregate a tuple, or spill it if its group is not in memory and spilling
+     * has started. If staging is given, the tuple of a new group is first copied
+     * there along with its non-inlined values, for the group to keep.
+     */
+    void aggregateTuple(const TableTuple& nextTuple, TableTuple* staging);
+
+    /// Output the groups in memory and empty the hash table.
+    void outputGroups();
+
+    void startSpilling();
+    void spillTuple(const TableTuple& nextTuple);
+
+    /// Queue the partitions spilled to so far for aggregation.
+    void finishSpilling();
+    void aggregateSpilledGroups();
+    void releaseSpilledPartitions();
+
     HashAggregateMapType m_hash;
+
+    // Set for large queries, see the class comment
+    bool m_spillable;
+    int64_t m_spillThreshold;
+    // How many times the input being aggregated has been spilled already
+    int m_spillDepth;
+    // The partitions tuples are being spilled to, empty until spilling starts
+    std::vector<LargeTempTable*> m_spillPartitions;
+    // Partitions waiting to be aggregated, with their spill depth
+    std::vector<std::pair<LargeTempTable*, int> > m_spilledPartitions;
 };
 
 /**
@@ -308,6 +421,7 @@ public:
                               CountingPostfilter* parentPredicate = NULL);
     void p_execute_tuple(const TableTuple& nextTuple);
     void p_execute_finish();
+    void mergePartial(PartialAggregation& partial);
 
 protected:
     AggregateRow * m_aggregateRow;
@@ -0,0 +1,213 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "executors/batchpredicate.h"
+
+#include <limits>
+
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "common/ValuePeeker.hpp"
+#include "expressions/abstractexpression.h"
+#include "expressions/constantvalueexpression.h"
+#include "expressions/parametervalueexpression.h"
+#include "expressions/tuplevalueexpression.h"
+
+namespace voltdb {
+
+namespace {
+
+struct BatchCmpEq  { static bool apply(int64_t l, int64_t r) { return l == r; } };
+struct BatchCmpNe  { static bool apply(int64_t l, int64_t r) { return l != r; } };
+struct BatchCmpLt  { static bool apply(int64_t l, int64_t r) { return l < r; } };
+struct BatchCmpGt  { static bool apply(int64_t l, int64_t r) { return l > r; } };
+struct BatchCmpLte { static bool apply(int64_t l, int64_t r) { return l <= r; } };
+struct BatchCmpGte { static bool apply(int64_t l, int64_t r) { return l >= r; } };
+
+/*
+ * Compact the selection to the positions whose column value is not null and
+ * compares true with the value. Every position is written and the output
+ * index only advances for the qualifying ones, which keeps the loop free of
+ * branches. The output never gets ahead of the input, so this works in place.
+ */
+template <typename T, typename CMP>
+int filterColumn(char* const* tuples, uint16_t* selection, int count, int32_t offset, int64_t value)
+{
+    // Nulls of the integer types and timestamps are stored as the minimum value.
+    const T nullValue = std::numeric_limits<T>::min();
+    int selected = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const uint16_t position = selection[ii];
+        const T columnValue = *reinterpret_cast<const T*>(tuples[position] + offset);
+        selection[selected] = position;
+        selected += (columnValue != nullValue) & CMP::apply(columnValue, value);
+    }
+    return selected;
+}
+
+template <typename T>
+BatchPredicate::FilterFunction filterForComparison(ExpressionType type)
+{
+    switch (type) {
+    case EXPRESSION_TYPE_COMPARE_EQUAL:
+        return &filterColumn<T, BatchCmpEq>;
+    case EXPRESSION_TYPE_COMPARE_NOTEQUAL:
+        return &filterColumn<T, BatchCmpNe>;
+    case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+        return &filterColumn<T, BatchCmpLt>;
+    case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+        return &filterColumn<T, BatchCmpGt>;
+    case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+        return &filterColumn<T, BatchCmpLte>;
+    case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+        return &filterColumn<T, BatchCmpGte>;
+    default:
+        return NULL;
+    }
+}
+
+BatchPredicate::FilterFunction filterFor(ValueType columnType, ExpressionType type)
+{
+    switch (columnType) {
+    case VALUE_TYPE_TINYINT:
+        return filterForComparison<int8_t>(type);
+    case VALUE_TYPE_SMALLINT:
+        return filterForComparison<int16_t>(type);
+    case VALUE_TYPE_INTEGER:
+        return filterForComparison<int32_t>(type);
+    case VALUE_TYPE_BIGINT:
+    case VALUE_TYPE_TIMESTAMP:
+        return filterForComparison<int64_t>(type);
+    default:
+        return NULL;
+    }
+}
+
+// The comparison to use when the operands of type are swapped.
+ExpressionType reverseComparison(ExpressionType type)
+{
+    switch (type) {
+    case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+        return EXPRESSION_TYPE_COMPARE_GREATERTHAN;
+    case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+        return EXPRESSION_TYPE_COMPARE_LESSTHAN;
+    case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+        return EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO;
+    case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+        return EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO;
+    default:
+        return type;
+    }
+}
+
+bool isConstantForScan(const AbstractExpression* expr)
+{
+    return dynamic_cast<const ConstantValueExpression*>(expr) != NULL ||
+           dynamic_cast<const ParameterValueExpression*>(expr) != NULL;
+}
+
+} // end anonymous namespace
+
+BatchPredicate::BatchPredicate(const AbstractExpression* predicate, const TupleSchema* schema)
+{
+    if (predicate != NULL) {
+        addTerm(predicate, schema);
+    }
+}
+
+void BatchPredicate::addTerm(const AbstractExpression* expr, const TupleSchema* schema)
+{
+    if (expr->getExpressionType() == EXPRESSION_TYPE_CONJUNCTION_AND) {
+        addTerm(expr->getLeft(), schema);
+        addTerm(expr->getRight(), schema);
+        return;
+    }
+
+    ExpressionType type = expr->getExpressionType();
+    const TupleValueExpression* column = dynamic_cast<const TupleValueExpression*>(expr->getLeft());
+    const AbstractExpression* operand = expr->getRight();
+    if (column == NULL) {
+        column = dynamic_cast<const TupleValueExpression*>(expr->getRight());
+        operand = expr->getLeft();
+        type = reverseComparison(type);
+    }
+
+    if (column != NULL && column->getTupleId() == 0 && isConstantForScan(operand)) {
+        const TupleSchema::ColumnInfo* columnInfo = schema->getColumnInfo(column->getColumnId());
+        FilterFunction filter = filterFor(columnInfo->getVoltType(), type);
+        if (filter != NULL) {
+            Term term = { filter,
+                          columnInfo->getVoltType(),
+                          static_cast<int32_t>(TUPLE_HEADER_SIZE + columnInfo->offset),
+                          operand,
+                          0,
+                          false };
+            m_terms.push_back(term);
+            return;
+        }
+    }
+    m_residual.push_back(expr);
+}
+
+bool BatchPredicate::bind()
+{
+    for (std::vector<Term>::iterator it = m_terms.begin(); it != m_terms.end(); ++it) {
+        NValue value = it->operand->eval(NULL, NULL);
+        // Comparisons with null are never true, whatever the type of the null.
+        it->isNull = value.isNull();
+        if (it->isNull) {
+            continue;
+        }
+        ValueType valueType = ValuePeeker::peekValueType(value);
+        bool compatible = (it->columnType == VALUE_TYPE_TIMESTAMP) ?
+                          (valueType == VALUE_TYPE_TIMESTAMP) :
+                          isIntegralType(valueType);
+        if ( ! compatible) {
+            return false;
+        }
+        it->value = ValuePeeker::peekAsRawInt64(value);
+    }
+    return true;
+}
+
+int BatchPredicate::filter(char* const* tuples, int count, uint16_t* selection) const
+{
+    assert(count <= BATCH_SIZE);
+    for (int ii = 0; ii < count; ii++) {
+        selection[ii] = static_cast<uint16_t>(ii);
+    }
+    for (std::vector<Term>::const_iterator it = m_terms.begin(); it != m_terms.end() && count > 0; ++it) {
+        if (it->isNull) {
+            return 0;
+        }
+        count = it->filter(tuples, selection, count, it->offset, it->value);
+    }
+    return count;
+}
+
+bool BatchPredicate::evalResidual(const TableTuple* tuple) const
+{
+    for (std::vector<const AbstractExpression*>::const_iterator it = m_residual.begin();
+         it != m_residual.end(); ++it) {
+        if ( ! (*it)->eval(tuple, NULL).isTrue()) {
+            return false;
+        }
+    }
+    return true;
+}
+
+} // end namespace voltdb
@@ -0,0 +1,101 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef EXECUTORS_BATCHPREDICATE_H
+#define EXECUTORS_BATCHPREDICATE_H
+
+#include <stdint.h>
+#include <vector>
+
+#include "common/types.h"
+
+namespace voltdb {
+
+class AbstractExpression;
+class TableTuple;
+class TupleSchema;
+
+/**
+ * Evaluates a scan predicate over a batch of tuples at a time.
+ *
+ * The predicate is split into its top-level AND terms. Terms that compare an
+ * integer or timestamp column of the scanned table with a constant or a
+ * parameter are evaluated directly against the tuple storage, one term at a
+ * time over the whole batch, in loops without branches or NValues that the
+ * compiler can vectorize. The result is a selection vector of the positions
+ * of the qualifying tuples in the batch. The remaining terms are evaluated
+ * row by row through AbstractExpression::eval for the selected tuples only.
+ *
+ * Tuple addresses are collected before any of them are filtered, so the
+ * tuples of a batch must stay in place until the batch has been consumed.
+ */
+class BatchPredicate {
+public:
+    static const int BATCH_SIZE = 1024;
+
+    BatchPredicate(const AbstractExpression* predicate, const TupleSchema* schema);
+
+    /** True if at least one term of the predicate can be evaluated in batches. */
+    bool isBatchable() const {
+        return ! m_terms.empty();
+    }
+
+    /** True if every term of the predicate is evaluated in batches. */
+    bool isComplete() const {
+        return m_residual.empty();
+    }
+
+    /**
+     * Evaluate the constants and parameters of the batched terms for this
+     * execution. Returns false if one of them has a type that the batched
+     * terms don't handle, in which case the predicate must be evaluated
+     * row by row for this execution.
+     */
+    bool bind();
+
+    /**
+     * Apply the batched terms to the tuples at the given addresses. The
+     * positions of the qualifying tuples are written to selection in scan
+     * order, and their number is returned.
+     */
+    int filter(char* const* tuples, int count, uint16_t* selection) const;
+
+    /** Evaluate the terms that can't be batched against one tuple. */
+    bool evalResidual(const TableTuple* tuple) const;
+
+    typedef int (*FilterFunction)(char* const* tuples, uint16_t* selection, int count,
+                                  int32_t offset, int64_t value);
+
+private:
+    struct Term {
+        FilterFunction filter;
+        ValueType columnType;
+        int32_t offset;
+        const AbstractExpression* operand;
+        int64_t value;
+        bool isNull;
+    };
+
+    void addTerm(const AbstractExpression* expr, const TupleSchema* schema);
+
+    std::vector<Term> m_terms;
+    std::vector<const AbstractExpression*> m_residual;
+};
+
+} // end namespace voltdb
+
+#endif
@@ -0,0 +1,549 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+#include "hashjoinexecutor.h"
+
+#include <memory>
+
+#include "boost/foreach.hpp"
+
+#include "common/LargeTempTableBlockCache.h"
+#include "executors/aggregateexecutor.h"
+#include "plannodes/hashjoinnode.h"
+#include "plannodes/limitnode.h"
+#include "storage/LargeTempTable.h"
+#include "storage/LargeTempTableBlock.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+
+using namespace std;
+using namespace voltdb;
+
+// Mixed into the hash that assigns tuples to partitions, so that it is independent
+// of the hash the hash table uses to place keys in buckets.
+const static uint64_t PARTITION_HASH_SEED = 0x9e3779b97f4a7c15ULL;
+
+// How many times a partition whose inner side doesn't fit in the block cache
+// is split again before it is joined with a nested loop instead.
+const static int MAX_PARTITION_DEPTH = 3;
+
+// The partition hash of a key at a depth of repartitioning.  The key's hash is run
+// through the MurmurHash3 finalizer with a different seed at each depth, so that a
+// partition is split along different bits than the one it came from.
+static uint64_t partitionHash(size_t keyHash, int depth)
+{
+    uint64_t hash = keyHash + PARTITION_HASH_SEED * (depth + 1);
+    hash ^= hash >> 33;
+    hash *= 0xff51afd7ed558ccdULL;
+    hash ^= hash >> 33;
+    hash *= 0xc4ceb9fe1a85ec53ULL;
+    hash ^= hash >> 33;
+    return hash;
+}
+
+HashJoinExecutor::~HashJoinExecutor()
+{
+    TupleSchema::freeTupleSchema(m_keySchema);
+}
+
+void HashJoinExecutor::cleanupMemoryPool()
+{
+    TableTuple& nextBuildKey = m_nextBuildKey;
+    nextBuildKey.move(NULL);
+    m_hash.clear();
+    m_nullKeyInnerTuples.clear();
+    m_memoryPool.purge();
+}
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstractNode,
+                              const ExecutorVector& executorVector)
+{
+    VOLT_TRACE("init HashJoin Executor");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+
+    // Init parent first
+    if (!AbstractJoinExecutor::p_init(abstractNode, executorVector)) {
+        return false;
+    }
+
+    // NULL tuples for left and full joins
+    p_init_null_tuples(node->getInputTable(), node->getInputTable(1));
+
+    // Both sides are stored in the same key schema. The planner only pairs
+    // expressions of the same type, so leave room for the longer of the two.
+    const std::vector<AbstractExpression*>& outerExpressions = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerExpressions = node->getInnerHashExpressions();
+    std::vector<ValueType> keyColumnTypes;
+    std::vector<int32_t> keyColumnSizes;
+    std::vector<bool> keyColumnAllowNull;
+    std::vector<bool> keyColumnInBytes;
+    for (int ii = 0; ii < innerExpressions.size(); ii++) {
+        keyColumnTypes.push_back(innerExpressions[ii]->getValueType());
+        keyColumnSizes.push_back(std::max(outerExpressions[ii]->getValueSize(),
+                                          innerExpressions[ii]->getValueSize()));
+        keyColumnAllowNull.push_back(true);
+        keyColumnInBytes.push_back(innerExpressions[ii]->getInBytes());
+    }
+    TupleSchema::freeTupleSchema(m_keySchema);
+    m_keySchema = TupleSchema::createTupleSchema(keyColumnTypes,
+                                                 keyColumnSizes,
+                                                 keyColumnAllowNull,
+                                                 keyColumnInBytes);
+    m_probeKey.init(m_keySchema);
+    m_nextBuildKey.init(m_keySchema, &m_memoryPool);
+
+    return true;
+}
+
+bool HashJoinExecutor::setKey(TableTuple& key,
+                              const std::vector<AbstractExpression*>& expressions,
+                              const TableTuple& tuple,
+                              Pool* pool)
+{
+    for (int ii = 0; ii < expressions.size(); ii++) {
+        NValue value = expressions[ii]->eval(&tuple, NULL);
+        // NULL is never equal to anything
+        if (value.isNull()) {
+            return false;
+        }
+        if (pool != NULL) {
+            key.setNValueAllocateForObjectCopies(ii, value, pool);
+        }
+        else {
+            key.setNValue(ii, value);
+        }
+    }
+    return true;
+}
+
+void HashJoinExecutor::insertInnerTuple(TableTuple& innerTuple)
+{
+    HashJoinPlanNode* node = static_cast<HashJoinPlanNode*>(m_abstractNode);
+    TableTuple& nextBuildKey = m_nextBuildKey;
+    if (nextBuildKey.isNullTuple()) {
+        m_nextBuildKey.allocateActiveTuple();
+    }
+    if (setKey(nextBuildKey, node->getInnerHashExpressions(), innerTuple, &m_memoryPool)) {
+        InnerTupleEntry entry = { innerTuple.address(), false };
+        m_hash.insert(HashJoinMapType::value_type(nextBuildKey, entry));
+        // The key storage now belongs to the hash table
+        nextBuildKey.move(NULL);
+    }
+    else if (m_joinType == JOIN_TYPE_FULL) {
+        m_nullKeyInnerTuples.push_back(innerTuple.address());
+    }
+}
+
+void HashJoinExecutor::probeHashTable(Table* outerTable,
+                                      CountingPostfilter& postfilter,
+                                      TableTuple& joinTuple,
+                                      ProgressMonitorProxy& pmp)
+{
+    HashJoinPlanNode* node = static_cast<HashJoinPlanNode*>(m_abstractNode);
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    const std::vector<AbstractExpression*>& outerExpressions = node->getOuterHashExpressions();
+
+    int outer_cols = outerTable->columnCount();
+    int inner_cols = node->getInputTable(1)->columnCount();
+    TableTuple outer_tuple(outerTable->schema());
+    TableTuple inner_tuple(node->getInputTable(1)->schema());
+    const TableTuple& null_inner_tuple = m_null_inner_tuple.tuple();
+    TableTuple& probeKey = m_probeKey.tuple();
+
+    TableIterator iterator0 = outerTable->iteratorDeletingAsWeGo();
+    while (postfilter.isUnderLimit() && iterator0.next(outer_tuple)) {
+        pmp.countdownProgress();
+
+        joinTuple.setNValues(0, outer_tuple, 0, outer_cols);
+
+        // did this loop body find at least one match for this tuple?
+        bool outerMatch = false;
+        // For outer joins if outer tuple fails pre-join predicate
+        // (join expression based on the outer table only)
+        // it can't match any of inner tuples
+        if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+                setKey(probeKey, outerExpressions, outer_tuple, NULL)) {
+            std::pair<HashJoinMapType::iterator, HashJoinMapType::iterator> bucket =
+                m_hash.equal_range(probeKey);
+            for (HashJoinMapType::iterator it = bucket.first;
+                    postfilter.isUnderLimit() && it != bucket.second; ++it) {
+                pmp.countdownProgress();
+                inner_tuple.move(it->second.m_address);
+                // The join predicate includes the hashed equalities, which keeps
+                // the semantics identical to a nested loop join over the same node.
+                if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                    outerMatch = true;
+                    it->second.m_matched = true;
+                    if (postfilter.eval(&outer_tuple, &inner_tuple)) {
+                        joinTuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        outputTuple(postfilter, joinTuple, pmp);
+                    }
+                }
+            }
+        }
+
+        //
+        // Left Outer Join
+        //
+        if (m_joinType != JOIN_TYPE_INNER && !outerMatch && postfilter.isUnderLimit()) {
+            if (postfilter.eval(&outer_tuple, &null_inner_tuple)) {
+                joinTuple.setNValues(outer_cols, null_inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, joinTuple, pmp);
+            }
+        }
+    }
+
+    //
+    // FULL Outer Join. Null-pad the inner tuples that were never matched
+    //
+    if (m_joinType == JOIN_TYPE_FULL && postfilter.isUnderLimit()) {
+        const TableTuple& null_outer_tuple = m_null_outer_tuple.tuple();
+        joinTuple.setNValues(0, null_outer_tuple, 0, outer_cols);
+
+        for (HashJoinMapType::iterator it = m_hash.begin();
+                postfilter.isUnderLimit() && it != m_hash.end(); ++it) {
+            if (it->second.m_matched) {
+                continue;
+            }
+            inner_tuple.move(it->second.m_address);
+            if (postfilter.eval(&null_outer_tuple, &inner_tuple)) {
+                joinTuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, joinTuple, pmp);
+            }
+        }
+        for (int ii = 0; postfilter.isUnderLimit() && ii < m_nullKeyInnerTuples.size(); ii++) {
+            inner_tuple.move(m_nullKeyInnerTuples[ii]);
+            if (postfilter.eval(&null_outer_tuple, &inner_tuple)) {
+                joinTuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, joinTuple, pmp);
+            }
+        }
+    }
+
+    cleanupMemoryPool();
+}
+
+void HashJoinExecutor::joinPinnedInner(Table* outerTable,
+                                       LargeTempTable* innerTable,
+                                       CountingPostfilter& postfilter,
+                                       TableTuple& joinTuple,
+                                       ProgressMonitorProxy& pmp)
+{
+    // The hash table points straight into the inner blocks,
+    // so they must not be evicted until probing is done.
+    LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+    const TupleSchema* innerSchema = innerTable->schema();
+    BOOST_FOREACH(LargeTempTableBlockId blockId, innerTable->getBlockIds()) {
+        LargeTempTableBlock* block = lttBlockCache->fetchBlock(blockId);
+        for (LargeTempTableBlock::iterator it = block->begin(); it != block->end(); ++it) {
+            pmp.countdownProgress();
+            TableTuple innerTuple = it->toTableTuple(innerSchema);
+            insertInnerTuple(innerTuple);
+        }
+    }
+
+    probeHashTable(outerTable, postfilter, joinTuple, pmp);
+
+    BOOST_FOREACH(LargeTempTableBlockId blockId, innerTable->getBlockIds()) {
+        lttBlockCache->unpinBlock(blockId);
+    }
+}
+
+void HashJoinExecutor::nestLoopLargeInner(Table* outerTable,
+                                          LargeTempTable* innerTable,
+                                          CountingPostfilter& postfilter,
+                                          TableTuple& joinTuple,
+                                          ProgressMonitorProxy& pmp,
+                                          size_t blockBudget)
+{
+    HashJoinPlanNode* node = static_cast<HashJoinPlanNode*>(m_abstractNode);
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+
+    int outer_cols = outerTable->columnCount();
+    int inner_cols = innerTable->columnCount();
+    TableTuple outer_tuple(outerTable->schema());
+    TableTuple inner_tuple(innerTable->schema());
+    const TupleSchema* innerSchema = innerTable->schema();
+    LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+
+    // The outer input is read once for each chunk of inner blocks that fits in
+    // the cache, so outer joins track the matched outer tuples by their position.
+    std::vector<bool> outerMatched;
+    if (m_joinType != JOIN_TYPE_INNER) {
+        outerMatched.resize(outerTable->activeTupleCount(), false);
+    }
+
+    const std::vector<LargeTempTableBlockId>& blockIds = innerTable->getBlockIds();
+    for (size_t chunkStart = 0; chunkStart < blockIds.size() && postfilter.isUnderLimit();
+            chunkStart += blockBudget) {
+        size_t chunkEnd = std::min(chunkStart + blockBudget, blockIds.size());
+        std::vector<LargeTempTableBlock*> chunk;
+        for (size_t ii = chunkStart; ii < chunkEnd; ii++) {
+            chunk.push_back(lttBlockCache->fetchBlock(blockIds[ii]));
+        }
+        // Whether each inner tuple of the chunk has been matched, for FULL joins
+        std::vector<bool> innerMatched;
+
+        TableIterator iterator0 = outerTable->iterator();
+        for (size_t outerPosition = 0; postfilter.isUnderLimit() && iterator0.next(outer_tuple); ++outerPosition) {
+            pmp.countdownProgress();
+            if (preJoinPredicate != NULL && !preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) {
+                continue;
+            }
+            joinTuple.setNValues(0, outer_tuple, 0, outer_cols);
+            size_t innerPosition = 0;
+            BOOST_FOREACH(LargeTempTableBlock* block, chunk) {
+                for (LargeTempTableBlock::iterator it = block->begin();
+                        postfilter.isUnderLimit() && it != block->end(); ++it, ++innerPosition) {
+                    pmp.countdownProgress();
+                    inner_tuple = it->toTableTuple(innerSchema);
+                    if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                        if (m_joinType != JOIN_TYPE_INNER) {
+                            outerMatched[outerPosition] = true;
+                        }
+                        if (m_joinType == JOIN_TYPE_FULL) {
+                            if (innerMatched.size() <= innerPosition) {
+                                innerMatched.resize(innerPosition + 1, false);
+                            }
+                            innerMatched[innerPosition] = true;
+                        }
+                        if (postfilter.eval(&outer_tuple, &inner_tuple)) {
+                            joinTuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                            outputTuple(postfilter, joinTuple, pmp);
+                        }
+                    }
+                }
+            }
+        }
+
+        //
+        // FULL Outer Join. Every outer tuple has been seen, null-pad the chunk's unmatched inner tuples
+        //
+        if (m_joinType == JOIN_TYPE_FULL && postfilter.isUnderLimit()) {
+            const TableTuple& null_outer_tuple = m_null_outer_tuple.tuple();
+            joinTuple.setNValues(0, null_outer_tuple, 0, outer_cols);
+            size_t innerPosition = 0;
+            BOOST_FOREACH(LargeTempTableBlock* block, chunk) {
+                for (LargeTempTableBlock::iterator it = block->begin();
+                        postfilter.isUnderLimit() && it != block->end(); ++it, ++innerPosition) {
+                    if (innerPosition < innerMatched.size() && innerMatched[innerPosition]) {
+                        continue;
+                    }
+                    inner_tuple = it->toTableTuple(innerSchema);
+                    if (postfilter.eval(&null_outer_tuple, &inner_tuple)) {
+                        joinTuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        outputTuple(postfilter, joinTuple, pmp);
+                    }
+                }
+            }
+        }
+
+        for (size_t ii = chunkStart; ii < chunkEnd; ii++) {
+            lttBlockCache->unpinBlock(blockIds[ii]);
+        }
+    }
+
+    //
+    // Left Outer Join. Null-pad the outer tuples that no chunk matched
+    //
+    if (m_joinType != JOIN_TYPE_INNER && postfilter.isUnderLimit()) {
+        const TableTuple& null_inner_tuple = m_null_inner_tuple.tuple();
+        TableIterator iterator0 = outerTable->iterator();
+        for (size_t outerPosition = 0; postfilter.isUnderLimit() && iterator0.next(outer_tuple); ++outerPosition) {
+            if (outerMatched[outerPosition]) {
+                continue;
+            }
+            if (postfilter.eval(&outer_tuple, &null_inner_tuple)) {
+                joinTuple.setNValues(0, outer_tuple, 0, outer_cols);
+                joinTuple.setNValues(outer_cols, null_inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, joinTuple, pmp);
+            }
+        }
+    }
+}
+
+void HashJoinExecutor::joinLargeInner(Table* outerTable,
+                                      LargeTempTable* innerTable,
+                                      CountingPostfilter& postfilter,
+                                      TableTuple& joinTuple,
+                                      ProgressMonitorProxy& pmp,
+                                      int depth)
+{
+    HashJoinPlanNode* node = static_cast<HashJoinPlanNode*>(m_abstractNode);
+
+    // Leave a block for reading the outer input and one for the output
+    LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+    size_t blockBudget = std::max(1, lttBlockCache->maxCacheSizeInBlocks() - 2);
+    size_t innerBlocks = innerTable->allocatedBlockCount();
+    if (innerBlocks <= blockBudget) {
+        joinPinnedInner(outerTable, innerTable, postfilter, joinTuple, pmp);
+        return;
+    }
+
+    if (depth >= MAX_PARTITION_DEPTH || blockBudget < 2) {
+        // The keys are too skewed for hashing to split them further, or the cache
+        // is too small to hold the partitions, so give up on the hash table.
+        VOLT_DEBUG("Hash join falling back to a nested loop over %d inner blocks", (int)innerBlocks);
+        nestLoopLargeInner(outerTable, innerTable, postfilter, joinTuple, pmp, blockBudget);
+        return;
+    }
+
+    // Aim for partitions of half the budget, since the key distribution
+    // is unlikely to be even. Each partition being written pins a block.
+    size_t partitionCount = std::min(blockBudget, (2 * innerBlocks + blockBudget - 1) / blockBudget);
+    partitionCount = std::max(partitionCount, (size_t)2);
+    VOLT_DEBUG("Hash join splitting %d inner blocks into %d partitions at depth %d",
+               (int)innerBlocks, (int)partitionCount, depth);
+    std::vector<std::unique_ptr<LargeTempTable> > outerPartitionOwners;
+    std::vector<std::unique_ptr<LargeTempTable> > innerPartitionOwners;
+    std::vector<LargeTempTable*> outerPartitions;
+    std::vector<LargeTempTable*> innerPartitions;
+    for (int ii = 0; ii < partitionCount; ii++) {
+        outerPartitions.push_back(TableFactory::buildCopiedLargeTempTable("hashjoin outer", outerTable));
+        outerPartitionOwners.emplace_back(outerPartitions.back());
+        innerPartitions.push_back(TableFactory::buildCopiedLargeTempTable("hashjoin inner", innerTable));
+        innerPartitionOwners.emplace_back(innerPartitions.back());
+    }
+    int64_t innerTuples = innerTable->activeTupleCount();
+    partitionTable(innerTable, node->getInnerHashExpressions(), innerPartitions, depth, pmp);
+    partitionTable(outerTable, node->getOuterHashExpressions(), outerPartitions, depth, pmp);
+    for (int ii = 0; ii < partitionCount && postfilter.isUnderLimit(); ii++) {
+        if (innerPartitions[ii]->activeTupleCount() == innerTuples) {
+            // Every inner tuple has the same key, splitting again won't help
+            nestLoopLargeInner(outerPartitions[ii], innerPartitions[ii], postfilter, joinTuple, pmp, blockBudget);
+        }
+        else {
+            joinLargeInner(outerPartitions[ii], innerPartitions[ii], postfilter, joinTuple, pmp, depth + 1);
+        }
+        outerPartitionOwners[ii].reset();
+        innerPartitionOwners[ii].reset();
+    }
+}
+
+void HashJoinExecutor::partitionTable(Table* table,
+                                      const std::vector<AbstractExpression*>& expressions,
+                                      std::vector<LargeTempTable*>& partitions,
+                                      int depth,
+                                      ProgressMonitorProxy& pmp)
+{
+    TableTuple tuple(table->schema());
+    TableTuple& key = m_probeKey.tuple();
+    TableIterator iterator = table->iteratorDeletingAsWeGo();
+    while (iterator.next(tuple)) {
+        pmp.countdownProgress();
+        // Tuples with a NULL key can't match, any partition will do for them
+        size_t partition = 0;
+        if (setKey(key, expressions, tuple, NULL)) {
+            partition = partitionHash(key.hashCode(), depth) % partitions.size();
+        }
+        partitions[partition]->insertTuple(tuple);
+    }
+    BOOST_FOREACH(LargeTempTable* partition, partitions) {
+        partition->finishInserts();
+    }
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTableCount() == 2);
+
+    // output table must be a temp table
+    assert(m_tmpOutputTable);
+
+    Table* outer_table = node->getInputTable();
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTable(1);
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    int limit = CountingPostfilter::NO_LIMIT;
+    int offset = CountingPostfilter::NO_OFFSET;
+    if (limit_node) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    ProgressMonitorProxy pmp(m_engine->getExecutorContext(), this);
+    // Init the postfilter
+    CountingPostfilter postfilter(m_tmpOutputTable, node->getWherePredicate(), limit, offset);
+
+    TableTuple join_tuple;
+    if (m_aggExec != NULL) {
+        VOLT_TRACE("Init inline aggregate...");
+        const TupleSchema * aggInputSchema = node->getTupleSchemaPreAgg();
+        join_tuple = m_aggExec->p_execute_init(params, &pmp, aggInputSchema, m_tmpOutputTable, &postfilter);
+    } else {
+        join_tuple = m_tmpOutputTable->tempTuple();
+    }
+
+    LargeTempTable* largeInnerTable = dynamic_cast<LargeTempTable*>(inner_table);
+    if (largeInnerTable == NULL) {
+        TableTuple inner_tuple(inner_table->schema());
+        TableIterator iterator1 = inner_table->iterator();
+        while (iterator1.next(inner_tuple)) {
+            pmp.countdownProgress();
+            insertInnerTuple(inner_tuple);
+        }
+        probeHashTable(outer_table, postfilter, join_tuple, pmp);
+    }
+    else {
+        joinLargeInner(outer_table, largeInnerTable, postfilter, join_tuple, pmp, 0);
+    }
+
+    if (m_aggExec != NULL) {
+        m_aggExec->p_execute_finish();
+    }
+
+    return (true);
+}
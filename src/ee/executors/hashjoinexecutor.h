@@ -0,0 +1,151 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HASHJOINEXECUTOR_H
+#define HASHJOINEXECUTOR_H
+
+#include <vector>
+
+#include "boost/unordered_map.hpp"
+
+#include "common/common.h"
+#include "common/Pool.hpp"
+#include "common/tabletuple.h"
+#include "executors/abstractjoinexecutor.h"
+
+namespace voltdb {
+
+class AbstractExpression;
+class LargeTempTable;
+
+/**
+ * Executes a HashJoinPlanNode.  The inner input is loaded into a hash
+ * table keyed by the inner hash expressions and every outer tuple is
+ * matched against the bucket for its outer hash expressions, so the
+ * join costs O(N + M) rather than the O(N * M) of a nested loop join.
+ *
+ * For large queries, where the inputs are large temp tables, the inner
+ * blocks have to stay pinned while the hash table points into them.
+ * When the inner input has more blocks than the block cache can hold,
+ * both inputs are first split into partitions by key hash, each one
+ * small enough to be joined on its own.  A partition that is still too
+ * big is split again, and one that hashing can't split, because most of
+ * its inner tuples share a key, is joined with a nested loop.
+ */
+class HashJoinExecutor : public AbstractJoinExecutor {
+public:
+    HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) :
+        AbstractJoinExecutor(engine, abstract_node),
+        m_keySchema(NULL) { }
+    ~HashJoinExecutor();
+
+    void cleanupMemoryPool();
+
+private:
+    // An inner tuple and whether it has been joined with an outer tuple,
+    // which FULL joins need to know to null-pad the ones that haven't.
+    struct InnerTupleEntry {
+        char* m_address;
+        bool m_matched;
+    };
+
+    typedef boost::unordered_multimap<TableTuple,
+                                      InnerTupleEntry,
+                                      TableTupleHasher,
+                                      TableTupleEqualityChecker> HashJoinMapType;
+
+    bool p_init(AbstractPlanNode*, const ExecutorVector& executorVector);
+    bool p_execute(const NValueArray &params);
+
+    // Evaluate the hash expressions into the key tuple.  Returns false if
+    // any of them is NULL, in which case the tuple can't match anything.
+    bool setKey(TableTuple& key, const std::vector<AbstractExpression*>& expressions,
+                const TableTuple& tuple, Pool* pool);
+
+    void insertInnerTuple(TableTuple& innerTuple);
+
+    // Probe the hash table with every tuple of the outer table, null-pad the
+    // unmatched tuples for outer joins, then clear the hash table.
+    void probeHashTable(Table* outerTable, CountingPostfilter& postfilter,
+                        TableTuple& joinTuple, ProgressMonitorProxy& pmp);
+
+    // Join with an inner large temp table whose blocks all fit in the cache
+    void joinPinnedInner(Table* outerTable, LargeTempTable* innerTable,
+                         CountingPostfilter& postfilter, TableTuple& joinTuple,
+                         ProgressMonitorProxy& pmp);
+
+    // Join with an inner large temp table of any size.  Too big an inner side is split
+    // into partitions by key hash, again at each depth, and is joined with a nested
+    // loop once the depth limit is reached.
+    void joinLargeInner(Table* outerTable, LargeTempTable* innerTable,
+                        CountingPostfilter& postfilter, TableTuple& joinTuple,
+                        ProgressMonitorProxy& pmp, int depth);
+
+    // Join with an inner large temp table without a hash table.  The inner blocks are pinned
+    // blockBudget at a time, and the outer input is read once for each of these chunks.
+    void nestLoopLargeInner(Table* outerTable, LargeTempTable* innerTable,
+                            CountingPostfilter& postfilter, TableTuple& joinTuple,
+                            ProgressMonitorProxy& pmp, size_t blockBudget);
+
+    // Split a table into partitions by the hash of its key at the given depth
+    void partitionTable(Table* table, const std::vector<AbstractExpression*>& expressions,
+                        std::vector<LargeTempTable*>& partitions, int depth,
+                        ProgressMonitorProxy& pmp);
+
+    TupleSchema* m_keySchema;
+    StandAloneTupleStorage m_probeKey;
+    PoolBackedTupleStorage m_nextBuildKey;
+
+    // Holds the build keys and their non-inlined values
+    Pool m_memoryPool;
+    HashJoinMapType m_hash;
+
+    // Inner tuples with a NULL key, kept only to null-pad them for FULL joins
+    std::vector<char*> m_nullKeyInnerTuples;
+};
+
+}
+
+#endif
@@ -45,17 +45,118 @@
 
 #include "seqscanexecutor.h"
 #include "executors/aggregateexecutor.h"
+#include "executors/batchpredicate.h"
 #include "executors/insertexecutor.h"
+#include "execution/HelperThreadPool.h"
 #include "plannodes/aggregatenode.h"
 #include "plannodes/insertnode.h"
 #include "plannodes/seqscannode.h"
 #include "plannodes/projectionnode.h"
 #include "plannodes/limitnode.h"
+#include "storage/persistenttable.h"
 #include "storage/temptable.h"
 #include "storage/tablefactory.h"
 
+#include "boost/ptr_container/ptr_vector.hpp"
+
 using namespace voltdb;
 
+namespace {
+
+// Smaller scans are not worth handing to the helper threads.
+const int64_t PARALLEL_SCAN_MIN_TUPLES = 100000;
+
+// Ranges handed out per helper thread, so that threads that get
+// emptier blocks can pick up more of them.
+const size_t PARALLEL_SCAN_RANGES_PER_THREAD = 2;
+
+typedef std::vector<std::pair<char*, uint32_t> > ScanBlocks;
+
+/*
+ * The part of a parallel scan done by one task: a contiguous range of
+ * the table's blocks, and what was found in it.
+ */
+struct ScanRange {
+    ScanRange() : m_firstBlock(0), m_lastBlock(0), m_scanned(0) {}
+
+    size_t m_firstBlock;
+    size_t m_lastBlock;
+    // Tuples visited, reported to the progress monitor afterwards
+    int64_t m_scanned;
+    // Qualifying tuples in scan order, when there is no aggregate
+    std::vector<char*> m_selected;
+    // Groups of the qualifying tuples, when there is an aggregate
+    boost::scoped_ptr<PartialAggregation> m_partial;
+};
+
+/*
+ * Runs on a helper thread. Walks the tuples of a range like
+ * TableIterator does, filters them a batch at a time, and either
+ * aggregates or collects the tuples that qualify.
+ */
+class ScanRangeTask {
+public:
+    ScanRangeTask(const ScanBlocks& blocks, const PersistentTable* table,
+                  const BatchPredicate* batchPredicate, const AggregateExecutorBase* aggExec,
+                  ScanRange& range)
+        : m_blocks(blocks)
+        , m_table(table)
+        , m_batchPredicate(batchPredicate)
+        , m_aggExec(aggExec)
+        , m_range(range)
+    {}
+
+    void operator()() const {
+        const uint32_t tupleLength = m_table->getTupleLength();
+        TableTuple tuple(m_table->schema());
+        char* batch[BatchPredicate::BATCH_SIZE];
+        int count = 0;
+        for (size_t ii = m_range.m_firstBlock; ii < m_range.m_lastBlock; ii++) {
+            char* dataEnd = m_blocks[ii].first + m_blocks[ii].second * tupleLength;
+            for (char* data = m_blocks[ii].first; data < dataEnd; data += tupleLength) {
+                tuple.move(data);
+                if ( ! tuple.isActive() || tuple.isPendingDelete() || tuple.isPendingDeleteOnUndoRelease()) {
+                    continue;
+                }
+                ++m_range.m_scanned;
+                batch[count++] = data;
+                if (count == BatchPredicate::BATCH_SIZE) {
+                    consume(tuple, batch, count);
+                    count = 0;
+                }
+            }
+        }
+        consume(tuple, batch, count);
+    }
+
+private:
+    void consume(TableTuple& tuple, char* const* batch, int count) const {
+        uint16_t selection[BatchPredicate::BATCH_SIZE];
+        int selected = count;
+        if (m_batchPredicate != NULL) {
+            selected = m_batchPredicate->filter(batch, count, selection);
+        }
+        for (int ii = 0; ii < selected; ii++) {
+            char* data = batch[m_batchPredicate != NULL ? selection[ii] : ii];
+            if (m_aggExec != NULL) {
+                tuple.move(data);
+                m_aggExec->aggregatePartial(*m_range.m_partial, tuple);
+            }
+            else {
+                m_range.m_selected.push_back(data);
+            }
+        }
+    }
+
+    const ScanBlocks& m_blocks;
+    const PersistentTable* m_table;
+    const BatchPredicate* m_batchPredicate;
+    const AggregateExecutorBase* m_aggExec;
+    ScanRange& m_range;
+};
+
+} // end anonymous namespace
+
 bool SeqScanExecutor::p_init(AbstractPlanNode* abstract_node,
                              const ExecutorVector& executorVector)
 {
@@ -82,6 +183,40 @@ bool SeqScanExecutor::p_init(AbstractPlanNode* abstract_node,
     // confuses things.
     assert(m_aggExec == NULL || m_insertExec == NULL);
 
+    //
+    // OPTIMIZATION: BATCHED PREDICATE
+    //
+    // Simple comparisons in the predicate of a persistent table scan
+    // are evaluated over a batch of tuples at a time. Temp tables are
+    // left out since their blocks are freed as the scan passes them,
+    // and so are inline inserts, which may write to the scanned table.
+    //
+    if (node->isPersistentTableScan() && node->getPredicate() != NULL && m_insertExec == NULL) {
+        m_batchPredicate.reset(new BatchPredicate(node->getPredicate(),
+                                                  node->getTargetTable()->schema()));
+        if ( ! m_batchPredicate->isBatchable()) {
+            m_batchPredicate.reset();
+        }
+    }
+
+    //
+    // OPTIMIZATION: PARALLEL SCAN
+    //
+    // A replicated table scan that filters only with batched terms, or
+    // that feeds an aggregate that can be merged, may be split between
+    // the engine's helper threads. Writes to a replicated table involve
+    // every site, so the table can't change while this site scans it.
+    //
+    if (node->isPersistentTableScan() && m_insertExec == NULL &&
+        node->getInlinePlanNode(PLAN_NODE_TYPE_PROJECTION) == NULL &&
+        node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT) == NULL) {
+        PersistentTable* table = dynamic_cast<PersistentTable*>(node->getTargetTable());
+        bool filtersInBatches = node->getPredicate() == NULL ?
+                m_aggExec != NULL : (m_batchPredicate && m_batchPredicate->isComplete());
+        m_parallelizable = table != NULL && table->isReplicatedTable() && filtersInBatches &&
+                (m_aggExec == NULL || m_aggExec->canAggregateInParallel());
+    }
+
     //
     // OPTIMIZATION: If there is no predicate for this SeqScan,
     // then we want to just set our OutputTable pointer to be the
@@ -160,11 +295,7 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
     // change any nodes in our expression tree to be ready for the
     // projection operations in execute
     //
-    int num_of_columns = -1;
     ProjectionPlanNode* projectionNode = dynamic_cast<ProjectionPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_PROJECTION));
-    if (projectionNode != NULL) {
-        num_of_columns = static_cast<int> (projectionNode->getOutputColumnExpressions().size());
-    }
     //
     // OPTIMIZATION: NESTED LIMIT
     // How nice! We can also cut off our scanning with a nested limit!
@@ -202,8 +333,16 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
         if (limit_node) {
             limit_node->getLimitAndOffsetByReference(params, limit, offset);
         }
+        // The batched path evaluates the predicate itself, unless one of
+        // this execution's parameters has a type it can't compare.
+        bool inBatches = m_batchPredicate && m_batchPredicate->bind();
         // Initialize the postfilter
-        CountingPostfilter postfilter(m_tmpOutputTable, predicate, limit, offset);
+        CountingPostfilter postfilter(m_tmpOutputTable, inBatches ? NULL : predicate, limit, offset);
+        HelperThreadPool* helpers = NULL;
+        if (m_parallelizable && (predicate == NULL || inBatches) &&
+            input_table->activeTupleCount() >= PARALLEL_SCAN_MIN_TUPLES) {
+            helpers = m_engine->getHelperThreadPool();
+        }
 
         ProgressMonitorProxy pmp(m_engine->getExecutorContext(), this);
         TableTuple temp_tuple;
@@ -251,45 +390,34 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
             temp_tuple = m_tmpOutputTable->tempTuple();
         }
 
-        while (postfilter.isUnderLimit() && iterator.next(tuple))
-        {
+        if (helpers != NULL) {
+            scanInParallel(helpers, static_cast<PersistentTable*>(input_table), tuple, postfilter, pmp);
+        }
+        else if (inBatches) {
+            scanInBatches(iterator, tuple, temp_tuple, projectionNode, postfilter, pmp);
+        }
+        else {
+            while (postfilter.isUnderLimit() && iterator.next(tuple))
+            {
 #if   defined(VOLT_TRACE_ENABLED)
-            int tuple_ctr = 0;
+                int tuple_ctr = 0;
 #endif
-            VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
-                       tuple.debug(input_table->name()).c_str(),
-                       ++tuple_ctr,
-                       (int)input_table->activeTupleCount());
-            pmp.countdownProgress();
+                VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
+                           tuple.debug(input_table->name()).c_str(),
+                           ++tuple_ctr,
+                           (int)input_table->activeTupleCount());
+                pmp.countdownProgress();
 
-            //
-            // For each tuple we need to evaluate it against our predicate and limit/offset
-            //
-            if (postfilter.eval(&tuple, NULL))
-            {
                 //
-                // Nested Projection
-                // Project (or replace) values from input tuple
+                // For each tuple we need to evaluate it against our predicate and limit/offset
                 //
-                if (projectionNode != NULL)
-                {
-                    VOLT_TRACE("inline projection...");
-                    // Project the scanned table row onto
-                    // the columns of the select list in the
-                    // select statement.
-                    for (int ctr = 0; ctr < num_of_columns; ctr++) {
-                        NValue value = projectionNode->getOutputColumnExpressions()[ctr]->eval(&tuple, NULL);
-                        temp_tuple.setNValue(ctr, value);
-                    }
-                    outputTuple(temp_tuple);
-                }
-                else
+                if (postfilter.eval(&tuple, NULL))
                 {
-                    outputTuple(tuple);
+                    outputProjectedTuple(tuple, temp_tuple, projectionNode);
+                    pmp.countdownProgress();
                 }
-                pmp.countdownProgress();
-            }
-        } // end while we have more tuples to scan
+            } // end while we have more tuples to scan
+        }
 
         if (m_aggExec != NULL) {
             m_aggExec->p_execute_finish();
@@ -307,6 +435,108 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
     return true;
 }
 
+/*
+ * Collect the addresses of up to BATCH_SIZE tuples, let the batch
+ * predicate reduce them to a selection vector and run the rest of
+ * the predicate, the limit and offset, and the inline nodes on the
+ * selected tuples only.
+ */
+void SeqScanExecutor::scanInBatches(TableIterator& iterator, TableTuple& tuple, TableTuple& temp_tuple,
+                                    ProjectionPlanNode* projectionNode, CountingPostfilter& postfilter,
+                                    ProgressMonitorProxy& pmp) {
+    char* batch[BatchPredicate::BATCH_SIZE];
+    uint16_t selection[BatchPredicate::BATCH_SIZE];
+    bool more = true;
+    while (more && postfilter.isUnderLimit()) {
+        int count = 0;
+        while (count < BatchPredicate::BATCH_SIZE && (more = iterator.next(tuple))) {
+            pmp.countdownProgress();
+            batch[count++] = tuple.address();
+        }
+        int selected = m_batchPredicate->filter(batch, count, selection);
+        for (int ii = 0; ii < selected && postfilter.isUnderLimit(); ii++) {
+            tuple.move(batch[selection[ii]]);
+            if (m_batchPredicate->evalResidual(&tuple) && postfilter.eval(&tuple, NULL)) {
+                outputProjectedTuple(tuple, temp_tuple, projectionNode);
+                pmp.countdownProgress();
+            }
+        }
+    }
+}
+
+/*
+ * Hand out contiguous ranges of blocks to the helper threads and wait
+ * for them. The ranges are then consumed in order, so tuples reach the
+ * output table, and partial aggregates the aggregate, in the same order
+ * as in a serial scan. Helpers don't touch the output table or the
+ * progress monitor, and rethrow their errors here.
+ */
+void SeqScanExecutor::scanInParallel(HelperThreadPool* helpers, PersistentTable* table, TableTuple& tuple,
+                                     CountingPostfilter& postfilter, ProgressMonitorProxy& pmp) {
+    ScanBlocks blocks = table->getBlocksForScan();
+    size_t rangeCount = std::min(blocks.size(),
+                                 PARALLEL_SCAN_RANGES_PER_THREAD * (helpers->threadCount() + 1));
+    boost::ptr_vector<ScanRange> ranges;
+    std::vector<HelperThreadPool::Task> tasks;
+    for (size_t ii = 0; ii < rangeCount; ii++) {
+        ranges.push_back(new ScanRange());
+        ScanRange& range = ranges.back();
+        range.m_firstBlock = blocks.size() * ii / rangeCount;
+        range.m_lastBlock = blocks.size() * (ii + 1) / rangeCount;
+        if (m_aggExec != NULL) {
+            range.m_partial.reset(new PartialAggregation(m_aggExec->getGroupByKeySchema()));
+        }
+        tasks.push_back(ScanRangeTask(blocks, table, m_batchPredicate.get(), m_aggExec, range));
+    }
+    VOLT_DEBUG("Scanning %d blocks of %s in %d ranges",
+               (int)blocks.size(), table->name().c_str(), (int)rangeCount);
+    helpers->run(tasks);
+
+    for (size_t ii = 0; ii < rangeCount; ii++) {
+        ScanRange& range = ranges[ii];
+        for (int64_t jj = 0; jj < range.m_scanned; jj++) {
+            pmp.countdownProgress();
+        }
+        if (m_aggExec != NULL) {
+            m_aggExec->mergePartial(*range.m_partial);
+            // Free the partial aggregation as soon as it has been merged
+            range.m_partial.reset();
+            continue;
+        }
+        BOOST_FOREACH (char* data, range.m_selected) {
+            tuple.move(data);
+            if (postfilter.eval(&tuple, NULL)) {
+                outputTuple(tuple);
+                pmp.countdownProgress();
+            }
+        }
+    }
+}
+
+/*
+ * Nested Projection
+ * Project (or replace) values from input tuple
+ */
+void SeqScanExecutor::outputProjectedTuple(TableTuple& tuple, TableTuple& temp_tuple,
+                                           ProjectionPlanNode* projectionNode) {
+    if (projectionNode != NULL) {
+        VOLT_TRACE("inline projection...");
+        // Project the scanned table row onto
+        // the columns of the select list in the
+        // select statement.
+        const std::vector<AbstractExpression*>& exprs = projectionNode->getOutputColumnExpressions();
+        int num_of_columns = static_cast<int> (exprs.size());
+        for (int ctr = 0; ctr < num_of_columns; ctr++) {
+            NValue value = exprs[ctr]->eval(&tuple, NULL);
+            temp_tuple.setNValue(ctr, value);
+        }
+        outputTuple(temp_tuple);
+    }
+    else {
+        outputTuple(tuple);
+    }
+}
+
 /*
  * We may output a tuple to an inline aggregate or
  * inline insert node.  If there is a limit or projection, this will have
@@ -49,13 +49,21 @@
 #include "common/common.h"
 #include "common/valuevector.h"
 #include "executors/abstractexecutor.h"
+#include "executors/batchpredicate.h"
 #include "execution/VoltDBEngine.h"
 
+#include "boost/scoped_ptr.hpp"
+
 namespace voltdb
 {
     class AggregateExecutorBase;
     struct CountingPostfilter;
+    class HelperThreadPool;
     class InsertExecutor;
+    class PersistentTable;
+    class ProgressMonitorProxy;
+    class ProjectionPlanNode;
+    class TableIterator;
 
     class SeqScanExecutor : public AbstractExecutor {
     public:
@@ -63,6 +71,7 @@ namespace voltdb
             : AbstractExecutor(engine, abstract_node)
             , m_aggExec(NULL)
             , m_insertExec(NULL)
+            , m_parallelizable(false)
         {}
     protected:
         bool p_init(AbstractPlanNode* abstract_node,
@@ -77,6 +86,30 @@ namespace voltdb
          */
         void outputTuple(TableTuple& tuple);
 
+        /**
+         * Apply the inline projection, if there is one, and
+         * output the result.
+         */
+        void outputProjectedTuple(TableTuple& tuple, TableTuple& temp_tuple,
+                                  ProjectionPlanNode* projectionNode);
+
+        /**
+         * Scan the table a batch of tuples at a time, filtering
+         * each batch with m_batchPredicate.
+         */
+        void scanInBatches(TableIterator& iterator, TableTuple& tuple, TableTuple& temp_tuple,
+                           ProjectionPlanNode* projectionNode, CountingPostfilter& postfilter,
+                           ProgressMonitorProxy& pmp);
+
+        /**
+         * Split the blocks of the table between the engine's helper
+         * threads, which filter their share of the tuples and, with
+         * an inline aggregate, aggregate them. The results are then
+         * output or merged on the site thread in scan order.
+         */
+        void scanInParallel(HelperThreadPool* helpers, PersistentTable* table, TableTuple& tuple,
+                            CountingPostfilter& postfilter, ProgressMonitorProxy& pmp);
+
         // These are logically local variables to p_execute.
         // But we need to share them between p_execute and
         // outputTuple, so we save them here.  They come out of
@@ -85,6 +118,14 @@ namespace voltdb
         // freeing them.
         AggregateExecutorBase* m_aggExec;
         InsertExecutor* m_insertExec;
+
+        // Set when the predicate of a persistent table scan has
+        // terms that can be evaluated a batch of tuples at a time.
+        boost::scoped_ptr<BatchPredicate> m_batchPredicate;
+
+        // Set when a large enough scan of this replicated table may
+        // be split between the engine's helper threads.
+        bool m_parallelizable;
     };
 }
 
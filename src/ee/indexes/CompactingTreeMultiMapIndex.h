@@ -51,19 +51,22 @@
 #include "indexes/tableindex.h"
 #include "common/tabletuple.h"
 #include "structures/CompactingMap.h"
+#include "structures/CompactingBTree.h"
 
 namespace voltdb {
 
 /**
  * Index implemented as a Binary Tree Multimap.
+ * TreeMap is CompactingMap (red-black tree) or CompactingBTree (B+tree).
  * @see TableIndex
  */
-template<typename KeyValuePair, bool hasRank>
+template<typename KeyValuePair, bool hasRank,
+         template<typename, typename, bool> class TreeMap = CompactingMap>
 class CompactingTreeMultiMapIndex : public TableIndex
 {
     typedef typename KeyValuePair::first_type KeyType;
     typedef typename KeyType::KeyComparator KeyComparator;
-    typedef CompactingMap<KeyValuePair, KeyComparator, hasRank> MapType;
+    typedef TreeMap<KeyValuePair, KeyComparator, hasRank> MapType;
     typedef typename MapType::iterator MapIterator;
     typedef std::pair<MapIterator, MapIterator> MapRange;
 
@@ -383,6 +386,9 @@ class CompactingTreeMultiMapIndex : public TableIndex
     MapIterator findKey(const TableTuple *searchKey) const {
         KeyType tempKey(searchKey);
         MapIterator rv = m_entries.lowerBound(tempKey);
+        if (rv.isEnd()) {
+            return rv;
+        }
         KeyType rvKey = rv.key();
         setPointerValue(tempKey, MAXPOINTER);
         if (m_cmp(rvKey, tempKey) <= 0) {
@@ -61,21 +61,33 @@ class TableIndexPicker
     template <class TKeyType>
     TableIndex *getInstanceForKeyType() const
     {
-        if (m_scheme.unique) {
-            if (m_type != BALANCED_TREE_INDEX) {
+        if (m_type == BTREE_INDEX) {
+            return getTreeInstanceForKeyType<TKeyType, CompactingBTree>();
+        }
+        if (m_type != BALANCED_TREE_INDEX) {
+            if (m_scheme.unique) {
                 return new CompactingHashUniqueIndex<TKeyType >(m_keySchema, m_scheme);
-            } else if (m_scheme.countable) {
-                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, true>(m_keySchema, m_scheme);
             } else {
-                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, false>(m_keySchema, m_scheme);
+                return new CompactingHashMultiMapIndex<TKeyType >(m_keySchema, m_scheme);
+            }
+        }
+        return getTreeInstanceForKeyType<TKeyType, CompactingMap>();
+    }
+
+    template <class TKeyType, template<typename, typename, bool> class TreeMap>
+    TableIndex *getTreeInstanceForKeyType() const
+    {
+        if (m_scheme.unique) {
+            if (m_scheme.countable) {
+                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, true, TreeMap>(m_keySchema, m_scheme);
+            } else {
+                return new CompactingTreeUniqueIndex<NormalKeyValuePair<TKeyType>, false, TreeMap>(m_keySchema, m_scheme);
             }
         } else {
-            if (m_type != BALANCED_TREE_INDEX) {
-                return new CompactingHashMultiMapIndex<TKeyType >(m_keySchema, m_scheme);
-            } else if (m_scheme.countable) {
-                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, true>(m_keySchema, m_scheme);
+            if (m_scheme.countable) {
+                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, true, TreeMap>(m_keySchema, m_scheme);
             } else {
-                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, false>(m_keySchema, m_scheme);
+                return new CompactingTreeMultiMapIndex<PointerKeyValuePair<TKeyType>, false, TreeMap>(m_keySchema, m_scheme);
             }
         }
     }
@@ -125,6 +137,14 @@ public:
     TableIndex *getInstance()
     {
         TableIndex *result;
+        // B+tree separator keys are copies that can outlive the entries they were taken from,
+        // so the keys must not point into tuples or at non-inlined objects.
+        if (m_type == BTREE_INDEX && m_keySchema->getUninlinedObjectColumnCount() != 0) {
+            VOLT_INFO("Producing a tree index for %s: "
+                      "btree index not currently supported for this index key.\n",
+                      m_scheme.name.c_str());
+            m_type = BALANCED_TREE_INDEX;
+        }
 /*
         if ((!m_intsOnly) && (m_type == HASH_TABLE_INDEX)) {
             switch (colCount) {
@@ -178,6 +198,7 @@ public:
             return result;
         }
 
+        // TupleKey keys point into the indexed tuples, so these are never btree indexes.
         if (m_scheme.unique) {
             if (m_scheme.countable) {
                 return new CompactingTreeUniqueIndex<NormalKeyValuePair<TupleKey>, true >(m_keySchema, m_scheme);
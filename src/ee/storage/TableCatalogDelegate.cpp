@@ -211,6 +211,9 @@ getIndexIdFromMap(TableIndexType type, bool countable, bool isUnique,
     case COVERING_CELL_INDEX:
         retval += "G"; // C is taken
         break;
+    case BTREE_INDEX:
+        retval += "T"; // B is taken
+        break;
     default:
         // this would need to change if we added index types
         assert(false);
@@ -2194,6 +2194,15 @@ std::vector<uint64_t> PersistentTable::getBlockAddresses() const {
     return blockAddresses;
 }
 
+std::vector<std::pair<char*, uint32_t> > PersistentTable::getBlocksForScan() const {
+    std::vector<std::pair<char*, uint32_t> > blocks;
+    blocks.reserve(m_data.size());
+    for (TBMap::const_iterator i = m_data.begin(); i != m_data.end(); ++i) {
+        blocks.push_back(std::make_pair(i.key(), i.data()->unusedTupleBoundary()));
+    }
+    return blocks;
+}
+
 #ifndef NDEBUG
 static bool isExistingTableIndex(std::vector<TableIndex*>& indexes, TableIndex* index) {
     BOOST_FOREACH (auto existingIndex, indexes) {
@@ -555,6 +555,11 @@ public:
 
     std::vector<uint64_t> getBlockAddresses() const;
 
+    // The address of each block and the number of tuple slots used in it,
+    // in the order a table iterator visits them. This lets a read-only scan
+    // be split across threads by block.
+    std::vector<std::pair<char*, uint32_t> > getBlocksForScan() const;
+
     bool doDRActions(AbstractDRTupleStream* drStream);
 
     // Create a delta table attached to this persistent table using exactly the same table schema.
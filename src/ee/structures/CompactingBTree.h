@@ -0,0 +1,1125 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef COMPACTINGBTREE_H_
+#define COMPACTINGBTREE_H_
+
+#include "ContiguousAllocator.h"
+#include "CompactingMap.h"
+
+#include <cstdlib>
+#include <stdint.h>
+#include <new>
+#include <utility>
+#include <cassert>
+
+namespace voltdb {
+
+/**
+ * B+tree with the same interface as CompactingMap, so the two can be used
+ * interchangeably by the tree indexes.
+ *
+ * All entries live in the leaves, which are doubly linked, so an iterator is
+ * just a leaf and a slot within it.  Internal nodes only hold separator keys
+ * and child pointers.  Nodes span several cache lines and start on a cache
+ * line boundary, so a lookup reads a handful of wide nodes instead of one
+ * pointer-linked node per comparison, and a scan reads each leaf sequentially.
+ *
+ * Like CompactingMap, the nodes are tightly packed: leaves and internal
+ * nodes each come from their own ContiguousAllocator and when a node is
+ * freed the last allocated node of the same kind is moved into the hole.
+ *
+ * Separators bound their subtrees inclusively: every entry under child i is
+ * <= keys[i] <= every entry under child i+1.  This lets runs of duplicate
+ * keys span leaves in non-unique maps.  Separators are copies of keys that
+ * may outlive the entry they were taken from, so keys must not reference
+ * memory owned by the entries (tuples or non-inlined objects).
+ *
+ * When hasRank is set, internal nodes keep the number of entries under each
+ * child, which gives the rank functions logarithmic cost.
+ *
+ * The same caveats as for CompactingMap apply: nodes move around in memory
+ * using assignment operators, and iterators are invalidated by any mutation.
+ */
+
+static const int COMPACTING_BTREE_CACHE_LINE_SIZE = 64;
+// Target size of a node.  Nodes always hold at least four entries,
+// so nodes for very wide keys are larger than this.
+static const int COMPACTING_BTREE_NODE_SIZE = 512;
+// Target size of the blocks nodes are allocated from.
+static const int COMPACTING_BTREE_BLOCK_SIZE = 256 * 1024;
+
+template<typename KeyValuePair, typename Compare, bool hasRank=false>
+class CompactingBTree {
+    typedef typename KeyValuePair::first_type Key;
+    typedef typename KeyValuePair::second_type Data;
+protected:
+    static const int LEAF_HEADER_SIZE = 32;
+    static const int INTERNAL_HEADER_SIZE = 16;
+    static const int LEAF_ENTRY_SIZE = static_cast<int>(sizeof(KeyValuePair));
+    static const int INTERNAL_ENTRY_SIZE =
+        static_cast<int>(sizeof(Key) + sizeof(void*) + (hasRank ? sizeof(NodeCount) : 0));
+
+    static const int LEAF_CAPACITY =
+        (COMPACTING_BTREE_NODE_SIZE - LEAF_HEADER_SIZE) / LEAF_ENTRY_SIZE > 4 ?
+        (COMPACTING_BTREE_NODE_SIZE - LEAF_HEADER_SIZE) / LEAF_ENTRY_SIZE : 4;
+    static const int INTERNAL_CAPACITY =
+        (COMPACTING_BTREE_NODE_SIZE - INTERNAL_HEADER_SIZE) / INTERNAL_ENTRY_SIZE > 4 ?
+        (COMPACTING_BTREE_NODE_SIZE - INTERNAL_HEADER_SIZE) / INTERNAL_ENTRY_SIZE : 4;
+
+    // Nodes with fewer entries (children) than this borrow from or merge with a sibling.
+    static const int LEAF_MIN = LEAF_CAPACITY / 2;
+    static const int INTERNAL_MIN = INTERNAL_CAPACITY / 2;
+
+    struct InternalNode;
+
+    struct Node {
+        InternalNode *parent;
+        // the number of entries in a leaf, or of children in an internal node
+        int32_t count;
+        bool isLeaf;
+
+        Node(bool leaf) : parent(NULL), count(0), isLeaf(leaf) {}
+    };
+
+    struct LeafNode : public Node {
+        LeafNode *prev;
+        LeafNode *next;
+        KeyValuePair kv[LEAF_CAPACITY];
+
+        LeafNode() : Node(true), prev(NULL), next(NULL) {}
+        const Key &key(int slot) const { return kv[slot].getKey(); }
+    };
+
+    struct InternalNode : public Node {
+        Node *child[INTERNAL_CAPACITY];
+        // the number of entries under each child, only maintained with hasRank
+        NodeCount subct[hasRank ? INTERNAL_CAPACITY : 1];
+        // keys[i] separates child[i] from child[i + 1]
+        Key keys[INTERNAL_CAPACITY - 1];
+
+        InternalNode() : Node(false) {}
+    };
+
+    int64_t m_count;
+    Node *m_root;
+    ContiguousAllocator m_leafAllocator;
+    ContiguousAllocator m_internalAllocator;
+    bool m_unique;
+
+    // templated comparison function object
+    // follows STL conventions
+    Compare m_comper;
+
+public:
+    class iterator {
+        friend class CompactingBTree<KeyValuePair, Compare, hasRank>;
+    protected:
+        LeafNode *m_leaf;
+        int32_t m_slot;
+        iterator(LeafNode *leaf, int32_t slot) : m_leaf(leaf), m_slot(slot) {}
+    public:
+        iterator() : m_leaf(NULL), m_slot(0) {}
+        iterator(const iterator &iter) : m_leaf(iter.m_leaf), m_slot(iter.m_slot) {}
+        const Key &key() const { return m_leaf->kv[m_slot].getKey(); }
+        const Data &value() const { return m_leaf->kv[m_slot].getValue(); }
+        void setValue(const Data &value) { m_leaf->kv[m_slot].setValue(value); }
+        void moveNext()
+        {
+            if (m_leaf != NULL && ++m_slot == m_leaf->count) {
+                m_leaf = m_leaf->next;
+                m_slot = 0;
+            }
+        }
+        void movePrev()
+        {
+            if (m_leaf != NULL && --m_slot < 0) {
+                m_leaf = m_leaf->prev;
+                m_slot = (m_leaf == NULL) ? 0 : m_leaf->count - 1;
+            }
+        }
+        bool isEnd() const { return (m_leaf == NULL); }
+        bool equals(const iterator &iter) const { return m_leaf == iter.m_leaf && m_slot == iter.m_slot; }
+    };
+
+    CompactingBTree(bool unique, Compare comper);
+    ~CompactingBTree();
+
+    bool insert(std::pair<Key, Data> value) { return (insert(value.first, value.second) == NULL); };
+    const Data *insert(const Key &key, const Data &data);
+    bool erase(const Key &key);
+    bool erase(iterator &iter);
+
+    iterator find(const Key &key) const;
+    iterator findRank(int64_t ith) const { return lookupRank(ith); }
+    int64_t size() const { return m_count; }
+    iterator begin() const;
+    iterator rbegin() const;
+
+    iterator lowerBound(const Key &key) const;
+    iterator upperBound(const Key &key) const;
+
+    std::pair<iterator, iterator> equalRange(const Key &key) const;
+
+    size_t bytesAllocated() const
+    {
+        return m_leafAllocator.bytesAllocated() + m_internalAllocator.bytesAllocated();
+    }
+
+    // Must pass a key that already in map, or else return -1
+    int64_t rankLower(const Key& key) const;
+    int64_t rankUpper(const Key& key) const;
+
+    /**
+     * For debugging: verify the ordering, balance, links and
+     * (with hasRank) subtree counts of the tree. SLOW.
+     */
+    bool verify() const;
+
+protected:
+    iterator lookupRank(int64_t ith) const;
+    iterator atSlot(LeafNode *leaf, int slot) const;
+
+    // The child that can hold the first entry >= key, and the first entry > key
+    int lowerChild(const InternalNode *node, const Key &key) const;
+    int upperChild(const InternalNode *node, const Key &key) const;
+    int lowerSlot(const LeafNode *leaf, const Key &key) const;
+    int upperSlot(const LeafNode *leaf, const Key &key) const;
+
+    int childIndex(const InternalNode *parent, const Node *child) const;
+    int64_t subtreeCount(const Node *node) const;
+    void adjustSubct(Node *node, int delta);
+    int64_t countEntriesBefore(const Key &key, bool inclusive) const;
+
+    void splitLeaf(LeafNode *leaf, int slot, const Key &key, const Data &value);
+    void splitInternal(InternalNode *node, int index, const Key &separator, Node *right);
+    void insertIntoParent(Node *left, const Key &separator, Node *right);
+
+    void erase(LeafNode *leaf, int slot);
+    void rebalanceLeaf(LeafNode *leaf);
+    void rebalanceInternal(InternalNode *node);
+    void removeChild(InternalNode *parent, int index);
+
+    LeafNode *newLeaf();
+    InternalNode *newInternal();
+    void freeLeaf(LeafNode *x);
+    void freeInternal(InternalNode *x, InternalNode *&tracked);
+    void replaceChild(Node *from, Node *to);
+    void destroy(Node *node);
+
+    int64_t verify(const Node *node, const Key *lower, const Key *upper,
+                   int depth, int &leafDepth, const LeafNode *&prevLeaf) const;
+
+    static int32_t allocationSize(size_t nodeSize)
+    {
+        return static_cast<int32_t>((nodeSize + COMPACTING_BTREE_CACHE_LINE_SIZE - 1) /
+                                    COMPACTING_BTREE_CACHE_LINE_SIZE * COMPACTING_BTREE_CACHE_LINE_SIZE);
+    }
+
+    static int32_t allocationsPerBlock(size_t nodeSize)
+    {
+        int32_t count = COMPACTING_BTREE_BLOCK_SIZE / allocationSize(nodeSize);
+        return count > 0 ? count : 1;
+    }
+};
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+CompactingBTree<KeyValuePair, Compare, hasRank>::CompactingBTree(bool unique, Compare comper)
+    : m_count(0),
+      m_root(NULL),
+      m_leafAllocator(allocationSize(sizeof(LeafNode)), allocationsPerBlock(sizeof(LeafNode)),
+                      COMPACTING_BTREE_CACHE_LINE_SIZE),
+      m_internalAllocator(allocationSize(sizeof(InternalNode)), allocationsPerBlock(sizeof(InternalNode)),
+                          COMPACTING_BTREE_CACHE_LINE_SIZE),
+      m_unique(unique),
+      m_comper(comper)
+{
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+CompactingBTree<KeyValuePair, Compare, hasRank>::~CompactingBTree()
+{
+    // The allocators free the memory, but the keys and values still need their destructors run.
+    if (m_root != NULL) {
+        destroy(m_root);
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::destroy(Node *node)
+{
+    if (node->isLeaf) {
+        static_cast<LeafNode*>(node)->~LeafNode();
+        return;
+    }
+    InternalNode *internal = static_cast<InternalNode*>(node);
+    for (int i = 0; i < internal->count; ++i) {
+        destroy(internal->child[i]);
+    }
+    internal->~InternalNode();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::atSlot(LeafNode *leaf, int slot) const
+{
+    // The position just past the end of a leaf is the start of the next one.
+    if (slot == leaf->count) {
+        return iterator(leaf->next, 0);
+    }
+    return iterator(leaf, slot);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::lowerChild(const InternalNode *node, const Key &key) const
+{
+    int lo = 0;
+    int hi = node->count - 1;
+    while (lo < hi) {
+        int mid = (lo + hi) / 2;
+        if (m_comper(node->keys[mid], key) < 0) {
+            lo = mid + 1;
+        }
+        else {
+            hi = mid;
+        }
+    }
+    return lo;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::upperChild(const InternalNode *node, const Key &key) const
+{
+    int lo = 0;
+    int hi = node->count - 1;
+    while (lo < hi) {
+        int mid = (lo + hi) / 2;
+        if (m_comper(node->keys[mid], key) <= 0) {
+            lo = mid + 1;
+        }
+        else {
+            hi = mid;
+        }
+    }
+    return lo;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::lowerSlot(const LeafNode *leaf, const Key &key) const
+{
+    int lo = 0;
+    int hi = leaf->count;
+    while (lo < hi) {
+        int mid = (lo + hi) / 2;
+        if (m_comper(leaf->key(mid), key) < 0) {
+            lo = mid + 1;
+        }
+        else {
+            hi = mid;
+        }
+    }
+    return lo;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::upperSlot(const LeafNode *leaf, const Key &key) const
+{
+    int lo = 0;
+    int hi = leaf->count;
+    while (lo < hi) {
+        int mid = (lo + hi) / 2;
+        if (m_comper(leaf->key(mid), key) <= 0) {
+            lo = mid + 1;
+        }
+        else {
+            hi = mid;
+        }
+    }
+    return lo;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::lowerBound(const Key &key) const
+{
+    if (m_root == NULL) {
+        return iterator();
+    }
+    Node *x = m_root;
+    while ( ! x->isLeaf) {
+        InternalNode *internal = static_cast<InternalNode*>(x);
+        x = internal->child[lowerChild(internal, key)];
+    }
+    LeafNode *leaf = static_cast<LeafNode*>(x);
+    return atSlot(leaf, lowerSlot(leaf, key));
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::upperBound(const Key &key) const
+{
+    if (m_root == NULL) {
+        return iterator();
+    }
+    Key tmpKey(key);
+    setPointerValue(tmpKey, MAXPOINTER);
+    Node *x = m_root;
+    while ( ! x->isLeaf) {
+        InternalNode *internal = static_cast<InternalNode*>(x);
+        x = internal->child[upperChild(internal, tmpKey)];
+    }
+    LeafNode *leaf = static_cast<LeafNode*>(x);
+    return atSlot(leaf, upperSlot(leaf, tmpKey));
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+std::pair<typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator,
+          typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator>
+CompactingBTree<KeyValuePair, Compare, hasRank>::equalRange(const Key &key) const
+{
+    return std::pair<iterator, iterator>(lowerBound(key), upperBound(key));
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::find(const Key &key) const
+{
+    iterator iter = lowerBound(key);
+    if (( ! iter.isEnd()) && m_comper(iter.key(), key) == 0) {
+        return iter;
+    }
+    return iterator();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::begin() const
+{
+    if (m_root == NULL) {
+        return iterator();
+    }
+    Node *x = m_root;
+    while ( ! x->isLeaf) {
+        x = static_cast<InternalNode*>(x)->child[0];
+    }
+    return iterator(static_cast<LeafNode*>(x), 0);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::rbegin() const
+{
+    if (m_root == NULL) {
+        return iterator();
+    }
+    Node *x = m_root;
+    while ( ! x->isLeaf) {
+        x = static_cast<InternalNode*>(x)->child[x->count - 1];
+    }
+    return iterator(static_cast<LeafNode*>(x), x->count - 1);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+const typename CompactingBTree<KeyValuePair, Compare, hasRank>::Data *
+CompactingBTree<KeyValuePair, Compare, hasRank>::insert(const Key &key, const Data &value)
+{
+    if (m_root == NULL) {
+        LeafNode *leaf = newLeaf();
+        leaf->kv[0].setKeyValuePair(key, value);
+        leaf->count = 1;
+        m_root = leaf;
+        m_count = 1;
+        return NULL;
+    }
+
+    // As in CompactingMap, non-unique duplicates go after the existing ones.
+    Node *x = m_root;
+    while ( ! x->isLeaf) {
+        InternalNode *internal = static_cast<InternalNode*>(x);
+        x = internal->child[m_unique ? lowerChild(internal, key) : upperChild(internal, key)];
+    }
+    LeafNode *leaf = static_cast<LeafNode*>(x);
+    int slot;
+    if (m_unique) {
+        slot = lowerSlot(leaf, key);
+        // An exact match may also be the first entry of the next leaf.
+        iterator match = atSlot(leaf, slot);
+        if (( ! match.isEnd()) && m_comper(match.key(), key) == 0) {
+            // Inserting exact matches fails for unique indexes.
+            return &match.value();
+        }
+    }
+    else {
+        slot = upperSlot(leaf, key);
+    }
+
+    if (hasRank) {
+        adjustSubct(leaf, 1);
+    }
+    if (leaf->count < LEAF_CAPACITY) {
+        for (int i = leaf->count; i > slot; --i) {
+            leaf->kv[i] = leaf->kv[i - 1];
+        }
+        leaf->kv[slot].setKeyValuePair(key, value);
+        ++leaf->count;
+    }
+    else {
+        splitLeaf(leaf, slot, key, value);
+    }
+    ++m_count;
+    return NULL;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::splitLeaf(LeafNode *leaf, int slot,
+                                                                const Key &key, const Data &value)
+{
+    KeyValuePair entries[LEAF_CAPACITY + 1];
+    for (int i = 0, j = 0; i <= LEAF_CAPACITY; ++i) {
+        if (i == slot) {
+            entries[i].setKeyValuePair(key, value);
+        }
+        else {
+            entries[i] = leaf->kv[j++];
+        }
+    }
+
+    // Appending to the last leaf, as with ever increasing keys, leaves it full
+    // instead of half empty, since nothing is likely to be inserted there again.
+    int leftCount = (LEAF_CAPACITY + 1) / 2;
+    if (slot == LEAF_CAPACITY && leaf->next == NULL) {
+        leftCount = LEAF_CAPACITY;
+    }
+
+    LeafNode *right = newLeaf();
+    for (int i = 0; i < leftCount; ++i) {
+        leaf->kv[i] = entries[i];
+    }
+    for (int i = leftCount; i <= LEAF_CAPACITY; ++i) {
+        right->kv[i - leftCount] = entries[i];
+    }
+    leaf->count = leftCount;
+    right->count = LEAF_CAPACITY + 1 - leftCount;
+
+    right->prev = leaf;
+    right->next = leaf->next;
+    if (leaf->next != NULL) {
+        leaf->next->prev = right;
+    }
+    leaf->next = right;
+
+    insertIntoParent(leaf, right->key(0), right);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::insertIntoParent(Node *left, const Key &separator, Node *right)
+{
+    InternalNode *parent = left->parent;
+    if (parent == NULL) {
+        // Splitting the root grows the tree by a level.
+        InternalNode *root = newInternal();
+        root->child[0] = left;
+        root->child[1] = right;
+        root->keys[0] = separator;
+        root->count = 2;
+        if (hasRank) {
+            root->subct[0] = static_cast<NodeCount>(subtreeCount(left));
+            root->subct[1] = static_cast<NodeCount>(subtreeCount(right));
+        }
+        left->parent = root;
+        right->parent = root;
+        m_root = root;
+        return;
+    }
+
+    int index = childIndex(parent, left);
+    if (parent->count == INTERNAL_CAPACITY) {
+        splitInternal(parent, index, separator, right);
+        return;
+    }
+    for (int i = parent->count; i > index + 1; --i) {
+        parent->child[i] = parent->child[i - 1];
+        parent->keys[i - 1] = parent->keys[i - 2];
+        if (hasRank) {
+            parent->subct[i] = parent->subct[i - 1];
+        }
+    }
+    parent->child[index + 1] = right;
+    parent->keys[index] = separator;
+    if (hasRank) {
+        parent->subct[index] = static_cast<NodeCount>(subtreeCount(left));
+        parent->subct[index + 1] = static_cast<NodeCount>(subtreeCount(right));
+    }
+    right->parent = parent;
+    ++parent->count;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::splitInternal(InternalNode *node, int index,
+                                                                    const Key &separator, Node *right)
+{
+    // Lay out all the children, including the new one, then deal them out to the two halves.
+    Node *children[INTERNAL_CAPACITY + 1];
+    NodeCount counts[INTERNAL_CAPACITY + 1];
+    Key keys[INTERNAL_CAPACITY];
+    for (int i = 0, j = 0; i <= INTERNAL_CAPACITY; ++i) {
+        children[i] = (i == index + 1) ? right : node->child[j++];
+        if (hasRank) {
+            counts[i] = static_cast<NodeCount>(subtreeCount(children[i]));
+        }
+    }
+    for (int i = 0, j = 0; i < INTERNAL_CAPACITY; ++i) {
+        if (i == index) {
+            keys[i] = separator;
+        }
+        else {
+            keys[i] = node->keys[j++];
+        }
+    }
+
+    int leftCount = (INTERNAL_CAPACITY + 1) / 2;
+    int rightCount = INTERNAL_CAPACITY + 1 - leftCount;
+    InternalNode *sibling = newInternal();
+    for (int i = 0; i < leftCount; ++i) {
+        node->child[i] = children[i];
+        children[i]->parent = node;
+        if (hasRank) {
+            node->subct[i] = counts[i];
+        }
+    }
+    for (int i = 0; i < leftCount - 1; ++i) {
+        node->keys[i] = keys[i];
+    }
+    node->count = leftCount;
+    for (int i = 0; i < rightCount; ++i) {
+        sibling->child[i] = children[leftCount + i];
+        children[leftCount + i]->parent = sibling;
+        if (hasRank) {
+            sibling->subct[i] = counts[leftCount + i];
+        }
+    }
+    for (int i = 0; i < rightCount - 1; ++i) {
+        sibling->keys[i] = keys[leftCount + i];
+    }
+    sibling->count = rightCount;
+
+    // The middle separator moves up rather than being copied.
+    insertIntoParent(node, keys[leftCount - 1], sibling);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::erase(const Key &key)
+{
+    iterator iter = find(key);
+    if (iter.isEnd()) {
+        return false;
+    }
+    erase(iter.m_leaf, iter.m_slot);
+    return true;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::erase(iterator &iter)
+{
+    assert( ! iter.isEnd());
+    erase(iter.m_leaf, iter.m_slot);
+    return true;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::erase(LeafNode *leaf, int slot)
+{
+    if (hasRank) {
+        adjustSubct(leaf, -1);
+    }
+    for (int i = slot + 1; i < leaf->count; ++i) {
+        leaf->kv[i - 1] = leaf->kv[i];
+    }
+    --leaf->count;
+    --m_count;
+
+    if (leaf->parent == NULL) {
+        if (leaf->count == 0) {
+            m_root = NULL;
+            freeLeaf(leaf);
+        }
+        return;
+    }
+    if (leaf->count < LEAF_MIN) {
+        rebalanceLeaf(leaf);
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::rebalanceLeaf(LeafNode *leaf)
+{
+    InternalNode *parent = leaf->parent;
+    int index = childIndex(parent, leaf);
+
+    if (index > 0) {
+        LeafNode *left = static_cast<LeafNode*>(parent->child[index - 1]);
+        if (left->count > LEAF_MIN) {
+            // Take the last entry of the left sibling.
+            for (int i = leaf->count; i > 0; --i) {
+                leaf->kv[i] = leaf->kv[i - 1];
+            }
+            leaf->kv[0] = left->kv[left->count - 1];
+            --left->count;
+            ++leaf->count;
+            parent->keys[index - 1] = leaf->key(0);
+            if (hasRank) {
+                --parent->subct[index - 1];
+                ++parent->subct[index];
+            }
+            return;
+        }
+    }
+    if (index < parent->count - 1) {
+        LeafNode *right = static_cast<LeafNode*>(parent->child[index + 1]);
+        if (right->count > LEAF_MIN) {
+            // Take the first entry of the right sibling.
+            leaf->kv[leaf->count] = right->kv[0];
+            ++leaf->count;
+            for (int i = 1; i < right->count; ++i) {
+                right->kv[i - 1] = right->kv[i];
+            }
+            --right->count;
+            parent->keys[index] = right->key(0);
+            if (hasRank) {
+                ++parent->subct[index];
+                --parent->subct[index + 1];
+            }
+            return;
+        }
+    }
+
+    // Neither sibling can spare an entry, so merge with one of them.
+    if (index > 0) {
+        --index;
+    }
+    LeafNode *left = static_cast<LeafNode*>(parent->child[index]);
+    LeafNode *right = static_cast<LeafNode*>(parent->child[index + 1]);
+    for (int i = 0; i < right->count; ++i) {
+        left->kv[left->count + i] = right->kv[i];
+    }
+    left->count += right->count;
+    left->next = right->next;
+    if (right->next != NULL) {
+        right->next->prev = left;
+    }
+    removeChild(parent, index + 1);
+    freeLeaf(right);
+    rebalanceInternal(parent);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::rebalanceInternal(InternalNode *node)
+{
+    while (true) {
+        if (node->parent == NULL) {
+            // A root with a single child shrinks the tree by a level.
+            if (node->count == 1) {
+                m_root = node->child[0];
+                m_root->parent = NULL;
+                InternalNode *unused = NULL;
+                freeInternal(node, unused);
+            }
+            return;
+        }
+        if (node->count >= INTERNAL_MIN) {
+            return;
+        }
+
+        InternalNode *parent = node->parent;
+        int index = childIndex(parent, node);
+
+        if (index > 0) {
+            InternalNode *left = static_cast<InternalNode*>(parent->child[index - 1]);
+            if (left->count > INTERNAL_MIN) {
+                // Rotate the last child of the left sibling through the parent.
+                for (int i = node->count; i > 0; --i) {
+                    node->child[i] = node->child[i - 1];
+                    if (hasRank) {
+                        node->subct[i] = node->subct[i - 1];
+                    }
+                }
+                for (int i = node->count - 1; i > 0; --i) {
+                    node->keys[i] = node->keys[i - 1];
+                }
+                node->child[0] = left->child[left->count - 1];
+                node->child[0]->parent = node;
+                node->keys[0] = parent->keys[index - 1];
+                parent->keys[index - 1] = left->keys[left->count - 2];
+                if (hasRank) {
+                    NodeCount moved = left->subct[left->count - 1];
+                    node->subct[0] = moved;
+                    parent->subct[index - 1] -= moved;
+                    parent->subct[index] += moved;
+                }
+                --left->count;
+                ++node->count;
+                return;
+            }
+        }
+        if (index < parent->count - 1) {
+            InternalNode *right = static_cast<InternalNode*>(parent->child[index + 1]);
+            if (right->count > INTERNAL_MIN) {
+                // Rotate the first child of the right sibling through the parent.
+                node->child[node->count] = right->child[0];
+                node->child[node->count]->parent = node;
+                node->keys[node->count - 1] = parent->keys[index];
+                parent->keys[index] = right->keys[0];
+                if (hasRank) {
+                    NodeCount moved = right->subct[0];
+                    node->subct[node->count] = moved;
+                    parent->subct[index] += moved;
+                    parent->subct[index + 1] -= moved;
+                }
+                for (int i = 1; i < right->count; ++i) {
+                    right->child[i - 1] = right->child[i];
+                    if (hasRank) {
+                        right->subct[i - 1] = right->subct[i];
+                    }
+                }
+                for (int i = 1; i < right->count - 1; ++i) {
+                    right->keys[i - 1] = right->keys[i];
+                }
+                --right->count;
+                ++node->count;
+                return;
+            }
+        }
+
+        // Merge with a sibling, pulling the separator between them down from the parent.
+        if (index > 0) {
+            --index;
+        }
+        InternalNode *left = static_cast<InternalNode*>(parent->child[index]);
+        InternalNode *right = static_cast<InternalNode*>(parent->child[index + 1]);
+        left->keys[left->count - 1] = parent->keys[index];
+        for (int i = 0; i < right->count; ++i) {
+            left->child[left->count + i] = right->child[i];
+            right->child[i]->parent = left;
+            if (hasRank) {
+                left->subct[left->count + i] = right->subct[i];
+            }
+        }
+        for (int i = 0; i < right->count - 1; ++i) {
+            left->keys[left->count + i] = right->keys[i];
+        }
+        left->count += right->count;
+        removeChild(parent, index + 1);
+        // Freeing a node may move the parent into its place.
+        freeInternal(right, parent);
+        node = parent;
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::removeChild(InternalNode *parent, int index)
+{
+    // The entries of the removed child have been merged into its left neighbor.
+    if (hasRank) {
+        parent->subct[index - 1] += parent->subct[index];
+    }
+    for (int i = index; i < parent->count - 1; ++i) {
+        parent->child[i] = parent->child[i + 1];
+        parent->keys[i - 1] = parent->keys[i];
+        if (hasRank) {
+            parent->subct[i] = parent->subct[i + 1];
+        }
+    }
+    --parent->count;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int CompactingBTree<KeyValuePair, Compare, hasRank>::childIndex(const InternalNode *parent, const Node *child) const
+{
+    for (int i = 0; i < parent->count; ++i) {
+        if (parent->child[i] == child) {
+            return i;
+        }
+    }
+    assert(false);
+    return -1;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::subtreeCount(const Node *node) const
+{
+    if (node->isLeaf) {
+        return node->count;
+    }
+    const InternalNode *internal = static_cast<const InternalNode*>(node);
+    int64_t count = 0;
+    for (int i = 0; i < internal->count; ++i) {
+        count += internal->subct[i];
+    }
+    return count;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::adjustSubct(Node *node, int delta)
+{
+    for (InternalNode *parent = node->parent; parent != NULL; node = parent, parent = parent->parent) {
+        int index = childIndex(parent, node);
+        parent->subct[index] = static_cast<NodeCount>(parent->subct[index] + delta);
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::LeafNode *
+CompactingBTree<KeyValuePair, Compare, hasRank>::newLeaf()
+{
+    void *memory = m_leafAllocator.alloc();
+    assert(memory);
+    return new (memory) LeafNode();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::InternalNode *
+CompactingBTree<KeyValuePair, Compare, hasRank>::newInternal()
+{
+    void *memory = m_internalAllocator.alloc();
+    assert(memory);
+    return new (memory) InternalNode();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::freeLeaf(LeafNode *x)
+{
+    // x must already be unlinked from its parent and neighbors.
+    LeafNode *last = static_cast<LeafNode*>(m_leafAllocator.last());
+    if (last != x) {
+        // Move the last leaf into the hole left by x.
+        x->parent = last->parent;
+        x->count = last->count;
+        x->prev = last->prev;
+        x->next = last->next;
+        for (int i = 0; i < last->count; ++i) {
+            x->kv[i] = last->kv[i];
+        }
+        if (x->prev != NULL) {
+            x->prev->next = x;
+        }
+        if (x->next != NULL) {
+            x->next->prev = x;
+        }
+        replaceChild(last, x);
+    }
+    last->~LeafNode();
+    m_leafAllocator.trim();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::freeInternal(InternalNode *x, InternalNode *&tracked)
+{
+    // x must already be unlinked from its parent.
+    InternalNode *last = static_cast<InternalNode*>(m_internalAllocator.last());
+    if (last != x) {
+        // Move the last internal node into the hole left by x.
+        x->parent = last->parent;
+        x->count = last->count;
+        for (int i = 0; i < last->count; ++i) {
+            x->child[i] = last->child[i];
+            x->child[i]->parent = x;
+            if (hasRank) {
+                x->subct[i] = last->subct[i];
+            }
+        }
+        for (int i = 0; i < last->count - 1; ++i) {
+            x->keys[i] = last->keys[i];
+        }
+        replaceChild(last, x);
+        if (tracked == last) {
+            tracked = x;
+        }
+    }
+    last->~InternalNode();
+    m_internalAllocator.trim();
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+void CompactingBTree<KeyValuePair, Compare, hasRank>::replaceChild(Node *from, Node *to)
+{
+    if (m_root == from) {
+        m_root = to;
+    }
+    else {
+        InternalNode *parent = to->parent;
+        parent->child[childIndex(parent, from)] = to;
+    }
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+typename CompactingBTree<KeyValuePair, Compare, hasRank>::iterator
+CompactingBTree<KeyValuePair, Compare, hasRank>::lookupRank(int64_t ith) const
+{
+    if (( ! hasRank) || ith < 1 || ith > m_count) {
+        return iterator();
+    }
+    Node *x = m_root;
+    int64_t rk = ith;
+    while ( ! x->isLeaf) {
+        InternalNode *internal = static_cast<InternalNode*>(x);
+        int i = 0;
+        while (rk > internal->subct[i]) {
+            rk -= internal->subct[i];
+            ++i;
+        }
+        x = internal->child[i];
+    }
+    return iterator(static_cast<LeafNode*>(x), static_cast<int32_t>(rk - 1));
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::countEntriesBefore(const Key &key, bool inclusive) const
+{
+    // only compare the "data" part of the key
+    int64_t ct = 0;
+    Node *x = m_root;
+    while ( ! x->isLeaf) {
+        InternalNode *internal = static_cast<InternalNode*>(x);
+        int i = 0;
+        while (i < internal->count - 1) {
+            int cmp = m_comper.compareWithoutPointer(internal->keys[i], key);
+            if (cmp > 0 || (cmp == 0 && ! inclusive)) {
+                break;
+            }
+            ct += internal->subct[i];
+            ++i;
+        }
+        x = internal->child[i];
+    }
+    LeafNode *leaf = static_cast<LeafNode*>(x);
+    for (int i = 0; i < leaf->count; ++i) {
+        int cmp = m_comper.compareWithoutPointer(leaf->key(i), key);
+        if (cmp > 0 || (cmp == 0 && ! inclusive)) {
+            break;
+        }
+        ++ct;
+    }
+    return ct;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::rankLower(const Key& key) const
+{
+    if ( ! hasRank) {
+        return -1;
+    }
+    // return -1 if the key passed in is not in the map
+    if (find(key).isEnd()) {
+        return -1;
+    }
+    return countEntriesBefore(key, false) + 1;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::rankUpper(const Key& key) const
+{
+    if ( ! hasRank) {
+        return -1;
+    }
+    if (m_unique) {
+        return rankLower(key);
+    }
+    // return -1 if the key passed in is not in the map
+    if (find(key).isEnd()) {
+        return -1;
+    }
+    return countEntriesBefore(key, true);
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+bool CompactingBTree<KeyValuePair, Compare, hasRank>::verify() const
+{
+    if (m_root == NULL) {
+        return m_count == 0;
+    }
+    if (m_root->parent != NULL) {
+        return false;
+    }
+    int leafDepth = -1;
+    const LeafNode *prevLeaf = NULL;
+    if (verify(m_root, NULL, NULL, 0, leafDepth, prevLeaf) != m_count) {
+        return false;
+    }
+    return prevLeaf->next == NULL;
+}
+
+template<typename KeyValuePair, typename Compare, bool hasRank>
+int64_t CompactingBTree<KeyValuePair, Compare, hasRank>::verify(const Node *node, const Key *lower, const Key *upper,
+                                                                int depth, int &leafDepth,
+                                                                const LeafNode *&prevLeaf) const
+{
+    if (node->isLeaf) {
+        const LeafNode *leaf = static_cast<const LeafNode*>(node);
+        if (leaf->count < 1 || leaf->count > LEAF_CAPACITY) {
+            return -1;
+        }
+        // all leaves are at the same depth and linked in order
+        if (leafDepth == -1) {
+            leafDepth = depth;
+        }
+        if (depth != leafDepth || leaf->prev != prevLeaf ||
+                (prevLeaf != NULL && prevLeaf->next != leaf)) {
+            return -1;
+        }
+        prevLeaf = leaf;
+        for (int i = 0; i < leaf->count; ++i) {
+            if ((lower != NULL && m_comper(*lower, leaf->key(i)) > 0) ||
+                    (upper != NULL && m_comper(leaf->key(i), *upper) > 0)) {
+                return -1;
+            }
+            if (i > 0) {
+                int cmp = m_comper(leaf->key(i - 1), leaf->key(i));
+                if (cmp > 0 || (m_unique && cmp == 0)) {
+                    return -1;
+                }
+            }
+        }
+        return leaf->count;
+    }
+
+    const InternalNode *internal = static_cast<const InternalNode*>(node);
+    int minCount = (node == m_root) ? 2 : INTERNAL_MIN;
+    if (internal->count < minCount || internal->count > INTERNAL_CAPACITY) {
+        return -1;
+    }
+    int64_t total = 0;
+    for (int i = 0; i < internal->count; ++i) {
+        const Key *childLower = (i == 0) ? lower : &internal->keys[i - 1];
+        const Key *childUpper = (i == internal->count - 1) ? upper : &internal->keys[i];
+        if (childLower != NULL && childUpper != NULL && m_comper(*childLower, *childUpper) > 0) {
+            return -1;
+        }
+        if (internal->child[i]->parent != internal) {
+            return -1;
+        }
+        int64_t count = verify(internal->child[i], childLower, childUpper, depth + 1, leafDepth, prevLeaf);
+        if (count < 0 || (hasRank && count != internal->subct[i])) {
+            return -1;
+        }
+        total += count;
+    }
+    return total;
+}
+
+} // namespace voltdb
+
+#endif // COMPACTINGBTREE_H_
@@ -22,10 +22,13 @@
 
 using namespace voltdb;
 
-ContiguousAllocator::ContiguousAllocator(int32_t allocSize, int32_t chunkSize)
+ContiguousAllocator::ContiguousAllocator(int32_t allocSize, int32_t chunkSize, int32_t alignment)
     : m_count(0),
       m_allocationSize(allocSize),
       m_numberAllocationsPerBlock(chunkSize),
+      m_alignment(alignment),
+      m_dataOffset(alignment > static_cast<int32_t>(sizeof(Buffer)) ?
+                   alignment : static_cast<int32_t>(sizeof(Buffer))),
       m_tail(NULL),
       m_blockCount(0),
       m_cachedBuffer(0) {}
@@ -53,8 +56,13 @@ void *ContiguousAllocator::alloc() {
         if (m_cachedBuffer != NULL) {
             memory = static_cast<void *>(m_cachedBuffer);
             m_cachedBuffer = NULL;
+        } else if (m_alignment > 0) {
+            if (posix_memalign(&memory, m_alignment,
+                               m_dataOffset + m_allocationSize * m_numberAllocationsPerBlock) != 0) {
+                memory = NULL;
+            }
         } else {
-            memory = static_cast<void *>(malloc(sizeof(Buffer) + m_allocationSize * m_numberAllocationsPerBlock));
+            memory = static_cast<void *>(malloc(m_dataOffset + m_allocationSize * m_numberAllocationsPerBlock));
         }
 
         Buffer *buf = reinterpret_cast<Buffer*>(memory);
@@ -68,7 +76,7 @@ void *ContiguousAllocator::alloc() {
     }
 
     // get a pointer to where the new alloc will live
-    void *retval = m_tail->data + (m_allocationSize * blockOffset);
+    void *retval = blockData(m_tail) + (m_allocationSize * blockOffset);
     assert(retval == last());
     return retval;
 }
@@ -79,7 +87,7 @@ void *ContiguousAllocator::last() const {
 
     // determine where in the current block the last alloc is
     int64_t blockOffset = (m_count - 1) % m_numberAllocationsPerBlock;
-    return m_tail->data + (m_allocationSize * blockOffset);
+    return blockData(m_tail) + (m_allocationSize * blockOffset);
 }
 
 void ContiguousAllocator::trim() {
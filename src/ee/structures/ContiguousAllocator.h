@@ -50,7 +50,6 @@ class ContiguousAllocator {
      */
     struct Buffer {
         Buffer *prev;
-        char data[0];
     };
     /** This is the total number of allocations in use in all blocks. */
     int64_t m_count;
@@ -58,10 +57,21 @@ class ContiguousAllocator {
     const int32_t m_allocationSize;
     /** This is the number of allocations in each block in this allocator. */
     const int32_t m_numberAllocationsPerBlock;
+    /**
+     * This is the alignment of each block in bytes, or zero if blocks
+     * only need the alignment malloc(3) gives them.
+     */
+    const int32_t m_alignment;
+    /**
+     * This is the offset of the first allocation from the start of its
+     * block.  It is a whole multiple of the alignment, so allocations whose
+     * size is a multiple of the alignment are all aligned.
+     */
+    const int32_t m_dataOffset;
     /**
      * This points to the tail buffer.  When m_count % m_chunkSize reaches
      * zero and we want a new node we must allocate a new block.  The address
-     * of the last node is then m_tail->data + (m_count - 1) * m_allocSize.
+     * of the last node is then blockData(m_tail) + (m_count - 1) * m_allocSize.
      */
     Buffer *m_tail;
     /** This is the number of blocks in this allocation. */
@@ -78,8 +88,10 @@ public:
     /**
      * @param allocSize is the size in bytes of individual allocations.
      * @param chunkSize is the number of allocations per block (not bytes).
+     * @param alignment is the alignment of each block in bytes, a power of two,
+     *        or zero for the default alignment.
      */
-    ContiguousAllocator(int32_t allocSize, int32_t chunkSize);
+    ContiguousAllocator(int32_t allocSize, int32_t chunkSize, int32_t alignment = 0);
     ~ContiguousAllocator();
 
     /**
@@ -118,6 +130,9 @@ public:
 
     /** Do we have a cached last buffer?  This is used in testing. */
     bool hasCachedLastBuffer() const { return (m_cachedBuffer != NULL); }
+
+private:
+    char *blockData(Buffer *buf) const { return reinterpret_cast<char*>(buf) + m_dataOffset; }
 };
 
 } // namespace voltdb
@@ -270,7 +270,8 @@ SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeIniti
     jlong tempTableMemory,
     jboolean createDrReplicatedStream,
     jint compactionThreshold,
-    jint exportFlushTimeout)
+    jint exportFlushTimeout,
+    jint parallelScanThreads)
 {
     VOLT_DEBUG("nativeInitialize() start");
     VoltDBEngine *engine = castToEngine(enginePtr);
@@ -299,7 +300,8 @@ SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeIniti
                            tempTableMemory,
                            createDrReplicatedStream,
                            static_cast<int32_t>(compactionThreshold),
-                           exportFlushTimeout);
+                           exportFlushTimeout,
+                           parallelScanThreads);
         VOLT_DEBUG("initialize succeeded");
         return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
     }
@@ -24,7 +24,9 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -72,8 +74,28 @@ public class ForeignHost {
     // great way to trigger a heartbeat timout / simulate a network partition
     private AtomicBoolean m_linkCutForTest = new AtomicBoolean(false);
 
+    // Messages waiting for the network thread to cut the next frame
+    private final ConcurrentLinkedQueue<MessageSerialization> m_pendingMessages =
+            new ConcurrentLinkedQueue<MessageSerialization>();
+    private final AtomicBoolean m_flushQueued = new AtomicBoolean(false);
+
+    // Updated by senders when coalescing is off and by the network thread when it is on
+
     public static final int POISON_PILL = -1;
     public static final int STOPNODE_NOTICE = -2;
+    public static final int COALESCED_FRAME = -3;
+
+    /*
+     * Messages sent while the network thread is busy are packed into a single frame of
+     * up to this many bytes. Zero, the default, sends every message in its own frame.
+     * Older versions can't read a COALESCED_FRAME, so only turn this on once every node
+     * of the cluster runs a version that can.
+     */
+    static int COALESCE_BYTES = Integer.getInteger("FOREIGN_HOST_COALESCE_BYTES", 0);
+    private static final int COALESCED_HEADER_SIZE = 4 /* length prefix */
+                                                   + 8 /* source hsid, unused */
+                                                   + 4 /* COALESCED_FRAME marker */
+                                                   + 4 /* message count */;
 
     public static final int CRASH_ALL = 0;
     public static final int CRASH_ME = 1;
@@ -232,42 +254,15 @@ public class ForeignHost {
 
         // if this link is "gone silent" for partition tests, just drop the message on the floor
         if (!m_linkCutForTest.get()) {
-            m_network.enqueue(
-                    new DeferredSerialization() {
-                        @Override
-                        public final void serialize(final ByteBuffer buf) throws IOException {
-                            buf.putInt(buf.capacity() - 4);
-                            buf.putLong(message.m_sourceHSId);
-                            buf.putInt(destinations.length);
-                            for (int ii = 0; ii < destinations.length; ii++) {
-                                buf.putLong(destinations[ii]);
-                            }
-                            message.flattenToBuffer(buf);
-                            buf.flip();
-                        }
-
-                        @Override
-                        public final void cancel() {
-                        /*
-                         * Can this be removed?
-                         */
-                        }
-
-                        @Override
-                        public String toString() {
-                            return message.getClass().getName();
-                        }
-
-                        @Override
-                        public int getSerializedSize() {
-                            final int len = 4            /* length prefix */
-                                    + 8            /* source hsid */
-                                    + 4            /* destinationCount */
-                                    + 8 * destinations.length  /* destination list */
-                                    + message.getSerializedSize();
-                            return len;
-                        }
-                    });
+            final MessageSerialization ms = new MessageSerialization(destinations, message);
+            if (COALESCE_BYTES > 0) {
+                m_pendingMessages.offer(ms);
+                if (m_flushQueued.compareAndSet(false, true)) {
+                    m_network.enqueue(new CoalescedSerialization());
+                }
+            } else {
+                m_network.enqueue(ms);
+            }
         }
 
         long current_time = EstTime.currentTimeMillis();
@@ -301,6 +296,130 @@ public class ForeignHost {
         }
     }
 
+    /**
+     * A single message with its routing header.
+     */
+    private static final class MessageSerialization implements DeferredSerialization {
+        private final long m_destinations[];
+        private final VoltMessage m_message;
+
+        MessageSerialization(long destinations[], VoltMessage message) {
+            m_destinations = destinations;
+            m_message = message;
+        }
+
+        void serializeFrame(final ByteBuffer buf) throws IOException {
+            buf.putInt(getSerializedSize() - 4);
+            buf.putLong(m_message.m_sourceHSId);
+            buf.putInt(m_destinations.length);
+            for (int ii = 0; ii < m_destinations.length; ii++) {
+                buf.putLong(m_destinations[ii]);
+            }
+            // Messages check that they filled their buffer exactly and then set its limit,
+            // give each its own slice so the next frame of a coalesced frame still fits
+            final int size = m_message.getSerializedSize();
+            final ByteBuffer slice = buf.slice();
+            slice.limit(size);
+            m_message.flattenToBuffer(slice.slice());
+            buf.position(buf.position() + size);
+        }
+
+        @Override
+        public final void serialize(final ByteBuffer buf) throws IOException {
+            serializeFrame(buf);
+            buf.flip();
+        }
+
+        @Override
+        public final void cancel() {
+        /*
+         * Can this be removed?
+         */
+        }
+
+        @Override
+        public String toString() {
+            return m_message.getClass().getName();
+        }
+
+        @Override
+        public int getSerializedSize() {
+            final int len = 4            /* length prefix */
+                    + 8            /* source hsid */
+                    + 4            /* destinationCount */
+                    + 8 * m_destinations.length  /* destination list */
+                    + m_message.getSerializedSize();
+            return len;
+        }
+    }
+
+    /**
+     * Placeholder in the write stream for whatever messages are pending when the network
+     * thread gets to it. When the thread is idle that is the single message that queued it
+     * and it goes out right away. When the thread is busy, messages sent in the meantime
+     * pile up behind it and go out together in one COALESCED_FRAME, saving a task, a selector
+     * wakeup and a frame per message. A placeholder that finds nothing left serializes to nothing.
+     */
+    private final class CoalescedSerialization implements DeferredSerialization {
+        private ArrayList<MessageSerialization> m_messages;
+        private int m_size;
+
+        /*
+         * Cut the frame. The write stream asks for the size before serializing, on the network thread.
+         */
+        private void drain() {
+            m_messages = new ArrayList<MessageSerialization>();
+            // Anything sent from here on needs another placeholder
+            m_flushQueued.set(false);
+
+            int size = 0;
+            MessageSerialization ms;
+            while (size < COALESCE_BYTES && (ms = m_pendingMessages.poll()) != null) {
+                m_messages.add(ms);
+                size += ms.getSerializedSize();
+            }
+            if (!m_pendingMessages.isEmpty() && m_flushQueued.compareAndSet(false, true)) {
+                m_network.enqueue(new CoalescedSerialization());
+            }
+
+            if (m_messages.isEmpty()) {
+                m_size = EMPTY_MESSAGE_LENGTH;
+                return;
+            }
+            m_size = m_messages.size() == 1 ? size : size + COALESCED_HEADER_SIZE;
+        }
+
+        @Override
+        public void serialize(final ByteBuffer buf) throws IOException {
+            if (m_messages.size() > 1) {
+                buf.putInt(m_size - 4);
+                buf.putLong(-1);
+                buf.putInt(COALESCED_FRAME);
+                buf.putInt(m_messages.size());
+            }
+            for (MessageSerialization ms : m_messages) {
+                ms.serializeFrame(buf);
+            }
+            buf.flip();
+        }
+
+        @Override
+        public void cancel() {}
+
+        @Override
+        public int getSerializedSize() {
+            if (m_messages == null) {
+                drain();
+            }
+            return m_size;
+        }
+
+        @Override
+        public String toString() {
+            return "CoalescedSerialization: " + (m_messages == null ? "pending" : m_messages.size() + " messages");
+        }
+    }
+
     String hostnameAndIPAndPort() {
         return m_network.getHostnameAndIPAndPort();
     }
@@ -393,6 +512,18 @@ public class ForeignHost {
             hostLog.info("Receive StopNode notice for host " + targetHostId);
             m_hostMessenger.addStopNodeNotice(targetHostId);
             return;
+        } else if (destCount == COALESCED_FRAME) {
+            // Each message in the frame is laid out like a frame of its own
+            final int messageCount = in.getInt();
+            for (int i = 0; i < messageCount; i++) {
+                final int length = in.getInt();
+                // An exact slice, messages check that they consumed their whole buffer
+                final ByteBuffer frame = in.slice();
+                frame.limit(length);
+                in.position(in.position() + length);
+                handleRead(frame.slice(), c);
+            }
+            return;
         }
 
         recvDests = new long[destCount];
@@ -425,6 +425,12 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         m_config = config;
         m_hostWatcher = hostWatcher;
         m_network = new VoltNetworkPool(m_config.networkThreads, 0, m_config.coreBindIds, "Server");
+        // TLS connections on the network threads share the server cipher pool
+        CipherExecutor.SERVER.scaleForNetworkThreads(m_config.networkThreads);
+        // Moving connections between network threads is opt in until it has run under production load
+        if (Boolean.getBoolean("NETWORK_LOAD_BALANCING")) {
+            m_network.enableLoadBalancing();
+        }
         m_acceptor = config.acceptor;
         //This ref is updated after the mesh decision is made.
         m_paused.set(m_config.startPause);
@@ -23,9 +23,10 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -48,9 +49,13 @@ public enum CipherExecutor {
     public final static int FRAME_SHIFT = 14; // 16384 (max TLS fragment)
     public final static int FRAME_SIZE = 1 << FRAME_SHIFT;
 
+    // Each network thread can keep this many cipher threads busy encrypting and decrypting for its connections
+    private final static int THREADS_PER_NETWORK_THREAD = Integer.getInteger("CIPHER_THREADS_PER_NETWORK_THREAD", 2);
+
     volatile ListeningExecutorService m_es;
     AtomicBoolean m_active = new AtomicBoolean(false);
-    final int m_threadCount;
+    int m_threadCount;
+    private ThreadPoolExecutor m_pool;
 
     private CipherExecutor(int nthreads) {
         m_threadCount = nthreads;
@@ -58,14 +63,37 @@ public enum CipherExecutor {
     }
 
     private static final int getWishedThreadCount() {
+        return Math.max(2, getCoreCount()/2);
+    }
+
+    private static final int getCoreCount() {
         Runtime rt = null;
         try {
             rt = Runtime.getRuntime();
         } catch (Throwable t) {
             rt = null;
         }
-        int coreCount = rt != null ? rt.availableProcessors() : 2;
-        return Math.max(2, coreCount/2);
+        return rt != null ? rt.availableProcessors() : 2;
+    }
+
+    /**
+     * Grow the cipher pool so it can keep up with the given number of network threads,
+     * up to one thread per core. The pool never shrinks. Can be called before or after
+     * {@link #startup()}.
+     *
+     * @param networkThreads number of network threads whose connections use this executor
+     */
+    public synchronized void scaleForNetworkThreads(int networkThreads) {
+        int wished = Math.min(getCoreCount(), networkThreads * THREADS_PER_NETWORK_THREAD);
+        if (wished <= m_threadCount) {
+            return;
+        }
+        m_threadCount = wished;
+        if (m_pool != null) {
+            // raise the maximum first, the core size may not exceed it
+            m_pool.setMaximumPoolSize(wished);
+            m_pool.setCorePoolSize(wished);
+        }
     }
 
     /**
@@ -105,8 +133,10 @@ public enum CipherExecutor {
             synchronized(this) {
                 ThreadFactory thrdfct = CoreUtils.getThreadFactory(
                         name () + " SSL cipher service", CoreUtils.MEDIUM_STACK_SIZE);
-                m_es = MoreExecutors.listeningDecorator(
-                        Executors.newFixedThreadPool(m_threadCount, thrdfct));
+                // same as Executors.newFixedThreadPool, kept so the pool can be resized
+                m_pool = new ThreadPoolExecutor(m_threadCount, m_threadCount, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(), thrdfct);
+                m_es = MoreExecutors.listeningDecorator(m_pool);
             }
         }
     }
@@ -117,6 +147,7 @@ public enum CipherExecutor {
                 ListeningExecutorService es = m_es;
                 if (es != CoreUtils.LISTENINGSAMETHREADEXECUTOR) {
                     m_es = CoreUtils.LISTENINGSAMETHREADEXECUTOR;
+                    m_pool = null;
                     es.shutdown();
                     try {
                         es.awaitTermination(365, TimeUnit.DAYS);
@@ -0,0 +1,48 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.network;
+
+import java.io.IOException;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
+
+/**
+ * A {@link DeferredSerialization} whose payload already lives in direct buffers and can be
+ * handed to the write stream as-is instead of being copied into the network buffers.
+ * The write stream still calls {@link #serialize(java.nio.ByteBuffer)} when the message
+ * fits in the space left in its current buffer, so both forms must produce the same bytes.
+ */
+public interface DeferredContainerSerialization extends DeferredSerialization {
+    /**
+     * @return true if the payload lives in containers that {@link #serializeToContainers()} can hand
+     * over. When false the message is copied into the network buffers like any other, which is
+     * cheaper for messages that would have to allocate containers to hold their payload.
+     * Called after {@link #getSerializedSize()}.
+     */
+    boolean hasContainers();
+
+    /**
+     * Serialize the message as a sequence of containers that are written to the socket in order.
+     * Each container must be positioned at the end of its data, the same state a buffer is in
+     * after being written to. Ownership of the containers passes to the write stream, which
+     * discards them once they are written. The total number of bytes must match
+     * {@link #getSerializedSize()}.
+     */
+    BBContainer[] serializeToContainers() throws IOException;
+}
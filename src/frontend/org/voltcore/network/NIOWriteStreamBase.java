@@ -21,7 +21,10 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.Level;
@@ -51,6 +54,13 @@ public abstract class NIOWriteStreamBase {
     protected long m_bytesWritten = 0;
     protected long m_messagesWritten = 0;
 
+    /*
+     * Containers queued by a DeferredContainerSerialization other than its last one,
+     * so a message written from several containers is still counted once
+     */
+    private final Set<BBContainer> m_continuationContainers =
+            Collections.newSetFromMap(new IdentityHashMap<BBContainer, Boolean>());
+
     /*
      * Used to provide incremental reads of the amount of
      * data written.
@@ -108,6 +118,13 @@ public abstract class NIOWriteStreamBase {
             final int serializedSize = ds.getSerializedSize();
             if (serializedSize == DeferredSerialization.EMPTY_MESSAGE_LENGTH) continue;
             BBContainer outCont = m_queuedBuffers.peekLast();
+            if (ds instanceof DeferredContainerSerialization &&
+                    ((DeferredContainerSerialization)ds).hasContainers() &&
+                    (outCont == null || outCont.b().remaining() < serializedSize)) {
+                // Too big for the current buffer, queue the message's own buffers instead of copying them
+                bytesQueued += queueContainers((DeferredContainerSerialization)ds, serializedSize);
+                continue;
+            }
             ByteBuffer outbuf = null;
             if (outCont == null || !outCont.b().hasRemaining()) {
                 outCont = pool.acquire();
@@ -158,6 +175,43 @@ public abstract class NIOWriteStreamBase {
         return processedWrites;
     }
 
+    private int queueContainers(DeferredContainerSerialization ds, int serializedSize) throws IOException {
+        int bytesQueued = 0;
+        final BBContainer[] containers = ds.serializeToContainers();
+        for (int ii = 0; ii < containers.length; ii++) {
+            final BBContainer cont = containers[ii];
+            // A container with no remaining space is never serialized into by later writes
+            assert(!cont.b().hasRemaining());
+            bytesQueued += cont.b().position();
+            m_queuedBuffers.offer(cont);
+            if (ii < containers.length - 1) {
+                m_continuationContainers.add(cont);
+            }
+        }
+        if (bytesQueued != serializedSize) {
+            if (ASSERT_ON) {
+                networkLog.fatal("Sloppy serialization size for message class " + ds);
+                System.exit(-1);
+            }
+            RateLimitedLogger.tryLogForMessage(
+                    System.currentTimeMillis(),
+                    1, TimeUnit.HOURS,
+                    networkLog,
+                    Level.WARN, "Sloppy serialization size for message class %s", ds);
+        }
+        return bytesQueued;
+    }
+
+    /*
+     * Count a buffer that has been completely written, the containers of one
+     * DeferredContainerSerialization count as a single message
+     */
+    protected final void bufferWritten(BBContainer cont) {
+        if (m_continuationContainers.isEmpty() || !m_continuationContainers.remove(cont)) {
+            m_messagesWritten++;
+        }
+    }
+
     private static final boolean ASSERT_ON;
     static {
         boolean assertOn = false;
@@ -201,6 +255,7 @@ public abstract class NIOWriteStreamBase {
             bytesReleased += c.b().remaining();
             c.discard();
         }
+        m_continuationContainers.clear();
         updateQueued(-bytesReleased, false);
     }
 
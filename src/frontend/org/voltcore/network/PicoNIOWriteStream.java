@@ -104,9 +104,9 @@ public class PicoNIOWriteStream extends NIOWriteStreamBase {
 
             //Discard the buffer back to a pool if no data remains
             if (!buffer.hasRemaining()) {
+                bufferWritten(m_currentWriteBuffer);
                 m_currentWriteBuffer.discard();
                 m_currentWriteBuffer = null;
-                m_messagesWritten++;
             }
             bytesWritten += rc;
 
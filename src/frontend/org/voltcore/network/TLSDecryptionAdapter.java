@@ -60,6 +60,8 @@ public class TLSDecryptionAdapter {
     private volatile boolean m_isDead;
 
     private int m_needed = NOT_AVAILABLE;
+    // Only used by the network thread to peek at the next TLS record header
+    private final ByteBuf m_frameHeader = Unpooled.wrappedBuffer(new byte[TLS_HEADER_SIZE]);
 
 
     public TLSDecryptionAdapter(Connection connection, InputHandler handler, SSLEngine sslEngine, CipherExecutor cipherExecutor) {
@@ -109,10 +111,9 @@ public class TLSDecryptionAdapter {
                     throw new EOFException();
                 }
                 if (readBytes > 0) {
-                    ByteBuf frameHeader = Unpooled.wrappedBuffer(new byte[TLS_HEADER_SIZE]);
                     while (readStream.dataAvailable() >= TLS_HEADER_SIZE) {
-                        readStream.peekBytes(frameHeader.array());
-                        m_needed = frameHeader.getShort(3) + TLS_HEADER_SIZE;
+                        readStream.peekBytes(m_frameHeader.array());
+                        m_needed = m_frameHeader.getShort(3) + TLS_HEADER_SIZE;
                         if (readStream.dataAvailable() < m_needed) {
                             break;
                         }
@@ -227,6 +228,7 @@ public class TLSDecryptionAdapter {
         private final byte [] m_overlap = new byte[CipherExecutor.FRAME_SIZE + 2048];
         private final ConcurrentLinkedDeque<NIOReadStream.Slice> m_q = new ConcurrentLinkedDeque<>();
         private final CompositeByteBuf m_msgbb = Unpooled.compositeBuffer();
+        private static final int RECORDS_PER_TASK = 16;
 
         synchronized void offer(NIOReadStream.Slice slice) {
             if (isDead()) {
@@ -269,93 +271,110 @@ public class TLSDecryptionAdapter {
             }
         }
 
+        /**
+         * Decrypt up to {@link #RECORDS_PER_TASK} queued records before handing the cipher
+         * thread back, and wake the network thread once for all the messages they complete.
+         */
         @Override
         public void run() {
-            final NIOReadStream.Slice slice = m_q.peek();
-            if (slice == null) {
-                return;
-            }
-
-            ByteBuf src = slice.bb;
+            boolean readMessages = false;
+            try {
+                for (int i = 0; i < RECORDS_PER_TASK; ++i) {
+                    final NIOReadStream.Slice slice = m_q.peek();
+                    if (slice == null) {
+                        return;
+                    }
 
-            if (isDead()) {
-                synchronized(this) {
-                    slice.markConsumed().discard();
-                    m_q.poll();
-                    releaseDecryptedBuffer();
-                    return;
-                }
-            }
+                    ByteBuf src = slice.bb;
 
-            ByteBuffer [] slicebbarr = slice.bb.nioBuffers();
-            // if frame overlaps two buffers then copy it to the overlap buffer
-            // and use that instead for the unwrap src buffer
-            if (slicebbarr.length > 1) {
-                src = Unpooled.wrappedBuffer(m_overlap).clear();
-                slice.bb.readBytes(src, slice.bb.readableBytes());
-                slicebbarr[0] = src.nioBuffer();
-            }
+                    if (isDead()) {
+                        synchronized(this) {
+                            slice.markConsumed().discard();
+                            m_q.poll();
+                            releaseDecryptedBuffer();
+                            return;
+                        }
+                    }
 
-            ByteBuf dest ;
-            int srcBBLength = slicebbarr[0].remaining();
-            try {
-                dest = m_decrypter.tlsunwrap(slicebbarr[0], m_ce.allocator());
-            } catch (TLSException e) {
-                m_inFlight.release();
-                m_exceptions.offer(new ExecutionException("fragment decrypt task failed", e));
-                networkLog.error("fragment decrypt task failed", e);
-                networkLog.error("isDead()=" + isDead() + ", Src buffer original length: " + srcBBLength +
-                        ", Length after decrypt operation: " + slicebbarr[0].remaining());
-                m_connection.enableWriteSelection();
-                return;
-            }
-            assert !slicebbarr[0].hasRemaining() : "decrypter did not wholly consume the source buffer";
-
-            // src buffer is wholly consumed
-            if (!isDead()) {
-                if (dest.isReadable()) {
-                    m_msgbb.addComponent(true, dest);
-                } else {
-                    // the TLS frame was consumed by the call to engines unwrap but it
-                    // did not yield any content
-                    dest.release();
-                }
+                    ByteBuffer [] slicebbarr = slice.bb.nioBuffers();
+                    // if frame overlaps two buffers then copy it to the overlap buffer
+                    // and use that instead for the unwrap src buffer
+                    if (slicebbarr.length > 1) {
+                        src = Unpooled.wrappedBuffer(m_overlap).clear();
+                        slice.bb.readBytes(src, slice.bb.readableBytes());
+                        slicebbarr[0] = src.nioBuffer();
+                    }
 
-                int read = 0;
-                while (m_msgbb.readableBytes() >= getNeededBytes()) {
-                    ByteBuffer bb = null;
+                    ByteBuf dest ;
+                    int srcBBLength = slicebbarr[0].remaining();
                     try {
-                        bb = m_inputHandler.retrieveNextMessage(m_msgbb);
-                        // All of the message bytes are not available yet
-                        if (bb==null) {
-                            continue;
-                        }
-                    } catch(IOException e) {
-                        m_inFlight.release(); m_msgbb.release();
-                        m_exceptions.offer(new ExecutionException("failed message length check", e));
-                        networkLog.error("failed message length check", e);
-                        m_connection.enableWriteSelection();
-                        continue;
+                        dest = m_decrypter.tlsunwrap(slicebbarr[0], m_ce.allocator());
+                    } catch (TLSException e) {
+                        m_inFlight.release();
+                        m_exceptions.offer(new ExecutionException("fragment decrypt task failed", e));
+                        networkLog.error("fragment decrypt task failed", e);
+                        networkLog.error("isDead()=" + isDead() + ", Src buffer original length: " + srcBBLength +
+                                ", Length after decrypt operation: " + slicebbarr[0].remaining());
+                        readMessages = true;
+                        return;
                     }
+                    assert !slicebbarr[0].hasRemaining() : "decrypter did not wholly consume the source buffer";
+
+                    // src buffer is wholly consumed
+                    if (!isDead()) {
+                        if (dest.isReadable()) {
+                            m_msgbb.addComponent(true, dest);
+                        } else {
+                            // the TLS frame was consumed by the call to engines unwrap but it
+                            // did not yield any content
+                            dest.release();
+                        }
 
-                    m_decrypted.offer((ByteBuffer)bb.flip());
-                    ++read;
+                        int read = 0;
+                        while (m_msgbb.readableBytes() >= getNeededBytes()) {
+                            ByteBuffer bb = null;
+                            try {
+                                bb = m_inputHandler.retrieveNextMessage(m_msgbb);
+                                // All of the message bytes are not available yet
+                                if (bb==null) {
+                                    continue;
+                                }
+                            } catch(IOException e) {
+                                m_inFlight.release(); m_msgbb.release();
+                                m_exceptions.offer(new ExecutionException("failed message length check", e));
+                                networkLog.error("failed message length check", e);
+                                readMessages = true;
+                                continue;
+                            }
+
+                            m_decrypted.offer((ByteBuffer)bb.flip());
+                            ++read;
+                        }
+                        if (read > 0) {
+                            m_msgbb.discardReadComponents();
+                            readMessages = true;
+                        }
+                    } else { // it isDead()
+                        dest.release();
+                        releaseDecryptedBuffer();
+                    }
+                    synchronized(this) {
+                        m_q.poll();
+                        slice.markConsumed().discard();
+                        m_inFlight.release();
+                        // offer() submits the gateway again once something is added to the empty queue
+                        if (m_q.peek() == null) {
+                            return;
+                        }
+                        if (i == RECORDS_PER_TASK - 1) {
+                            submitSelf();
+                        }
+                    }
                 }
-                if (read > 0) {
-                    m_msgbb.discardReadComponents();
+            } finally {
+                if (readMessages) {
                     m_connection.enableWriteSelection();
                 }
-            } else { // it isDead()
-                dest.release();
-                releaseDecryptedBuffer();
-            }
-            synchronized(this) {
-                m_q.poll();
-                slice.markConsumed().discard();
-                m_inFlight.release();
-                if (m_q.peek() != null) {
-                    submitSelf();
-                }
             }
         }
 
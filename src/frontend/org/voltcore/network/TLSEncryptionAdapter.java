@@ -335,6 +335,7 @@ public class TLSEncryptionAdapter {
     class EncryptionGateway implements Runnable {
         private final ConcurrentLinkedDeque<EncryptFrame> m_q = new ConcurrentLinkedDeque<>();
         private final int COALESCE_THRESHOLD = CipherExecutor.FRAME_SIZE - 4096;
+        private static final int FRAMES_PER_TASK = 16;
 
         synchronized void offer(EncryptFrame frame) throws IOException {
             final boolean wasEmpty = m_q.isEmpty();
@@ -404,62 +405,77 @@ public class TLSEncryptionAdapter {
             return ImmutableList.copyOf(m_q).iterator();
         }
 
+        /**
+         * Encrypt up to {@link #FRAMES_PER_TASK} queued frames before handing the
+         * cipher thread back, so a busy connection doesn't pay for a task submission
+         * and a write selection wake up on every TLS record.
+         */
         @Override
         public void run() {
-            EncryptFrame frame = m_q.peek();
-            if (frame == null) return;
+            boolean wroteMessages = false;
+            try {
+                for (int i = 0; i < FRAMES_PER_TASK; ++i) {
+                    EncryptFrame frame = m_q.peek();
+                    if (frame == null) return;
 
-            ByteBuffer src = frame.frame.nioBuffer();
-            ByteBuf encr = m_ce.allocator().ioBuffer(packetBufferSize()).writerIndex(packetBufferSize());
-            ByteBuffer dest = encr.nioBuffer();
+                    ByteBuffer src = frame.frame.nioBuffer();
+                    ByteBuf encr = m_ce.allocator().ioBuffer(packetBufferSize()).writerIndex(packetBufferSize());
+                    ByteBuffer dest = encr.nioBuffer();
 
-            try {
-                m_encrypter.tlswrap(src, dest);
-            } catch (TLSException e) {
-                m_inFlight.release();
-                encr.release();
-                m_exceptions.offer(new ExecutionException("failed to encrypt frame", e));
-                s_networkLog.error("failed to encrypt frame", e);
-                m_connection.enableWriteSelection();
-                return;
-            }
-            assert !src.hasRemaining() : "encryption wrap did not consume the whole source buffer";
-            int delta = dest.limit() - frame.frame.readableBytes();
-            encr.writerIndex(dest.limit());
-
-            if (!m_isShutdown) {
-                m_encryptedFrames.offer(frame.encrypted(delta, encr));
-                /*
-                 * All interactions with write stream must be protected
-                 * with a lock to ensure that interests ops are consistent with
-                 * the state of writes queued to the stream. This prevent
-                 * lost queued writes where the write is queued
-                 * but the write interest op is not set.
-                 */
-                if (frame.isLast()) {
+                    try {
+                        m_encrypter.tlswrap(src, dest);
+                    } catch (TLSException e) {
+                        m_inFlight.release();
+                        encr.release();
+                        m_exceptions.offer(new ExecutionException("failed to encrypt frame", e));
+                        s_networkLog.error("failed to encrypt frame", e);
+                        wroteMessages = true;
+                        return;
+                    }
+                    assert !src.hasRemaining() : "encryption wrap did not consume the whole source buffer";
+                    int delta = dest.limit() - frame.frame.readableBytes();
+                    encr.writerIndex(dest.limit());
+
+                    if (!m_isShutdown) {
+                        m_encryptedFrames.offer(frame.encrypted(delta, encr));
+                        wroteMessages |= frame.isLast();
+                    } else {
+                        encr.release();
+                        return;
+                    }
+                    synchronized(this) {
+                        m_q.poll();
+                        if (frame.isLast()) {
+                            frame.bb.release();
+                        }
+                        m_inFlight.release();
+                        coalesceEncryptFrames();
+                        // offer() submits the gateway again once something is added to the empty queue
+                        if (m_q.peek() == null || m_isShutdown) {
+                            return;
+                        }
+                        if (i == FRAMES_PER_TASK - 1) {
+                            submitSelf();
+                        }
+                    }
+                }
+            } finally {
+                if (wroteMessages) {
+                    /*
+                     * All interactions with write stream must be protected
+                     * with a lock to ensure that interests ops are consistent with
+                     * the state of writes queued to the stream. This prevent
+                     * lost queued writes where the write is queued
+                     * but the write interest op is not set.
+                     */
                     try {
                         m_connection.enableWriteSelection();
                     } catch(CancelledKeyException e) {
                         // If the connection gets closed for some reason we will get this error.
-                        // OK to ignore and return immediately
+                        // OK to ignore
                         s_networkLog.debug("CancelledKeyException while trying to enable write", e);
-                        return;
                     }
                 }
-            } else {
-                encr.release();
-                return;
-            }
-            synchronized(this) {
-                m_q.poll();
-                if (frame.isLast()) {
-                    frame.bb.release();
-                }
-                m_inFlight.release();
-                coalesceEncryptFrames();
-                if (m_q.peek() != null && !m_isShutdown) {
-                    submitSelf();
-                }
             }
         }
 
@@ -347,9 +347,9 @@ public class VoltNIOWriteStream extends NIOWriteStreamBase implements WriteStrea
                         backpressureStarted();
                     }
                 } else {
+                    bufferWritten(m_currentWriteBuffer);
                     m_currentWriteBuffer.discard();
                     m_currentWriteBuffer = null;
-                    m_messagesWritten++;
                 }
                 bytesWritten += rc;
 
@@ -67,6 +67,7 @@ import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
@@ -79,6 +80,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLEngine;
@@ -110,6 +112,20 @@ class VoltNetwork implements Runnable, IOStatsIntf
 
     private final NinjaKeySet m_ninjaSelectedKeys;
 
+    // Load sampling. Utilization is the share of time the thread spends outside of select().
+    // The load of a port is bytes plus weighted messages per second in both directions.
+    static final long SAMPLE_INTERVAL_MS = Long.getLong("NETWORK_LOAD_SAMPLE_INTERVAL_MS", 1000);
+    static final long MESSAGE_WEIGHT = Long.getLong("NETWORK_LOAD_MESSAGE_WEIGHT", 256);
+    private static final long MIN_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Set when the pool balances ports between its networks
+    private volatile VoltNetworkPool m_balancer = null;
+    private long m_idleNanos = 0;
+    private long m_lastSampleNanos = System.nanoTime();
+    private final HashMap<VoltPort, long[]> m_portTotals = new HashMap<VoltPort, long[]>();
+    private final HashMap<VoltPort, Long> m_portLoads = new HashMap<VoltPort, Long>();
+    private volatile long m_load = 0;
+    private volatile int m_utilization = 0;
+
     /**
      * Start this VoltNetwork's thread;
      */
@@ -240,6 +256,11 @@ class VoltNetwork implements Runnable, IOStatsIntf
             public void run() {
                 VoltPort port = (VoltPort)c;
                 assert(c != null);
+                if (port.m_network != VoltNetwork.this) {
+                    // The port moved to another network after this was queued, its new network unregisters it
+                    port.m_network.unregisterChannel(port);
+                    return;
+                }
                 SelectionKey selectionKey = port.getKey();
 
                 try {
@@ -285,20 +306,33 @@ class VoltNetwork implements Runnable, IOStatsIntf
             m_tasks.offer(new Runnable() {
                 @Override
                 public void run() {
-                    callPort(port);
+                    if (ownsPort(port)) {
+                        callPort(port);
+                    }
                 }
             });
         } else {
             m_tasks.offer(new Runnable() {
                 @Override
                 public void run() {
-                    installInterests(port);
+                    if (ownsPort(port)) {
+                        installInterests(port);
+                    }
                 }
             });
         }
         m_selector.wakeup();
     }
 
+    /*
+     * Tasks queued for a port before it moved to another network must not touch it here.
+     * A port that moved away, or is still on its way here, is suspended for the move and
+     * its new network installs its interests when it takes the port over.
+     */
+    private boolean ownsPort(VoltPort port) {
+        return port.m_network == this && !port.isRunning();
+    }
+
     @Override
     public void run() {
         final ThreadLocalRandom r = ThreadLocalRandom.current();
@@ -313,7 +347,11 @@ class VoltNetwork implements Runnable, IOStatsIntf
                     while (m_shouldStop == false) {
                         LatencyWatchdog.pet();
 
-                        final int readyKeys = m_selector.select();
+                        final boolean balancing = m_balancer != null;
+                        final long selectStart = System.nanoTime();
+                        // Wake up periodically to sample the load when balancing
+                        final int readyKeys = balancing ? m_selector.select(SAMPLE_INTERVAL_MS) : m_selector.select();
+                        m_idleNanos += System.nanoTime() - selectStart;
 
                         /*
                          * Run the task queue immediately after selection to catch
@@ -340,6 +378,12 @@ class VoltNetwork implements Runnable, IOStatsIntf
                         while ((task = m_tasks.poll()) != null) {
                             task.run();
                         }
+
+                        if (balancing && System.nanoTime() - m_lastSampleNanos >=
+                                TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS)) {
+                            sampleLoad();
+                            m_balancer.maybeRebalance();
+                        }
                     }
                 } catch (Throwable ex) {
                     ex.printStackTrace();
@@ -408,8 +452,7 @@ class VoltNetwork implements Runnable, IOStatsIntf
 
         if (key.isValid()) {
             key.interestOps (port.interestOps());
-        } else {
-            m_ports.remove(port);
+        } else if (m_ports.remove(port)) {
             m_numPorts.decrementAndGet();
         }
     }
@@ -453,23 +496,23 @@ class VoltNetwork implements Runnable, IOStatsIntf
         }
         while(itInx < keyCount) {
             final Object obj = it.next().attachment();
+            itInx++;
             if (obj == null) {
                 continue;
             }
             final VoltPort port = (VoltPort)obj;
             callPort(port);
-            itInx++;
         }
         itInx = 0;
         it = selectedKeys.iterator();
         while(itInx < startInx) {
             final Object obj = it.next().attachment();
+            itInx++;
             if (obj == null) {
                 continue;
             }
             final VoltPort port = (VoltPort)obj;
             callPort(port);
-            itInx++;
         }
         selectedKeys.clear();
     }
@@ -498,9 +541,136 @@ class VoltNetwork implements Runnable, IOStatsIntf
         m_ninjaSelectedKeys.clear();
     }
 
+    void setBalancer(VoltNetworkPool balancer) {
+        m_balancer = balancer;
+    }
+
+    /** Thread utilization in percent over the last sample interval */
+    int getUtilization() {
+        return m_utilization;
+    }
+
+    /** Bytes plus weighted messages per second over the last sample interval */
+    long getLoad() {
+        return m_load;
+    }
+
+    private void sampleUtilization(long now) {
+        final long elapsed = now - m_lastSampleNanos;
+        m_utilization = (int)Math.max(0, Math.min(100, 100 - m_idleNanos * 100 / elapsed));
+        m_idleNanos = 0;
+        m_lastSampleNanos = now;
+    }
+
+    private void sampleLoad() {
+        final long now = System.nanoTime();
+        final long elapsed = now - m_lastSampleNanos;
+        sampleUtilization(now);
+
+        long total = 0;
+        m_portLoads.clear();
+        for (VoltPort p : m_ports) {
+            final long written[] = p.writeStream().getBytesAndMessagesWritten(false);
+            final long bytes = p.readStream().getBytesRead(false) + written[0];
+            final long messages = p.getMessagesRead(false) + written[1];
+            long last[] = m_portTotals.get(p);
+            if (last == null) {
+                // Nothing to compare against until the next sample
+                last = new long[] { bytes, messages };
+                m_portTotals.put(p, last);
+            }
+            final long load = ((bytes - last[0]) + (messages - last[1]) * MESSAGE_WEIGHT) *
+                    TimeUnit.SECONDS.toNanos(1) / elapsed;
+            last[0] = bytes;
+            last[1] = messages;
+            m_portLoads.put(p, load);
+            total += load;
+        }
+        m_portTotals.keySet().retainAll(m_ports);
+        m_load = total;
+    }
+
+    /**
+     * Move the busiest port whose load is no more than maxLoad to the target network.
+     * TLS ports stay where they are since their cipher work is tied to the port.
+     * Runs on this network's thread.
+     */
+    void migrateBusiestPort(final VoltNetwork target, long maxLoad) {
+        VoltPort busiest = null;
+        long busiestLoad = 0;
+        for (Map.Entry<VoltPort, Long> e : m_portLoads.entrySet()) {
+            final VoltPort p = e.getKey();
+            final long load = e.getValue();
+            if (load > busiestLoad && load <= maxLoad && p.getClass() == VoltPort.class && m_ports.contains(p)) {
+                busiest = p;
+                busiestLoad = load;
+            }
+        }
+        if (busiest != null && migratePort(busiest, target) && networkLog.isDebugEnabled()) {
+            networkLog.debug("Moving " + busiest + " with load " + busiestLoad + " from " + networkThreadName +
+                    " to " + target.networkThreadName);
+        }
+    }
+
+    /**
+     * Move a port to the target network. Runs on this network's thread between callbacks.
+     * @return false if the port is not registered here or is shutting down
+     */
+    boolean migratePort(final VoltPort port, final VoltNetwork target) {
+        if (!m_ports.contains(port)) {
+            return false;
+        }
+        final SelectionKey key = port.getKey();
+        if (!port.suspendForMigration(target)) {
+            return false;
+        }
+        // Leave the channel registered with the selector but make sure it is never dispatched here again
+        key.attach(null);
+        key.cancel();
+        m_ports.remove(port);
+        m_numPorts.decrementAndGet();
+        m_portTotals.remove(port);
+        m_portLoads.remove(port);
+        return true;
+    }
+
+    /**
+     * Take over a port suspended by {@link VoltPort#suspendForMigration(VoltNetwork)}.
+     * Always the first task this network runs for the port.
+     */
+    void adoptPort(VoltPort port) {
+        final SelectableChannel channel = port.getKey().channel();
+        SelectionKey key;
+        try {
+            try {
+                key = channel.register(m_selector, port.interestOps(), port);
+            } catch (CancelledKeyException e) {
+                // Moving back before this selector dropped the key the port had here, flush it.
+                // Readiness is level triggered, the keys selected now are selected again next time.
+                m_selector.selectNow();
+                m_selector.selectedKeys().clear();
+                key = channel.register(m_selector, port.interestOps(), port);
+            }
+        } catch (IOException e) {
+            // Closed while moving
+            port.die();
+            getUnregisterRunnable(port).run();
+            return;
+        }
+        m_ports.add(port);
+        m_numPorts.incrementAndGet();
+        port.resumeAfterMigration(key);
+    }
+
     private Map<Long, Pair<String, long[]>> getIOStatsImpl(boolean interval) {
         final HashMap<Long, Pair<String, long[]>> retval =
                 new HashMap<Long, Pair<String, long[]>>();
+        final long now = System.nanoTime();
+        if (m_balancer == null && now - m_lastSampleNanos >= MIN_SAMPLE_NANOS) {
+            // Nothing samples periodically, measure since the last request
+            sampleUtilization(now);
+        }
+        final long threadId = m_thread == null ? -1 : m_thread.getId();
         long totalRead = 0;
         long totalMessagesRead = 0;
         long totalWritten = 0;
@@ -521,7 +691,9 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                     read,
                                     messagesRead,
                                     writeInfo[0],
-                                    writeInfo[1] }));
+                                    writeInfo[1],
+                                    threadId,
+                                    m_utilization }));
         }
         retval.put(
                 -1L,
@@ -531,7 +703,9 @@ class VoltNetwork implements Runnable, IOStatsIntf
                                 totalRead,
                                 totalMessagesRead,
                                 totalWritten,
-                                totalMessagesWritten }));
+                                totalMessagesWritten,
+                                threadId,
+                                m_utilization }));
         return retval;
     }
 
@@ -47,9 +47,20 @@ public class VoltNetworkPool {
 
     private static final VoltLogger m_logger = new VoltLogger(VoltNetworkPool.class.getName());
 
+    // Index of the network thread id and utilization in the IO stats of a connection
+    public static final int IOSTATS_THREAD_ID = 4;
+    public static final int IOSTATS_THREAD_UTILIZATION = 5;
+
+    // How often to consider moving a connection, and how busy the busiest network thread
+    // must be, in percent, before it sheds one
+    static final long REBALANCE_INTERVAL_MS = Long.getLong("NETWORK_REBALANCE_INTERVAL_MS", 10000);
+    static final int REBALANCE_UTILIZATION = Integer.getInteger("NETWORK_REBALANCE_UTILIZATION", 50);
+
     private final VoltNetwork m_networks[];
     private final AtomicLong m_nextNetwork = new AtomicLong();
     public final String m_poolName;
+    private volatile boolean m_loadBalancing = false;
+    private final AtomicLong m_lastRebalance = new AtomicLong(System.currentTimeMillis());
 
     public VoltNetworkPool() {
         this(1, 1, null, "");
@@ -76,6 +87,57 @@ public class VoltNetworkPool {
         }
     }
 
+    /**
+     * Assign new connections to the least utilized network thread and periodically move a
+     * busy connection from the most utilized thread to the least utilized one.
+     * Call before {@link #start()}.
+     */
+    public void enableLoadBalancing() {
+        if (m_networks.length < 2) {
+            return;
+        }
+        m_loadBalancing = true;
+        for (VoltNetwork vn : m_networks) {
+            vn.setBalancer(this);
+        }
+    }
+
+    /**
+     * Called by the networks after they sample their load. At most one network
+     * gets to rebalance per interval.
+     */
+    void maybeRebalance() {
+        final long now = System.currentTimeMillis();
+        final long last = m_lastRebalance.get();
+        if (now - last < REBALANCE_INTERVAL_MS || !m_lastRebalance.compareAndSet(last, now)) {
+            return;
+        }
+        VoltNetwork busiest = m_networks[0];
+        VoltNetwork idlest = m_networks[0];
+        for (VoltNetwork vn : m_networks) {
+            if (vn.getUtilization() > busiest.getUtilization()) {
+                busiest = vn;
+            }
+            if (vn.getUtilization() < idlest.getUtilization()) {
+                idlest = vn;
+            }
+        }
+        if (busiest == idlest || busiest.getUtilization() < REBALANCE_UTILIZATION ||
+                busiest.getUtilization() - idlest.getUtilization() < REBALANCE_UTILIZATION / 2) {
+            return;
+        }
+        // Moving more than half the difference would just make the target the busiest
+        final long maxLoad = Math.max(0, busiest.getLoad() - idlest.getLoad()) / 2;
+        final VoltNetwork source = busiest;
+        final VoltNetwork target = idlest;
+        source.queueTask(new Runnable() {
+            @Override
+            public void run() {
+                source.migrateBusiestPort(target, maxLoad);
+            }
+        });
+    }
+
     public void start() {
         for (VoltNetwork vn : m_networks) {
             vn.start();
@@ -108,7 +170,14 @@ public class VoltNetworkPool {
         //Then do a load based policy which is a little racy
         for (int ii = 0; ii < m_networks.length; ii++) {
             if (m_networks[ii] == vn) continue;
-            if (vn.numPorts() > m_networks[ii].numPorts()) {
+            if (m_loadBalancing) {
+                final int utilization = m_networks[ii].getUtilization();
+                if (utilization < vn.getUtilization() ||
+                        (utilization == vn.getUtilization() && vn.numPorts() > m_networks[ii].numPorts())) {
+                    vn = m_networks[ii];
+                }
+            }
+            else if (vn.numPorts() > m_networks[ii].numPorts()) {
                 vn = m_networks[ii];
             }
         }
@@ -138,22 +207,34 @@ public class VoltNetworkPool {
         }
 
         long globalStats[] = null;
+        long totalUtilization = 0;
+        int networks = 0;
         for (Future<Map<Long, Pair<String, long[]>>> statsFuture : statTasks) {
             try {
                 Map<Long, Pair<String, long[]>> stats = statsFuture.get(500, TimeUnit.MILLISECONDS);
+                final long localStats[] = stats.get(-1L).getSecond();
                 if (globalStats == null) {
-                    globalStats = stats.get(-1L).getSecond();
+                    globalStats = localStats.clone();
                 } else {
-                    final long localStats[] = stats.get(-1L).getSecond();
-                    for (int ii = 0; ii < localStats.length; ii++) {
+                    // Only the byte and message counters add up
+                    for (int ii = 0; ii < Math.min(IOSTATS_THREAD_ID, localStats.length); ii++) {
                         globalStats[ii] += localStats[ii];
                     }
                 }
+                if (localStats.length > IOSTATS_THREAD_UTILIZATION) {
+                    totalUtilization += localStats[IOSTATS_THREAD_UTILIZATION];
+                    networks++;
+                }
                 retval.putAll(stats);
             } catch (TimeoutException e) {
                 m_logger.warn("Timed out retrieving stats from network thread, probably harmless", e);
             }
         }
+        if (globalStats != null && globalStats.length > IOSTATS_THREAD_UTILIZATION) {
+            // Average over the network threads
+            globalStats[IOSTATS_THREAD_ID] = -1;
+            globalStats[IOSTATS_THREAD_UTILIZATION] = networks == 0 ? 0 : totalUtilization / networks;
+        }
         retval.put(-1L, Pair.of("GLOBAL", globalStats));
 
         return retval;
@@ -31,13 +31,14 @@ import org.voltcore.logging.VoltLogger;
 /** Encapsulates a socket registration for a VoltNetwork */
 public class VoltPort implements Connection
 {
-    /** The network this port participates in */
-    protected final VoltNetwork m_network;
+    /** The network this port participates in, changes if the pool moves the port to another network */
+    protected volatile VoltNetwork m_network;
 
     protected static final VoltLogger networkLog = new VoltLogger("NETWORK");
 
     public static final int MAX_MESSAGE_LENGTH = 52428800;
 
+    // Stays with the port if it moves to another network, the pool is thread safe
     protected final NetworkDBBPool m_pool;
 
     /** The currently selected operations on this port. */
@@ -304,6 +305,44 @@ public class VoltPort implements Connection
         }
     }
 
+    /**
+     * Hold back interest changes while the port moves to another network, they are only
+     * recorded while the port is running and the new network installs them. The target
+     * becomes the port's network right away, with its adoption of the port queued before
+     * anything else can reach it through {@link #m_network}.
+     * Must be called from the current network's thread between callbacks.
+     * @return false if the port can't be moved
+     */
+    boolean suspendForMigration(final VoltNetwork target) {
+        synchronized(m_lock) {
+            if (m_running || m_isDead || m_isShuttingDown) {
+                return false;
+            }
+            m_running = true;
+            m_network = target;
+            target.queueTask(new Runnable() {
+                @Override
+                public void run() {
+                    target.adoptPort(VoltPort.this);
+                }
+            });
+            return true;
+        }
+    }
+
+    /**
+     * Complete a move to another network, called from the new network's thread
+     * once the channel is registered with its selector.
+     */
+    void resumeAfterMigration(SelectionKey key) {
+        synchronized(m_lock) {
+            assert(m_running);
+            m_selectionKey = key;
+            key.interestOps(m_interestOps);
+            m_running = false;
+        }
+    }
+
     /** Return the nio selection key underlying this port. */
     public SelectionKey getKey() {
         return m_selectionKey;
@@ -461,7 +500,10 @@ public class VoltPort implements Connection
 
     @Override
     public Future<?> unregister() {
-        return m_network.unregisterChannel(this);
+        // Ordered with a move to another network, see suspendForMigration()
+        synchronized(m_lock) {
+            return m_network.unregisterChannel(this);
+        }
     }
 
     @Override
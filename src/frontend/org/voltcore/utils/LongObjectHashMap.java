@@ -0,0 +1,197 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltcore.utils;
+
+import java.util.Arrays;
+
+/**
+ * Map from primitive long keys to objects, for bookkeeping on hot paths where boxing the key
+ * of every lookup shows up as allocation.
+ *
+ * Open addressing with linear probing in parallel key and value arrays, a null value marks an
+ * empty slot so null values are not allowed. Removal shifts the rest of the probe run back
+ * rather than leaving tombstones, so lookups never slow down with churn.
+ * Not thread safe.
+ */
+public class LongObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] m_keys;
+    private Object[] m_values;
+    private int m_mask;
+    private int m_size = 0;
+    // Resize when more than half of the slots are in use
+    private int m_resizeThreshold;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+        m_resizeThreshold = capacity / 2;
+    }
+
+    // Transaction ids keep the partition in the low bits, spread the sequence number over them
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & m_mask;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int ii = slot(key); ; ii = (ii + 1) & m_mask) {
+            final Object value = m_values[ii];
+            if (value == null) {
+                return null;
+            }
+            if (m_keys[ii] == key) {
+                return (V)value;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value for the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("LongObjectHashMap does not allow null values");
+        }
+        int ii = slot(key);
+        for (; m_values[ii] != null; ii = (ii + 1) & m_mask) {
+            if (m_keys[ii] == key) {
+                final V previous = (V)m_values[ii];
+                m_values[ii] = value;
+                return previous;
+            }
+        }
+        m_keys[ii] = key;
+        m_values[ii] = value;
+        if (++m_size > m_resizeThreshold) {
+            rehash(m_values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null if the key wasn't in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        for (int ii = slot(key); ; ii = (ii + 1) & m_mask) {
+            final Object value = m_values[ii];
+            if (value == null) {
+                return null;
+            }
+            if (m_keys[ii] == key) {
+                removeAt(ii);
+                return (V)value;
+            }
+        }
+    }
+
+    /*
+     * Empty the slot and move back any later entry of the probe run that could no
+     * longer be found by probing from its home slot.
+     */
+    private void removeAt(int hole) {
+        m_values[hole] = null;
+        m_size--;
+        for (int ii = (hole + 1) & m_mask; m_values[ii] != null; ii = (ii + 1) & m_mask) {
+            final int home = slot(m_keys[ii]);
+            // Move the entry if the hole lies cyclically within [home, ii)
+            if (((ii - home) & m_mask) >= ((ii - hole) & m_mask)) {
+                m_keys[hole] = m_keys[ii];
+                m_values[hole] = m_values[ii];
+                m_values[ii] = null;
+                hole = ii;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        final long[] keys = m_keys;
+        final Object[] values = m_values;
+        allocate(capacity);
+        for (int ii = 0; ii < values.length; ii++) {
+            if (values[ii] != null) {
+                int jj = slot(keys[ii]);
+                while (m_values[jj] != null) {
+                    jj = (jj + 1) & m_mask;
+                }
+                m_keys[jj] = keys[ii];
+                m_values[jj] = values[ii];
+            }
+        }
+    }
+
+    public void clear() {
+        if (m_size > 0) {
+            Arrays.fill(m_values, null);
+            m_size = 0;
+        }
+    }
+
+    /**
+     * @return a copy of the keys in no particular order, safe to use while modifying the map
+     */
+    public long[] keys() {
+        final long[] keys = new long[m_size];
+        int count = 0;
+        for (int ii = 0; ii < m_values.length; ii++) {
+            if (m_values[ii] != null) {
+                keys[count++] = m_keys[ii];
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int ii = 0; ii < m_values.length; ii++) {
+            if (m_values[ii] != null) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(m_keys[ii]).append('=').append(m_values[ii]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
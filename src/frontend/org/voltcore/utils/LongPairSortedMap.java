@@ -0,0 +1,254 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltcore.utils;
+
+import java.util.Arrays;
+
+/**
+ * Sorted map keyed by a pair of primitive longs, ordered by the first key and then the second.
+ *
+ * Entries live in parallel sorted arrays used as a ring and are found with a binary search,
+ * so neither keys nor entries are allocated per mapping. Inserting or removing moves the entries
+ * on the shorter side of the position, which makes adding at the end and removing from the front,
+ * the usual life of transaction bookkeeping, constant time. Entries are addressed by index for
+ * ordered iteration, an index is only valid until the next insertion or removal.
+ * Null values are not allowed. Not thread safe.
+ */
+public class LongPairSortedMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] m_firstKeys;
+    private long[] m_secondKeys;
+    private Object[] m_values;
+    private int m_mask;
+    // Physical slot of index 0
+    private int m_head = 0;
+    private int m_size = 0;
+
+    public LongPairSortedMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongPairSortedMap(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, initialCapacity) - 1) << 1;
+        m_firstKeys = new long[capacity];
+        m_secondKeys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    private int slot(int index) {
+        return (m_head + index) & m_mask;
+    }
+
+    /**
+     * @return the index of the pair if present, otherwise (-(insertion point) - 1)
+     */
+    public int indexOf(long first, long second) {
+        int low = 0;
+        int high = m_size - 1;
+        if (high < 0) {
+            return -1;
+        }
+        // Keys usually arrive at the back and leave from the front, check both ends first
+        final int last = slot(high);
+        if (m_firstKeys[last] < first || (m_firstKeys[last] == first && m_secondKeys[last] < second)) {
+            return -(m_size + 1);
+        }
+        if (m_firstKeys[m_head] == first && m_secondKeys[m_head] == second) {
+            return 0;
+        }
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midSlot = slot(mid);
+            final long midFirst = m_firstKeys[midSlot];
+            final long midSecond = m_secondKeys[midSlot];
+            if (midFirst < first || (midFirst == first && midSecond < second)) {
+                low = mid + 1;
+            } else if (midFirst > first || midSecond > second) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long first, long second) {
+        final int index = indexOf(first, second);
+        return index >= 0 ? (V)m_values[slot(index)] : null;
+    }
+
+    /**
+     * @return the previous value for the pair, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long first, long second, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("LongPairSortedMap does not allow null values");
+        }
+        int index = indexOf(first, second);
+        if (index >= 0) {
+            final int slot = slot(index);
+            final V previous = (V)m_values[slot];
+            m_values[slot] = value;
+            return previous;
+        }
+        index = -(index + 1);
+        if (m_size == m_values.length) {
+            grow();
+        }
+        if (index < m_size / 2) {
+            // Open the gap by moving the entries before it down one slot
+            m_head = (m_head - 1) & m_mask;
+            for (int ii = 0; ii < index; ii++) {
+                move(slot(ii + 1), slot(ii));
+            }
+        } else {
+            for (int ii = m_size; ii > index; ii--) {
+                move(slot(ii - 1), slot(ii));
+            }
+        }
+        final int slot = slot(index);
+        m_firstKeys[slot] = first;
+        m_secondKeys[slot] = second;
+        m_values[slot] = value;
+        m_size++;
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null if the pair wasn't in the map
+     */
+    public V remove(long first, long second) {
+        final int index = indexOf(first, second);
+        return index >= 0 ? removeAt(index) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V removeAt(int index) {
+        checkIndex(index);
+        final V value = (V)m_values[slot(index)];
+        if (index < m_size / 2) {
+            for (int ii = index; ii > 0; ii--) {
+                move(slot(ii - 1), slot(ii));
+            }
+            m_values[m_head] = null;
+            m_head = (m_head + 1) & m_mask;
+        } else {
+            for (int ii = index; ii < m_size - 1; ii++) {
+                move(slot(ii + 1), slot(ii));
+            }
+            m_values[slot(m_size - 1)] = null;
+        }
+        m_size--;
+        return value;
+    }
+
+    private void move(int from, int to) {
+        m_firstKeys[to] = m_firstKeys[from];
+        m_secondKeys[to] = m_secondKeys[from];
+        m_values[to] = m_values[from];
+    }
+
+    private void grow() {
+        final int capacity = m_values.length * 2;
+        final long[] firstKeys = new long[capacity];
+        final long[] secondKeys = new long[capacity];
+        final Object[] values = new Object[capacity];
+        for (int ii = 0; ii < m_size; ii++) {
+            final int slot = slot(ii);
+            firstKeys[ii] = m_firstKeys[slot];
+            secondKeys[ii] = m_secondKeys[slot];
+            values[ii] = m_values[slot];
+        }
+        m_firstKeys = firstKeys;
+        m_secondKeys = secondKeys;
+        m_values = values;
+        m_mask = capacity - 1;
+        m_head = 0;
+    }
+
+    /**
+     * @return the index of the greatest pair less than or equal to the given pair, or -1 if there is none
+     */
+    public int floorIndex(long first, long second) {
+        final int index = indexOf(first, second);
+        return index >= 0 ? index : -(index + 1) - 1;
+    }
+
+    /**
+     * @return the index of the least pair greater than or equal to the given pair, or -1 if there is none
+     */
+    public int ceilingIndex(long first, long second) {
+        int index = indexOf(first, second);
+        if (index < 0) {
+            index = -(index + 1);
+        }
+        return index < m_size ? index : -1;
+    }
+
+    public long firstKeyAt(int index) {
+        checkIndex(index);
+        return m_firstKeys[slot(index)];
+    }
+
+    public long secondKeyAt(int index) {
+        checkIndex(index);
+        return m_secondKeys[slot(index)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        checkIndex(index);
+        return (V)m_values[slot(index)];
+    }
+
+    public void clear() {
+        Arrays.fill(m_values, null);
+        m_head = 0;
+        m_size = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= m_size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range [0, " + m_size + ")");
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int ii = 0; ii < m_size; ii++) {
+            final int slot = slot(ii);
+            if (ii > 0) {
+                sb.append(", ");
+            }
+            sb.append('[').append(m_firstKeys[slot]).append(", ").append(m_secondKeys[slot]).append("]=").append(m_values[slot]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -62,6 +62,7 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.network.CipherExecutor;
 import org.voltcore.network.Connection;
+import org.voltcore.network.DeferredContainerSerialization;
 import org.voltcore.network.NIOReadStream;
 import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.ReverseDNSPolicy;
@@ -70,6 +71,7 @@ import org.voltcore.network.VoltPort;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.network.WriteStream;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.Pair;
@@ -921,12 +923,13 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
      * Runs on the network thread to prepare client response. If a transaction needs to be
      * restarted, it will get restarted here.
      */
-    public class ClientResponseWork implements DeferredSerialization {
+    public class ClientResponseWork implements DeferredContainerSerialization {
         private final ClientInterfaceHandleManager cihm;
         private final InitiateResponseMessage response;
         private final Procedure catProc;
         private ClientResponseImpl clientResponse;
         private boolean restartMispartitionedTxn;
+        private int serializedSize;
 
         private ClientResponseWork(InitiateResponseMessage response,
                                    ClientInterfaceHandleManager cihm,
@@ -944,10 +947,31 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         {
             buf.putInt(buf.capacity() - 4);
             clientResponse.flattenToBuffer(buf);
+            clientResponse.releaseSharedBuffers();
+        }
+
+        @Override
+        public boolean hasContainers()
+        {
+            // Only zero copy results are worth queueing as containers, anything else would
+            // allocate from the global pools instead of the network's own buffers
+            return clientResponse != null && clientResponse.hasSharedBuffers();
+        }
+
+        @Override
+        public BBContainer[] serializeToContainers() throws IOException
+        {
+            // Result tables that wrap an EE result buffer are written straight from it
+            final BBContainer[] containers = clientResponse.flattenToContainers(serializedSize - 4);
+            clientResponse.releaseSharedBuffers();
+            return containers;
         }
 
         @Override
         public void cancel() {
+            if (clientResponse != null) {
+                clientResponse.releaseSharedBuffers();
+            }
         }
 
         public void setRestartMispartitionedTxn(boolean restart) {
@@ -970,6 +994,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 clientData = cihm.findHandle(response.getClientInterfaceHandle());
             }
             if (clientData == null) {
+                cancel();
                 return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
             }
 
@@ -977,12 +1002,17 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             if (response.isMispartitioned() || response.isMisrouted()) {
                 // If the transaction is restarted, don't send a response to the client yet.
                 if (restartTransaction(clientData.m_messageSize, clientData.m_creationTimeNanos)) {
+                    cancel();
                     return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
                 }
             }
 
             final long now = System.nanoTime();
             final long delta = now - clientData.m_creationTimeNanos;
+            if (TransactionTracer.isSampled(response.getClientInterfaceHandle())) {
+                TransactionTracer.record(response.getClientInterfaceHandle(), CoreUtils.getHostIdFromHSId(m_siteId),
+                        TransactionTracer.Event.RESPONDED, now, clientData.m_procName);
+            }
 
             /*
              * Log initiator stats
@@ -1006,7 +1036,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             clientResponse.setClusterRoundtrip((int)TimeUnit.NANOSECONDS.toMillis(delta));
             clientResponse.setHashes(null); // not part of wire protocol
 
-            return clientResponse.getSerializedSize() + 4;
+            serializedSize = clientResponse.getSerializedSize() + 4;
+            return serializedSize;
         }
 
         @Override
@@ -1215,6 +1246,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                         cihm.connection.writeStream().fastEnqueue(new ClientResponseWork(response, cihm, procedure));
                         Iv2Trace.logFinishTransaction(response, m_mailbox.getHSId());
                     }
+                    else if (response.getClientResponseData() != null) {
+                        response.getClientResponseData().releaseSharedBuffers();
+                    }
                 }
                 else if (message instanceof BinaryPayloadMessage) {
                     handlePartitionFailOver((BinaryPayloadMessage)message);
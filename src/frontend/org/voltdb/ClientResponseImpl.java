@@ -19,11 +19,15 @@ package org.voltdb;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ClientUtils;
@@ -219,6 +223,15 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     }
 
     public int getSerializedSize() {
+        int msgsize = getHeaderSerializedSize();
+        for (VoltTable vt : results) {
+            msgsize += vt.getSerializedSize();
+        }
+
+        return msgsize;
+    }
+
+    private int getHeaderSerializedSize() {
         int msgsize = 1 // version
             + 8 // clientHandle
             + 1 // present fields
@@ -239,9 +252,6 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             msgsize += 2; // short array len
             msgsize += m_hashes.length * 4; // array of ints
         }
-        for (VoltTable vt : results) {
-            msgsize += vt.getSerializedSize();
-        }
 
         return msgsize;
     }
@@ -250,6 +260,81 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
      * @return buf to allow call chaining.
      */
     public ByteBuffer flattenToBuffer(ByteBuffer buf) {
+        flattenHeaderToBuffer(buf);
+        for (VoltTable vt : results)
+        {
+            vt.flattenToBuffer(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Serialize this response the same way as {@link #flattenToBuffer(ByteBuffer)} preceded by
+     * {@code lengthPrefix}, but as a series of containers positioned at the end of their data.
+     * Result tables that wrap a shared result buffer are not copied, a new reference to their
+     * data is returned in their place. Everything else is copied into pooled direct buffers.
+     * {@link #getSerializedSize()} must have been called first.
+     */
+    public BBContainer[] flattenToContainers(int lengthPrefix) {
+        // Size of each run of copied bytes, a shared table ends the run before it
+        final int[] runSizes = new int[results.length + 1];
+        int run = 0;
+        runSizes[run] = 4 + getHeaderSerializedSize();
+        for (VoltTable vt : results) {
+            if (vt.hasSharedBuffer()) {
+                runSizes[run] += 4;
+                runSizes[++run] = 0;
+            } else {
+                runSizes[run] += vt.getSerializedSize();
+            }
+        }
+
+        final List<BBContainer> containers = new ArrayList<BBContainer>(2 * run + 1);
+        run = 0;
+        BBContainer cont = DBBPool.allocateDirectAndPool(runSizes[run]);
+        cont.b().putInt(lengthPrefix);
+        flattenHeaderToBuffer(cont.b());
+        for (VoltTable vt : results) {
+            if (vt.hasSharedBuffer()) {
+                final BBContainer shared = vt.retainSharedBuffer();
+                cont.b().putInt(shared.b().position());
+                containers.add(cont);
+                containers.add(shared);
+                // Only the run after the last shared table can be empty
+                cont = runSizes[++run] > 0 ? DBBPool.allocateDirectAndPool(runSizes[run]) : null;
+            } else {
+                vt.flattenToBuffer(cont.b());
+            }
+        }
+        if (cont != null) {
+            containers.add(cont);
+        }
+        return containers.toArray(new BBContainer[containers.size()]);
+    }
+
+    /**
+     * @return true if any result table still wraps a shared result buffer.
+     */
+    public boolean hasSharedBuffers() {
+        for (VoltTable vt : results) {
+            if (vt.hasSharedBuffer()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the references result tables hold to shared result buffers. The response's
+     * tables must not be accessed afterwards. Safe to call more than once.
+     */
+    public void releaseSharedBuffers() {
+        for (VoltTable vt : results) {
+            vt.releaseSharedBuffer();
+        }
+    }
+
+    private void flattenHeaderToBuffer(ByteBuffer buf) {
         assert setProperly;
         buf.put((byte)0); //version
         buf.putLong(clientHandle);
@@ -283,11 +368,6 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             }
         }
         buf.putShort((short) results.length);
-        for (VoltTable vt : results)
-        {
-            vt.flattenToBuffer(buf);
-        }
-        return buf;
     }
 
     @Override
@@ -46,7 +46,7 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
-import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.BlockCompressionPipeline;
 import org.voltdb.utils.PosixAdvise;
 
 import com.google_voltpatches.common.util.concurrent.Callables;
@@ -109,6 +109,15 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     static final ListeningScheduledExecutorService m_syncService = MoreExecutors.listeningDecorator(
             Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Snapshot sync service")));
 
+    /*
+     * Compression and checksumming of snapshot blocks, shared by all open targets. It is created
+     * when the first target opens, so it can be sized to the number of sites on this host, which
+     * is the number of threads producing blocks, and shut down when the last target closes.
+     */
+    private static BlockCompressionPipeline m_sharedCompressionPipeline = null;
+    private static int m_compressionPipelineUsers = 0;
+    private volatile BlockCompressionPipeline m_compressionPipeline = null;
+
     public static final int SNAPSHOT_SYNC_FREQUENCY = Integer.getInteger("SNAPSHOT_SYNC_FREQUENCY", 500);
     public static final int SNAPSHOT_FADVISE_BYTES = Integer.getInteger("SNAPSHOT_FADVISE_BYTES", 1024 * 1024 * 2);
     public static final int SNAPSHOT_RATELIMIT_MEGABYTES;
@@ -133,6 +142,30 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     public static final UnsynchronizedRateLimiter SNAPSHOT_RATELIMITER =
             UnsynchronizedRateLimiter.create(SNAPSHOT_RATELIMIT_MEGABYTES * 1024.0 * 1024.0, 1, TimeUnit.SECONDS);
 
+    private static synchronized BlockCompressionPipeline acquireCompressionPipeline() {
+        if (m_sharedCompressionPipeline == null) {
+            int sitesPerHost = CoreUtils.availableProcessors();
+            final CatalogContext context = VoltDB.instance() == null ? null : VoltDB.instance().getCatalogContext();
+            if (context != null) {
+                sitesPerHost = context.getNodeSettings().getLocalSitesCount();
+            }
+            final int threads = Integer.getInteger("SNAPSHOT_COMPRESSION_THREADS",
+                    Math.max(2, Math.min(sitesPerHost, CoreUtils.availableProcessors())));
+            m_sharedCompressionPipeline = new BlockCompressionPipeline("Snapshot compression", threads);
+            SNAP_LOG.debug("Compressing snapshot blocks with " + threads + " threads");
+        }
+        m_compressionPipelineUsers++;
+        return m_sharedCompressionPipeline;
+    }
+
+    private static synchronized void releaseCompressionPipeline() throws InterruptedException {
+        if (--m_compressionPipelineUsers == 0) {
+            final BlockCompressionPipeline pipeline = m_sharedCompressionPipeline;
+            m_sharedCompressionPipeline = null;
+            pipeline.shutdown();
+        }
+    }
+
     public static void enforceSnapshotRateLimit(int permits) {
         if (USE_SNAPSHOT_RATELIMIT) {
             SNAPSHOT_RATELIMITER.acquire(permits);
@@ -334,6 +367,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             }
         }, SNAPSHOT_SYNC_FREQUENCY, SNAPSHOT_SYNC_FREQUENCY, TimeUnit.MILLISECONDS);
         m_syncTask = syncTask;
+        m_compressionPipeline = acquireCompressionPipeline();
     }
 
     @Override
@@ -374,6 +408,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             m_channel.force(false);
         } finally {
             m_bytesAllowedBeforeSync.release(m_bytesWrittenSinceLastSync.getAndSet(0));
+            if (m_compressionPipeline != null) {
+                m_compressionPipeline = null;
+                releaseCompressionPipeline();
+            }
         }
         m_channel.position(8);
         ByteBuffer completed = ByteBuffer.allocate(1);
@@ -442,10 +480,10 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             /*
              * Leave 12 bytes, it's going to be a 4-byte length prefix, a 4-byte partition id,
              * and a 4-byte CRC32C of just the header bytes, in addition to the compressed payload CRC
-             * that is 16 bytes, but 4 of those are done by CompressionService
+             * that is 16 bytes, but 4 of those are done by the compression pipeline
              */
             cont.b().position(12);
-            compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData, cont);
+            compressionTask = m_compressionPipeline.compressAndCRC32c(tupleData, cont);
         }
         final Future<BBContainer> compressionTaskFinal = compressionTask;
 
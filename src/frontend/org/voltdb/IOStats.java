@@ -22,8 +22,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
-import org.voltdb.VoltTable.ColumnInfo;
+import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.utils.Pair;
+import org.voltdb.VoltTable.ColumnInfo;
 
 public class IOStats extends StatsSource {
     private Map<Long, Pair<String, long[]>> m_ioStats =
@@ -69,6 +70,10 @@ public class IOStats extends StatsSource {
         columns.add(new ColumnInfo("MESSAGES_READ", VoltType.BIGINT));
         columns.add(new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT));
+        // The network thread serving the connection and its utilization in percent,
+        // averaged over all threads for the GLOBAL row
+        columns.add(new ColumnInfo("NETWORK_THREAD_ID", VoltType.BIGINT));
+        columns.add(new ColumnInfo("NETWORK_THREAD_UTILIZATION", VoltType.INTEGER));
 
     }
 
@@ -83,6 +88,16 @@ public class IOStats extends StatsSource {
         rowValues[columnNameToIndex.get("MESSAGES_READ")] = counters[1];
         rowValues[columnNameToIndex.get("BYTES_WRITTEN")] = counters[2];
         rowValues[columnNameToIndex.get("MESSAGES_WRITTEN")] = counters[3];
+        // Connections between cluster nodes have their own threads and don't report these
+        if (counters.length > VoltNetworkPool.IOSTATS_THREAD_UTILIZATION) {
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_ID")] = counters[VoltNetworkPool.IOSTATS_THREAD_ID];
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_UTILIZATION")] =
+                    (int)counters[VoltNetworkPool.IOSTATS_THREAD_UTILIZATION];
+        }
+        else {
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_ID")] = -1L;
+            rowValues[columnNameToIndex.get("NETWORK_THREAD_UTILIZATION")] = -1;
+        }
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -65,6 +65,8 @@ import org.voltdb.common.Permission;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Iv2Trace;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.SiteTaskerQueue;
+import org.voltdb.iv2.SpScheduler;
 import org.voltdb.jni.ExecutionEngine;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.messaging.MigratePartitionLeaderMessage;
@@ -506,6 +508,14 @@ public final class InvocationDispatcher {
             // unable to hash to a site, return an error
             return getMispartitionedErrorResponse(task, catProc, e);
         }
+        // Shed new work for partitions whose site task queue on this host is saturated,
+        // the admin port is exempt so operators can still get in.
+        if (!handler.isAdmin()) {
+            ClientResponseImpl overloaded = checkPartitionsSaturated(partitions, task);
+            if (overloaded != null) {
+                return overloaded;
+            }
+        }
         boolean success = createTransaction(handler.connectionId(),
                         task,
                         catProc.getReadonly(),
@@ -529,6 +539,18 @@ public final class InvocationDispatcher {
         return null;
     }
 
+    private final static ClientResponseImpl checkPartitionsSaturated(int[] partitions, StoredProcedureInvocation task) {
+        for (int partition : partitions) {
+            if (SiteTaskerQueue.isPartitionSaturated(partition)) {
+                return serverUnavailableResponse(
+                        "The task queue for " + (partition == MpInitiator.MP_INIT_PID ? "multi-partition work" : "partition " + partition) +
+                        " is full on this server. The work was never started, it should be safe to resend it once the load drops.",
+                        task.clientHandle);
+            }
+        }
+        return null;
+    }
+
     private final boolean shouldLoadSchemaFromSnapshot() {
         CatalogMap<Table> tables = m_catalogContext.get().database.getTables();
         if(tables.size() == 0) return true;
@@ -1316,11 +1338,19 @@ public final class InvocationDispatcher {
         Long initiatorHSId = null;
         boolean isShortCircuitRead = false;
         /*
-         * Send the read to the partition leader only
+         * Send SP work to the partition leader, except reads that a readable local replica can serve
          * @MigratePartitionLeader always goes to partition leader
          */
         if (isSinglePartition && !isEveryPartition) {
             initiatorHSId = m_cartographer.getHSIdForSinglePartitionMaster(partitions[0]);
+            if (isReadOnly && !isForReplay && SpScheduler.REPLICA_READS) {
+                Long replica = getReadableLocalReplica(partitions[0], initiatorHSId);
+                if (replica != null) {
+                    initiatorHSId = replica;
+                    // Completes out of order with the reads sent to the leader
+                    isShortCircuitRead = true;
+                }
+            }
         } else {
             // Multi-part transactions go to the multi-part coordinator
             initiatorHSId = m_cartographer.getHSIdForMultiPartitionInitiator();
@@ -1360,11 +1390,32 @@ public final class InvocationDispatcher {
                                                       "dest", CoreUtils.hsIdToString(finalInitiatorHSId)));
         }
 
+        if (isSinglePartition && !isEveryPartition && TransactionTracer.isSampled(handle)) {
+            final int hostId = CoreUtils.getHostIdFromHSId(m_siteId);
+            TransactionTracer.record(handle, hostId, TransactionTracer.Event.RECEIVED, nowNanos, invocation.getProcName());
+            TransactionTracer.record(handle, hostId, TransactionTracer.Event.ROUTED, System.nanoTime(), null);
+        }
+
         Iv2Trace.logCreateTransaction(workRequest);
         m_mailbox.send(initiatorHSId, workRequest);
         return true;
     }
 
+    /**
+     * Pick the replica of the partition on this host to serve a single partition read,
+     * which keeps the read off the network and off the partition leader. It is only used
+     * while it keeps up with the leader and its queue isn't saturated.
+     *
+     * @return the replica HSId, or null if the read should go to the leader
+     */
+    private Long getReadableLocalReplica(int partition, Long leaderHSId) {
+        Long replica = m_localReplicas.get().get(partition);
+        if (replica == null || replica.equals(leaderHSId) || !SpScheduler.isReplicaReadable(partition)) {
+            return null;
+        }
+        return replica;
+    }
+
     final static int[] getPartitionsForProcedure(Procedure procedure, StoredProcedureInvocation task) {
         final CatalogContext.ProcedurePartitionInfo ppi =
                 (CatalogContext.ProcedurePartitionInfo) procedure.getAttachment();
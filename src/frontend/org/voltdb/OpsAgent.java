@@ -448,6 +448,13 @@ public abstract class OpsAgent
         m_mailbox.send(returnAddress, bpm);
     }
 
+    /**
+     * Run work periodically on the agent's thread, serialized with the handling of requests.
+     */
+    protected void scheduleWithFixedDelay(Runnable work, long delay, TimeUnit unit) {
+        m_es.scheduleWithFixedDelay(work, delay, delay, unit);
+    }
+
     public void shutdown() throws InterruptedException {
         m_es.shutdown();
         m_es.awaitTermination(1, TimeUnit.DAYS);
@@ -37,6 +37,7 @@ import java.util.concurrent.ExecutionException;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
 import org.voltdb.StatementStats.SingleCallStatsToken;
 import org.voltdb.VoltProcedure.VoltAbortException;
 import org.voltdb.catalog.PlanFragment;
@@ -68,6 +69,7 @@ import org.voltdb.planner.ActivePlanRepository;
 import org.voltdb.sysprocs.AdHocBase;
 import org.voltdb.sysprocs.AdHocNTBase;
 import org.voltdb.sysprocs.AdHoc_RO_SP;
+import org.voltdb.types.QueryType;
 import org.voltdb.types.TimestampType;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.Encoder;
@@ -157,6 +159,15 @@ public class ProcedureRunner {
     /** boolean flag to mark whether the previous batch execution has EE exception or not.*/
     private long m_spBigBatchBeginToken;
 
+    // number of batches sent to the EE by the current call, including sub-batches of big batches
+    private int m_eeBatchCount;
+
+    // Opt-in: read-only single partition results of at least this many bytes are handed to the
+    // client connection in the EE result buffer they were serialized into instead of being copied
+    // to the heap. Every response in flight holds on to a whole result buffer, so keep it large.
+    private static final boolean ZERO_COPY_RESULTS = Boolean.getBoolean("ZERO_COPY_RESULTS");
+    private static final int ZERO_COPY_RESULTS_THRESHOLD = Integer.getInteger("ZERO_COPY_RESULTS_THRESHOLD", 512 * 1024);
+
     // Used to get around the "abstract" for StmtProcedures.
     // Path of least resistance?
     static class StmtProcedure extends VoltProcedure {
@@ -326,6 +337,7 @@ public class ProcedureRunner {
 
         // reset the beginning big batch undo token
         m_spBigBatchBeginToken = -1;
+        m_eeBatchCount = 0;
 
         // set procedure name in the site/ee
         m_site.setupProcedure(m_procedureName);
@@ -383,6 +395,11 @@ public class ProcedureRunner {
                     try {
                         Object rawResult = m_procMethod.invoke(m_procedure, paramList);
 
+                        if (rawResult instanceof VoltTable) {
+                            attachSharedResultBuffer(new VoltTable[] { (VoltTable) rawResult });
+                        } else if (rawResult instanceof VoltTable[]) {
+                            attachSharedResultBuffer((VoltTable[]) rawResult);
+                        }
                         results = ParameterConverter.getResultsFromRawResults(m_procedureName, rawResult);
                     } catch (IllegalAccessException e) {
                         // If reflection fails, invoke the same error handling that other exceptions do
@@ -443,6 +460,7 @@ public class ProcedureRunner {
                     if (getNonVoltDBBackendIfExists() == null) {
                         m_batch.addAll(m_sqlStmts);
                         results = voltExecuteSQL(true);
+                        attachSharedResultBuffer(results);
                         results = convertTablesToHeapBuffers(results);
                     }
                 } catch (SerializableException ex) {
@@ -1043,6 +1061,16 @@ public class ProcedureRunner {
 
         stmt.isReadOnly = catStmt.getReadonly();
         stmt.isReplicatedTableDML = catStmt.getReplicatedtabledml();
+        // Deterministic statements that read the transaction time still differ from one call to the next
+        stmt.isResultCacheable = stmt.isReadOnly &&
+                catStmt.getIscontentdeterministic() &&
+                catStmt.getIsorderdeterministic() &&
+                catStmt.getFunctiondependees().isEmpty() &&
+                !catStmt.getUsescurrenttime();
+        final ResultCache cache = m_site == null ? null : m_site.getResultCache();
+        if (cache != null) {
+            registerWithResultCache(cache, stmt, catStmt);
+        }
 
         stmt.site = m_site;
 
@@ -1064,6 +1092,37 @@ public class ProcedureRunner {
         }
     }
 
+    /*
+     * Tell the partition's result cache which tables the statement's fragments read and modify.
+     * Statements without table usage in the catalog, such as those of default procedures, and writes
+     * other than plain DML are left unregistered. Their results aren't cached and the cache drops
+     * everything when they write.
+     */
+    private static void registerWithResultCache(ResultCache cache, SQLStmt stmt, Statement catStmt) {
+        final long fragmentIds[] = stmt.collector == null ?
+                new long[] { stmt.aggregator.id } :
+                new long[] { stmt.aggregator.id, stmt.collector.id };
+        if (catStmt.getReadonly()) {
+            if (!catStmt.getTablesread().isEmpty()) {
+                cache.addStatement(fragmentIds, catStmt.getTablesread(), "");
+            }
+            return;
+        }
+        if (catStmt.getTablesupdated().isEmpty()) {
+            return;
+        }
+        switch (QueryType.get(catStmt.getQuerytype())) {
+        case INSERT:
+        case UPDATE:
+        case DELETE:
+        case UPSERT:
+            cache.addStatement(fragmentIds, "", catStmt.getTablesupdated());
+            break;
+        default:
+            break;
+        }
+    }
+
     // Returns a list that contains the names of the statements which are
     // defined in the stored procedure.
     protected ArrayList<String> reflect() {
@@ -1336,6 +1395,42 @@ public class ProcedureRunner {
        return response;
     }
 
+    /**
+     * When zero-copy results are enabled, detach the EE result buffer and let the result tables
+     * that live in it keep a reference to it, so that {@link VoltTable#convertToHeapBuffer()}
+     * leaves them in place and the client interface can write them out without a copy.
+     * Only done when every EE-backed table was produced by the single batch this call ran, and
+     * the response is consumed by the client interface on this host, which releases the buffer.
+     */
+    private void attachSharedResultBuffer(VoltTable[] results) {
+        if (!ZERO_COPY_RESULTS || !m_isSinglePartition || !m_isReadOnly || m_isSysProc ||
+                m_batchIndex != 0 || m_eeBatchCount != 1 || m_txnState == null ||
+                CoreUtils.getHostIdFromHSId(m_txnState.getNotice().getInitiatorHSId()) != m_site.getCorrespondingHostId()) {
+            return;
+        }
+        int sharedBytes = 0;
+        for (VoltTable table : results) {
+            if (table != null && table.m_buffer.isDirect()) {
+                sharedBytes += table.getSerializedSize();
+            }
+        }
+        if (sharedBytes < ZERO_COPY_RESULTS_THRESHOLD) {
+            return;
+        }
+        final ExecutionEngine ee = getExecutionEngine();
+        final DBBPool.RefCountedContainer shared = ee == null ? null : ee.detachResultBuffer(m_batchIndex);
+        if (shared == null) {
+            return;
+        }
+        for (VoltTable table : results) {
+            if (table != null && table.m_buffer.isDirect()) {
+                table.attachSharedBuffer(shared);
+            }
+        }
+        // The tables hold their own references now
+        shared.discard();
+    }
+
     final private VoltTable[] convertTablesToHeapBuffers(VoltTable[] results) {
         for (VoltTable table : results) {
             // Make sure this table does not use an ee cache buffer
@@ -1585,8 +1680,56 @@ public class ProcedureRunner {
         return state.m_results;
     }
 
-    // Batch up pre-planned fragments, but handle ad hoc independently.
+    /*
+     * Serve the statements of a read-only batch that are in the partition's result cache,
+     * and only send the rest to the EE. Their results are cached for the next call.
+     */
     private VoltTable[] fastPath(List<QueuedSQL> batch, final boolean finalTask) {
+        final ResultCache cache = (m_isReadOnly && !m_isSysProc) ? m_site.getResultCache() : null;
+        if (cache == null) {
+            return executeFastPath(batch, finalTask);
+        }
+
+        final int batchSize = batch.size();
+        final VoltTable[] results = new VoltTable[batchSize];
+        final ResultCache.Key[] keys = new ResultCache.Key[batchSize];
+        List<QueuedSQL> misses = null;
+        for (int i = 0; i < batchSize; i++) {
+            final QueuedSQL qs = batch.get(i);
+            if (qs.stmt.isResultCacheable) {
+                keys[i] = cache.keyFor(qs.stmt.aggregator.id, qs.params);
+            }
+            if (keys[i] != null) {
+                results[i] = cache.get(keys[i]);
+            }
+            if (results[i] == null) {
+                if (misses == null) {
+                    misses = new ArrayList<>(batchSize - i);
+                }
+                misses.add(qs);
+            } else {
+                m_perCallStats.recordStatementStats(qs.stmt.getStmtName(), false, false, 0, results[i], qs.params);
+            }
+        }
+        if (misses == null) {
+            return results;
+        }
+
+        final VoltTable[] executed = executeFastPath(misses, finalTask);
+        int j = 0;
+        for (int i = 0; i < batchSize; i++) {
+            if (results[i] == null) {
+                results[i] = executed[j++];
+                if (keys[i] != null) {
+                    cache.put(keys[i], results[i]);
+                }
+            }
+        }
+        return results;
+    }
+
+    // Batch up pre-planned fragments, but handle ad hoc independently.
+    private VoltTable[] executeFastPath(List<QueuedSQL> batch, final boolean finalTask) {
         final int batchSize = batch.size();
         Object[] params = new Object[batchSize];
         long[] fragmentIds = new long[batchSize];
@@ -1611,6 +1754,7 @@ public class ProcedureRunner {
         // Before executing the fragments, tell the EE if this batch should be
         // timed.
         getExecutionEngine().setPerFragmentTimingEnabled(m_perCallStats.samplingStmts());
+        m_eeBatchCount++;
         try {
             FastDeserializer fragResult = m_site.executePlanFragments(batchSize, fragmentIds, null, params,
                     m_determinismHash, sqlTexts, isWriteFrag, sqlCRCs, m_txnState.txnId, m_txnState.m_spHandle,
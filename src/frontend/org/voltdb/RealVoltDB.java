@@ -465,6 +465,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
     String m_licenseInformation = "";
 
     private LatencyStats m_latencyStats;
+    private TransactionTraceStats m_transactionTraceStats;
     private LatencyHistogramStats m_latencyCompressedStats;
     private LatencyUncompressedHistogramStats m_latencyHistogramStats;
 
@@ -1366,6 +1367,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             m_latencyHistogramStats = new LatencyUncompressedHistogramStats(m_myHostId);
             getStatsAgent().registerStatsSource(StatsSelector.LATENCY_HISTOGRAM,
                     0, m_latencyHistogramStats);
+            m_transactionTraceStats = new TransactionTraceStats();
+            getStatsAgent().registerStatsSource(StatsSelector.LATENCY_BREAKDOWN, 0, m_transactionTraceStats);
 
 
             BalancePartitionsStatistics rebalanceStats = new BalancePartitionsStatistics();
@@ -3665,6 +3668,10 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 m_latencyStats = null;
                 m_latencyCompressedStats = null;
                 m_latencyHistogramStats = null;
+                if (m_transactionTraceStats != null) {
+                    m_transactionTraceStats.shutdown();
+                    m_transactionTraceStats = null;
+                }
 
                 AdHocCompilerCache.clearHashCache();
                 org.voltdb.iv2.InitiatorMailbox.m_allInitiatorMailboxes.clear();
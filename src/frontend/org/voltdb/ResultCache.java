@@ -0,0 +1,413 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltcore.utils.LongObjectHashMap;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.MaterializedViewHandlerInfo;
+import org.voltdb.catalog.Table;
+import org.voltdb.catalog.TableRef;
+
+/**
+ * Per partition cache of the results of deterministic read-only statements run by
+ * single partition read-only procedures, keyed by plan fragment and the serialized
+ * parameter values. Enabled with the resultcache element of the deployment system settings.
+ *
+ * The cache is only used from the site thread. Every table has a modification count that the
+ * site bumps before the table or a view on it can change, and an entry is only served while the
+ * tables it read still have the counts they had when it was cached. Fragments of catalog statements
+ * are registered with the tables they read or modify. A write fragment the cache doesn't know about,
+ * rollback, binary log application, catalog and hashinator updates drop every entry.
+ * Entries are evicted in LRU order.
+ */
+public class ResultCache extends SiteStatsSource {
+
+    /**
+     * A plan fragment and a copy of the serialized parameters it was run with,
+     * so later changes to the caller's parameter arrays can't alter the key.
+     */
+    public static final class Key {
+        private final long m_fragmentId;
+        private final byte m_params[];
+        private final int m_hash;
+
+        private Key(long fragmentId, byte params[]) {
+            m_fragmentId = fragmentId;
+            m_params = params;
+            m_hash = 31 * Long.hashCode(fragmentId) + Arrays.hashCode(params);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return m_fragmentId == other.m_fragmentId && Arrays.equals(m_params, other.m_params);
+        }
+    }
+
+    private static final class ModCount {
+        long m_count;
+    }
+
+    /**
+     * A cached result and the modification counts of the tables it was read from.
+     */
+    private static final class Entry {
+        private final ByteBuffer m_result;
+        private final ModCount m_tables[];
+        private final long m_counts[];
+
+        private Entry(ByteBuffer result, ModCount tables[]) {
+            m_result = result;
+            m_tables = tables;
+            m_counts = new long[tables.length];
+            for (int i = 0; i < tables.length; i++) {
+                m_counts[i] = tables[i].m_count;
+            }
+        }
+
+        private boolean isCurrent() {
+            for (int i = 0; i < m_tables.length; i++) {
+                if (m_tables[i].m_count != m_counts[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The tables a registered fragment reads and the tables it may modify.
+     */
+    private static final class Fragment {
+        private final ModCount m_reads[];
+        private final String m_writes[];
+
+        private Fragment(ModCount reads[], String writes[]) {
+            m_reads = reads;
+            m_writes = writes;
+        }
+    }
+
+    private static final String NO_TABLES[] = new String[0];
+
+    private final int m_partitionId;
+    private final int m_maxEntries;
+    private final int m_maxResultBytes;
+    private final int m_maxParamBytes;
+    private final LinkedHashMap<Key, Entry> m_entries;
+
+    private final HashMap<String, ModCount> m_modCounts = new HashMap<>();
+    private final LongObjectHashMap<Fragment> m_fragments = new LongObjectHashMap<>();
+    // Views maintained from each table, from the current catalog
+    private Map<String, List<String>> m_views = new HashMap<>();
+    private String m_tableNamesById[] = NO_TABLES;
+
+    private long m_hits = 0;
+    private long m_misses = 0;
+    private long m_evictions = 0;
+    private long m_invalidations = 0;
+    private long m_lastHits = 0;
+    private long m_lastMisses = 0;
+    private long m_lastEvictions = 0;
+    private long m_lastInvalidations = 0;
+
+    private boolean m_interval;
+
+    /**
+     * @param maxEntries Number of results kept for the partition
+     * @param maxResultBytes Results with a larger serialized size are not cached
+     * @param maxParamBytes Statements called with larger serialized parameters are not cached
+     */
+    public ResultCache(long siteId, int partitionId, int maxEntries, int maxResultBytes, int maxParamBytes) {
+        super(siteId, false);
+        m_partitionId = partitionId;
+        m_maxEntries = maxEntries;
+        m_maxResultBytes = maxResultBytes;
+        m_maxParamBytes = maxParamBytes;
+        m_entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > m_maxEntries) {
+                    m_evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return A key for the fragment and parameters or null if the parameters are too
+     * large to be worth caching by
+     */
+    public Key keyFor(long fragmentId, ParameterSet params) {
+        final int size = params.getSerializedSize();
+        if (size > m_maxParamBytes) {
+            return null;
+        }
+        final ByteBuffer buf = ByteBuffer.allocate(size);
+        try {
+            params.flattenToBuffer(buf);
+        } catch (IOException e) {
+            return null;
+        }
+        return new Key(fragmentId, buf.array());
+    }
+
+    /**
+     * @return A new read-only table backed by the cached result or null on a miss
+     */
+    public VoltTable get(Key key) {
+        final Entry cached = m_entries.get(key);
+        if (cached == null) {
+            m_misses++;
+            return null;
+        }
+        if (!cached.isCurrent()) {
+            m_entries.remove(key);
+            m_invalidations++;
+            m_misses++;
+            return null;
+        }
+        m_hits++;
+        return PrivateVoltTableFactory.createVoltTableFromBuffer(cached.m_result.duplicate(), true);
+    }
+
+    /**
+     * Cache a copy of the result. The table itself is left alone and may still be backed by an EE buffer.
+     * Results of fragments that weren't registered are not cached.
+     */
+    public void put(Key key, VoltTable result) {
+        final Fragment fragment = m_fragments.get(key.m_fragmentId);
+        if (fragment == null) {
+            return;
+        }
+        final ByteBuffer data = PrivateVoltTableFactory.getTableDataReference(result);
+        if (data.remaining() > m_maxResultBytes) {
+            return;
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data);
+        copy.flip();
+        m_entries.put(key, new Entry(copy, fragment.m_reads));
+    }
+
+    /**
+     * Register the fragments of a catalog statement.
+     * @param tablesRead Comma separated names of the tables the statement reads
+     * @param tablesUpdated Comma separated names of the tables the statement may modify
+     */
+    public void addStatement(long fragmentIds[], String tablesRead, String tablesUpdated) {
+        final String reads[] = splitNames(tablesRead);
+        final ModCount readCounts[] = new ModCount[reads.length];
+        for (int i = 0; i < reads.length; i++) {
+            readCounts[i] = modCount(reads[i]);
+        }
+        final Fragment fragment = new Fragment(readCounts, splitNames(tablesUpdated));
+        for (long fragmentId : fragmentIds) {
+            m_fragments.put(fragmentId, fragment);
+        }
+    }
+
+    /**
+     * Called before fragments that may write run. Bumps the tables they modify, and drops every
+     * entry if one of them wasn't registered, like the fragments of ad hoc and system procedure writes.
+     */
+    public void fragmentsWillRun(int count, long fragmentIds[]) {
+        for (int i = 0; i < count; i++) {
+            final Fragment fragment = m_fragments.get(fragmentIds[i]);
+            if (fragment == null) {
+                invalidate();
+                return;
+            }
+            for (String table : fragment.m_writes) {
+                tableWillChange(table);
+            }
+        }
+    }
+
+    /**
+     * Called before the table with the given catalog relative index changes outside of a fragment.
+     */
+    public void tableWillChange(int tableId) {
+        if (tableId < m_tableNamesById.length && m_tableNamesById[tableId] != null) {
+            tableWillChange(m_tableNamesById[tableId]);
+        } else {
+            invalidate();
+        }
+    }
+
+    private void tableWillChange(String table) {
+        final ModCount modCount = m_modCounts.get(table);
+        if (modCount != null) {
+            modCount.m_count++;
+        }
+        final List<String> views = m_views.get(table);
+        if (views != null) {
+            for (String view : views) {
+                tableWillChange(view);
+            }
+        }
+    }
+
+    /**
+     * Drop every cached result, called before a change to the partition's data that can't be
+     * attributed to tables.
+     */
+    public void invalidate() {
+        if (!m_entries.isEmpty()) {
+            m_invalidations += m_entries.size();
+            m_entries.clear();
+        }
+    }
+
+    /**
+     * Pick up the tables and views of a new catalog and drop every cached result.
+     */
+    public void updateCatalog(Database db) {
+        invalidate();
+        final Map<String, List<String>> views = new HashMap<>();
+        int maxTableId = -1;
+        for (Table table : db.getTables()) {
+            maxTableId = Math.max(maxTableId, table.getRelativeIndex());
+            if (table.getMaterializer() != null) {
+                addView(views, table.getMaterializer().getTypeName(), table.getTypeName());
+            }
+            for (MaterializedViewHandlerInfo handler : table.getMvhandlerinfo()) {
+                for (TableRef source : handler.getSourcetables()) {
+                    addView(views, source.getTable().getTypeName(), table.getTypeName());
+                }
+            }
+        }
+        final String names[] = new String[maxTableId + 1];
+        for (Table table : db.getTables()) {
+            names[table.getRelativeIndex()] = table.getTypeName();
+        }
+        m_views = views;
+        m_tableNamesById = names;
+    }
+
+    private static void addView(Map<String, List<String>> views, String source, String view) {
+        List<String> list = views.get(source);
+        if (list == null) {
+            list = new ArrayList<>();
+            views.put(source, list);
+        }
+        if (!list.contains(view)) {
+            list.add(view);
+        }
+    }
+
+    private ModCount modCount(String table) {
+        ModCount modCount = m_modCounts.get(table);
+        if (modCount == null) {
+            modCount = new ModCount();
+            m_modCounts.put(table, modCount);
+        }
+        return modCount;
+    }
+
+    private static String[] splitNames(String names) {
+        return names.isEmpty() ? NO_TABLES : names.split(",");
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo(VoltSystemProcedure.CNAME_PARTITION_ID, VoltSystemProcedure.CTYPE_ID));
+        columns.add(new ColumnInfo("ENTRIES", VoltType.INTEGER));
+        columns.add(new ColumnInfo("HITS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MISSES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("INVALIDATIONS", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final long hits = m_hits;
+        final long misses = m_misses;
+        final long evictions = m_evictions;
+        final long invalidations = m_invalidations;
+        rowValues[columnNameToIndex.get(VoltSystemProcedure.CNAME_PARTITION_ID)] = m_partitionId;
+        rowValues[columnNameToIndex.get("ENTRIES")] = m_entries.size();
+        if (m_interval) {
+            rowValues[columnNameToIndex.get("HITS")] = hits - m_lastHits;
+            rowValues[columnNameToIndex.get("MISSES")] = misses - m_lastMisses;
+            rowValues[columnNameToIndex.get("EVICTIONS")] = evictions - m_lastEvictions;
+            rowValues[columnNameToIndex.get("INVALIDATIONS")] = invalidations - m_lastInvalidations;
+            m_lastHits = hits;
+            m_lastMisses = misses;
+            m_lastEvictions = evictions;
+            m_lastInvalidations = invalidations;
+        } else {
+            rowValues[columnNameToIndex.get("HITS")] = hits;
+            rowValues[columnNameToIndex.get("MISSES")] = misses;
+            rowValues[columnNameToIndex.get("EVICTIONS")] = evictions;
+            rowValues[columnNameToIndex.get("INVALIDATIONS")] = invalidations;
+        }
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(final boolean interval) {
+        m_interval = interval;
+        return new Iterator<Object>() {
+            boolean returnRow = true;
+            @Override
+            public boolean hasNext() {
+                return returnRow;
+            }
+
+            @Override
+            public Object next() {
+                if (returnRow) {
+                    returnRow = false;
+                    return new Object();
+                } else {
+                    return null;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
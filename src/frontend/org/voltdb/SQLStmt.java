@@ -61,6 +61,8 @@ public class SQLStmt {
 
     boolean isReplicatedTableDML;
     boolean isReadOnly;
+    // deterministic read with no time or UDF dependence, the result cache may hold its results
+    boolean isResultCacheable;
 
     boolean inCatalog;
 
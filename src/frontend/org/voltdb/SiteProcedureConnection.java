@@ -44,6 +44,12 @@ public interface SiteProcedureConnection {
 
     public long getLatestUndoToken();
 
+    /**
+     * Get the cache of read-only statement results for the site's partition.
+     * Returns null if the cache is not enabled.
+     */
+    public ResultCache getResultCache();
+
     /**
      * Get the non-VoltDB backend, if any, such as an HSQL or PostgreSQL
      * backend used for comparison testing. Returns null if we're not
@@ -16,10 +16,13 @@
  */
 package org.voltdb;
 
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.cliffc_voltpatches.high_scale_lib.NonBlockingHashMap;
 import org.cliffc_voltpatches.high_scale_lib.NonBlockingHashSet;
@@ -42,9 +45,50 @@ import com.google_voltpatches.common.collect.ImmutableMap;
  */
 public class StatsAgent extends OpsAgent
 {
+    /**
+     * How often the snapshots of the selectors in SNAPSHOT_SELECTORS are republished. Snapshots
+     * are up to this old when read, so they are off by default and the selectors are collected
+     * from the sources on every request.
+     */
+    static final int SNAPSHOT_INTERVAL_MS = Integer.getInteger("STATS_SNAPSHOT_INTERVAL_MS", 0);
+    // Stop publishing a selector that hasn't been requested for this long
+    private static final long SNAPSHOT_IDLE_MS = Math.max(TimeUnit.MINUTES.toMillis(1), 10L * SNAPSHOT_INTERVAL_MS);
+
+    /*
+     * Selectors backed by per site sources that are updated by the site threads. Polling them
+     * contends with transaction execution, so non-interval requests are served from a snapshot
+     * that is republished on the agent thread at a fixed rate, no matter how often they are polled.
+     * Interval requests still go to the sources, since each one moves their interval baselines.
+     * TABLE and INDEX are already cached by the sites on each tick and are included so that a
+     * MANAGEMENT request is served entirely from snapshots.
+     */
+    private static final EnumSet<StatsSelector> SNAPSHOT_SELECTORS = EnumSet.of(
+            StatsSelector.PROCEDURE,
+            StatsSelector.TABLE,
+            StatsSelector.INDEX,
+            StatsSelector.MEMORY,
+            StatsSelector.STARVATION,
+            StatsSelector.RESULTCACHE);
+
+    /**
+     * Latest snapshot of a selector. The publisher builds a new table and swaps it in, so a
+     * published table is never modified and readers only take a view of its buffer.
+     */
+    private static final class StatsSnapshot {
+        final AtomicReference<VoltTable> m_table = new AtomicReference<VoltTable>();
+        volatile long m_lastRequestTime;
+
+        StatsSnapshot(long now) {
+            m_lastRequestTime = now;
+        }
+    }
+
     private final NonBlockingHashMap<StatsSelector, NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>> m_registeredStatsSources =
             new NonBlockingHashMap<StatsSelector, NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>>();
 
+    private final NonBlockingHashMap<StatsSelector, StatsSnapshot> m_snapshots =
+            new NonBlockingHashMap<StatsSelector, StatsSnapshot>();
+
     public StatsAgent()
     {
         super("StatsAgent");
@@ -52,6 +96,18 @@ public class StatsAgent extends OpsAgent
         for (int ii = 0; ii < selectors.length; ii++) {
             m_registeredStatsSources.put(selectors[ii], new NonBlockingHashMap<Long,NonBlockingHashSet<StatsSource>>());
         }
+        if (SNAPSHOT_INTERVAL_MS > 0) {
+            scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        publishSnapshots();
+                    } catch (Exception e) {
+                        hostLog.warn("Failed to publish statistics snapshots", e);
+                    }
+                }
+            }, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -312,6 +368,8 @@ public class StatsAgent extends OpsAgent
         m_procedureInfo = getProcedureInformationfoSupplier();
         m_registeredStatsSources.put(StatsSelector.PROCEDURE,
                 new NonBlockingHashMap<Long, NonBlockingHashSet<StatsSource>>());
+        // Don't serve procedures from the old catalog
+        m_snapshots.remove(StatsSelector.PROCEDURE);
     }
 
     @Override
@@ -564,6 +622,12 @@ public class StatsAgent extends OpsAgent
         case COMMANDLOG:
             stats = collectStats(StatsSelector.COMMANDLOG, false);
             break;
+        case RESULTCACHE:
+            stats = collectStats(StatsSelector.RESULTCACHE, interval);
+            break;
+        case LATENCY_BREAKDOWN:
+            stats = collectStats(StatsSelector.LATENCY_BREAKDOWN, interval);
+            break;
         case IMPORTER:
         case IMPORT:
             stats = collectStats(StatsSelector.IMPORTER, interval);
@@ -672,7 +736,12 @@ public class StatsAgent extends OpsAgent
         Long now = System.currentTimeMillis();
         VoltTable[] stats = null;
 
-        VoltTable statsAggr = getStatsAggregate(selector, interval, now);
+        VoltTable statsAggr;
+        if (!interval && SNAPSHOT_INTERVAL_MS > 0 && SNAPSHOT_SELECTORS.contains(selector)) {
+            statsAggr = getStatsSnapshot(selector, now);
+        } else {
+            statsAggr = getStatsAggregate(selector, interval, now);
+        }
         if (statsAggr != null) {
             stats = new VoltTable[1];
             stats[0] = statsAggr;
@@ -680,6 +749,55 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    /**
+     * Get the latest published non-interval statistics for the selector. The first request
+     * for a selector collects them from the sources and subscribes it to the publisher.
+     */
+    private VoltTable getStatsSnapshot(StatsSelector selector, Long now)
+    {
+        StatsSnapshot snapshot = m_snapshots.get(selector);
+        if (snapshot == null) {
+            snapshot = new StatsSnapshot(now);
+            StatsSnapshot existing = m_snapshots.putIfAbsent(selector, snapshot);
+            if (existing != null) {
+                snapshot = existing;
+            }
+        }
+        snapshot.m_lastRequestTime = now;
+
+        VoltTable table = snapshot.m_table.get();
+        if (table == null) {
+            table = getStatsAggregate(selector, false, now);
+            if (table == null) {
+                return null;
+            }
+            snapshot.m_table.compareAndSet(null, table);
+        }
+        return PrivateVoltTableFactory.createVoltTableFromBuffer(table.getBuffer(), true);
+    }
+
+    /**
+     * Republish the snapshots of the selectors that have been requested recently.
+     * Runs on the agent thread.
+     */
+    private void publishSnapshots()
+    {
+        final long now = System.currentTimeMillis();
+        Iterator<Entry<StatsSelector, StatsSnapshot>> iter = m_snapshots.entrySet().iterator();
+        while (iter.hasNext()) {
+            Entry<StatsSelector, StatsSnapshot> entry = iter.next();
+            StatsSnapshot snapshot = entry.getValue();
+            if (now - snapshot.m_lastRequestTime > SNAPSHOT_IDLE_MS) {
+                iter.remove();
+                continue;
+            }
+            VoltTable table = getStatsAggregate(entry.getKey(), false, now);
+            if (table != null) {
+                snapshot.m_table.set(table);
+            }
+        }
+    }
+
     public void registerStatsSource(StatsSelector selector, long siteId, StatsSource source) {
         assert selector != null;
         assert source != null;
@@ -752,26 +870,23 @@ public class StatsAgent extends OpsAgent
             return null;
         }
 
-        // Just need a random site's list to do some things
-        NonBlockingHashSet<StatsSource> sSources = null;
-        try {
-            sSources = siteIdToStatsSources.values().iterator().next();
-        } catch (NoSuchElementException e) {
-            // entries of this site id to sources set map may be removed in another thread
-            sSources = null;
-        }
-
-        //There is a window registering the first source where the empty set is visible, don't panic it's coming
-        while (sSources == null || sSources.isEmpty()) {
-            Thread.yield();
-            // retrieve the latest StatsSource set since a new set may be registered in place of an old empty set
+        /*
+         * Just need a random source to do some things. There is a window registering the first
+         * source where an empty set is visible, and sets may be removed by other threads, so
+         * take the first source that is there rather than waiting for one.
+         */
+        StatsSource firstSource = null;
+        for (NonBlockingHashSet<StatsSource> sSources : siteIdToStatsSources.values()) {
             try {
-                sSources = siteIdToStatsSources.values().iterator().next();
+                firstSource = sSources.iterator().next();
+                break;
             } catch (NoSuchElementException e) {
-                // entries of this site id to sources set map may be removed in another thread
-                sSources = null;
+                // elements of this sources set may be removed in another thread
             }
         }
+        if (firstSource == null) {
+            return null;
+        }
 
         /*
          * Some sources like TableStats use VoltTable to keep track of
@@ -779,13 +894,6 @@ public class StatsAgent extends OpsAgent
          * case.
          */
         VoltTable.ColumnInfo columns[] = null;
-        StatsSource firstSource = null;
-        try {
-            firstSource = sSources.iterator().next();
-        } catch (NoSuchElementException e) {
-            // elements of this sources set may be removed in another thread
-            return null;
-        }
         if (!firstSource.isEEStats()) {
             columns = firstSource.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]);
         } else {
@@ -803,11 +911,10 @@ public class StatsAgent extends OpsAgent
         final VoltTable resultTable = new VoltTable(columns);
 
         for (Entry<Long, NonBlockingHashSet<StatsSource>> entry : siteIdToStatsSources.entrySet()) {
+            // entries of this site id to sources set map may be removed or still be filled in by another thread
             NonBlockingHashSet<StatsSource> statsSources = entry.getValue();
-            // entries of this site id to sources set map may be removed in another thread
-            while (statsSources == null || statsSources.isEmpty()) {
-                Thread.yield();
-                statsSources = siteIdToStatsSources.get(entry.getKey());
+            if (statsSources == null) {
+                continue;
             }
             for (final StatsSource ss : statsSources) {
                 assert ss != null;
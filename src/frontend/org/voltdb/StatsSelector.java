@@ -61,6 +61,8 @@ public enum StatsSelector {
     GC,             // return GC Stats
 
     COMMANDLOG,     // return number of outstanding bytes and txns on this node
+    RESULTCACHE,    // return read-only statement result cache usage per partition
+    LATENCY_BREAKDOWN, // return per procedure latency of each stage for sampled transactions
     IMPORTER,       // synonym as IMPORT for backward compatibility
     IMPORT,
     EXPORT
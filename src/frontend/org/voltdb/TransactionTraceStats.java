@@ -0,0 +1,302 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.TransactionTracer.Event;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.dtxn.LatencyHistogramStats;
+
+/**
+ * Source of @Statistics LATENCY_BREAKDOWN, which reports where the transactions sampled by
+ * {@link TransactionTracer} spent their time, with one row per procedure and stage.
+ *
+ * The trace buffers are drained periodically and the events are joined by client interface
+ * handle. A trace is reported one drain after its response was recorded, so events recorded
+ * on other threads at about the same time are not missed, or once it has been pending for
+ * {@link #TRACE_EXPIRATION_MS}, which is how a partition leader reports transactions
+ * received by the client interface of another host. A stage is only reported when both of
+ * the events that bound it were recorded on this host.
+ */
+public class TransactionTraceStats extends StatsSource {
+
+    private static final VoltLogger log = new VoltLogger("HOST");
+
+    private static final int DRAIN_INTERVAL_MS = Integer.getInteger("TXN_TRACE_DRAIN_INTERVAL_MS", 1000);
+    static final int TRACE_EXPIRATION_MS = Integer.getInteger("TXN_TRACE_EXPIRATION_MS", 5000);
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    public enum Stage {
+        ROUTE,          // client interface processing until the invocation is sent to the leader
+        COMMANDLOG,     // waiting for the command log to make the invocation durable
+        QUEUE,          // waiting in the site task queue
+        EXECUTE,        // running the procedure in java, excluding time spent in the EE
+        EE,             // running statements in the EE
+        RESPONSE,       // from the end of execution until the client interface serialized the response
+        TOTAL;          // from receipt by the client interface until the response was serialized
+
+        private static final Stage[] s_values = values();
+    }
+
+    private static final class TraceKey {
+        final long m_ciHandle;
+        final int m_ciHostId;
+
+        TraceKey(long ciHandle, int ciHostId) {
+            m_ciHandle = ciHandle;
+            m_ciHostId = ciHostId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(m_ciHandle) * 31 + m_ciHostId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TraceKey)) {
+                return false;
+            }
+            TraceKey other = (TraceKey) o;
+            return m_ciHandle == other.m_ciHandle && m_ciHostId == other.m_ciHostId;
+        }
+    }
+
+    private static final class Trace {
+        final long[] m_values = new long[Event.values().length];
+        final long m_firstSeenMs;
+        String m_procName;
+        boolean m_responded = false;
+
+        Trace(long nowMs) {
+            m_firstSeenMs = nowMs;
+            for (int ii = 0; ii < m_values.length; ii++) {
+                m_values[ii] = UNSET;
+            }
+        }
+
+        long get(Event event) {
+            return m_values[event.ordinal()];
+        }
+
+        /**
+         * @return elapsed microseconds between the two events, or -1 if either was not recorded here
+         */
+        long elapsed(Event start, Event end) {
+            long startNanos = get(start);
+            long endNanos = get(end);
+            if (startNanos == UNSET || endNanos == UNSET) {
+                return -1;
+            }
+            return Math.max(0, TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+        }
+    }
+
+    // Pending traces, only used by the drain task
+    private final Map<TraceKey, Trace> m_pending = new HashMap<>();
+    // Histograms of microseconds per procedure and stage, guarded by this
+    private final Map<String, AbstractHistogram[]> m_histograms = new TreeMap<>();
+    // Histograms as of the previous interval request, guarded by this
+    private final Map<String, AbstractHistogram[]> m_lastIntervalHistograms = new HashMap<>();
+    // Rows being reported by the current request, guarded by this
+    private final Map<String, AbstractHistogram[]> m_reportedHistograms = new HashMap<>();
+
+    private final ScheduledThreadPoolExecutor m_drainer =
+            CoreUtils.getScheduledThreadPoolExecutor("Transaction Trace Drainer", 1, CoreUtils.SMALL_STACK_SIZE);
+
+    public TransactionTraceStats() {
+        this(TransactionTracer.SAMPLE_RATE > 0);
+    }
+
+    TransactionTraceStats(boolean drainPeriodically) {
+        super(false);
+        if (drainPeriodically) {
+            m_drainer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drain(System.currentTimeMillis());
+                    } catch (Throwable t) {
+                        log.warn("Failed to process transaction traces", t);
+                    }
+                }
+            }, DRAIN_INTERVAL_MS, DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void shutdown() {
+        m_drainer.shutdownNow();
+    }
+
+    /**
+     * Collect the events recorded since the last drain and add the traces that are complete to the histograms
+     */
+    void drain(final long nowMs) {
+        List<Trace> complete = new ArrayList<>();
+        Iterator<Trace> iter = m_pending.values().iterator();
+        while (iter.hasNext()) {
+            Trace trace = iter.next();
+            if (trace.m_responded || nowMs - trace.m_firstSeenMs >= TRACE_EXPIRATION_MS) {
+                complete.add(trace);
+                iter.remove();
+            }
+        }
+
+        TransactionTracer.drain(new TransactionTracer.EventHandler() {
+            @Override
+            public void handle(long ciHandle, int ciHostId, Event event, long value, String procName) {
+                TraceKey key = new TraceKey(ciHandle, ciHostId);
+                Trace trace = m_pending.get(key);
+                if (trace == null) {
+                    trace = new Trace(nowMs);
+                    m_pending.put(key, trace);
+                }
+                trace.m_values[event.ordinal()] = value;
+                if (procName != null) {
+                    trace.m_procName = procName;
+                }
+                if (event == Event.RESPONDED) {
+                    trace.m_responded = true;
+                }
+            }
+        });
+
+        if (complete.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Trace trace : complete) {
+                if (trace.m_procName == null) {
+                    continue;
+                }
+                AbstractHistogram[] histograms = m_histograms.get(trace.m_procName);
+                if (histograms == null) {
+                    histograms = constructHistograms();
+                    m_histograms.put(trace.m_procName, histograms);
+                }
+                recordStages(trace, histograms);
+            }
+        }
+    }
+
+    private static void recordStages(Trace trace, AbstractHistogram[] histograms) {
+        record(histograms, Stage.ROUTE, trace.elapsed(Event.RECEIVED, Event.ROUTED));
+        record(histograms, Stage.COMMANDLOG, trace.elapsed(Event.SCHEDULED, Event.DURABLE));
+        // With synchronous command logging the task is only queued once it is durable
+        record(histograms, Stage.QUEUE, trace.get(Event.DURABLE) == UNSET ?
+                trace.elapsed(Event.SCHEDULED, Event.EXECUTE_START) :
+                trace.elapsed(Event.DURABLE, Event.EXECUTE_START));
+        long executeMicros = trace.elapsed(Event.EXECUTE_START, Event.EXECUTE_END);
+        long eeNanos = trace.get(Event.EE);
+        if (executeMicros >= 0 && eeNanos != UNSET) {
+            long eeMicros = TimeUnit.NANOSECONDS.toMicros(eeNanos);
+            record(histograms, Stage.EE, eeMicros);
+            record(histograms, Stage.EXECUTE, Math.max(0, executeMicros - eeMicros));
+        }
+        record(histograms, Stage.RESPONSE, trace.elapsed(Event.EXECUTE_END, Event.RESPONDED));
+        record(histograms, Stage.TOTAL, trace.elapsed(Event.RECEIVED, Event.RESPONDED));
+    }
+
+    private static void record(AbstractHistogram[] histograms, Stage stage, long micros) {
+        if (micros < 0) {
+            return;
+        }
+        AbstractHistogram histogram = histograms[stage.ordinal()];
+        histogram.recordValue(Math.min(micros, histogram.getHighestTrackableValue()));
+    }
+
+    private static AbstractHistogram[] constructHistograms() {
+        AbstractHistogram[] histograms = new AbstractHistogram[Stage.s_values.length];
+        for (int ii = 0; ii < histograms.length; ii++) {
+            histograms[ii] = LatencyHistogramStats.constructHistogram(false);
+        }
+        return histograms;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("PROCEDURE", VoltType.STRING));
+        columns.add(new ColumnInfo("STAGE",     VoltType.STRING));
+        columns.add(new ColumnInfo("COUNT",     VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG",       VoltType.BIGINT));  // microseconds
+        columns.add(new ColumnInfo("P50",       VoltType.BIGINT));  // microseconds
+        columns.add(new ColumnInfo("P99",       VoltType.BIGINT));  // microseconds
+        columns.add(new ColumnInfo("P99.9",     VoltType.BIGINT));  // microseconds
+        columns.add(new ColumnInfo("MAX",       VoltType.BIGINT));  // microseconds
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_reportedHistograms.clear();
+        List<Object> rowKeys = new ArrayList<>();
+        for (Map.Entry<String, AbstractHistogram[]> entry : m_histograms.entrySet()) {
+            AbstractHistogram[] histograms = entry.getValue();
+            if (interval) {
+                AbstractHistogram[] last = m_lastIntervalHistograms.get(entry.getKey());
+                AbstractHistogram[] current = new AbstractHistogram[histograms.length];
+                AbstractHistogram[] diff = new AbstractHistogram[histograms.length];
+                for (int ii = 0; ii < histograms.length; ii++) {
+                    current[ii] = histograms[ii].copy();
+                    diff[ii] = histograms[ii].copy();
+                    if (last != null) {
+                        diff[ii].subtract(last[ii]);
+                    }
+                }
+                m_lastIntervalHistograms.put(entry.getKey(), current);
+                histograms = diff;
+            }
+            m_reportedHistograms.put(entry.getKey(), histograms);
+            for (Stage stage : Stage.s_values) {
+                if (histograms[stage.ordinal()].getTotalCount() > 0) {
+                    rowKeys.add(new Object[] { entry.getKey(), stage });
+                }
+            }
+        }
+        return rowKeys.iterator();
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        super.updateStatsRow(rowKey, rowValues);
+        Object[] key = (Object[]) rowKey;
+        String procName = (String) key[0];
+        Stage stage = (Stage) key[1];
+        AbstractHistogram histogram = m_reportedHistograms.get(procName)[stage.ordinal()];
+        rowValues[columnNameToIndex.get("PROCEDURE")] = procName;
+        rowValues[columnNameToIndex.get("STAGE")] = stage.name();
+        rowValues[columnNameToIndex.get("COUNT")] = histogram.getTotalCount();
+        rowValues[columnNameToIndex.get("AVG")] = (long) histogram.getMean();
+        rowValues[columnNameToIndex.get("P50")] = histogram.getValueAtPercentile(50D);
+        rowValues[columnNameToIndex.get("P99")] = histogram.getValueAtPercentile(99D);
+        rowValues[columnNameToIndex.get("P99.9")] = histogram.getValueAtPercentile(99.9D);
+        rowValues[columnNameToIndex.get("MAX")] = histogram.getMaxValue();
+    }
+}
@@ -0,0 +1,228 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Always-on sampling tracer that follows one in {@link #SAMPLE_RATE} single partition
+ * transactions from the client interface through the SP scheduler, the command log,
+ * the site and the EE, and back out as a response.
+ *
+ * A transaction is sampled if the sequence number in its client interface handle is a
+ * multiple of the sample rate, so every stage makes the same decision on its own and
+ * nothing extra travels with the transaction. Each thread records events into its own
+ * preallocated ring buffer, which costs a few array stores per sampled event and
+ * nothing but the handle check otherwise. {@link TransactionTraceStats} drains the
+ * rings, joins the events of each transaction and keeps per procedure histograms of
+ * the time spent in each stage.
+ *
+ * Timestamps are only compared between events recorded on the same host. When the
+ * partition leader is on another host, that host reports the scheduler, command log
+ * and execution stages and the client interface host reports routing and the total.
+ */
+public class TransactionTracer {
+
+    /** Trace one in this many transactions, 0 turns tracing off */
+    public static final int SAMPLE_RATE = Integer.getInteger("TXN_TRACE_SAMPLE_RATE", 1000);
+
+    // Events each thread can hold before the oldest are overwritten, rounded up to a power of two
+    private static final int BUFFER_SIZE = Integer.getInteger("TXN_TRACE_BUFFER_SIZE", 4096);
+
+    /**
+     * Points in the life of a transaction. EE is recorded when execution ends and carries
+     * the time spent in the EE instead of a timestamp.
+     */
+    public enum Event {
+        RECEIVED,       // the client interface started processing the invocation
+        ROUTED,         // the client interface sent it to the partition leader
+        SCHEDULED,      // the leader's SP scheduler sequenced it and handed it to the command log
+        DURABLE,        // the command log made it durable
+        EXECUTE_START,  // the site started running it
+        EE,             // time spent in the EE
+        EXECUTE_END,    // the site finished running it
+        RESPONDED;      // the client interface serialized the response
+
+        private static final Event[] s_values = values();
+    }
+
+    /** Receives the events drained from the ring buffers */
+    interface EventHandler {
+        void handle(long ciHandle, int ciHostId, Event event, long value, String procName);
+    }
+
+    /**
+     * Ring buffer of events written by a single thread. The write position is published
+     * after each event so the draining thread only reads complete entries, and it skips
+     * entries the writer may have lapped while they were being read.
+     */
+    public static final class TraceBuffer {
+        private final long[] m_handles;
+        private final int[] m_hostIds;
+        private final byte[] m_events;
+        private final long[] m_values;
+        private final String[] m_procNames;
+        private final int m_mask;
+        // Thread that writes the buffer, the buffer is dropped after its last drain once the thread is gone
+        private final WeakReference<Thread> m_owner;
+        private volatile long m_written = 0;
+        // Only used by the draining thread
+        private long m_read = 0;
+
+        // The sampled transaction this thread is executing, only used by the owning thread
+        private long m_executingHandle;
+        private int m_executingHostId;
+        private String m_executingProcName;
+        private long m_eeNanos;
+        private boolean m_executing = false;
+
+        TraceBuffer(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 2));
+            if (size < capacity) {
+                size <<= 1;
+            }
+            m_handles = new long[size];
+            m_hostIds = new int[size];
+            m_events = new byte[size];
+            m_values = new long[size];
+            m_procNames = new String[size];
+            m_mask = size - 1;
+            m_owner = new WeakReference<>(Thread.currentThread());
+        }
+
+        boolean isOwnerAlive() {
+            final Thread owner = m_owner.get();
+            return owner != null && owner.isAlive();
+        }
+
+        void add(long ciHandle, int ciHostId, Event event, long value, String procName) {
+            final long written = m_written;
+            final int idx = (int) (written & m_mask);
+            m_handles[idx] = ciHandle;
+            m_hostIds[idx] = ciHostId;
+            m_events[idx] = (byte) event.ordinal();
+            m_values[idx] = value;
+            m_procNames[idx] = procName;
+            m_written = written + 1;
+        }
+
+        /** Add the time spent in the EE to the transaction this thread is executing */
+        public void addEngineTime(long nanos) {
+            m_eeNanos += nanos;
+        }
+
+        void drainTo(EventHandler handler) {
+            final long written = m_written;
+            for (long ii = Math.max(m_read, written - m_handles.length); ii < written; ii++) {
+                final int idx = (int) (ii & m_mask);
+                final long ciHandle = m_handles[idx];
+                final int ciHostId = m_hostIds[idx];
+                final byte event = m_events[idx];
+                final long value = m_values[idx];
+                final String procName = m_procNames[idx];
+                // The writer could be overwriting this entry, drop it
+                if (m_written - m_handles.length >= ii) {
+                    continue;
+                }
+                handler.handle(ciHandle, ciHostId, Event.s_values[event], value, procName);
+            }
+            m_read = written;
+        }
+    }
+
+    private static final CopyOnWriteArrayList<TraceBuffer> s_buffers = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<TraceBuffer> s_threadBuffer = new ThreadLocal<TraceBuffer>() {
+        @Override
+        protected TraceBuffer initialValue() {
+            TraceBuffer buffer = new TraceBuffer(BUFFER_SIZE);
+            s_buffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    static int bufferCount() {
+        return s_buffers.size();
+    }
+
+    public static boolean isSampled(long ciHandle) {
+        return SAMPLE_RATE > 0 && (ciHandle & ClientInterfaceHandleManager.SEQNUM_MAX) % SAMPLE_RATE == 0;
+    }
+
+    /**
+     * Record an event for a sampled transaction.
+     *
+     * @param ciHandle client interface handle of the transaction
+     * @param ciHostId host of the client interface that received it
+     */
+    public static void record(long ciHandle, int ciHostId, Event event, long nanos, String procName) {
+        s_threadBuffer.get().add(ciHandle, ciHostId, event, nanos, procName);
+    }
+
+    /** Record the start of execution of a sampled transaction and account EE time to it */
+    public static void beginExecution(long ciHandle, int ciHostId, String procName) {
+        TraceBuffer buffer = s_threadBuffer.get();
+        buffer.m_executingHandle = ciHandle;
+        buffer.m_executingHostId = ciHostId;
+        buffer.m_executingProcName = procName;
+        buffer.m_eeNanos = 0;
+        buffer.m_executing = true;
+        buffer.add(ciHandle, ciHostId, Event.EXECUTE_START, System.nanoTime(), procName);
+    }
+
+    /** Record the end of execution of the transaction passed to {@link #beginExecution} */
+    public static void endExecution() {
+        final long now = System.nanoTime();
+        TraceBuffer buffer = s_threadBuffer.get();
+        if (!buffer.m_executing) {
+            return;
+        }
+        buffer.m_executing = false;
+        buffer.add(buffer.m_executingHandle, buffer.m_executingHostId, Event.EE, buffer.m_eeNanos,
+                buffer.m_executingProcName);
+        buffer.add(buffer.m_executingHandle, buffer.m_executingHostId, Event.EXECUTE_END, now,
+                buffer.m_executingProcName);
+    }
+
+    /**
+     * @return the buffer of the current thread if it is executing a sampled transaction, otherwise null
+     */
+    public static TraceBuffer executing() {
+        if (SAMPLE_RATE == 0) {
+            return null;
+        }
+        TraceBuffer buffer = s_threadBuffer.get();
+        return buffer.m_executing ? buffer : null;
+    }
+
+    /**
+     * Hand every event recorded since the last call to the handler. Buffers of threads that
+     * have exited are drained one last time and then released.
+     */
+    static void drain(EventHandler handler) {
+        for (TraceBuffer buffer : s_buffers) {
+            // Check first so the events of a thread that exits while this runs are still drained
+            final boolean ownerAlive = buffer.isOwnerAlive();
+            buffer.drainTo(handler);
+            if (!ownerAlive) {
+                s_buffers.remove(buffer);
+            }
+        }
+    }
+}
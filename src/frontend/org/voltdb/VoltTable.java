@@ -33,6 +33,7 @@ import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.voltcore.utils.DBBPool.RefCountedContainer;
 import org.voltdb.client.ClientUtils;
 import org.voltdb.common.Constants;
 import org.voltdb.types.GeographyPointValue;
@@ -149,6 +150,10 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     // cache column indexes for column names used for lookup
     private HashMap<String,Integer> m_columnNameIndexMap;
 
+    // reference to the shared result buffer m_buffer points into, when the table
+    // wraps an EE result buffer instead of owning a copy of it
+    private RefCountedContainer m_sharedContainer = null;
+
     // JSON KEYS FOR SERIALIZATION
     static final String JSON_NAME_KEY = "name";
     static final String JSON_TYPE_KEY = "type";
@@ -2144,7 +2149,9 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     }
 
     public final void convertToHeapBuffer() {
-        if (m_buffer.isDirect()) {
+        // A table that holds a reference to a detached EE result buffer is no longer
+        // affected by the EE reusing its buffers.
+        if (m_buffer.isDirect() && m_sharedContainer == null) {
             // Either this was allocated by the stored procedure as a direct buffer or this
             // is cached from the EE. If the second, we need to make a copy so the EE can
             // reuse the buffer for the next stored procedure.
@@ -2155,6 +2162,46 @@ public final class VoltTable extends VoltTableRow implements JSONString {
         }
     }
 
+    /**
+     * Keep the table in the direct buffer it was read from instead of copying it to the heap.
+     * The table takes its own reference to {@code shared}, which must contain the table's buffer,
+     * and holds it until {@link #releaseSharedBuffer()} is called.
+     */
+    final void attachSharedBuffer(RefCountedContainer shared) {
+        assert(m_buffer.isDirect());
+        assert(m_sharedContainer == null);
+        m_sharedContainer = shared.retain(m_buffer.duplicate());
+    }
+
+    final boolean hasSharedBuffer() {
+        return m_sharedContainer != null;
+    }
+
+    /**
+     * Take a new reference to the shared buffer that contains the serialized table data,
+     * excluding the length prefix written by {@link #flattenToBuffer(ByteBuffer)}.
+     * The returned container is positioned at the end of the data.
+     */
+    final RefCountedContainer retainSharedBuffer() {
+        assert(m_sharedContainer != null);
+        ByteBuffer dup = m_buffer.duplicate();
+        dup.position(0);
+        RefCountedContainer cont = m_sharedContainer.retain(dup.slice());
+        cont.b().position(cont.b().limit());
+        return cont;
+    }
+
+    /**
+     * Drop this table's reference to the shared buffer it was read from. A table whose
+     * buffer was still shared must not be accessed afterwards.
+     */
+    final void releaseSharedBuffer() {
+        if (m_sharedContainer != null) {
+            m_sharedContainer.discard();
+            m_sharedContainer = null;
+        }
+    }
+
     void initFromBuffer(ByteBuffer buf) {
         // Note: some of the snapshot and save/restore code makes assumptions
         // about the binary layout of tables.
@@ -0,0 +1,129 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table of outstanding calls on a single connection, keyed by client handle.
+ *
+ * Client handles are handed out sequentially, so the table is a ring indexed
+ * by the low bits of the handle. Each slot is claimed and released with a CAS,
+ * which makes insertion and removal lock free and free of boxing. Removal is
+ * the arbitration point between a response, a discrete timeout, the periodic
+ * expiration task and connection loss: exactly one of them gets the entry back.
+ *
+ * A slot that is still held by a call that is a full ring older than the new
+ * one sends the new call to an overflow map. That only happens with a very
+ * large number of outstanding calls or very long running ones, so the
+ * overflow map is expected to be empty nearly all of the time.
+ */
+final class CallbackTable<E extends CallbackTable.Entry> {
+
+    /**
+     * Base for values stored in the table. The handle is kept with the value
+     * so a slot can be checked and released with a single CAS.
+     */
+    static abstract class Entry {
+        final long handle;
+
+        Entry(long handle) {
+            this.handle = handle;
+        }
+    }
+
+    static final int DEFAULT_CAPACITY = Integer.getInteger("CLIENT_CALLBACK_TABLE_SIZE", 16384);
+
+    private final AtomicReferenceArray<E> m_slots;
+    private final int m_mask;
+    private final ConcurrentHashMap<Long, E> m_overflow = new ConcurrentHashMap<>();
+
+    CallbackTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    CallbackTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Callback table capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        m_slots = new AtomicReferenceArray<>(size);
+        m_mask = size - 1;
+    }
+
+    void put(E entry) {
+        if (!m_slots.compareAndSet(slot(entry.handle), null, entry)) {
+            m_overflow.put(entry.handle, entry);
+        }
+    }
+
+    /**
+     * Remove the entry for the handle.
+     * @return the entry, or null if it was never added or another thread already removed it
+     */
+    E remove(long handle) {
+        final int slot = slot(handle);
+        final E entry = m_slots.get(slot);
+        if (entry != null && entry.handle == handle) {
+            return m_slots.compareAndSet(slot, entry, null) ? entry : null;
+        }
+        if (m_overflow.isEmpty()) {
+            return null;
+        }
+        return m_overflow.remove(handle);
+    }
+
+    boolean contains(long handle) {
+        final E entry = m_slots.get(slot(handle));
+        if (entry != null && entry.handle == handle) {
+            return true;
+        }
+        return m_overflow.containsKey(handle);
+    }
+
+    /**
+     * Point in time copy of the outstanding entries. Entries may be removed
+     * concurrently, so callers must still go through {@link #remove(long)}
+     * to take ownership of one.
+     */
+    List<E> snapshot() {
+        final List<E> entries = new ArrayList<>();
+        for (int ii = 0; ii < m_slots.length(); ii++) {
+            final E entry = m_slots.get(ii);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        entries.addAll(m_overflow.values());
+        return entries;
+    }
+
+    int capacity() {
+        return m_slots.length();
+    }
+
+    private int slot(long handle) {
+        return (int)(handle & m_mask);
+    }
+}
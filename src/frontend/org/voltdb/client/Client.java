@@ -111,6 +111,23 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * <p>Asynchronously invoke a procedure and return a {@link ClientResponseFuture} that completes with the
+     * response. Unlike {@link #callProcedure(String, Object...)} no thread has to block for the duration of the call,
+     * and unlike {@link #callProcedure(ProcedureCallback, String, Object...)} completion can be observed by any
+     * number of threads. If there is backpressure this call will block until the invocation is queued. If
+     * configureBlocking(false) is invoked and the invocation can't be queued, the returned future is already
+     * complete with a {@link ClientResponse#GRACEFUL_FAILURE} response.</p>
+     *
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return {@link ClientResponseFuture} that completes with the response, whatever its status.
+     * @throws NoConnectionsException if this {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public ClientResponseFuture callProcedureAsync(String procName, Object... parameters)
+    throws IOException, NoConnectionsException;
+
     /**
      * <p>Synchronously invoke a procedure with timeout. Blocks until a result is available. A {@link ProcCallException}
      * is thrown if the response is anything other then success.</p>
@@ -67,12 +67,12 @@ public class ClientAffinityStats {
      * @see java.lang.Object#clone()
      */
     @Override
-    protected Object clone() {
+    protected synchronized Object clone() {
         return new ClientAffinityStats(m_partitionId, m_affinityWrites, m_rrWrites, m_affinityReads,
                m_rrReads);
     }
 
-    void addAffinityWrite()
+    synchronized void addAffinityWrite()
     {
         m_affinityWrites++;
     }
@@ -87,7 +87,7 @@ public class ClientAffinityStats {
         return m_affinityWrites;
     }
 
-    void addRrWrite()
+    synchronized void addRrWrite()
     {
         m_rrWrites++;
     }
@@ -103,7 +103,7 @@ public class ClientAffinityStats {
         return m_rrWrites;
     }
 
-    void addAffinityRead()
+    synchronized void addAffinityRead()
     {
         m_affinityReads++;
     }
@@ -118,7 +118,7 @@ public class ClientAffinityStats {
         return m_affinityReads;
     }
 
-    void addRrRead()
+    synchronized void addRrRead()
     {
         m_rrReads++;
     }
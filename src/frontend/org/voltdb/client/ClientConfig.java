@@ -47,6 +47,7 @@ public class ClientConfig {
     static final long DEFAULT_CONNECTION_TIMOUT_MS = 2 * 60 * 1000; // default timeout is 2 minutes;
     static final long DEFAULT_INITIAL_CONNECTION_RETRY_INTERVAL_MS = 1000; // default initial connection retry interval is 1 second
     static final long DEFAULT_MAX_CONNECTION_RETRY_INTERVAL_MS = 8000; // default max connection retry interval is 8 seconds
+    static final int DEFAULT_WRITE_BATCH_MAX_BYTES = 64 * 1024; // default byte budget of a batched write is 64k
 
     final ClientAuthScheme m_hashScheme;
     final String m_username;
@@ -69,6 +70,8 @@ public class ClientConfig {
     SslConfig m_sslConfig;
     boolean m_topologyChangeAware = false;
     boolean m_enableSSL = false;
+    long m_writeBatchWindowNanos = 0;
+    int m_writeBatchMaxBytes = DEFAULT_WRITE_BATCH_MAX_BYTES;
     String m_sslPropsFile = null;
 
     //For unit testing. This should really be in Environment class we should assemble all such there.
@@ -368,7 +371,10 @@ public class ClientConfig {
      * <p>By default, reads are sent to the leader replica for each partition. This
      * is usually optimal for the default read consistency value, SAFE. If you are
      * using FAST reads, enabling this setting will load balance reads amongst
-     * partition replicas, often increasing throughput and decreasing latency.</p>
+     * partition replicas, often increasing throughput and decreasing latency.
+     * Each read goes to the replica with the fewest outstanding calls from this client.
+     * Servers started with replica reads enabled serve these reads from the replica
+     * itself instead of forwarding them to the partition leader.</p>
      *
      * <p>See section <a href="https://docs.voltdb.com/AdminGuide/HostConfigDBOpts.php">
      * A.3.4 of the Administrators Guide</a> for info on SAFE vs. FAST.</p>
@@ -423,6 +429,32 @@ public class ClientConfig {
         m_autoTuneTargetInternalLatency = targetLatency;
     }
 
+    /**
+     * <p>Coalesce invocations headed to the same server connection into a single network write.
+     * An invocation waits at most <code>windowMicros</code> for others to join its batch, and a
+     * batch is written as soon as it holds <code>maxBatchBytes</code>. This trades a little latency
+     * for fewer system calls and network thread wakeups when many small procedures are called at
+     * a high rate.</p>
+     *
+     * <p>Batching is off by default. A window of 0 disables it. Batch counts per connection are
+     * reported by {@link ClientStats#getWriteBatchCount()}.</p>
+     *
+     * @param windowMicros Maximum time in microseconds an invocation is held for batching.
+     * @param maxBatchBytes Size in bytes at which a batch is written without waiting for the window to end.
+     */
+    public void setWriteBatching(long windowMicros, int maxBatchBytes) {
+        if (windowMicros < 0) {
+            throw new IllegalArgumentException(
+                    "Write batching window must not be negative, " + windowMicros + " was specified");
+        }
+        if (maxBatchBytes < 1) {
+            throw new IllegalArgumentException(
+                    "Write batch size must be greater than 0, " + maxBatchBytes + " was specified");
+        }
+        m_writeBatchWindowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        m_writeBatchMaxBytes = maxBatchBytes;
+    }
+
     /**
      * <p>Enable Kerberos authentication with the provided subject credentials</p>
      * @param subject Identity of the authenticated user.
@@ -22,11 +22,21 @@ class ClientIOStats {
     long m_connectionId;
     long m_bytesSent;
     long m_bytesReceived;
+    // writes issued for batches of invocations and the number of invocations they carried,
+    // only non-zero when write batching is enabled in the ClientConfig
+    long m_writeBatches;
+    long m_batchedInvocations;
 
     ClientIOStats(long connectionId, long bytesSent, long bytesReceived) {
+        this(connectionId, bytesSent, bytesReceived, 0, 0);
+    }
+
+    ClientIOStats(long connectionId, long bytesSent, long bytesReceived, long writeBatches, long batchedInvocations) {
         m_connectionId = connectionId;
         m_bytesSent = bytesSent;
         m_bytesReceived = bytesReceived;
+        m_writeBatches = writeBatches;
+        m_batchedInvocations = batchedInvocations;
     }
 
     public static ClientIOStats diff(ClientIOStats newer, ClientIOStats older) {
@@ -36,7 +46,9 @@ class ClientIOStats {
 
         ClientIOStats retval = new ClientIOStats(older.m_connectionId,
                                                  newer.m_bytesSent - older.m_bytesSent,
-                                                 newer.m_bytesReceived - older.m_bytesReceived);
+                                                 newer.m_bytesReceived - older.m_bytesReceived,
+                                                 newer.m_writeBatches - older.m_writeBatches,
+                                                 newer.m_batchedInvocations - older.m_batchedInvocations);
         return retval;
     }
 
@@ -45,6 +57,6 @@ class ClientIOStats {
      */
     @Override
     protected Object clone() {
-        return new ClientIOStats(m_connectionId, m_bytesSent, m_bytesReceived);
+        return new ClientIOStats(m_connectionId, m_bytesSent, m_bytesReceived, m_writeBatches, m_batchedInvocations);
     }
 }
@@ -28,12 +28,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
@@ -145,6 +146,7 @@ public final class ClientImpl implements Client {
         }
         m_username = username;
         m_distributer.setTopologyChangeAware(config.m_topologyChangeAware);
+        m_distributer.setWriteBatching(config.m_writeBatchWindowNanos, config.m_writeBatchMaxBytes);
         if (config.m_topologyChangeAware) {
             m_ex = Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Topoaware thread"));
         }
@@ -343,6 +345,66 @@ public final class ClientImpl implements Client {
                 Distributer.USE_DEFAULT_CLIENT_TIMEOUT, TimeUnit.NANOSECONDS, parameters);
     }
 
+    /**
+     * Asynchronously invoke a procedure call returning a future for the response.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return Future completed with the response, or with a failure response if the procedure was not queued
+     */
+    @Override
+    public ClientResponseFuture callProcedureAsync(
+            String procName,
+            Object... parameters)
+                    throws IOException, NoConnectionsException
+    {
+        if (m_isShutdown) {
+            throw new NoConnectionsException("Client instance is shutdown");
+        }
+
+        long handle = m_handle.getAndIncrement();
+        ProcedureInvocation invocation
+                = new ProcedureInvocation(handle, BatchTimeoutOverrideType.NO_TIMEOUT, false, procName, parameters);
+
+        ClientResponseFuture future = new ClientResponseFuture();
+        if (!internalAsyncCallProcedure(future, Distributer.USE_DEFAULT_CLIENT_TIMEOUT, invocation)) {
+            future.clientCallback(new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE,
+                    ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
+                    "",
+                    new VoltTable[0],
+                    "Unable to queue client request."));
+        }
+        return future;
+    }
+
+    /**
+     * <p>Asynchronously invoke a procedure with parameters set on an {@link InvocationBuilder}. The parameters are
+     * serialized as they are set, directly into a pooled buffer, so a builder reused for every call avoids boxing and
+     * per call serialization garbage. Once the invocation is queued the builder is reset and can be used for the
+     * next call. If the invocation is not queued the builder keeps its parameters. Backpressure is handled
+     * the same way as {@link Client#callProcedure(ProcedureCallback, String, Object...)}.</p>
+     *
+     * @param callback {@link ProcedureCallback} that will be invoked with procedure results.
+     * @param invocation builder holding the procedure name and parameters.
+     * @return <code>true</code> if the procedure was queued and <code>false</code> otherwise.
+     * @throws NoConnectionsException if this client is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public boolean callProcedure(ProcedureCallback callback, InvocationBuilder invocation)
+            throws IOException, NoConnectionsException
+    {
+        if (m_isShutdown) {
+            return false;
+        }
+
+        if (callback == null) {
+            callback = NULL_CALLBACK;
+        }
+
+        invocation.setClientHandle(m_handle.getAndIncrement());
+        return internalAsyncCallProcedure(callback, Distributer.USE_DEFAULT_CLIENT_TIMEOUT, invocation);
+    }
+
     /**
      * Asynchronously invoke a procedure call with timeout.
      * @param callback TransactionCallback that will be invoked with procedure results.
@@ -463,7 +525,7 @@ public final class ClientImpl implements Client {
                     " without deadlocking the client library");
         }
 
-        SyncCallbackLight cb = new SyncCallbackLight();
+        ClientResponseFuture cb = new ClientResponseFuture();
 
         boolean success = internalAsyncCallProcedure(cb, clientTimeoutNanos, invocation);
         if (!success) {
@@ -476,21 +538,25 @@ public final class ClientImpl implements Client {
             throw new ProcCallException(r, "Unable to queue client request.", null);
         }
 
+        final ClientResponse response;
         try {
-            cb.waitForResponse();
+            response = cb.get();
         } catch (final InterruptedException e) {
             throw new java.io.InterruptedIOException("Interrupted while waiting for response");
+        } catch (final ExecutionException e) {
+            // never completed exceptionally
+            throw new IOException(e.getCause());
         }
-        if (cb.getResponse().getStatus() != ClientResponse.SUCCESS) {
-            throw new ProcCallException(cb.getResponse(), cb.getResponse().getStatusString(), null);
+        if (response.getStatus() != ClientResponse.SUCCESS) {
+            throw new ProcCallException(response, response.getStatusString(), null);
         }
-        return cb.getResponse();
+        return response;
     }
 
     private final boolean internalAsyncCallProcedure(
             ProcedureCallback callback,
             long clientTimeoutNanos,
-            ProcedureInvocation invocation)
+            RoutableInvocation invocation)
             throws IOException, NoConnectionsException {
         assert( ! m_isShutdown);
         assert(callback != null);
@@ -626,8 +692,11 @@ public final class ClientImpl implements Client {
                     " without deadlocking the client library");
         }
         m_isShutdown = true;
-        synchronized (m_backpressureLock) {
-            m_backpressureLock.notifyAll();
+        m_backpressureLock.lock();
+        try {
+            m_backpressureCondition.signalAll();
+        } finally {
+            m_backpressureLock.unlock();
         }
 
         if (m_reconnectStatusListener != null) {
@@ -666,7 +735,9 @@ public final class ClientImpl implements Client {
                     " without deadlocking the client library");
         }
         if (m_backpressure) {
-            synchronized (m_backpressureLock) {
+            // A j.u.c. lock rather than a monitor so waiting threads can be unmounted if they are virtual threads
+            m_backpressureLock.lock();
+            try {
                 if (m_backpressure) {
                     while (m_backpressure && !m_isShutdown) {
                        if (start != 0) {
@@ -676,7 +747,7 @@ public final class ClientImpl implements Client {
                            }
 
                             //Wait on the condition for the specified timeout remaining
-                            m_backpressureLock.wait(timeoutNanos / TimeUnit.MILLISECONDS.toNanos(1), (int)(timeoutNanos % TimeUnit.MILLISECONDS.toNanos(1)));
+                            m_backpressureCondition.awaitNanos(timeoutNanos);
 
                             //Condition is true, break and return false
                             if (!m_backpressure) {
@@ -693,10 +764,12 @@ public final class ClientImpl implements Client {
                             //Reassigning timeout nanos with remainder of timeout
                             timeoutNanos -= deltaNanos;
                        } else {
-                           m_backpressureLock.wait();
+                           m_backpressureCondition.await();
                        }
                     }
                 }
+            } finally {
+                m_backpressureLock.unlock();
             }
         }
         return false;
@@ -732,13 +805,16 @@ public final class ClientImpl implements Client {
         AtomicInteger connectionTaskCount = new AtomicInteger(0);
         @Override
         public void backpressure(boolean status) {
-            synchronized (m_backpressureLock) {
+            m_backpressureLock.lock();
+            try {
                 if (status) {
                     m_backpressure = true;
                 } else {
                     m_backpressure = false;
-                    m_backpressureLock.notifyAll();
+                    m_backpressureCondition.signalAll();
                 }
+            } finally {
+                m_backpressureLock.unlock();
             }
         }
 
@@ -748,9 +824,12 @@ public final class ClientImpl implements Client {
             if (connectionsLeft == 0) {
                 //Wake up client and let it attempt to queue work
                 //and then fail with a NoConnectionsException
-                synchronized (m_backpressureLock) {
+                m_backpressureLock.lock();
+                try {
                     m_backpressure = false;
-                    m_backpressureLock.notifyAll();
+                    m_backpressureCondition.signalAll();
+                } finally {
+                    m_backpressureLock.unlock();
                 }
             }
         }
@@ -879,8 +958,9 @@ public final class ClientImpl implements Client {
 
     static final Logger LOG = Logger.getLogger(ClientImpl.class.getName());  // Logger shared by client package.
     private final Distributer m_distributer;                             // de/multiplexes connections to a cluster
-    private final Object m_backpressureLock = new Object();
-    private boolean m_backpressure = false;
+    private final ReentrantLock m_backpressureLock = new ReentrantLock();
+    private final Condition m_backpressureCondition = m_backpressureLock.newCondition();
+    private volatile boolean m_backpressure = false;
 
     private boolean m_blockingQueue = true;
 
@@ -1098,51 +1178,6 @@ public final class ClientImpl implements Client {
         return true;
     }
 
-    /**
-     * Essentially the same code as SyncCallback, but without the overhead (memory, gc)
-     * of storing the parameters of every outstanding request while waiting for a response.
-     *
-     */
-    private final class SyncCallbackLight implements ProcedureCallback {
-        private final Semaphore m_lock;
-        private ClientResponse m_response;
-
-        /**
-         * Create a SyncCallbackLight instance.
-         */
-        public SyncCallbackLight() {
-            m_response = null;
-            m_lock = new Semaphore(1);
-            m_lock.acquireUninterruptibly();
-        }
-
-        @Override
-        public void clientCallback(ClientResponse clientResponse) {
-            m_response = clientResponse;
-            m_lock.release();
-        }
-
-        /**
-         * <p>Retrieve the ClientResponse returned for this procedure invocation.</p>
-         *
-         * @return ClientResponse for this invocation
-         */
-        public ClientResponse getResponse() {
-            return m_response;
-        }
-
-        /**
-         * <p>Block until a response has been received for the invocation associated with this callback. Call getResponse
-         * to retrieve the response or result() to retrieve the just the results.</p>
-         *
-         * @throws InterruptedException on interruption.
-         */
-        public void waitForResponse() throws InterruptedException {
-            m_lock.acquire();
-            m_lock.release();
-        }
-    }
-
     /**
      * Procedure call back for async callAllPartitionProcedure
      */
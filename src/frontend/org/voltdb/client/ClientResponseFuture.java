@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * <p>The pending response to a procedure invocation queued with
+ * {@link Client#callProcedureAsync(String, Object...)}.</p>
+ *
+ * <p>The future completes with whatever {@link ClientResponse} the invocation receives, including
+ * failures and timeouts, so check {@link ClientResponse#getStatus()} before using the results.
+ * Waiting never holds a monitor, so large numbers of threads, including virtual threads, can wait
+ * on responses at the same time.</p>
+ *
+ * <p>Listeners registered with {@link #addListener(Runnable, Executor)} run once the response arrives,
+ * which allows adapting to other future or reactive types without a thread per call. For example
+ * a <code>CompletableFuture</code> can be completed from a listener that calls {@link #getResponse()}.</p>
+ */
+public final class ClientResponseFuture implements Future<ClientResponse>, ProcedureCallback {
+    private final CountDownLatch m_done = new CountDownLatch(1);
+    private final ConcurrentLinkedQueue<Runnable> m_listeners = new ConcurrentLinkedQueue<Runnable>();
+    private volatile ClientResponse m_response;
+
+    ClientResponseFuture() {}
+
+    @Override
+    public void clientCallback(ClientResponse clientResponse) {
+        m_response = clientResponse;
+        m_done.countDown();
+        runListeners();
+    }
+
+    /**
+     * <p>Run the listener on the executor once the response is available. If the response is
+     * already available the listener is submitted immediately.</p>
+     *
+     * @param listener Task to run on completion.
+     * @param executor Executor to run the listener on. Listeners should be fast if the executor
+     * runs them directly, since they might then run on the thread that processes client responses.
+     */
+    public void addListener(final Runnable listener, final Executor executor) {
+        m_listeners.offer(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(listener);
+            }
+        });
+        if (isDone()) {
+            runListeners();
+        }
+    }
+
+    /*
+     * Both the completing thread and a thread adding a listener after completion drain
+     * the queue, poll hands each listener to exactly one of them.
+     */
+    private void runListeners() {
+        Runnable r;
+        while ((r = m_listeners.poll()) != null) {
+            try {
+                r.run();
+            } catch (Throwable t) {
+                ClientImpl.LOG.log(Level.WARNING, "Uncaught exception running a response listener", t);
+            }
+        }
+    }
+
+    /**
+     * <p>Non-blocking retrieval of the response.</p>
+     *
+     * @return The response or null if it has not been received yet.
+     */
+    public ClientResponse getResponse() {
+        return m_response;
+    }
+
+    /**
+     * An invocation can't be withdrawn once it has been queued, so this always returns false.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return m_done.getCount() == 0;
+    }
+
+    @Override
+    public ClientResponse get() throws InterruptedException, ExecutionException {
+        m_done.await();
+        return m_response;
+    }
+
+    @Override
+    public ClientResponse get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!m_done.await(timeout, unit)) {
+            throw new TimeoutException("No response received in " + unit.toMillis(timeout) + " ms");
+        }
+        return m_response;
+    }
+}
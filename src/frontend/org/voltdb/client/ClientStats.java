@@ -74,6 +74,9 @@ public class ClientStats {
     long m_bytesSent;
     long m_bytesReceived;
 
+    long m_writeBatches;
+    long m_batchedInvocations;
+
     private static final long LOWEST_TRACKABLE = 50;
     private static final long HIGHEST_TRACKABLE = 10L * (1000L * 1000L);
     private static final int SIGNIFICANT_VALUE_DIGITS = 2;
@@ -96,6 +99,7 @@ public class ClientStats {
         m_invocationsCompleted = m_invocationAborts = m_invocationErrors = 0;
         m_roundTripTimeNanos = m_clusterRoundTripTime = 0;
         m_bytesSent = m_bytesReceived = 0;
+        m_writeBatches = m_batchedInvocations = 0;
         m_latencyHistogram = constructHistogram();
     }
 
@@ -116,6 +120,8 @@ public class ClientStats {
         m_latencyHistogram.reestablishTotalCount();
         m_bytesSent = other.m_bytesSent;
         m_bytesReceived = other.m_bytesReceived;
+        m_writeBatches = other.m_writeBatches;
+        m_batchedInvocations = other.m_batchedInvocations;
     }
 
     static ClientStats diff(ClientStats newer, ClientStats older) {
@@ -146,6 +152,8 @@ public class ClientStats {
 
         retval.m_bytesSent = newer.m_bytesSent - older.m_bytesSent;
         retval.m_bytesReceived = newer.m_bytesReceived - older.m_bytesReceived;
+        retval.m_writeBatches = newer.m_writeBatches - older.m_writeBatches;
+        retval.m_batchedInvocations = newer.m_batchedInvocations - older.m_batchedInvocations;
 
         return retval;
     }
@@ -195,6 +203,8 @@ public class ClientStats {
 
         m_bytesSent += other.m_bytesSent;
         m_bytesReceived += other.m_bytesReceived;
+        m_writeBatches += other.m_writeBatches;
+        m_batchedInvocations += other.m_batchedInvocations;
     }
 
     void update(long roundTripTimeNanos, int clusterRoundTripTime, boolean abort, boolean error, boolean timeout) {
@@ -448,6 +458,29 @@ public class ClientStats {
         return m_bytesReceived;
     }
 
+    /**
+     * Return the number of batched writes issued during the time period covered by
+     * this stats instance. Only recorded when write batching is enabled with
+     * {@link ClientConfig#setWriteBatching(long, int)}, and not recorded for
+     * per-procedure statistics.
+     *
+     * @return The number of batched writes or 0.
+     */
+    public long getWriteBatchCount() {
+        return m_writeBatches;
+    }
+
+    /**
+     * Return the average number of invocations carried by each batched write
+     * during the time period covered by this stats instance.
+     *
+     * @return Average invocations per batched write or 0 if there were none.
+     */
+    public double getAverageWriteBatchSize() {
+        if (m_writeBatches == 0) return 0;
+        return m_batchedInvocations / (double) m_writeBatches;
+    }
+
     /**
      * <p>Using the latency bucketing statistics gathered by the client, estimate
      * the k-percentile latency value for the time period covered by this stats
@@ -160,6 +160,8 @@ public class ClientStatsContext {
             if (cios != null) {
                 cs.m_bytesReceived = cios.m_bytesReceived;
                 cs.m_bytesSent = cios.m_bytesSent;
+                cs.m_writeBatches = cios.m_writeBatches;
+                cs.m_batchedInvocations = cios.m_batchedInvocations;
             }
             retval.put(e.getKey(), cs);
         }
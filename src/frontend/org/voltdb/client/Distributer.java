@@ -34,7 +34,6 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
@@ -62,6 +61,7 @@ import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltNetworkPool.IOStatsIntf;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.Pair;
 import org.voltcore.utils.ssl.SSLConfiguration;
 import org.voltdb.ClientResponseImpl;
@@ -102,6 +102,9 @@ class Distributer {
     // collection of connections to the cluster
     private final CopyOnWriteArrayList<NodeConnection> m_connections =
             new CopyOnWriteArrayList<>();
+    // array copy of m_connections for indexed access from queue() without holding the lock,
+    // republished whenever m_connections changes
+    private volatile NodeConnection[] m_connectionArray = new NodeConnection[0];
 
     private final ArrayList<ClientStatusListenerExt> m_listeners = new ArrayList<>();
 
@@ -111,7 +114,7 @@ class Distributer {
     private final SslContext m_sslContext;
 
     // Temporary until a distribution/affinity algorithm is written
-    private int m_nextConnection = 0;
+    private final AtomicInteger m_nextConnection = new AtomicInteger(0);
 
     private final boolean m_useMultipleThreads;
     private final boolean m_useClientAffinity;
@@ -134,9 +137,10 @@ class Distributer {
         }
     }
 
-    private final Map<Integer, NodeConnection> m_partitionMasters = new HashMap<>();
-    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new HashMap<>();
-    private final Map<Integer, NodeConnection> m_hostIdToConnection = new HashMap<>();
+    // Routing maps are only modified while holding the distributer lock, but are read without it from queue()
+    private final Map<Integer, NodeConnection> m_partitionMasters = new ConcurrentHashMap<>();
+    private final Map<Integer, NodeConnection[]> m_partitionReplicas = new ConcurrentHashMap<>();
+    private final Map<Integer, NodeConnection> m_hostIdToConnection = new ConcurrentHashMap<>();
     private final AtomicReference<ImmutableSortedMap<String, Procedure>> m_procedureInfo =
                                 new AtomicReference<ImmutableSortedMap<String, Procedure>>();
     private final AtomicReference<ImmutableSet<Integer>> m_partitionKeys = new AtomicReference<ImmutableSet<Integer>>();
@@ -144,19 +148,22 @@ class Distributer {
     private final AtomicReference<ClientResponse> m_partitionUpdateStatus = new AtomicReference<ClientResponse>();
 
     //This is the instance of the Hashinator we picked from TOPO used only for client affinity.
-    private HashinatorLite m_hashinator = null;
+    private volatile HashinatorLite m_hashinator = null;
     //This is a global timeout that will be used if a per-procedure timeout is not provided with the procedure call.
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
-    private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
-        new HashMap<>();
+    private final ConcurrentHashMap<Integer, ClientAffinityStats> m_clientAffinityStats =
+        new ConcurrentHashMap<>();
 
     public final RateLimiter m_rateLimiter = new RateLimiter();
 
     private final AtomicReference<ImmutableSet<Integer>> m_unconnectedHosts = new AtomicReference<ImmutableSet<Integer>>();
     private AtomicBoolean m_createConnectionUponTopoChangeInProgress = new AtomicBoolean(false);
     private boolean m_topologyChangeAware;
+    // Write batching is disabled when the window is 0, see ClientConfig.setWriteBatching
+    private long m_writeBatchWindowNanos = 0;
+    private int m_writeBatchMaxBytes = ClientConfig.DEFAULT_WRITE_BATCH_MAX_BYTES;
 
     //private final Timer m_timer;
     private final ScheduledExecutorService m_ex =
@@ -320,16 +327,10 @@ class Distributer {
         @Override
         public void run() {
             try {
-                // make a threadsafe copy of all connections
-                ArrayList<NodeConnection> connections = new ArrayList<>();
-                synchronized (Distributer.this) {
-                    connections.addAll(m_connections);
-                }
-
                 final long nowNanos = System.nanoTime();
 
-                // for each connection
-                for (final NodeConnection c : connections) {
+                // for each connection, iteration is over a snapshot so no lock is needed
+                for (final NodeConnection c : m_connections) {
                     // check for connection age
                     final long sinceLastResponse = Math.max(1, nowNanos - c.m_lastResponseTimeNanos);
 
@@ -347,9 +348,7 @@ class Distributer {
                     }
 
                     // for each outstanding procedure
-                    for (final Map.Entry<Long, CallbackBookeeping> e : c.m_callbacks.entrySet()) {
-                        final long handle = e.getKey();
-                        final CallbackBookeeping cb = e.getValue();
+                    for (final CallbackBookeeping cb : c.m_callbacks.snapshot()) {
 
                         // if the timeout is expired, call the callback and remove the
                         // bookeeping data
@@ -363,7 +362,7 @@ class Distributer {
                                 continue;
                             }
 
-                            c.handleTimedoutCallback(handle, nowNanos);
+                            c.handleTimedoutCallback(cb.handle, nowNanos);
                         }
                     }
                 }
@@ -389,8 +388,9 @@ class Distributer {
         return false;
     }
 
-    class CallbackBookeeping {
-        public CallbackBookeeping(long timestampNanos, ProcedureCallback callback, String name, long timeoutNanos, boolean ignoreBackpressure) {
+    class CallbackBookeeping extends CallbackTable.Entry {
+        public CallbackBookeeping(long handle, long timestampNanos, ProcedureCallback callback, String name, long timeoutNanos, boolean ignoreBackpressure) {
+            super(handle);
             assert(callback != null);
             this.timestampNanos = timestampNanos;
             this.callback = callback;
@@ -408,7 +408,25 @@ class Distributer {
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final ConcurrentMap<Long, CallbackBookeeping> m_callbacks = new ConcurrentHashMap<>();
+        private final CallbackTable<CallbackBookeeping> m_callbacks = new CallbackTable<>();
+        // invocations waiting to be written as one batch, only used when write batching is enabled
+        private final Object m_batchLock = new Object();
+        private final ArrayList<DeferredSerialization> m_pendingBatch = new ArrayList<>();
+        private int m_pendingBatchBytes = 0;
+        private ScheduledFuture<?> m_batchFlush = null;
+        private final AtomicLong m_writeBatches = new AtomicLong(0);
+        private final AtomicLong m_batchedInvocations = new AtomicLong(0);
+        private final Runnable m_flushBatch = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (m_batchLock) {
+                    m_batchFlush = null;
+                    if (!m_pendingBatch.isEmpty()) {
+                        writeBatch(takePendingBatch());
+                    }
+                }
+            }
+        };
         private final NonBlockingHashMap<String, ClientStats> m_stats = new NonBlockingHashMap<>();
         private Connection m_connection;
         private volatile boolean m_isConnected = true;
@@ -425,7 +443,7 @@ class Distributer {
          * never be rejected such as those submitted from within a callback thread or
          * generated internally
          */
-        public void createWork(final long nowNanos, long handle, String name, ByteBuffer c,
+        public void createWork(final long nowNanos, long handle, String name, DeferredSerialization c,
                 ProcedureCallback callback, boolean ignoreBackpressure, long timeoutNanos) {
             assert(callback != null);
 
@@ -452,19 +470,20 @@ class Distributer {
                  * It's possible we need to timeout because it took too long to get
                  * the transaction out on the wire due to max outstanding
                  */
+                c.cancel();
                 final long deltaNanos = Math.max(1, System.nanoTime() - nowNanos);
                 invokeCallbackWithTimeout(name, callback, deltaNanos, afterRateLimitNanos, timeoutNanos, handle, ignoreBackpressure);
                 return;
             }
 
-            assert(m_callbacks.containsKey(handle) == false);
+            assert(m_callbacks.contains(handle) == false);
 
             //Drain needs to know when all callbacks have been invoked
             final int callbacksToInvoke = m_callbacksToInvoke.incrementAndGet();
             assert(callbacksToInvoke >= 0);
 
             //Optimistically submit the task
-            m_callbacks.put(handle, new CallbackBookeeping(nowNanos, callback, name, timeoutNanos, ignoreBackpressure));
+            m_callbacks.put(new CallbackBookeeping(handle, nowNanos, callback, name, timeoutNanos, ignoreBackpressure));
 
             //Schedule the timeout to fire relative to the amount of time
             //spent getting to this point. Might fire immediately
@@ -479,6 +498,7 @@ class Distributer {
 
             //Check for disconnect
             if (!m_isConnected) {
+                c.cancel();
                 //Check if the disconnect or expiration already handled the callback
                 if (m_callbacks.remove(handle) == null) {
                     return;
@@ -501,20 +521,122 @@ class Distributer {
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
                 return;
             } else {
+                enqueueInvocation(c);
+            }
+        }
+
+        /*
+         * Without batching each invocation is its own write. With batching invocations are
+         * collected until the batch reaches the byte budget or the window expires, and the batch
+         * goes to the write stream as one gathering write, which takes the write stream lock and
+         * wakes the network thread once for the whole batch.
+         */
+        private void enqueueInvocation(DeferredSerialization c) {
+            if (m_writeBatchWindowNanos <= 0) {
                 m_connection.writeStream().enqueue(c);
+                return;
+            }
+
+            int size = 0;
+            try {
+                size = c.getSerializedSize();
+            } catch (IOException e) {
+                Throwables.propagate(e);
+            }
+            boolean flushNow = false;
+            synchronized (m_batchLock) {
+                // The connection dropped after createWork checked, nothing will write the batch
+                if (!m_isConnected) {
+                    c.cancel();
+                    return;
+                }
+                m_pendingBatch.add(c);
+                m_pendingBatchBytes += size;
+                if (m_pendingBatchBytes >= m_writeBatchMaxBytes) {
+                    writeBatch(takePendingBatch());
+                } else if (m_batchFlush == null) {
+                    try {
+                        m_batchFlush = m_ex.schedule(m_flushBatch, m_writeBatchWindowNanos, TimeUnit.NANOSECONDS);
+                    } catch (RejectedExecutionException ree) {
+                        // Shutting down, don't strand the invocation
+                        flushNow = true;
+                    }
+                }
+            }
+
+            if (flushNow) {
+                m_flushBatch.run();
+            }
+        }
+
+        /*
+         * The connection is gone, so the pending batch will never be written. Cancel the
+         * flush and the invocations, which releases their buffers. Their callbacks are
+         * invoked with CONNECTION_LOST with the rest of the outstanding ones.
+         */
+        private void discardPendingBatch() {
+            synchronized (m_batchLock) {
+                if (m_batchFlush != null) {
+                    m_batchFlush.cancel(false);
+                    m_batchFlush = null;
+                }
+                for (DeferredSerialization ds : takePendingBatch()) {
+                    ds.cancel();
+                }
             }
         }
 
+        // Must hold m_batchLock
+        private DeferredSerialization[] takePendingBatch() {
+            DeferredSerialization batch[] = m_pendingBatch.toArray(new DeferredSerialization[m_pendingBatch.size()]);
+            m_pendingBatch.clear();
+            m_pendingBatchBytes = 0;
+            return batch;
+        }
+
+        /*
+         * Must hold m_batchLock, batches reach the write stream in the order they were taken
+         * so a timer flush can't overtake the invocations of a later full batch
+         */
+        private void writeBatch(final DeferredSerialization batch[]) {
+            m_connection.writeStream().enqueue(new DeferredSerialization() {
+                @Override
+                public void serialize(ByteBuffer outbuf) throws IOException {
+                    for (DeferredSerialization ds : batch) {
+                        ds.serialize(outbuf);
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    for (DeferredSerialization ds : batch) {
+                        ds.cancel();
+                    }
+                }
+
+                @Override
+                public int getSerializedSize() throws IOException {
+                    int size = 0;
+                    for (DeferredSerialization ds : batch) {
+                        size += ds.getSerializedSize();
+                    }
+                    return size;
+                }
+            });
+            m_writeBatches.incrementAndGet();
+            m_batchedInvocations.addAndGet(batch.length);
+        }
+
         /*
          * For high precision timeouts, submit a discrete task to a scheduled
          * executor service to time out the transaction. The timeout task
-         * when run checks if the task is still present in the concurrent map
-         * of tasks and removes it. If it wins the race to remove the map
+         * when run checks if the task is still present in the callback table
+         * and removes it. If it wins the race to remove it from the table
          * then the transaction will be timed out even if a response is received
          * at the same time.
          *
          * This will race with the periodic task that checks lower resolution timeouts
-         * and it is fine, the concurrent map makes sure each callback is handled exactly once
+         * and it is fine, the callback table makes sure each callback is handled exactly once
          */
         void submitDiscreteTimeoutTask(final long handle, long timeoutNanos) {
             m_ex.schedule(new Runnable() {
@@ -677,7 +799,7 @@ class Distributer {
             }
 
             //Race with expiration thread to be the first to remove the callback
-            //from the map and process it
+            //from the table and process it
             final CallbackBookeeping stuff = m_callbacks.remove(response.getClientHandle());
 
             // presumably (hopefully) this is a response for a timed-out message
@@ -747,6 +869,7 @@ class Distributer {
         public void stopping(Connection c) {
             super.stopping(c);
             m_isConnected = false;
+            discardPendingBatch();
             //Prevent queueing of new work to this connection
             synchronized (Distributer.this) {
                 /*
@@ -795,6 +918,7 @@ class Distributer {
                 }
 
                 m_connections.remove(this);
+                m_connectionArray = m_connections.toArray(new NodeConnection[0]);
                 //Notify listeners that a connection has been lost
                 for (ClientStatusListenerExt s : m_listeners) {
                     s.connectionLost(
@@ -837,12 +961,11 @@ class Distributer {
                         ClientResponse.CONNECTION_LOST, new VoltTable[0],
                         "Connection to database host (" + m_connection.getHostnameAndIPAndPort() +
                 ") was lost before a response was received");
-            for (Map.Entry<Long, CallbackBookeeping> e : m_callbacks.entrySet()) {
+            for (CallbackBookeeping callBk : m_callbacks.snapshot()) {
                 //Check for race with other threads
-                if (m_callbacks.remove(e.getKey()) == null) {
+                if (m_callbacks.remove(callBk.handle) == null) {
                     continue;
                 }
-                final CallbackBookeeping callBk = e.getValue();
                 try {
                     callBk.callback.clientCallback(r);
                 }
@@ -954,9 +1077,11 @@ class Distributer {
         } else {
             m_cipherService = null;
         }
-        m_network = new VoltNetworkPool(
-                m_useMultipleThreads ? Math.max(1, CoreUtils.availableProcessors() / 4 ) : 1,
-                1, null, "Client");
+        final int networkThreads = m_useMultipleThreads ? Math.max(1, CoreUtils.availableProcessors() / 4 ) : 1;
+        if (m_cipherService != null) {
+            m_cipherService.scaleForNetworkThreads(networkThreads);
+        }
+        m_network = new VoltNetworkPool(networkThreads, 1, null, "Client");
         m_network.start();
         m_procedureCallTimeoutNanos= procedureCallTimeoutNanos;
         m_connectionResponseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectionResponseTimeoutMS);
@@ -1046,6 +1171,7 @@ class Distributer {
             m_buildString = (String)socketChannelAndInstanceIdAndBuildString[2];
 
             m_connections.add(cxn);
+            m_connectionArray = m_connections.toArray(new NodeConnection[0]);
         }
 
         if (m_useClientAffinity) {
@@ -1087,7 +1213,7 @@ class Distributer {
             cxn.createWork(System.nanoTime(),
                     spi.getHandle(),
                     spi.getProcName(),
-                    serializeSPI(spi),
+                    spi.toSerialization(),
                     new SubscribeCallback(),
                     true,
                     USE_DEFAULT_CLIENT_TIMEOUT);
@@ -1097,7 +1223,7 @@ class Distributer {
             cxn.createWork(System.nanoTime(),
                     spi.getHandle(),
                     spi.getProcName(),
-                    serializeSPI(spi),
+                    spi.toSerialization(),
                     new TopoUpdateCallback(),
                     true,
                     USE_DEFAULT_CLIENT_TIMEOUT);
@@ -1110,7 +1236,7 @@ class Distributer {
                 cxn.createWork(System.nanoTime(),
                         spi.getHandle(),
                         spi.getProcName(),
-                        serializeSPI(spi),
+                        spi.toSerialization(),
                         new ProcUpdateCallback(),
                         true,
                         USE_DEFAULT_CLIENT_TIMEOUT);
@@ -1135,7 +1261,7 @@ class Distributer {
      * @throws NoConnectionsException
      */
     boolean queue(
-            ProcedureInvocation invocation,
+            RoutableInvocation invocation,
             ProcedureCallback cb,
             final boolean ignoreBackpressure, final long nowNanos, final long timeoutNanos)
             throws NoConnectionsException {
@@ -1146,131 +1272,139 @@ class Distributer {
         boolean backpressure = true;
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * No lock is taken to pick a connection. The connection array, the routing maps
+         * and the hashinator are published for lock free reads, a topology update racing
+         * with this call can at worst route it to a connection that is no longer the master.
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
+        final NodeConnection[] connections = m_connectionArray;
+        final int totalConnections = connections.length;
 
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
-            }
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways. This is where we guess partition based on client
-             * affinity and known topology (hashinator initialized).
-             */
-            if (m_useClientAffinity && (m_hashinator != null)) {
-                final ImmutableSortedMap<String, Procedure> procedures = m_procedureInfo.get();
-                Procedure procedureInfo = null;
-                if (procedures != null) {
-                    procedureInfo = procedures.get(invocation.getProcName());
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways. This is where we guess partition based on client
+         * affinity and known topology (hashinator initialized).
+         */
+        final HashinatorLite hashinator = m_hashinator;
+        if (m_useClientAffinity && (hashinator != null)) {
+            final ImmutableSortedMap<String, Procedure> procedures = m_procedureInfo.get();
+            Procedure procedureInfo = null;
+            if (procedures != null) {
+                procedureInfo = procedures.get(invocation.getProcName());
+            }
+            Integer hashedPartition = -1;
+
+            if (procedureInfo != null) {
+                hashedPartition = Constants.MP_INIT_PID;
+                if (( ! procedureInfo.multiPart) &&
+                    // User may have passed too few parameters to allow dispatching.
+                    // Avoid an indexing error here to fall through to the proper ProcCallException.
+                        (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
+                    hashedPartition = hashinator.getHashedPartitionForParameter(
+                            procedureInfo.partitionParameterType,
+                            invocation.getPartitionParamValue(procedureInfo.partitionParameter));
                 }
-                Integer hashedPartition = -1;
-
-                if (procedureInfo != null) {
-                    hashedPartition = Constants.MP_INIT_PID;
-                    if (( ! procedureInfo.multiPart) &&
-                        // User may have passed too few parameters to allow dispatching.
-                        // Avoid an indexing error here to fall through to the proper ProcCallException.
-                            (procedureInfo.partitionParameter < invocation.getPassedParamCount())) {
-                        hashedPartition = m_hashinator.getHashedPartitionForParameter(
-                                procedureInfo.partitionParameterType,
-                                invocation.getPartitionParamValue(procedureInfo.partitionParameter));
+                /*
+                 * If the procedure is read only and single part and the user wants it, load balance across replicas
+                 * This is probably slower for SAFE consistency.
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly && m_sendReadsToReplicasBytDefaultIfCAEnabled) {
+                    NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = pickLeastLoadedReplica(partitionReplicas);
+                        if (cxn != null && (!cxn.hadBackPressure() || ignoreBackpressure)) {
+                            backpressure = false;
+                        }
                     }
+                } else {
                     /*
-                     * If the procedure is read only and single part and the user wants it, load balance across replicas
-                     * This is probably slower for SAFE consistency.
+                     * For writes or SAFE reads, this is the best way to go
                      */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly && m_sendReadsToReplicasBytDefaultIfCAEnabled) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure, make sure it's still connected
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure() && nc.m_isConnected) {
-                                        cxn = nc;
-                                        break;
-                                    }
-                                }
-                            }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
-                        }
-                    } else {
-                        /*
-                         * For writes or SAFE reads, this is the best way to go
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
-                            backpressure = false;
-                        }
+                    cxn = m_partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        backpressure = false;
                     }
                 }
-                if (cxn != null && !cxn.m_isConnected) {
-                    // Would be nice to log something here
-                    // Client affinity picked a connection that was actually disconnected.  Reset to null
-                    // and let the round-robin choice pick a connection
-                    cxn = null;
-                }
-                ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
-                if (stats == null) {
-                    stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
-                    m_clientAffinityStats.put(hashedPartition, stats);
+            }
+            if (cxn != null && !cxn.m_isConnected) {
+                // Would be nice to log something here
+                // Client affinity picked a connection that was actually disconnected.  Reset to null
+                // and let the round-robin choice pick a connection
+                cxn = null;
+            }
+            ClientAffinityStats stats = m_clientAffinityStats.get(hashedPartition);
+            if (stats == null) {
+                stats = new ClientAffinityStats(hashedPartition, 0, 0, 0, 0);
+                ClientAffinityStats existing = m_clientAffinityStats.putIfAbsent(hashedPartition, stats);
+                if (existing != null) {
+                    stats = existing;
                 }
-                if (cxn != null) {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addAffinityRead();
-                    }
-                    else {
-                        stats.addAffinityWrite();
-                    }
+            }
+            if (cxn != null) {
+                if (procedureInfo != null && procedureInfo.readOnly) {
+                    stats.addAffinityRead();
                 }
-                // account these here because we lose the partition ID and procedure info once we
-                // bust out of this scope.
                 else {
-                    if (procedureInfo != null && procedureInfo.readOnly) {
-                        stats.addRrRead();
-                    }
-                    else {
-                        stats.addRrWrite();
-                    }
+                    stats.addAffinityWrite();
                 }
             }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
-                        backpressure = false;
-                        break;
-                    }
+            // account these here because we lose the partition ID and procedure info once we
+            // bust out of this scope.
+            else {
+                if (procedureInfo != null && procedureInfo.readOnly) {
+                    stats.addRrRead();
+                }
+                else {
+                    stats.addRrWrite();
                 }
             }
+        }
+        if (cxn == null) {
+            cxn = pickRoundRobin(connections, ignoreBackpressure);
+            backpressure = (cxn == null);
+        }
 
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        if (backpressure) {
+            final NodeConnection candidate = cxn;
+            cxn = null;
+            /*
+             * Synchronization on Distributer.this is critical to ensure that queue
+             * does not report backpressure AFTER the write stream reports that backpressure
+             * has ended thus resulting in a lost wakeup. offBackPressure notifies while holding
+             * the lock after the write stream has cleared its flag, so check the connections
+             * once more under the lock before reporting.
+             */
+            synchronized (this) {
+                if (candidate != null) {
+                    cxn = candidate.hadBackPressure() ? null : candidate;
+                } else {
+                    cxn = pickRoundRobin(m_connectionArray, ignoreBackpressure);
+                }
+                if (cxn == null) {
+                    for (ClientStatusListenerExt s : m_listeners) {
+                        s.backpressure(true);
+                    }
+                } else {
+                    backpressure = false;
                 }
             }
         }
 
         /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
+         * Do the heavy weight serialization after a connection has been picked.
+         * createWork doesn't synchronize on anything shared between connections.
          */
         if (cxn != null) {
-            ByteBuffer buf = null;
+            DeferredSerialization ds = null;
             try {
-                buf = serializeSPI(invocation);
+                ds = invocation.toSerialization();
             } catch (Exception e) {
                 Throwables.propagate(e);
             }
-            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
+            cxn.createWork(nowNanos, invocation.getClientHandle(), invocation.getProcName(), ds, cb, ignoreBackpressure, timeoutNanos);
         }
         if (m_topologyChangeAware) {
             createConnectionsUponTopologyChange();
@@ -1278,6 +1412,47 @@ class Distributer {
         return !backpressure;
     }
 
+    /*
+     * Round robin across the connections starting after the last one used, skipping any with backpressure
+     * unless it is ignored. Returns null if every connection has backpressure.
+     */
+    private NodeConnection pickRoundRobin(NodeConnection[] connections, boolean ignoreBackpressure) {
+        final int totalConnections = connections.length;
+        for (int i = 0; i < totalConnections; ++i) {
+            NodeConnection cxn = connections[Math.abs(m_nextConnection.incrementAndGet() % totalConnections)];
+            if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                return cxn;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Pick the connected replica with the fewest outstanding calls, preferring ones without
+     * backpressure. Start at a random replica so ties don't always go to the same node.
+     */
+    NodeConnection pickLeastLoadedReplica(NodeConnection partitionReplicas[]) {
+        NodeConnection best = null;
+        int bestOutstanding = Integer.MAX_VALUE;
+        boolean bestBackpressure = true;
+        final int start = ThreadLocalRandom.current().nextInt(partitionReplicas.length);
+        for (int ii = 0; ii < partitionReplicas.length; ii++) {
+            final NodeConnection nc = partitionReplicas[(start + ii) % partitionReplicas.length];
+            if (!nc.m_isConnected) {
+                continue;
+            }
+            final boolean backpressure = nc.hadBackPressure();
+            final int outstanding = nc.m_callbacksToInvoke.get();
+            if (best == null || (bestBackpressure && !backpressure) ||
+                    (bestBackpressure == backpressure && outstanding < bestOutstanding)) {
+                best = nc;
+                bestOutstanding = outstanding;
+                bestBackpressure = backpressure;
+            }
+        }
+        return best;
+    }
+
     /**
      * Shutdown the VoltNetwork allowing the Ports to close and free resources
      * like memory pools
@@ -1368,7 +1543,8 @@ class Distributer {
             long read = perConnIOStats.getSecond()[0];
             long write = perConnIOStats.getSecond()[2];
 
-            ClientIOStats cios = new ClientIOStats(conn.connectionId(), read, write);
+            ClientIOStats cios = new ClientIOStats(conn.connectionId(), read, write,
+                    conn.m_writeBatches.get(), conn.m_batchedInvocations.get());
             retval.put(conn.connectionId(), cios);
         }
 
@@ -1378,11 +1554,9 @@ class Distributer {
     Map<Integer, ClientAffinityStats> getAffinityStatsSnapshot()
     {
         Map<Integer, ClientAffinityStats> retval = new HashMap<>();
-        // these get modified under this lock in queue()
-        synchronized(this) {
-            for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
-                retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
-            }
+        // the stats are updated concurrently from queue(), clone() synchronizes with the updates
+        for (Entry<Integer, ClientAffinityStats> e : m_clientAffinityStats.entrySet()) {
+            retval.put(e.getKey(), (ClientAffinityStats)e.getValue().clone());
         }
         return retval;
     }
@@ -1458,8 +1632,9 @@ class Distributer {
             for (String site : vt.getString("Sites").split(",")) {
                 site = site.trim();
                 Integer hostId = Integer.valueOf(site.split(":")[0]);
-                if (m_hostIdToConnection.containsKey(hostId)) {
-                    connections.add(m_hostIdToConnection.get(hostId));
+                NodeConnection cxn = m_hostIdToConnection.get(hostId);
+                if (cxn != null) {
+                    connections.add(cxn);
                 } else {
                     unconnected.add(hostId);
                }
@@ -1467,8 +1642,9 @@ class Distributer {
             m_partitionReplicas.put(partition, connections.toArray(new NodeConnection[0]));
 
             Integer leaderHostId = Integer.valueOf(vt.getString("Leader").split(":")[0]);
-            if (m_hostIdToConnection.containsKey(leaderHostId)) {
-                m_partitionMasters.put(partition, m_hostIdToConnection.get(leaderHostId));
+            NodeConnection leader = m_hostIdToConnection.get(leaderHostId);
+            if (leader != null) {
+                m_partitionMasters.put(partition, leader);
             }
         }
         if (m_topologyChangeAware) {
@@ -1542,14 +1718,6 @@ class Distributer {
         return m_hashinator.getHashedPartitionForParameter(typeValue, value);
     }
 
-    private ByteBuffer serializeSPI(ProcedureInvocation pi) throws IOException {
-        ByteBuffer buf = ByteBuffer.allocate(pi.getSerializedSize() + 4);
-        buf.putInt(buf.capacity() - 4);
-        pi.flattenToBuffer(buf);
-        buf.flip();
-        return buf;
-    }
-
     long getProcedureTimeoutNanos() {
         return m_procedureCallTimeoutNanos;
     }
@@ -1604,6 +1772,11 @@ class Distributer {
         m_topologyChangeAware = topoAware;
     }
 
+    void setWriteBatching(long windowNanos, int maxBatchBytes) {
+        m_writeBatchWindowNanos = windowNanos;
+        m_writeBatchMaxBytes = maxBatchBytes;
+    }
+
     void createConnectionsUponTopologyChange() {
 
         if(!m_topologyChangeAware || m_createConnectionUponTopoChangeInProgress.get()) {
@@ -0,0 +1,378 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltdb.VoltType;
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+
+/**
+ * <p>Reusable, type specialized builder for invocations of a single procedure. Parameters are
+ * written straight into a pooled direct buffer in wire format as they are set, so there is no
+ * boxing, no parameter array and no intermediate serialization. Strings are encoded to UTF-8
+ * in place.</p>
+ *
+ * <p>Parameters must be set in order, starting from index 0. Submit the invocation with
+ * {@link ClientImpl#callProcedure(ProcedureCallback, InvocationBuilder)}. Once the invocation has
+ * been queued the buffer belongs to the network and the builder is reset, ready for the next set of
+ * parameters. If the invocation could not be queued the parameters are kept so it can be retried.</p>
+ *
+ * <p>A builder is not thread safe, use one per thread. Call {@link #release()} when a builder holding
+ * parameters that will never be submitted is abandoned, to return its buffer to the pool.</p>
+ */
+public final class InvocationBuilder implements RoutableInvocation {
+
+    private static final Charset UTF8Encoding = Charset.forName("UTF-8");
+    private static final int INITIAL_PARAMETER_SPACE = 64;
+
+    private final String m_procName;
+    private final byte m_procNameBytes[];
+    // Offsets of the parts patched just before the invocation is handed to the network
+    private final int m_handleOffset;
+    private final int m_paramCountOffset;
+    private final int m_paramsOffset;
+
+    private BBContainer m_container = null;
+    private ByteBuffer m_buf = null;
+    // Size the next buffer after the previous invocation so steady state never grows a buffer
+    private int m_lastSize;
+    private int m_paramCount = 0;
+    private int m_paramOffsets[] = new int[8];
+    private long m_clientHandle;
+
+    public InvocationBuilder(String procName) {
+        m_procName = procName;
+        m_procNameBytes = procName.getBytes(UTF8Encoding);
+        m_handleOffset = 4 + // length prefix
+                         1 + // version
+                         4 + m_procNameBytes.length; // procname
+        m_paramCountOffset = m_handleOffset +
+                             8 + // client handle
+                             1; // extension count, none are written
+        m_paramsOffset = m_paramCountOffset + 2;
+        m_lastSize = m_paramsOffset + INITIAL_PARAMETER_SPACE;
+    }
+
+    public InvocationBuilder setNull(int index) {
+        startParameter(index, 1);
+        m_buf.put(VoltType.NULL.getValue());
+        return endParameter();
+    }
+
+    public InvocationBuilder setByte(int index, byte value) {
+        startParameter(index, 2);
+        m_buf.put(VoltType.TINYINT.getValue());
+        m_buf.put(value);
+        return endParameter();
+    }
+
+    public InvocationBuilder setShort(int index, short value) {
+        startParameter(index, 3);
+        m_buf.put(VoltType.SMALLINT.getValue());
+        m_buf.putShort(value);
+        return endParameter();
+    }
+
+    public InvocationBuilder setInt(int index, int value) {
+        startParameter(index, 5);
+        m_buf.put(VoltType.INTEGER.getValue());
+        m_buf.putInt(value);
+        return endParameter();
+    }
+
+    public InvocationBuilder setLong(int index, long value) {
+        startParameter(index, 9);
+        m_buf.put(VoltType.BIGINT.getValue());
+        m_buf.putLong(value);
+        return endParameter();
+    }
+
+    public InvocationBuilder setDouble(int index, double value) {
+        startParameter(index, 9);
+        m_buf.put(VoltType.FLOAT.getValue());
+        m_buf.putDouble(value);
+        return endParameter();
+    }
+
+    /**
+     * @param micros Microseconds since the epoch, the resolution of a TIMESTAMP column
+     */
+    public InvocationBuilder setTimestamp(int index, long micros) {
+        startParameter(index, 9);
+        m_buf.put(VoltType.TIMESTAMP.getValue());
+        m_buf.putLong(micros);
+        return endParameter();
+    }
+
+    public InvocationBuilder setDecimal(int index, BigDecimal value) {
+        if (value == null) {
+            return setNull(index);
+        }
+        startParameter(index, 17);
+        m_buf.put(VoltType.DECIMAL.getValue());
+        try {
+            VoltDecimalHelper.serializeBigDecimal(value, m_buf);
+        } catch (RuntimeException e) {
+            // out of range for a DECIMAL, leave the builder as it was before this parameter
+            m_buf.position(m_paramOffsets[index]);
+            throw e;
+        }
+        return endParameter();
+    }
+
+    public InvocationBuilder setString(int index, CharSequence value) {
+        if (value == null) {
+            return setNull(index);
+        }
+        final int length = utf8Length(value);
+        startParameter(index, 5 + length);
+        m_buf.put(VoltType.STRING.getValue());
+        m_buf.putInt(length);
+        encodeUtf8(value, m_buf);
+        return endParameter();
+    }
+
+    public InvocationBuilder setVarbinary(int index, byte value[]) {
+        if (value == null) {
+            return setNull(index);
+        }
+        startParameter(index, 5 + value.length);
+        m_buf.put(VoltType.VARBINARY.getValue());
+        m_buf.putInt(value.length);
+        m_buf.put(value);
+        return endParameter();
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer, the buffer's position is not changed.
+     */
+    public InvocationBuilder setVarbinary(int index, ByteBuffer value) {
+        if (value == null) {
+            return setNull(index);
+        }
+        startParameter(index, 5 + value.remaining());
+        m_buf.put(VoltType.VARBINARY.getValue());
+        m_buf.putInt(value.remaining());
+        m_buf.put(value.duplicate());
+        return endParameter();
+    }
+
+    /**
+     * Discard any parameters that have been set and return the buffer to the pool.
+     */
+    public void release() {
+        if (m_container != null) {
+            m_container.discard();
+            m_container = null;
+            m_buf = null;
+        }
+        m_paramCount = 0;
+    }
+
+    @Override
+    public String getProcName() {
+        return m_procName;
+    }
+
+    @Override
+    public int getPassedParamCount() {
+        return m_paramCount;
+    }
+
+    @Override
+    public long getClientHandle() {
+        return m_clientHandle;
+    }
+
+    void setClientHandle(long handle) {
+        m_clientHandle = handle;
+    }
+
+    /**
+     * Decode a parameter that has been set. Only used to route the invocation when client affinity
+     * is enabled, it is the one place that creates an object for a parameter.
+     */
+    @Override
+    public Object getPartitionParamValue(int index) {
+        if (index < 0 || index >= m_paramCount) {
+            throw new IndexOutOfBoundsException("Parameter " + index + " has not been set");
+        }
+        final ByteBuffer buf = m_buf.duplicate();
+        buf.position(m_paramOffsets[index]);
+        final VoltType type = VoltType.get(buf.get());
+        switch (type) {
+        case NULL:
+            return null;
+        case TINYINT:
+            return buf.get();
+        case SMALLINT:
+            return buf.getShort();
+        case INTEGER:
+            return buf.getInt();
+        case BIGINT:
+            return buf.getLong();
+        case FLOAT:
+            return buf.getDouble();
+        case TIMESTAMP:
+            return new TimestampType(buf.getLong());
+        case DECIMAL:
+            return VoltDecimalHelper.deserializeBigDecimal(buf);
+        case STRING:
+        case VARBINARY: {
+            final byte bytes[] = new byte[buf.getInt()];
+            buf.get(bytes);
+            return type == VoltType.STRING ? new String(bytes, UTF8Encoding) : bytes;
+        }
+        default:
+            throw new IllegalStateException("Unexpected parameter type " + type);
+        }
+    }
+
+    /**
+     * Finish the invocation and hand the buffer over. The builder is reset and will
+     * take a new buffer from the pool when the next parameter is set.
+     */
+    @Override
+    public DeferredSerialization toSerialization() {
+        if (m_container == null) {
+            acquireBuffer(m_lastSize);
+        }
+        m_buf.putInt(0, m_buf.position() - 4);
+        m_buf.putLong(m_handleOffset, m_clientHandle);
+        m_buf.putShort(m_paramCountOffset, (short)m_paramCount);
+        m_buf.flip();
+        m_lastSize = m_buf.limit();
+
+        final BBContainer cont = m_container;
+        m_container = null;
+        m_buf = null;
+        m_paramCount = 0;
+        return new PooledSerialization(cont);
+    }
+
+    private void startParameter(int index, int bytes) {
+        if (index != m_paramCount) {
+            throw new IllegalArgumentException("Parameters must be set in order, expected index " +
+                    m_paramCount + " but got " + index);
+        }
+        if (index == Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many parameters");
+        }
+        if (m_container == null) {
+            acquireBuffer(Math.max(m_lastSize, m_paramsOffset + bytes));
+        } else if (m_buf.remaining() < bytes) {
+            final ByteBuffer old = m_buf;
+            final BBContainer oldContainer = m_container;
+            acquireBuffer(Math.max(old.capacity() * 2, old.position() + bytes));
+            old.flip();
+            m_buf.clear();
+            m_buf.put(old);
+            oldContainer.discard();
+        }
+        if (index == m_paramOffsets.length) {
+            int offsets[] = new int[m_paramOffsets.length * 2];
+            System.arraycopy(m_paramOffsets, 0, offsets, 0, m_paramOffsets.length);
+            m_paramOffsets = offsets;
+        }
+        m_paramOffsets[index] = m_buf.position();
+    }
+
+    /*
+     * The parameter only counts once its value has been written, so a setter
+     * that throws part way leaves the builder unchanged
+     */
+    private InvocationBuilder endParameter() {
+        m_paramCount++;
+        return this;
+    }
+
+    private void acquireBuffer(int size) {
+        m_container = DBBPool.allocateDirectAndPool(size);
+        m_buf = m_container.b();
+        // the pool rounds up, use all of it
+        m_buf.limit(m_buf.capacity());
+        m_buf.position(4);
+        m_buf.put(ProcedureInvocation.CURRENT_MOST_RECENT_VERSION);
+        m_buf.putInt(m_procNameBytes.length);
+        m_buf.put(m_procNameBytes);
+        m_buf.position(m_paramCountOffset - 1);
+        m_buf.put((byte)0); // extension count
+        m_buf.position(m_paramsOffset);
+    }
+
+    /*
+     * Same result as String.getBytes(UTF-8) without creating the array,
+     * unpaired surrogates are replaced with '?'
+     */
+    static int utf8Length(CharSequence s) {
+        final int length = s.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 1;
+                }
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    static void encodeUtf8(CharSequence s, ByteBuffer buf) {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte)c);
+            } else if (c < 0x800) {
+                buf.put((byte)(0xC0 | (c >> 6)));
+                buf.put((byte)(0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf.put((byte)(0xF0 | (cp >> 18)));
+                    buf.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+                    buf.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+                    buf.put((byte)(0x80 | (cp & 0x3F)));
+                } else {
+                    buf.put((byte)'?');
+                }
+            } else {
+                buf.put((byte)(0xE0 | (c >> 12)));
+                buf.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte)(0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.nio.ByteBuffer;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
+
+/**
+ * A serialized invocation sitting in a pooled direct buffer. The buffer goes back to
+ * the pool once it has been copied to the network or the invocation is cancelled.
+ */
+final class PooledSerialization implements DeferredSerialization {
+
+    private final BBContainer m_container;
+
+    PooledSerialization(BBContainer container) {
+        m_container = container;
+    }
+
+    @Override
+    public void serialize(ByteBuffer outbuf) {
+        outbuf.put(m_container.b());
+        m_container.discard();
+    }
+
+    @Override
+    public void cancel() {
+        m_container.discard();
+    }
+
+    @Override
+    public int getSerializedSize() {
+        return m_container.b().remaining();
+    }
+}
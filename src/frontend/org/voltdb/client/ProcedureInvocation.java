@@ -21,6 +21,9 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
 import org.voltdb.ParameterSet;
 import org.voltdb.utils.SerializationHelper;
 
@@ -28,7 +31,7 @@ import org.voltdb.utils.SerializationHelper;
  * Client stored procedure invocation object. Server uses an internal
  * format compatible with this wire protocol format.
  */
-public class ProcedureInvocation {
+public class ProcedureInvocation implements RoutableInvocation {
 
     public static final byte CURRENT_MOST_RECENT_VERSION = ProcedureInvocationType.VERSION2.getValue();
 
@@ -72,18 +75,22 @@ public class ProcedureInvocation {
         return m_clientHandle;
     }
 
+    @Override
     public String getProcName() {
         return m_procName;
     }
 
+    @Override
     public int getPassedParamCount() {
         return m_parameters.size();
     }
 
+    @Override
     public Object getPartitionParamValue(int index) {
         return m_parameters.getParam(index);
     }
 
+    @Override
     public long getClientHandle() {
         return m_clientHandle;
     }
@@ -149,4 +156,20 @@ public class ProcedureInvocation {
 
         return buf;
     }
+
+    @Override
+    public DeferredSerialization toSerialization() throws IOException {
+        final int size = getSerializedSize();
+        final BBContainer cont = DBBPool.allocateDirectAndPool(size + 4);
+        try {
+            final ByteBuffer buf = cont.b();
+            buf.putInt(size);
+            flattenToBuffer(buf);
+            buf.flip();
+        } catch (IOException | RuntimeException e) {
+            cont.discard();
+            throw e;
+        }
+        return new PooledSerialization(cont);
+    }
 }
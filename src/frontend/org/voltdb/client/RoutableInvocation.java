@@ -0,0 +1,43 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.io.IOException;
+
+import org.voltcore.utils.DeferredSerialization;
+
+/**
+ * What the {@link Distributer} needs from an invocation to route it to a connection
+ * and put it on the wire.
+ */
+interface RoutableInvocation {
+
+    public long getClientHandle();
+
+    public String getProcName();
+
+    public int getPassedParamCount();
+
+    public Object getPartitionParamValue(int index);
+
+    /**
+     * Serialize the invocation, including the length prefix. The caller takes ownership of the
+     * result and must either hand it to a write stream or cancel it.
+     */
+    public DeferredSerialization toSerialization() throws IOException;
+}
@@ -1677,6 +1677,18 @@ public class DDLCompiler {
         return true;
     }
 
+    /**
+     * A whole word match, so that names like IDX_SUBTREE keep the index type they always had.
+     */
+    private static boolean isNameRequestingBTreeIndex(String name) {
+        for (String word : name.split("_")) {
+            if (word.equalsIgnoreCase("btree")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static void addIndexToCatalog(Database db,
             Table table,
             VoltXMLElement node,
@@ -1831,6 +1843,8 @@ public class DDLCompiler {
         // - Covering cell index (geo index for CONTAINS predicates)
         // - HASH index (set in HSQL because "hash" is in the name of the
         //   constraint or the index
+        // - BTREE index, a B+tree, because "btree" is one of the underscore
+        //   separated words of the constraint or index name, e.g. IDX_T_BTREE
         // - TREE index, which is the default
         boolean isHashIndex = node.attributes.get("ishashindex").equals("true");
         if (has_geo_col) {
@@ -1849,6 +1863,10 @@ public class DDLCompiler {
             }
             index.setType(IndexType.HASH_TABLE.getValue());
         }
+        else if (isNameRequestingBTreeIndex(name)) {
+            index.setType(IndexType.BTREE.getValue());
+            index.setCountable(true);
+        }
         else {
             index.setType(IndexType.BALANCED_TREE.getValue());
             index.setCountable(true);
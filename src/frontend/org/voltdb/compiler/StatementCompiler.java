@@ -135,6 +135,7 @@ public abstract class StatementCompiler {
                 catalogStmt.setIscontentdeterministic(previousStatement.getIscontentdeterministic());
                 catalogStmt.setIsorderdeterministic(previousStatement.getIsorderdeterministic());
                 catalogStmt.setNondeterminismdetail(previousStatement.getNondeterminismdetail());
+                catalogStmt.setUsescurrenttime(previousStatement.getUsescurrenttime());
                 catalogStmt.setQuerytype(previousStatement.getQuerytype());
                 catalogStmt.setReadonly(previousStatement.getReadonly());
                 catalogStmt.setReplicatedtabledml(previousStatement.getReplicatedtabledml());
@@ -242,6 +243,7 @@ public abstract class StatementCompiler {
             catalogStmt.setIscontentdeterministic(contentDeterministic);
             String nondeterminismDetail = plan.nondeterminismDetail();
             catalogStmt.setNondeterminismdetail(nondeterminismDetail);
+            catalogStmt.setUsescurrenttime(plan.usesCurrentTime());
 
             catalogStmt.setSeqscancount(plan.countSeqScans());
 
@@ -314,6 +314,7 @@ public class VoltProjectBuilder {
     private Integer m_elasticDuration = null;
     private Integer m_queryTimeout = null;
     private Integer m_procedureLogThreshold = null;
+    private Integer m_resultCacheMaxEntries = null;
     private String m_rssLimit = null;
     private String m_snmpRssLimit = null;
     private Integer m_resourceCheckInterval = null;
@@ -339,6 +340,11 @@ public class VoltProjectBuilder {
         return this;
     }
 
+    public VoltProjectBuilder setResultCache(int maxEntries) {
+        m_resultCacheMaxEntries = maxEntries;
+        return this;
+    }
+
     public VoltProjectBuilder setRssLimit(String limit) {
         m_rssLimit = limit;
         return this;
@@ -1370,6 +1376,12 @@ public class VoltProjectBuilder {
             procedure.setLoginfo(m_procedureLogThreshold);
             systemSettingType.setProcedure(procedure);
         }
+        if (m_resultCacheMaxEntries != null) {
+            SystemSettingsType.Resultcache resultCache = factory.createSystemSettingsTypeResultcache();
+            resultCache.setEnabled(true);
+            resultCache.setMaxentries(m_resultCacheMaxEntries);
+            systemSettingType.setResultcache(resultCache);
+        }
         if (m_rssLimit != null || m_snmpRssLimit != null) {
             ResourceMonitorType monitorType = initializeResourceMonitorType(systemSettingType, factory);
             Memorylimit memoryLimit = factory.createResourceMonitorTypeMemorylimit();
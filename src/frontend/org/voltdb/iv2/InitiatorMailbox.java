@@ -49,6 +49,7 @@ import org.voltdb.messaging.Iv2RepairLogResponseMessage;
 import org.voltdb.messaging.MigratePartitionLeaderMessage;
 import org.voltdb.messaging.RejoinMessage;
 import org.voltdb.messaging.RepairLogTruncationMessage;
+import org.voltdb.messaging.SpReplicationBatchMessage;
 
 import com.google_voltpatches.common.base.Supplier;
 
@@ -315,6 +316,10 @@ public class InitiatorMailbox implements Mailbox
 
     protected void deliverInternal(VoltMessage message) {
         assert(lockingVows());
+        if (message instanceof SpReplicationBatchMessage) {
+            deliverReplicationBatch((SpReplicationBatchMessage)message);
+            return;
+        }
         logRxMessage(message);
         boolean canDeliver = m_scheduler.sequenceForReplay(message);
         if (message instanceof Iv2InitiateTaskMessage) {
@@ -423,6 +428,12 @@ public class InitiatorMailbox implements Mailbox
             return false;
         }
 
+        // Reads the client interface routed to this replica, see SpScheduler.REPLICA_READS
+        if (SpScheduler.REPLICA_READS && message.isReadOnly() && !m_scheduler.isLeader()
+                && m_scheduler instanceof SpScheduler) {
+            return false;
+        }
+
         if (m_scheduler.isLeader() && m_migratePartitionLeaderStatus != MigratePartitionLeaderStatus.TXN_RESTART) {
             //At this point, the message is sent to partition leader
             return false;
@@ -487,6 +498,22 @@ public class InitiatorMailbox implements Mailbox
         return null;
     }
 
+    // Unpack a batch of initiations from the leader, or of responses from a replica,
+    // and handle each message as if it had arrived on its own.
+    private void deliverReplicationBatch(SpReplicationBatchMessage batch) {
+        final boolean spScheduler = m_scheduler instanceof SpScheduler;
+        if (spScheduler) {
+            ((SpScheduler)m_scheduler).startReplicationBatch();
+        }
+        for (VoltMessage message : batch.getMessages()) {
+            message.m_sourceHSId = batch.m_sourceHSId;
+            deliverInternal(message);
+        }
+        if (spScheduler) {
+            ((SpScheduler)m_scheduler).endReplicationBatch();
+        }
+    }
+
     @Override
     public void deliverFront(VoltMessage message)
     {
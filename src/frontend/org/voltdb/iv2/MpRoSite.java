@@ -39,6 +39,7 @@ import org.voltdb.PartitionDRGateway;
 import org.voltdb.PostGISBackend;
 import org.voltdb.PostgreSQLBackend;
 import org.voltdb.ProcedureRunner;
+import org.voltdb.ResultCache;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.SiteSnapshotConnection;
 import org.voltdb.StatsSelector;
@@ -108,6 +109,12 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
         throw new RuntimeException("Not needed for RO MP Site, shouldn't be here.");
     }
 
+    @Override
+    public ResultCache getResultCache()
+    {
+        return null;
+    }
+
     SiteProcedureConnection getSiteProcedureConnection()
     {
         return this;
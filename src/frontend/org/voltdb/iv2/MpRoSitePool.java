@@ -17,6 +17,8 @@
 
 package org.voltdb.iv2;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -37,12 +39,20 @@ import org.voltdb.StarvationTracker;
  * Provide a pool of MP Read-only sites to do MP RO work.
  * This should be owned by the MpTransactionTaskQueue and expects all operations
  * to be done while holding its lock.
+ *
+ * The pool grows one site at a time while reads are waiting, up to the maximum size.
+ * Idle sites beyond the peak demand seen over the last trim interval are shut down.
+ * While the host's load average is above its core count, no more reads are started
+ * than there are cores, so concurrent reads don't slow each other down further.
  */
 class MpRoSitePool {
     final static VoltLogger tmLog = new VoltLogger("TM");
 
+    // Every site owns a full EE, so hosts with many cores raise this with -DmpiReadPoolSize
     static int DEFAULT_MAX_POOL_SIZE = 20;
     static int INITIAL_POOL_SIZE = 1;
+    static long TRIM_INTERVAL_MS = Long.getLong("MPI_READ_POOL_TRIM_INTERVAL_MS", 60 * 1000);
+    static long LOAD_CHECK_INTERVAL_MS = 1000;
 
     class MpRoSiteContext {
         final private SiteTaskerQueue m_queue;
@@ -113,6 +123,14 @@ class MpRoSitePool {
     private final int m_poolSize;
     private volatile boolean m_shuttingDown = false;
 
+    // Most sites busy at once since the last trim
+    private int m_peakBusy = 0;
+    private long m_lastTrimTime = System.currentTimeMillis();
+    private final int m_cpuCount = CoreUtils.availableProcessors();
+    private final OperatingSystemMXBean m_osBean = ManagementFactory.getOperatingSystemMXBean();
+    private boolean m_cpuSaturated = false;
+    private long m_lastLoadCheckTime = 0;
+
     MpRoSitePool(
             long siteId,
             BackendTarget backend,
@@ -138,12 +156,7 @@ class MpRoSitePool {
 
         // Construct the initial pool
         for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
-            MpRoSiteContext site = new MpRoSiteContext(m_siteId,
-                    m_backend,
-                    m_catalogContext,
-                    m_partitionId,
-                    m_initiatorMailbox,
-                    m_poolThreadFactory);
+            MpRoSiteContext site = createSiteContext();
             m_idleSites.push(site);
             m_allSites.add(site);
         }
@@ -208,7 +221,43 @@ class MpRoSitePool {
         if (m_shuttingDown) {
             return false;
         }
-        return (!m_idleSites.isEmpty() || m_busySites.size() < m_poolSize);
+        return m_busySites.size() < getConcurrencyLimit();
+    }
+
+    /**
+     * The number of reads that may run at once, the pool size unless the host is CPU bound.
+     */
+    int getConcurrencyLimit()
+    {
+        final long now = System.currentTimeMillis();
+        if (now - m_lastLoadCheckTime >= LOAD_CHECK_INTERVAL_MS) {
+            m_lastLoadCheckTime = now;
+            // Negative if the platform doesn't provide it
+            final double load = getSystemLoadAverage();
+            m_cpuSaturated = load > m_cpuCount;
+        }
+        if (m_cpuSaturated) {
+            return Math.min(m_poolSize, m_cpuCount);
+        }
+        return m_poolSize;
+    }
+
+    double getSystemLoadAverage()
+    {
+        return m_osBean.getSystemLoadAverage();
+    }
+
+    /**
+     * Start a new site with the current catalog
+     */
+    MpRoSiteContext createSiteContext()
+    {
+        return new MpRoSiteContext(m_siteId,
+                m_backend,
+                m_catalogContext,
+                m_partitionId,
+                m_initiatorMailbox,
+                m_poolThreadFactory);
     }
 
     /**
@@ -217,29 +266,26 @@ class MpRoSitePool {
      */
     boolean doWork(long txnId, TransactionTask task)
     {
-        boolean retval = canAcceptWork();
-        if (!retval) {
+        if (m_shuttingDown) {
             return false;
         }
-        MpRoSiteContext site;
-        // Repair case
-        if (m_busySites.containsKey(txnId)) {
-            site = m_busySites.get(txnId);
+        MpRoSiteContext site = m_busySites.get(txnId);
+        // Repair case, the site already running the transaction takes it regardless of the limit
+        if (site != null) {
+            site.offer(task);
+            return true;
         }
-        else {
-            if (m_idleSites.isEmpty()) {
-                MpRoSiteContext newSite = new MpRoSiteContext(m_siteId,
-                        m_backend,
-                        m_catalogContext,
-                        m_partitionId,
-                        m_initiatorMailbox,
-                        m_poolThreadFactory);
-                m_idleSites.push(newSite);
-                m_allSites.add(newSite);
-            }
-            site = m_idleSites.pop();
-            m_busySites.put(txnId, site);
+        if (!canAcceptWork()) {
+            return false;
         }
+        if (m_idleSites.isEmpty()) {
+            MpRoSiteContext newSite = createSiteContext();
+            m_idleSites.push(newSite);
+            m_allSites.add(newSite);
+        }
+        site = m_idleSites.pop();
+        m_busySites.put(txnId, site);
+        m_peakBusy = Math.max(m_peakBusy, m_busySites.size());
         site.offer(task);
         return true;
     }
@@ -268,6 +314,32 @@ class MpRoSitePool {
             site.shutdown();
             m_allSites.remove(site);
         }
+        trimIdleSites();
+    }
+
+    /**
+     * Shut down the idle sites that weren't needed at the peak of the last trim interval.
+     * The least recently used sites are at the bottom of the idle stack.
+     */
+    private void trimIdleSites()
+    {
+        final long now = System.currentTimeMillis();
+        if (now - m_lastTrimTime < TRIM_INTERVAL_MS) {
+            return;
+        }
+        m_lastTrimTime = now;
+        final int keep = Math.max(INITIAL_POOL_SIZE, m_peakBusy);
+        int trimmed = 0;
+        while (m_busySites.size() + m_idleSites.size() > keep && !m_idleSites.isEmpty()) {
+            MpRoSiteContext site = m_idleSites.pollLast();
+            site.shutdown();
+            m_allSites.remove(site);
+            trimmed++;
+        }
+        if (trimmed > 0 && tmLog.isDebugEnabled()) {
+            tmLog.debug("Shut down " + trimmed + " idle MPI read sites, " + m_allSites.size() + " left");
+        }
+        m_peakBusy = m_busySites.size();
     }
 
     void shutdown()
@@ -24,7 +24,6 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.json_voltpatches.JSONException;
@@ -33,6 +32,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.LongObjectHashMap;
 import org.voltdb.CatalogContext;
 import org.voltdb.CommandLog;
 import org.voltdb.SystemProcedureCatalog;
@@ -65,10 +65,10 @@ public class MpScheduler extends Scheduler
     // null if running community, fallback to MpProcedureTask
     private static final Constructor<?> NpProcedureTaskConstructor = loadNpProcedureTaskClass();
 
-    private final Map<Long, TransactionState> m_outstandingTxns =
-        new HashMap<Long, TransactionState>();
-    private final Map<Long, DuplicateCounter> m_duplicateCounters =
-        new HashMap<Long, DuplicateCounter>();
+    private final LongObjectHashMap<TransactionState> m_outstandingTxns =
+        new LongObjectHashMap<TransactionState>();
+    private final LongObjectHashMap<DuplicateCounter> m_duplicateCounters =
+        new LongObjectHashMap<DuplicateCounter>();
 
     private final List<Long> m_iv2Masters;
     private final Map<Integer, Long> m_partitionMasters;
@@ -156,11 +156,11 @@ public class MpScheduler extends Scheduler
         // Do not update DuplicateCounter upon leader migration
         if (!balanceSPI) {
             List<Long> doneCounters = new LinkedList<Long>();
-            for (Entry<Long, DuplicateCounter> entry : m_duplicateCounters.entrySet()) {
-                DuplicateCounter counter = entry.getValue();
+            for (long txnId : m_duplicateCounters.keys()) {
+                DuplicateCounter counter = m_duplicateCounters.get(txnId);
                 int result = counter.updateReplicas(m_iv2Masters);
                 if (result == DuplicateCounter.DONE) {
-                    doneCounters.add(entry.getKey());
+                    doneCounters.add(txnId);
                 }
             }
 
@@ -55,6 +55,7 @@ import org.voltdb.PartitionDRGateway;
 import org.voltdb.PostGISBackend;
 import org.voltdb.PostgreSQLBackend;
 import org.voltdb.ProcedureRunner;
+import org.voltdb.ResultCache;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.SiteSnapshotConnection;
 import org.voltdb.SnapshotDataTarget;
@@ -70,6 +71,7 @@ import org.voltdb.TableStats;
 import org.voltdb.TableStreamType;
 import org.voltdb.TheHashinator;
 import org.voltdb.TheHashinator.HashinatorConfig;
+import org.voltdb.TransactionTracer;
 import org.voltdb.TupleStreamStateInfo;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltProcedure.VoltAbortException;
@@ -84,6 +86,7 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Deployment;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
+import org.voltdb.compiler.deploymentfile.SystemSettingsType;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.dtxn.TransactionState;
 import org.voltdb.dtxn.UndoAction;
@@ -166,6 +169,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     final TableStats m_tableStats;
     final IndexStats m_indexStats;
     final MemoryStats m_memStats;
+    // Results of deterministic reads, null unless enabled in the deployment
+    final ResultCache m_resultCache;
 
     // Each execution site manages snapshot using a SnapshotSiteProcessor
     private SnapshotSiteProcessor m_snapshotter;
@@ -243,6 +248,24 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         return m_latestUndoToken;
     }
 
+    @Override
+    public ResultCache getResultCache()
+    {
+        return m_resultCache;
+    }
+
+    /*
+     * Called before anything that may change the partition's data. Read-only work
+     * never calls it, the other paths into the EE either call it or tell the cache
+     * which tables change.
+     */
+    private void invalidateResultCache()
+    {
+        if (m_resultCache != null) {
+            m_resultCache.invalidate();
+        }
+    }
+
     // Advanced in complete transaction.
     long m_lastCommittedSpHandle = 0;
     long m_spHandleForSnapshotDigest = 0;
@@ -427,6 +450,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         @Override
         public boolean activateTableStream(final int tableId, TableStreamType type, boolean undo, byte[] predicates)
         {
+            if (undo && m_resultCache != null) {
+                m_resultCache.tableWillChange(tableId);
+            }
             return m_ee.activateTableStream(tableId, type, undo ? getNextUndoToken(m_currentTxnId) : Long.MAX_VALUE, predicates);
         }
 
@@ -654,11 +680,25 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                                       m_siteId,
                                       m_indexStats);
             m_memStats = memStats;
+            SystemSettingsType.Resultcache resultCache =
+                    context.getDeployment().getSystemsettings().getResultcache();
+            if (resultCache != null && resultCache.isEnabled()) {
+                m_resultCache = new ResultCache(m_siteId, m_partitionId,
+                        resultCache.getMaxentries(), resultCache.getMaxresultsize() * 1024,
+                        resultCache.getMaxparamsize() * 1024);
+                m_resultCache.updateCatalog(context.database);
+                agent.registerStatsSource(StatsSelector.RESULTCACHE,
+                                          m_siteId,
+                                          m_resultCache);
+            } else {
+                m_resultCache = null;
+            }
         } else {
             // MPI doesn't need to track these stats
             m_tableStats = null;
             m_indexStats = null;
             m_memStats = null;
+            m_resultCache = null;
         }
     }
 
@@ -1113,6 +1153,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             VoltTable data, boolean returnUniqueViolations, boolean shouldDRStream,
             boolean undo)
     {
+        if (m_resultCache != null) {
+            m_resultCache.tableWillChange(tableId);
+        }
         // Long.MAX_VALUE is a no-op don't track undo token
         return m_ee.loadTable(tableId, data, txnId,
                 spHandle,
@@ -1131,6 +1174,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
 
     @Override
     public void setViewsEnabled(String viewNames, boolean enabled) {
+        invalidateResultCache();
         m_ee.setViewsEnabled(viewNames, enabled);
     }
 
@@ -1200,6 +1244,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             return;
         }
         if (rollback) {
+            invalidateResultCache();
             m_ee.undoUndoToken(beginUndoToken);
         }
         else {
@@ -1537,21 +1582,32 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
             boolean traceOn)
                     throws EEException
     {
-        return m_ee.executePlanFragments(
-                numFragmentIds,
-                planFragmentIds,
-                inputDepIds,
-                parameterSets,
-                determinismHash,
-                sqlTexts,
-                isWriteFrags,
-                sqlCRCs,
-                txnId,
-                spHandle,
-                m_lastCommittedSpHandle,
-                uniqueId,
-                readOnly ? Long.MAX_VALUE : getNextUndoTokenBroken(),
-                traceOn);
+        if (!readOnly && m_resultCache != null) {
+            m_resultCache.fragmentsWillRun(numFragmentIds, planFragmentIds);
+        }
+        final TransactionTracer.TraceBuffer traceBuffer = TransactionTracer.executing();
+        final long startNanos = traceBuffer == null ? 0 : System.nanoTime();
+        try {
+            return m_ee.executePlanFragments(
+                    numFragmentIds,
+                    planFragmentIds,
+                    inputDepIds,
+                    parameterSets,
+                    determinismHash,
+                    sqlTexts,
+                    isWriteFrags,
+                    sqlCRCs,
+                    txnId,
+                    spHandle,
+                    m_lastCommittedSpHandle,
+                    uniqueId,
+                    readOnly ? Long.MAX_VALUE : getNextUndoTokenBroken(),
+                    traceOn);
+        } finally {
+            if (traceBuffer != null) {
+                traceBuffer.addEngineTime(System.nanoTime() - startNanos);
+            }
+        }
     }
 
     @Override
@@ -1650,6 +1706,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         //so export data for the old generation is pushed to Java.
         //No need to quiesce as there is no rolling of generation OLD datasources will be polled and pushed until there is no more data.
         //m_ee.quiesce(m_lastCommittedSpHandle);
+        if (m_resultCache != null) {
+            m_resultCache.updateCatalog(m_context.database);
+        }
         m_ee.updateCatalog(m_context.m_genId, requiresNewExportGeneration, diffCmds);
         if (DRCatalogChange) {
             final DRCatalogCommands catalogCommands = DRCatalogDiffEngine.serializeCatalogCommandsForDr(m_context.catalog, -1);
@@ -1720,6 +1779,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     {
         Preconditions.checkNotNull(hashinator);
         m_hashinator = hashinator;
+        invalidateResultCache();
         m_ee.updateHashinator(hashinator.pGetCurrentConfig());
     }
 
@@ -1767,6 +1827,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     @Override
     public long applyBinaryLog(long txnId, long spHandle, long uniqueId, int remoteClusterId, byte log[])
             throws EEException {
+        invalidateResultCache();
         ByteBuffer paramBuffer = m_ee.getParamBufferForExecuteTask(Integer.BYTES * 2 + log.length);
         paramBuffer.putInt(1);
         paramBuffer.putInt(log.length);
@@ -1778,6 +1839,7 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     @Override
     public long applyMpBinaryLog(long txnId, long spHandle, long uniqueId, int remoteClusterId, long remoteTxnUniqueId, byte logs[])
             throws EEException {
+        invalidateResultCache();
         ByteBuffer paramBuffer = m_ee.getParamBufferForExecuteTask(logs.length);
         paramBuffer.put(logs);
         return m_ee.applyBinaryLog(paramBuffer, txnId, spHandle, m_lastCommittedSpHandle, uniqueId,
@@ -17,52 +17,208 @@
 
 package org.voltdb.iv2;
 
-import java.util.concurrent.LinkedTransferQueue;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+import org.voltcore.logging.Level;
+import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.QueueDepthTracker;
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution.
+ *
+ * Tasks are offered by any number of threads and consumed by the single site thread. The
+ * queue is a ring of preallocated slots: producers claim a sequence number with a CAS on the
+ * tail and publish the task into the slot, the site thread consumes slots in sequence order
+ * and clears them. Nothing is allocated per task.
+ *
+ * Offers are never refused, work offered to a site has to run. When the ring is full, tasks
+ * go to an overflow deque instead and every following offer goes there too until the site
+ * thread has drained both, which keeps each producer's tasks in the order they were offered.
+ * A queue that has spilled into the overflow is saturated until its depth falls back under
+ * {@link #LOW_WATER_RATIO} of the capacity. Saturation is published with
+ * {@link #isPartitionSaturated(int)} so that the client interface can stop admitting new work
+ * for the partition instead of queuing ever more of it.
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("SITE_TASK_QUEUE_CAPACITY", 16384);
+    static final double LOW_WATER_RATIO = 0.8;
+
+    // Queues on this host that are currently saturated, empty nearly all of the time.
+    // The count lets admission checks skip the set while nothing is saturated.
+    private static final Set<SiteTaskerQueue> s_saturatedQueues = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger s_saturatedCount = new AtomicInteger();
+
+    // Times the site thread spins, then yields, on a slot a producer has claimed but not yet
+    // published before it parks briefly between checks
+    private static final int PUBLISH_SPINS = 100;
+    private static final int PUBLISH_YIELDS = 100;
+    private static final long PUBLISH_PARK_NANOS = 10 * 1000;
+
+    private final AtomicReferenceArray<SiteTasker> m_ring;
+    private final int m_mask;
+    private final int m_lowWaterMark;
+    // Next sequence to be claimed by a producer
+    private final AtomicLong m_tail = new AtomicLong();
+    // Next sequence to be consumed, only written by the site thread
+    private volatile long m_head = 0;
+
+    // Tasks offered while the ring was full, guarded by this
+    private final ArrayDeque<SiteTasker> m_overflow = new ArrayDeque<SiteTasker>();
+    private volatile int m_overflowSize = 0;
+    private volatile boolean m_overflowing = false;
+    private volatile boolean m_saturated = false;
+
+    // The site thread while it is parked in take()
+    private volatile Thread m_waiter = null;
+
     private StarvationTracker m_starvationTracker;
     private QueueDepthTracker m_queueDepthTracker;
     private int m_partitionId;
 
     public SiteTaskerQueue(int partitionId) {
+        this(partitionId, DEFAULT_CAPACITY);
+    }
+
+    public SiteTaskerQueue(int partitionId, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Site task queue capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
         m_partitionId = partitionId;
+        m_ring = new AtomicReferenceArray<SiteTasker>(size);
+        m_mask = size - 1;
+        m_lowWaterMark = (int)(size * LOW_WATER_RATIO);
     }
 
     public int getPartitionId() {
         return m_partitionId;
     }
 
+    public int getCapacity() {
+        return m_ring.length();
+    }
+
     public boolean offer(SiteTasker task)
     {
         task.setQueueOfferTime();
-        // update tracker before enqueue the task
-        // prevent another thread from polling a task and decrementing
-        // the queue depth before it is incremented
-        // i.e. avoid queueDepth < 0
-        m_queueDepthTracker.offerUpdate();
-        return m_tasks.offer(task);
+        if (m_overflowing || !offerToRing(task)) {
+            offerToOverflow(task);
+        }
+        final Thread waiter = m_waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    private boolean offerToRing(SiteTasker task) {
+        long sequence;
+        do {
+            sequence = m_tail.get();
+            if (sequence - m_head >= m_ring.length()) {
+                return false;
+            }
+        } while (!m_tail.compareAndSet(sequence, sequence + 1));
+        m_ring.lazySet((int)sequence & m_mask, task);
+        return true;
+    }
+
+    private synchronized void offerToOverflow(SiteTasker task) {
+        m_overflowing = true;
+        m_overflow.addLast(task);
+        m_overflowSize = m_overflow.size();
+        if (!m_saturated) {
+            m_saturated = true;
+            s_saturatedQueues.add(this);
+            s_saturatedCount.incrementAndGet();
+            hostLog.rateLimitedLog(60, Level.WARN, null,
+                    "Task queue for partition %d is full with %d tasks, new work for the partition " +
+                    "will be refused until the queue drains.", m_partitionId, m_ring.length());
+        }
+    }
+
+    // Only called from the site thread
+    private SiteTasker pollInternal() {
+        final long head = m_head;
+        SiteTasker task = null;
+        if (head != m_tail.get()) {
+            final int slot = (int)head & m_mask;
+            task = m_ring.get(slot);
+            if (task == null) {
+                task = awaitPublished(slot);
+            }
+            m_ring.lazySet(slot, null);
+            m_head = head + 1;
+        } else if (m_overflowing) {
+            task = pollOverflow();
+        }
+        if (task != null && m_saturated && size() < m_lowWaterMark) {
+            clearSaturated();
+        }
+        return task;
+    }
+
+    /*
+     * A producer claimed the slot but hasn't published the task yet, most likely because it
+     * was descheduled in between. It will publish, so wait for it without burning the core.
+     */
+    private SiteTasker awaitPublished(int slot) {
+        SiteTasker task;
+        int attempts = 0;
+        while ((task = m_ring.get(slot)) == null) {
+            if (attempts < PUBLISH_SPINS) {
+                attempts++;
+            } else if (attempts < PUBLISH_SPINS + PUBLISH_YIELDS) {
+                attempts++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, PUBLISH_PARK_NANOS);
+            }
+        }
+        return task;
+    }
+
+    private synchronized SiteTasker pollOverflow() {
+        final SiteTasker task = m_overflow.pollFirst();
+        m_overflowSize = m_overflow.size();
+        if (m_overflowSize == 0) {
+            m_overflowing = false;
+        }
+        return task;
+    }
+
+    private synchronized void clearSaturated() {
+        if (m_saturated && size() < m_lowWaterMark) {
+            m_saturated = false;
+            s_saturatedQueues.remove(this);
+            s_saturatedCount.decrementAndGet();
+        }
     }
 
     // Block on the site tasker queue.
     public SiteTasker take() throws InterruptedException
     {
-        SiteTasker task = m_tasks.poll();
-
-        if (task == null) {
-            m_starvationTracker.beginStarvation();
-        } else {
-            m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
+        SiteTasker task = poll();
+        if (task != null) {
             return task;
         }
+        m_starvationTracker.beginStarvation();
         try {
-            task = CoreUtils.queueSpinTake(m_tasks);
+            task = awaitTask();
             // task is never null
             m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
             return task;
@@ -71,24 +227,90 @@ public class SiteTaskerQueue
         }
     }
 
+    private SiteTasker awaitTask() throws InterruptedException {
+        SiteTasker task;
+        final long spinStart = System.nanoTime();
+        while (CoreUtils.QUEUE_SPIN_MICROSECONDS > 0 &&
+                System.nanoTime() - spinStart < CoreUtils.QUEUE_SPIN_MICROSECONDS) {
+            if ((task = pollInternal()) != null) {
+                return task;
+            }
+        }
+        for (;;) {
+            // Publish the waiter before checking again so an offer racing with this either
+            // gets seen by the poll or sees the waiter and unparks it
+            m_waiter = Thread.currentThread();
+            try {
+                if ((task = pollInternal()) != null) {
+                    return task;
+                }
+                LockSupport.park(this);
+            } finally {
+                m_waiter = null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
-        SiteTasker task = m_tasks.poll();
+        SiteTasker task = pollInternal();
         if (task != null) {
             m_queueDepthTracker.pollUpdate(task.getQueueOfferTime());
         }
         return task;
     }
 
-    // Non-blocking peek on the site tasker queue.
+    // Non-blocking peek on the site tasker queue. Off the site thread the result
+    // may already have been taken by the time it is returned.
     public SiteTasker peek()
     {
-        return m_tasks.peek();
+        for (;;) {
+            final long head = m_head;
+            if (head == m_tail.get()) {
+                if (m_overflowing) {
+                    synchronized (this) {
+                        return m_overflow.peekFirst();
+                    }
+                }
+                return null;
+            }
+            final SiteTasker task = m_ring.get((int)head & m_mask);
+            if (task != null) {
+                return task;
+            }
+            // Either the site thread consumed it or the producer has yet to publish it
+        }
     }
 
     public boolean isEmpty() {
-        return m_tasks.isEmpty();
+        return m_head == m_tail.get() && !m_overflowing;
+    }
+
+    /**
+     * @return true if this queue spilled past its capacity and has not yet drained
+     * below the low water mark
+     */
+    public boolean isSaturated() {
+        return m_saturated;
+    }
+
+    /**
+     * Admission check for new work: true if a task queue on this host for the partition is saturated.
+     */
+    public static boolean isPartitionSaturated(int partitionId) {
+        if (s_saturatedCount.get() == 0) {
+            return false;
+        }
+        for (SiteTaskerQueue queue : s_saturatedQueues) {
+            if (queue.m_partitionId == partitionId) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void setStarvationTracker(StarvationTracker tracker) {
@@ -96,11 +318,13 @@ public class SiteTaskerQueue
     }
 
     public QueueDepthTracker setupQueueDepthTracker(long siteId) {
-        m_queueDepthTracker = new QueueDepthTracker(siteId, m_tasks);
+        m_queueDepthTracker = new QueueDepthTracker(siteId, this);
         return m_queueDepthTracker;
     }
 
     public int size() {
-        return m_tasks.size();
+        // Read the head first, the tail can only be ahead of it
+        final long head = m_head;
+        return (int)(m_tail.get() - head) + m_overflowSize;
     }
 }
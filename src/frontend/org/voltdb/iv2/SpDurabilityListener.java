@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.CommandLog;
 import org.voltdb.CommandLog.DurabilityListener;
+import org.voltdb.TransactionTracer;
 import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
 import org.voltdb.utils.MiscUtils;
 import org.voltdb.utils.VoltTrace;
@@ -159,6 +160,9 @@ public class SpDurabilityListener implements DurabilityListener {
                                                                                       o.getSpHandle())));
                 }
 
+                if (o instanceof SpProcedureTask && ((SpProcedureTask) o).isTraced()) {
+                    ((SpProcedureTask) o).trace(TransactionTracer.Event.DURABLE);
+                }
                 m_pendingTasks.offer(o);
                 // Make sure all queued tasks for this MP txn are released
                 if (!o.getTransactionState().isSinglePartition()) {
@@ -120,6 +120,9 @@ public class SpInitiator extends BaseInitiator implements Promotable
                 ZKUtil.joinZKPath(VoltZK.iv2appointees, Integer.toString(partition)), m_leadersChangeHandler);
         m_tickProducer = new TickProducer(m_scheduler.m_tasks);
         ((SpScheduler)m_scheduler).m_repairLog = m_repairLog;
+        if (SpScheduler.REPLICA_READS) {
+            m_repairLog.registerTransactionCommitInterest((SpScheduler)m_scheduler);
+        }
     }
 
     @Override
@@ -26,6 +26,7 @@ import org.voltcore.utils.LatencyWatchdog;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.PartitionDRGateway;
 import org.voltdb.SiteProcedureConnection;
+import org.voltdb.TransactionTracer;
 import org.voltdb.VoltTable;
 import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.client.ClientResponse;
@@ -49,12 +50,32 @@ public class SpProcedureTask extends ProcedureTask
         HOST_DEBUG_ENABLED = hostLog.isDebugEnabled();
     }
 
+    // Whether this host follows the transaction for the TransactionTracer
+    private boolean m_traced = false;
+
     public SpProcedureTask(Mailbox initiator, String procName, TransactionTaskQueue queue,
                   Iv2InitiateTaskMessage msg)
     {
        super(initiator, procName, new SpTransactionState(msg), queue);
     }
 
+    void setTraced()
+    {
+        m_traced = true;
+    }
+
+    boolean isTraced()
+    {
+        return m_traced;
+    }
+
+    void trace(TransactionTracer.Event event)
+    {
+        final Iv2InitiateTaskMessage msg = ((SpTransactionState) m_txnState).m_initiationMsg;
+        TransactionTracer.record(msg.getClientInterfaceHandle(), CoreUtils.getHostIdFromHSId(msg.getInitiatorHSId()),
+                event, System.nanoTime(), m_procName);
+    }
+
     @Override
     protected void durabilityTraceEnd() {
         final VoltTrace.TraceEventBatch traceLog = VoltTrace.log(VoltTrace.Category.SPI);
@@ -91,6 +112,10 @@ public class SpProcedureTask extends ProcedureTask
         InitiateResponseMessage response;
         int originalTimeout = siteConnection.getBatchTimeout();
         int individualTimeout = m_txnState.getInvocation().getBatchTimeout();
+        if (m_traced) {
+            TransactionTracer.beginExecution(txnState.m_initiationMsg.getClientInterfaceHandle(),
+                    CoreUtils.getHostIdFromHSId(txnState.m_initiationMsg.getInitiatorHSId()), m_procName);
+        }
         try {
             // run the procedure with a specific individual timeout
             if (BatchTimeoutOverrideType.isUserSetTimeout(individualTimeout) ) {
@@ -108,6 +133,9 @@ public class SpProcedureTask extends ProcedureTask
             m_txnState.setNeedsRollback(true);
         }
         completeInitiateTask(siteConnection);
+        if (m_traced) {
+            TransactionTracer.endExecution();
+        }
         response.m_sourceHSId = m_initiator.getHSId();
         if (txnState.m_initiationMsg != null && !(txnState.m_initiationMsg.isForReplica())) {
             response.setExecutedOnPreviousLeader(true);
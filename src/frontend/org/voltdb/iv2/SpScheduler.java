@@ -26,17 +26,14 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.HostMessenger;
@@ -44,6 +41,8 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.LongObjectHashMap;
+import org.voltcore.utils.LongPairSortedMap;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.CommandLog;
 import org.voltdb.CommandLog.DurabilityListener;
@@ -51,6 +50,7 @@ import org.voltdb.RealVoltDB;
 import org.voltdb.SnapshotCompletionInterest;
 import org.voltdb.SnapshotCompletionMonitor;
 import org.voltdb.SystemProcedureCatalog;
+import org.voltdb.TransactionTracer;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltDBInterface;
 import org.voltdb.VoltTable;
@@ -74,6 +74,7 @@ import org.voltdb.messaging.Iv2LogFaultMessage;
 import org.voltdb.messaging.MPBacklogFlushMessage;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
 import org.voltdb.messaging.RepairLogTruncationMessage;
+import org.voltdb.messaging.SpReplicationBatchMessage;
 import org.voltdb.utils.MiscUtils;
 import org.voltdb.utils.VoltTrace;
 
@@ -83,7 +84,7 @@ import com.google_voltpatches.common.primitives.Longs;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
 import com.google_voltpatches.common.util.concurrent.SettableFuture;
 
-public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
+public class SpScheduler extends Scheduler implements SnapshotCompletionInterest, TransactionCommitInterest
 {
     static final VoltLogger tmLog = new VoltLogger("TM");
     static final VoltLogger hostLog = new VoltLogger("HOST");
@@ -139,10 +140,6 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         public String toString() {
             return "[txn:" + TxnEgo.txnIdToString(m_txnId) + "(" + m_txnId + "), spHandle:" + TxnEgo.txnIdToString(m_spHandle) + "(" + m_spHandle + ")]";
         }
-
-        public boolean isSpTransaction() {
-            return (TxnEgo.getPartitionId(m_txnId) != MpInitiator.MP_INIT_PID);
-        }
     };
 
     public interface DurableUniqueIdListener {
@@ -155,10 +152,12 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     private List<Long> m_replicaHSIds = new ArrayList<>();
     long m_sendToHSIds[] = new long[0];
     private final TransactionTaskQueue m_pendingTasks;
-    private final Map<Long, TransactionState> m_outstandingTxns =
-        new HashMap<Long, TransactionState>();
-    private final TreeMap<DuplicateCounterKey, DuplicateCounter> m_duplicateCounters =
-        new TreeMap<DuplicateCounterKey, DuplicateCounter>();
+    // Touched several times per transaction, keyed by primitive txnId to avoid boxing
+    private final LongObjectHashMap<TransactionState> m_outstandingTxns =
+        new LongObjectHashMap<TransactionState>();
+    // Ordered by (txnId, spHandle), see DuplicateCounterKey
+    private final LongPairSortedMap<DuplicateCounter> m_duplicateCounters =
+        new LongPairSortedMap<DuplicateCounter>();
     // MP fragment tasks or completion tasks pending durability
     private final Map<Long, Queue<TransactionTask>> m_mpsPendingDurability =
         new HashMap<Long, Queue<TransactionTask>>();
@@ -191,6 +190,35 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
     private final boolean IS_KSAFE_CLUSTER;
 
+    // Number of consecutive SP initiations the leader forwards to its replicas in a single
+    // SpReplicationBatchMessage. 0 or 1 sends each initiation on its own.
+    static final int REPLICATION_BATCH_SIZE = Integer.getInteger("SP_REPLICATION_BATCH_SIZE", 0);
+    private int m_replicationBatchSize = REPLICATION_BATCH_SIZE;
+    // Leader: initiations waiting to be forwarded to the replicas
+    private final List<VoltMessage> m_pendingReplication = new ArrayList<VoltMessage>();
+    // Replica: responses held back until every transaction of the batch they came in completes
+    private final List<VoltMessage> m_pendingReplicaResponses = new ArrayList<VoltMessage>();
+    // Replica: transactions of the current batch that haven't responded yet, and whether
+    // the batch is still being delivered
+    private final Set<Long> m_replicationBatchOutstanding = new HashSet<Long>();
+    private boolean m_replicationBatchDelivering = false;
+
+    // Single partition reads may be routed to a local replica instead of the partition leader,
+    // see InvocationDispatcher. The replica holds each response until the leader has reported
+    // every write the read could have seen as committed on all replicas.
+    public static final boolean REPLICA_READS = Boolean.getBoolean("SP_REPLICA_READS");
+    // A replica that has more than this many received transactions left to apply stops taking reads
+    static final int REPLICA_READ_MAX_LAG = Integer.getInteger("SP_REPLICA_READ_MAX_LAG", 1000);
+    // Partitions whose replica on this host is too far behind to serve reads
+    private static final Set<Integer> s_laggingReplicas = ConcurrentHashMap.newKeySet();
+    private boolean m_replicaReads = REPLICA_READS;
+    // Replica: last write received from the leader, last one applied locally, and the
+    // highest handle the leader reported as committed everywhere
+    private long m_lastReplicatedSpHandle = Long.MIN_VALUE;
+    private long m_lastAppliedSpHandle = Long.MIN_VALUE;
+    private long m_committedSpHandle = Long.MIN_VALUE;
+    private final BufferedReadLog m_replicaReadLog = new BufferedReadLog();
+
     SpScheduler(int partitionId, SiteTaskerQueue taskQueue, SnapshotCompletionMonitor snapMonitor, boolean scoreboardEnabled)
     {
         super(partitionId, taskQueue);
@@ -200,11 +228,22 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         m_uniqueIdGenerator = new UniqueIdGenerator(partitionId, 0);
         m_bufferedReadLog = new BufferedReadLog();
         m_repairLogTruncationHandle = getCurrentTxnId();
+        m_committedSpHandle = getCurrentTxnId();
         // initialized as current txn id in order to release the initial reads into the system
         m_maxScheduledTxnSpHandle = getCurrentTxnId();
         IS_KSAFE_CLUSTER = VoltDB.instance().getKFactor() > 0;
     }
 
+    // Lets tests exercise replica reads without the system property
+    void setReplicaReads(boolean replicaReads) {
+        m_replicaReads = replicaReads;
+    }
+
+    // Lets tests exercise replication batching without the system property
+    void setReplicationBatchSize(int replicationBatchSize) {
+        m_replicationBatchSize = replicationBatchSize;
+    }
+
     public void initializeScoreboard(int siteId, Mailbox mailBox) {
         m_pendingTasks.initializeScoreboard(siteId, mailBox);
     }
@@ -212,7 +251,14 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     @Override
     public void setLeaderState(boolean isLeader)
     {
+        flushReplication();
+        flushReplicaResponses();
         super.setLeaderState(isLeader);
+        if (isLeader) {
+            // Repair is done, everything this site has applied is now committed
+            m_replicaReadLog.releaseBufferedReads(m_mailbox, Long.MAX_VALUE);
+            s_laggingReplicas.remove(m_partitionId);
+        }
         m_snapMonitor.addInterest(this);
         VoltDBInterface db = VoltDB.instance();
         if (isLeader && db instanceof RealVoltDB ) {
@@ -263,6 +309,9 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                     " on " + CoreUtils.hsIdToString(m_mailbox.getHSId())
              + " from " + CoreUtils.hsIdCollectionToString(m_replicaHSIds));
         }
+        // Anything batched so far belongs to the old replica set
+        flushReplication();
+        flushReplicaResponses();
         long[] replicasAdded = new long[0];
         if (m_replicaHSIds.size() > 0 && replicas.size() > m_replicaHSIds.size()) {
             // Remember the rejoin sites before update replicas set
@@ -281,21 +330,22 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (m_isLeader && snapshotSaveTxnId != -1) {
             // HACKY HACKY HACKY, we know at this time there will be only one fragment with this txnId, so it's safe to use
             // Long.MAX_VALUE to match the duplicate counter key with the given txn id (there is only one!)
-            Entry<DuplicateCounterKey, DuplicateCounter> snapshotFragment =
-                    m_duplicateCounters.floorEntry(new DuplicateCounterKey(snapshotSaveTxnId, Long.MAX_VALUE));
-            assert(snapshotFragment != null);
-            snapshotFragment.getValue().addReplicas(replicasAdded);
+            int snapshotFragment = m_duplicateCounters.floorIndex(snapshotSaveTxnId, Long.MAX_VALUE);
+            assert(snapshotFragment >= 0);
+            DuplicateCounter snapshotCounter = m_duplicateCounters.valueAt(snapshotFragment);
+            snapshotCounter.addReplicas(replicasAdded);
             // Forward fragment message to new replica
-            m_mailbox.send(replicasAdded, snapshotFragment.getValue().getOpenMessage());
+            m_mailbox.send(replicasAdded, snapshotCounter.getOpenMessage());
         }
         // Cleanup duplicate counters and collect DONE counters
         // in this list for further processing.
         List<DuplicateCounterKey> doneCounters = new LinkedList<DuplicateCounterKey>();
-        for (Entry<DuplicateCounterKey, DuplicateCounter> entry : m_duplicateCounters.entrySet()) {
-            DuplicateCounter counter = entry.getValue();
+        for (int ii = 0; ii < m_duplicateCounters.size(); ii++) {
+            DuplicateCounter counter = m_duplicateCounters.valueAt(ii);
             int result = counter.updateReplicas(m_replicaHSIds);
             if (result == DuplicateCounter.DONE) {
-                doneCounters.add(entry.getKey());
+                doneCounters.add(new DuplicateCounterKey(m_duplicateCounters.firstKeyAt(ii),
+                        m_duplicateCounters.secondKeyAt(ii)));
             }
         }
 
@@ -309,7 +359,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         // Maintain the CI invariant that responses arrive in txnid order.
         Collections.sort(doneCounters);
         for (DuplicateCounterKey key : doneCounters) {
-            DuplicateCounter counter = m_duplicateCounters.remove(key);
+            DuplicateCounter counter = m_duplicateCounters.remove(key.m_txnId, key.m_spHandle);
 
             final TransactionState txn = m_outstandingTxns.get(key.m_txnId);
             if (txn == null || txn.isDone()) {
@@ -441,6 +491,13 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     @Override
     public void deliver(VoltMessage message)
     {
+        // Any other message may send to the replicas or wait on them, so release
+        // the pending initiations first to keep the replication stream in order.
+        // The leader's own response to a batched initiation comes through here as
+        // well, which bounds how long an initiation can be held back.
+        if (!m_pendingReplication.isEmpty() && !(message instanceof Iv2InitiateTaskMessage)) {
+            flushReplication();
+        }
         if (message instanceof Iv2InitiateTaskMessage) {
             handleIv2InitiateTaskMessage((Iv2InitiateTaskMessage)message);
         }
@@ -540,6 +597,10 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                         m_uniqueIdGenerator.partitionId);
 
                 newSpHandle = getMaxScheduledTxnSpHandle();
+                if (!m_isLeader) {
+                    // A read served by a replica follows every write the replica has received
+                    newSpHandle = getCurrentTxnId();
+                }
             }
 
             // Need to set the SP handle on the received message
@@ -604,7 +665,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 // K-safety cluster doesn't always mean partition has replicas,
                 // node failure may reduce the number of replicas for each partition
                 if (m_sendToHSIds.length > 0) {
-                    m_mailbox.send(m_sendToHSIds, replmsg);
+                    replicate(replmsg);
                 }
 
                 DuplicateCounter counter = new DuplicateCounter(
@@ -613,12 +674,19 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                         m_replicaHSIds,
                         replmsg);
 
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
+                safeAddToDuplicateCounterMap(msg.getTxnId(), newSpHandle, counter);
             }
         }
         else {
             setMaxSeenTxnId(msg.getSpHandle());
             newSpHandle = msg.getSpHandle();
+            if (m_replicationBatchDelivering) {
+                m_replicationBatchOutstanding.add(newSpHandle);
+            }
+            if (m_replicaReads) {
+                m_lastReplicatedSpHandle = newSpHandle;
+                updateReplicaLag();
+            }
             logRepair(msg);
             // Don't update the uniqueID if this is a run-everywhere txn, because it has an MPI unique ID.
             if (UniqueIdGenerator.getPartitionIdFromUniqueId(msg.getUniqueId()) == m_partitionId) {
@@ -657,6 +725,12 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         final String procedureName = msg.getStoredProcedureName();
         final SpProcedureTask task =
             new SpProcedureTask(m_mailbox, procedureName, m_pendingTasks, msg);
+        // Replicas run the leader's writes with the same client interface handle, leave those out
+        if ((m_isLeader || msg.isReadOnly()) && !msg.isForReplay() &&
+                TransactionTracer.isSampled(msg.getClientInterfaceHandle())) {
+            task.setTraced();
+            task.trace(TransactionTracer.Event.SCHEDULED);
+        }
 
         ListenableFuture<Object> durabilityBackpressureFuture =
                 m_cl.log(msg, msg.getSpHandle(), null, m_durabilityListener, task);
@@ -717,7 +791,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 message.getTxnId(),
                 expectedHSIds,
                 message);
-        safeAddToDuplicateCounterMap(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
+        safeAddToDuplicateCounterMap(message.getTxnId(), message.getSpHandle(), counter);
 
         m_uniqueIdGenerator.updateMostRecentlyGeneratedUniqueId(message.getUniqueId());
         // is local repair necessary?
@@ -750,7 +824,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 message.getTxnId(),
                 expectedHSIds,
                 message);
-        safeAddToDuplicateCounterMap(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
+        safeAddToDuplicateCounterMap(message.getTxnId(), message.getSpHandle(), counter);
 
         // is local repair necessary?
         if (needsRepair.contains(m_mailbox.getHSId())) {
@@ -777,6 +851,78 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         }
     }
 
+    private void replicate(Iv2InitiateTaskMessage replmsg)
+    {
+        if (m_replicationBatchSize <= 1) {
+            m_mailbox.send(m_sendToHSIds, replmsg);
+            return;
+        }
+        m_pendingReplication.add(replmsg);
+        if (m_pendingReplication.size() >= m_replicationBatchSize) {
+            flushReplication();
+        }
+    }
+
+    // Send the initiations held for replication, must happen before anything else goes to the replicas
+    private void flushReplication()
+    {
+        if (m_pendingReplication.isEmpty()) {
+            return;
+        }
+        if (m_sendToHSIds.length > 0) {
+            if (m_pendingReplication.size() == 1) {
+                m_mailbox.send(m_sendToHSIds, m_pendingReplication.get(0));
+            }
+            else {
+                m_mailbox.send(m_sendToHSIds,
+                        new SpReplicationBatchMessage(new ArrayList<VoltMessage>(m_pendingReplication)));
+            }
+        }
+        m_pendingReplication.clear();
+    }
+
+    /**
+     * Called on a replica before the initiations of a batch are delivered. The responses
+     * to them go back to the leader together once every transaction the replica took
+     * from the batch has completed.
+     */
+    void startReplicationBatch()
+    {
+        // Whatever is left of the previous batch shouldn't wait on this one, and
+        // its transactions that are still running respond on their own
+        flushReplicaResponses();
+        m_replicationBatchOutstanding.clear();
+        m_replicationBatchDelivering = true;
+    }
+
+    /**
+     * Called on a replica after the initiations of a batch are delivered.
+     */
+    void endReplicationBatch()
+    {
+        m_replicationBatchDelivering = false;
+        if (m_replicationBatchOutstanding.isEmpty()) {
+            flushReplicaResponses();
+        }
+    }
+
+    private void flushReplicaResponses()
+    {
+        if (m_pendingReplicaResponses.isEmpty()) {
+            return;
+        }
+        // All responses of a batch go to the leader that sent it
+        long leaderHSId = ((InitiateResponseMessage)m_pendingReplicaResponses.get(0)).getInitiatorHSId();
+        if (m_pendingReplicaResponses.size() == 1) {
+            m_mailbox.send(leaderHSId, m_pendingReplicaResponses.get(0));
+        }
+        else {
+            m_mailbox.send(leaderHSId,
+                    new SpReplicationBatchMessage(new ArrayList<VoltMessage>(m_pendingReplicaResponses)));
+        }
+        m_pendingReplicaResponses.clear();
+    }
+
     // Pass a response through the duplicate counters.
     private void handleInitiateResponseMessage(InitiateResponseMessage message)
     {
@@ -792,8 +938,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
          * possible to read an unconfirmed transaction's writes that will be lost.
          */
         final long spHandle = message.getSpHandle();
-        final DuplicateCounterKey dcKey = new DuplicateCounterKey(message.getTxnId(), spHandle);
-        DuplicateCounter counter = m_duplicateCounters.get(dcKey);
+        DuplicateCounter counter = m_duplicateCounters.get(message.getTxnId(), spHandle);
         final VoltTrace.TraceEventBatch traceLog = VoltTrace.log(VoltTrace.Category.SPI);
 
         // All reads will have no duplicate counter.
@@ -804,6 +949,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 traceLog.add(() -> VoltTrace.endAsync("initsp", MiscUtils.hsIdPairTxnIdToString(m_mailbox.getHSId(), message.m_sourceHSId, message.getSpHandle(), message.getClientInterfaceHandle())));
             }
 
+            if (!m_isLeader && m_replicaReads) {
+                // A read routed to this replica, it waits for the leader's commit point
+                m_replicaReadLog.offer(m_mailbox, message, m_committedSpHandle);
+                return;
+            }
             // InvocationDispatcher routes SAFE reads to SPI only
             assert(m_bufferedReadLog != null);
             m_bufferedReadLog.offer(m_mailbox, message, m_repairLogTruncationHandle);
@@ -823,7 +973,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
             int result = counter.offer(message);
             if (result == DuplicateCounter.DONE) {
-                m_duplicateCounters.remove(dcKey);
+                m_duplicateCounters.remove(message.getTxnId(), spHandle);
                 final TransactionState txn = m_outstandingTxns.get(message.getTxnId());
                 setRepairLogTruncationHandle(spHandle, (txn != null && txn.isLeaderMigrationInvolved()));
                 m_mailbox.send(counter.m_destinationId, counter.m_lastResponse);
@@ -862,12 +1012,24 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
             // this will be on SPI without k-safety or replica only with k-safety
             assert(!message.isReadOnly());
             setRepairLogTruncationHandle(spHandle, false);
+            if (m_replicaReads && !m_isLeader) {
+                m_lastAppliedSpHandle = Math.max(m_lastAppliedSpHandle, spHandle);
+                updateReplicaLag();
+            }
 
             //BabySitter's thread (updateReplicas) could clean up a duplicate counter and send a transaction response to ClientInterface
             //if the duplicate counter contains only the replica's HSIDs from failed hosts. That is, a response from a replica could get here
             //AFTER the transaction is completed. Such a response message should not be further propagated.
             if (m_mailbox.getHSId() != message.getInitiatorHSId()) {
-                m_mailbox.send(message.getInitiatorHSId(), message);
+                if (m_replicationBatchOutstanding.remove(spHandle)) {
+                    m_pendingReplicaResponses.add(message);
+                    if (m_replicationBatchOutstanding.isEmpty() && !m_replicationBatchDelivering) {
+                        flushReplicaResponses();
+                    }
+                }
+                else {
+                    m_mailbox.send(message.getInitiatorHSId(), message);
+                }
             }
         }
 
@@ -1020,7 +1182,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                             m_replicaHSIds,
                             replmsg);
                 }
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(message.getTxnId(), newSpHandle), counter);
+                safeAddToDuplicateCounterMap(message.getTxnId(), newSpHandle, counter);
             }
         } else {
             // message processed on replica
@@ -1197,7 +1359,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
         // Send the message to the duplicate counter, if any
         DuplicateCounter counter =
-            m_duplicateCounters.get(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()));
+            m_duplicateCounters.get(message.getTxnId(), message.getSpHandle());
         final TransactionState txn = m_outstandingTxns.get(message.getTxnId());
         if (counter != null) {
             String traceName = "recvfragment";
@@ -1215,7 +1377,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                     setRepairLogTruncationHandle(txn.m_spHandle, txn.isLeaderMigrationInvolved());
                 }
 
-                m_duplicateCounters.remove(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()));
+                m_duplicateCounters.remove(message.getTxnId(), message.getSpHandle());
                 FragmentResponseMessage resp = (FragmentResponseMessage)counter.getLastResponse();
                 // MPI is tracking deps per partition HSID.  We need to make
                 // sure we write ours into the message getting sent to the MPI
@@ -1302,7 +1464,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                                                msg.getTxnId(),
                                                m_replicaHSIds,
                                                msg);
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(msg.getTxnId(), msg.getSpHandle()), counter);
+                safeAddToDuplicateCounterMap(msg.getTxnId(), msg.getSpHandle(), counter);
             }
 
             Iv2Trace.logCompleteTransactionMessage(msg, m_mailbox.getHSId());
@@ -1327,8 +1489,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
     private void handleCompleteTransactionResponseMessage(CompleteTransactionResponseMessage msg)
     {
-        final DuplicateCounterKey duplicateCounterKey = new DuplicateCounterKey(msg.getTxnId(), msg.getSpHandle());
-        DuplicateCounter counter = m_duplicateCounters.get(duplicateCounterKey);
+        DuplicateCounter counter = m_duplicateCounters.get(msg.getTxnId(), msg.getSpHandle());
         boolean txnDone = true;
         if (msg.isRestart()) {
             // Don't mark txn done for restarts
@@ -1337,11 +1498,11 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (msg.isAborted() && counter != null) {
             // The last completion was an abort due to a repair/abort or restart/abort so we need to remove duplicate counters
             // for stale versions of the restarted Txn that never made it past the scoreboard
-            final DuplicateCounterKey lowestPossible = new DuplicateCounterKey(msg.getTxnId(), 0);
-            DuplicateCounterKey staleMatch = m_duplicateCounters.ceilingKey(lowestPossible);
-            while (staleMatch != null && staleMatch.compareTo(duplicateCounterKey) == -1) {
-                m_duplicateCounters.remove(staleMatch);
-                staleMatch = m_duplicateCounters.ceilingKey(lowestPossible);
+            int staleMatch = m_duplicateCounters.ceilingIndex(msg.getTxnId(), 0);
+            while (staleMatch >= 0 && m_duplicateCounters.firstKeyAt(staleMatch) == msg.getTxnId() &&
+                    m_duplicateCounters.secondKeyAt(staleMatch) < msg.getSpHandle()) {
+                m_duplicateCounters.removeAt(staleMatch);
+                staleMatch = m_duplicateCounters.ceilingIndex(msg.getTxnId(), 0);
             };
         }
 
@@ -1351,7 +1512,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
         if (txnDone) {
             final TransactionState txn = m_outstandingTxns.remove(msg.getTxnId());
-            m_duplicateCounters.remove(duplicateCounterKey);
+            m_duplicateCounters.remove(msg.getTxnId(), msg.getSpHandle());
             if (txn != null && !txn.isReadOnly()) {
                 // Set the truncation handle here instead of when processing
                 // FragmentResponseMessage to avoid letting replicas think a
@@ -1435,13 +1596,14 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
             }
         }
         builder.append("\n  most recent SP handle: ").append(TxnEgo.txnIdToString(getCurrentTxnId()));
-        builder.append("\n  outstanding txns: ").append(TxnEgo.txnIdCollectionToString(m_outstandingTxns.keySet()));
+        builder.append("\n  outstanding txns: ").append(TxnEgo.txnIdCollectionToString(Longs.asList(m_outstandingTxns.keys())));
         builder.append("\n  ");
         m_pendingTasks.toString(builder);
         if (m_duplicateCounters.size() > 0) {
             builder.append("\n  DUPLICATE COUNTERS:\n ");
-            for (Entry<DuplicateCounterKey, DuplicateCounter> e : m_duplicateCounters.entrySet()) {
-                builder.append("  ").append(e.getKey().toString()).append(": ").append(e.getValue().toString());
+            for (int ii = 0; ii < m_duplicateCounters.size(); ii++) {
+                builder.append("  ").append(new DuplicateCounterKey(m_duplicateCounters.firstKeyAt(ii), m_duplicateCounters.secondKeyAt(ii)))
+                       .append(": ").append(m_duplicateCounters.valueAt(ii).toString());
             }
         }
         builder.append("END of STATE DUMP FOR SITE: ").append(who);
@@ -1480,7 +1642,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                         msg.getTxnId(),
                         m_replicaHSIds,
                         msg);
-                safeAddToDuplicateCounterMap(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
+                safeAddToDuplicateCounterMap(msg.getTxnId(), newSpHandle, counter);
             }
         } else {
             setMaxSeenTxnId(msg.getSpHandle());
@@ -1503,8 +1665,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 
     private void handleDummyTransactionResponseMessage(DummyTransactionResponseMessage message) {
         final long spHandle = message.getSpHandle();
-        final DuplicateCounterKey dcKey = new DuplicateCounterKey(message.getTxnId(), spHandle);
-        DuplicateCounter counter = m_duplicateCounters.get(dcKey);
+        DuplicateCounter counter = m_duplicateCounters.get(message.getTxnId(), spHandle);
         if (counter == null) {
             // this will be on SPI without k-safety or replica only with k-safety
             setRepairLogTruncationHandle(spHandle, false);
@@ -1517,7 +1678,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         int result = counter.offer(message);
         if (result == DuplicateCounter.DONE) {
             // DummyTransactionResponseMessage ends on SPI
-            m_duplicateCounters.remove(dcKey);
+            m_duplicateCounters.remove(message.getTxnId(), spHandle);
             setRepairLogTruncationHandle(spHandle, false);
         }
     }
@@ -1563,6 +1724,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 written = writeIv2ViableReplayEntryInternal(faultSpHandle);
                 // Generate Iv2LogFault message and send it to replicas
                 Iv2LogFaultMessage faultMsg = new Iv2LogFaultMessage(faultSpHandle, m_uniqueIdGenerator.getLastUniqueId());
+                flushReplication();
                 m_mailbox.send(m_sendToHSIds,
                         faultMsg);
             }
@@ -1619,10 +1781,10 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
      * Just using "put" on the dup counter map is unsafe.
      * It won't detect the case where keys collide from two different transactions.
      */
-    void safeAddToDuplicateCounterMap(DuplicateCounterKey dpKey, DuplicateCounter counter) {
-        DuplicateCounter existingDC = m_duplicateCounters.get(dpKey);
+    void safeAddToDuplicateCounterMap(long txnId, long spHandle, DuplicateCounter counter) {
+        DuplicateCounter existingDC = m_duplicateCounters.get(txnId, spHandle);
         if (existingDC == null) {
-            m_duplicateCounters.put(dpKey, counter);
+            m_duplicateCounters.put(txnId, spHandle, counter);
         } else {
             existingDC.logWithCollidingDuplicateCounters(counter);
             VoltDB.crashGlobalVoltDB("DUPLICATE COUNTER MISMATCH: two duplicate counter keys collided.", true, null);
@@ -1636,6 +1798,43 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         m_replaySequencer.dump(m_mailbox.getHSId());
         hostLog.warn("[dump] current truncation handle: " + TxnEgo.txnIdToString(m_repairLogTruncationHandle) + " "
                 + m_bufferedReadLog.toString());
+        if (m_replicaReads && !m_isLeader) {
+            hostLog.warn("[dump] committed handle: " + TxnEgo.txnIdToString(m_committedSpHandle) + " replica reads "
+                    + m_replicaReadLog.toString());
+        }
+    }
+
+    @Override
+    public void transactionCommitted(long spHandle)
+    {
+        if (spHandle > m_committedSpHandle) {
+            m_committedSpHandle = spHandle;
+            m_replicaReadLog.releaseBufferedReads(m_mailbox, spHandle);
+        }
+    }
+
+    private void updateReplicaLag()
+    {
+        long lag = 0;
+        if (m_lastReplicatedSpHandle > m_lastAppliedSpHandle) {
+            lag = m_lastAppliedSpHandle == Long.MIN_VALUE ? Long.MAX_VALUE :
+                TxnEgo.getSequence(m_lastReplicatedSpHandle) - TxnEgo.getSequence(m_lastAppliedSpHandle);
+        }
+        if (lag > REPLICA_READ_MAX_LAG) {
+            s_laggingReplicas.add(m_partitionId);
+        }
+        else if (!s_laggingReplicas.isEmpty()) {
+            s_laggingReplicas.remove(m_partitionId);
+        }
+    }
+
+    /**
+     * @return true if the replica of the partition on this host is close enough to the
+     * leader, and has enough room in its queue, to take single partition reads.
+     */
+    public static boolean isReplicaReadable(int partitionId)
+    {
+        return !s_laggingReplicas.contains(partitionId) && !SiteTaskerQueue.isPartitionSaturated(partitionId);
     }
 
     private void updateMaxScheduledTransactionSpHandle(long newSpHandle) {
@@ -1715,6 +1914,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                         // so that it can trigger the callbacks.
                         truncMsg.m_sourceHSId = m_mailbox.getHSId();
                         m_mailbox.deliver(truncMsg);
+                        flushReplication();
                         m_mailbox.send(m_sendToHSIds, truncMsg);
                     }
                 }
@@ -1748,14 +1948,20 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         if (m_migratePartitionLeaderCheckPoint < 0) {
             return false;
         }
-        List<DuplicateCounterKey> keys = m_duplicateCounters.keySet().stream()
-                .filter(k->k.m_spHandle < m_migratePartitionLeaderCheckPoint && k.isSpTransaction()).collect(Collectors.toList());
-        if (!keys.isEmpty()) {
+        List<Integer> pending = new ArrayList<>();
+        for (int ii = 0; ii < m_duplicateCounters.size(); ii++) {
+            long txnId = m_duplicateCounters.firstKeyAt(ii);
+            if (m_duplicateCounters.secondKeyAt(ii) < m_migratePartitionLeaderCheckPoint &&
+                    TxnEgo.getPartitionId(txnId) != MpInitiator.MP_INIT_PID) {
+                pending.add(ii);
+            }
+        }
+        if (!pending.isEmpty()) {
             if (tmLog.isDebugEnabled()) {
                 StringBuilder builder = new StringBuilder();
-                for (DuplicateCounterKey dc : keys) {
-                    builder.append(TxnEgo.txnIdToString(dc.m_txnId) + "(" + dc.m_spHandle + "),");
-                    DuplicateCounter counter = m_duplicateCounters.get(dc);
+                for (int index : pending) {
+                    builder.append(TxnEgo.txnIdToString(m_duplicateCounters.firstKeyAt(index)) + "(" + m_duplicateCounters.secondKeyAt(index) + "),");
+                    DuplicateCounter counter = m_duplicateCounters.valueAt(index);
                     builder.append(counter.m_openMessage + "\n");
                 }
                 tmLog.debug("Duplicate counters on " + CoreUtils.hsIdToString(m_mailbox.getHSId()) + " have keys smaller than the sphandle:" + m_migratePartitionLeaderCheckPoint + "\n" + builder.toString());
@@ -1795,23 +2001,25 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         boolean forwarding = false;
         // HACKY HACKY HACKY, we know at this time there will be only one fragment with this txnId, so it's safe to use
         // Long.MAX_VALUE to match the duplicate counter key with the given txn id (there is only one!)
-        DuplicateCounterKey snapshotFragment = m_duplicateCounters.floorKey(new DuplicateCounterKey(txnId, Long.MAX_VALUE));
-        assert (snapshotFragment != null);
-        long snapshotSpHandle = snapshotFragment.m_spHandle;
-        for (Map.Entry<DuplicateCounterKey, DuplicateCounter> entry : m_duplicateCounters.entrySet()) {
+        int snapshotFragment = m_duplicateCounters.floorIndex(txnId, Long.MAX_VALUE);
+        assert (snapshotFragment >= 0);
+        long snapshotTxnId = m_duplicateCounters.firstKeyAt(snapshotFragment);
+        long snapshotSpHandle = m_duplicateCounters.secondKeyAt(snapshotFragment);
+        for (int ii = 0; ii < m_duplicateCounters.size(); ii++) {
+            DuplicateCounter counter = m_duplicateCounters.valueAt(ii);
             // First find the mp fragment currently running
-            if (!forwarding && entry.getKey().m_spHandle > snapshotSpHandle) {
+            if (!forwarding && m_duplicateCounters.secondKeyAt(ii) > snapshotSpHandle) {
                 forwarding = true;
                 if (tmLog.isDebugEnabled()) {
                     tmLog.debug("Start forwarding pending tasks to rejoin node.");
                 }
             }
             // Then forward any message after the MP txn, I expect them are all Iv2InitiateMessages
-            if (forwarding && entry.getKey().m_txnId != snapshotFragment.m_txnId) {
+            if (forwarding && m_duplicateCounters.firstKeyAt(ii) != snapshotTxnId) {
                 if (tmLog.isDebugEnabled()) {
-                    tmLog.debug(entry.getValue().getOpenMessage().getMessageInfo());
+                    tmLog.debug(counter.getOpenMessage().getMessageInfo());
                 }
-                m_mailbox.send(replicasAdded, entry.getValue().getOpenMessage());
+                m_mailbox.send(replicasAdded, counter.getOpenMessage());
             }
         }
         if (forwarding) {
@@ -1830,17 +2038,20 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     @Override
     public void cleanupTransactionBacklogOnRepair() {
         if (m_isLeader && m_sendToHSIds.length > 0) {
+            flushReplication();
             m_mailbox.send(m_sendToHSIds, new MPBacklogFlushMessage());
         }
-        Iterator<Entry<Long, TransactionState>> iter = m_outstandingTxns.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<Long, TransactionState> entry = iter.next();
-            TransactionState txnState = entry.getValue();
-            if (TxnEgo.getPartitionId(entry.getKey()) == MpInitiator.MP_INIT_PID ) {
+        for (long txnId : m_outstandingTxns.keys()) {
+            TransactionState txnState = m_outstandingTxns.get(txnId);
+            if (TxnEgo.getPartitionId(txnId) == MpInitiator.MP_INIT_PID ) {
                 if (txnState.isReadOnly()) {
                     txnState.setDone();
-                    m_duplicateCounters.entrySet().removeIf((e) -> e.getKey().m_txnId == entry.getKey());
-                    iter.remove();
+                    for (int ii = m_duplicateCounters.size() - 1; ii >= 0; ii--) {
+                        if (m_duplicateCounters.firstKeyAt(ii) == txnId) {
+                            m_duplicateCounters.removeAt(ii);
+                        }
+                    }
+                    m_outstandingTxns.remove(txnId);
                 }
             }
         }
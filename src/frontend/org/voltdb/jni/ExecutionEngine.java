@@ -189,6 +189,17 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         return m_usingFallbackBuffer;
     }
 
+    /**
+     * Hand the shared buffer the results of the given batch were serialized into over to the
+     * caller, so that tables read from it can outlive the next call into the EE without being
+     * copied. The engine switches to a fresh pooled buffer for that batch index.
+     * @return a container holding the only reference to the detached buffer, or null if the
+     *         results are not in a buffer that can be detached and must be copied instead.
+     */
+    public DBBPool.RefCountedContainer detachResultBuffer(int batchIndex) {
+        return null;
+    }
+
     public void setBatchTimeout(int batchTimeout) {
         m_batchTimeout = batchTimeout;
     }
@@ -899,6 +910,7 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      * @param partitionId id of partitioned assigned to this EE
      * @param hostId id of the host this EE is running on
      * @param hostname name of the host this EE is running on
+     * @param parallelScanThreads number of helper threads for parallel scans of replicated tables, 0 for none
      * @return error code
      */
     protected native int nativeInitialize(
@@ -914,7 +926,8 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
             long tempTableMemory,
             boolean createDrReplicatedStream,
             int compactionThreshold,
-            int exportFlushTimeout);
+            int exportFlushTimeout,
+            int parallelScanThreads);
 
     /**
      * Sets (or re-sets) all the shared direct byte buffers in the EE.
@@ -69,6 +69,13 @@ public class ExecutionEngineJNI extends ExecutionEngine {
      */
     public static final int EE_COMPACTION_THRESHOLD;
 
+    /*
+     * Number of helper threads each EE starts to split large read-only scans and
+     * aggregations of replicated tables. Replicated table reads run on a single site
+     * while the cores of the other sites may be idle. 0, the default, disables it.
+     */
+    public static final int EE_PARALLEL_SCAN_THREADS;
+
     private static final boolean HOST_TRACE_ENABLED;
 
     // Size of the parameter set buffer and the per-fragment stats buffer.
@@ -80,6 +87,10 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         if (EE_COMPACTION_THRESHOLD < 0 || EE_COMPACTION_THRESHOLD > 99) {
             VoltDB.crashLocalVoltDB("EE_COMPACTION_THRESHOLD " + EE_COMPACTION_THRESHOLD + " is not valid, must be between 0 and 99", false, null);
         }
+        EE_PARALLEL_SCAN_THREADS = Integer.getInteger("EE_PARALLEL_SCAN_THREADS", 0);
+        if (EE_PARALLEL_SCAN_THREADS < 0 || EE_PARALLEL_SCAN_THREADS > 256) {
+            VoltDB.crashLocalVoltDB("EE_PARALLEL_SCAN_THREADS " + EE_PARALLEL_SCAN_THREADS + " is not valid, must be between 0 and 256", false, null);
+        }
         HOST_TRACE_ENABLED = LOG.isTraceEnabled();
     }
 
@@ -116,10 +127,11 @@ public class ExecutionEngineJNI extends ExecutionEngine {
      * that rely on being able to serialize large results sets will get the same amount of storage
      * when using the IPC backend.
      **/
-    private final BBContainer m_firstDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 10);
+    private static final int RESULT_BUFFER_SIZE = 1024 * 1024 * 10;
+    private BBContainer m_firstDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(RESULT_BUFFER_SIZE);
     private FastDeserializer m_firstDeserializer =
             new FastDeserializer(m_firstDeserializerBufferOrigin.b());
-    private final BBContainer m_nextDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 10);
+    private BBContainer m_nextDeserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(RESULT_BUFFER_SIZE);
     private FastDeserializer m_nextDeserializer =
             new FastDeserializer(m_nextDeserializerBufferOrigin.b());
 
@@ -181,7 +193,8 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                     tempTableMemory * 1024 * 1024,
                     isLowestSiteId,
                     EE_COMPACTION_THRESHOLD,
-                    exportFlushTimeout);
+                    exportFlushTimeout,
+                    EE_PARALLEL_SCAN_THREADS);
         checkErrorCode(errorCode);
 
         setupPsetBuffer(smallBufferSize);
@@ -492,6 +505,31 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         }
     }
 
+    @Override
+    public DBBPool.RefCountedContainer detachResultBuffer(int batchIndex) {
+        if (m_usingFallbackBuffer) {
+            // The EE allocated the buffer and will free it on the next call
+            return null;
+        }
+        // Replacements come from the pool, so a buffer is reused once the
+        // response that took it has been written out
+        final BBContainer replacement = DBBPool.allocateDirectAndPool(RESULT_BUFFER_SIZE);
+        final FastDeserializer fds = new FastDeserializer(replacement.b().slice());
+        final BBContainer detached;
+        if (batchIndex == 0) {
+            detached = m_firstDeserializerBufferOrigin;
+            m_firstDeserializerBufferOrigin = replacement;
+            m_firstDeserializer = fds;
+        }
+        else {
+            detached = m_nextDeserializerBufferOrigin;
+            m_nextDeserializerBufferOrigin = replacement;
+            m_nextDeserializer = fds;
+        }
+        updateEEBufferPointers();
+        return DBBPool.wrapRefCounted(detached);
+    }
+
     @Override
     public VoltTable serializeTable(final int tableId) throws EEException {
         if (HOST_TRACE_ENABLED) {
@@ -0,0 +1,111 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.CoreUtils;
+
+/**
+ * Consecutive single partition initiations a partition leader sends to its replicas, or the
+ * replica responses to them sent back to the leader, carried as one message. The receiving
+ * InitiatorMailbox delivers the messages in order under a single acquisition of its lock.
+ */
+public class SpReplicationBatchMessage extends VoltMessage
+{
+    private List<VoltMessage> m_messages;
+
+    /** Empty constructor for de-serialization */
+    SpReplicationBatchMessage() {
+        super();
+    }
+
+    public SpReplicationBatchMessage(List<VoltMessage> messages) {
+        super();
+        m_messages = messages;
+    }
+
+    public List<VoltMessage> getMessages() {
+        return m_messages;
+    }
+
+    @Override
+    public int getSerializedSize()
+    {
+        int msgsize = super.getSerializedSize();
+        msgsize += 4; // message count
+        for (VoltMessage message : m_messages) {
+            msgsize += 4 + message.getSerializedSize();
+        }
+        return msgsize;
+    }
+
+    @Override
+    public void flattenToBuffer(ByteBuffer buf) throws IOException
+    {
+        buf.put(VoltDbMessageFactory.SP_REPLICATION_BATCH_ID);
+        buf.putInt(m_messages.size());
+        for (VoltMessage message : m_messages) {
+            final int size = message.getSerializedSize();
+            buf.putInt(size);
+            // Messages check that they filled their buffer exactly, give each its own slice
+            ByteBuffer slice = buf.slice();
+            slice.limit(size);
+            message.flattenToBuffer(slice.slice());
+            buf.position(buf.position() + size);
+        }
+        assert(buf.capacity() == buf.position());
+        buf.limit(buf.position());
+    }
+
+    @Override
+    protected void initFromBuffer(ByteBuffer buf) throws IOException
+    {
+        final int count = buf.getInt();
+        m_messages = new ArrayList<VoltMessage>(count);
+        VoltDbMessageFactory messageFactory = new VoltDbMessageFactory();
+        for (int ii = 0; ii < count; ii++) {
+            final int size = buf.getInt();
+            ByteBuffer slice = buf.slice();
+            slice.limit(size);
+            m_messages.add(messageFactory.createMessageFromBuffer(slice, m_sourceHSId));
+            buf.position(buf.position() + size);
+        }
+        assert(buf.capacity() == buf.position());
+    }
+
+    @Override
+    public String getMessageInfo() {
+        return "SpReplicationBatchMessage of " + m_messages.size() + " messages";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SP_REPLICATION_BATCH (FROM ");
+        sb.append(CoreUtils.hsIdToString(m_sourceHSId));
+        sb.append(") COUNT ").append(m_messages.size());
+        for (VoltMessage message : m_messages) {
+            sb.append("\n  ").append(message);
+        }
+        return sb.toString();
+    }
+}
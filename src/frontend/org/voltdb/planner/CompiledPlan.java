@@ -112,6 +112,8 @@ public class CompiledPlan {
 
     private List<String> m_UDFDependees = new ArrayList<>();
 
+    private boolean m_usesCurrentTime = false;
+
     private final boolean m_isLargeQuery;
 
     public CompiledPlan(boolean isLargeQuery) {
@@ -354,4 +356,16 @@ public class CompiledPlan {
     public List<String> getUDFDependees() {
         return m_UDFDependees;
     }
+
+    /**
+     * @return Does the statement call NOW or CURRENT_TIMESTAMP? It is still deterministic
+     *         within a transaction, but not from one call to the next.
+     */
+    public boolean usesCurrentTime() {
+        return m_usesCurrentTime;
+    }
+
+    public void setUsesCurrentTime(boolean usesCurrentTime) {
+        m_usesCurrentTime = usesCurrentTime;
+    }
 }
@@ -20,6 +20,7 @@ package org.voltdb.planner;
 import java.util.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import org.hsqldb_voltpatches.FunctionSQL;
 import org.hsqldb_voltpatches.HSQLInterface;
 import org.hsqldb_voltpatches.HSQLInterface.HSQLParseException;
 import org.hsqldb_voltpatches.VoltXMLElement;
@@ -370,6 +371,16 @@ public class QueryPlanner implements AutoCloseable {
      * @param paramValues
      * @return
      */
+    private static boolean usesCurrentTime(VoltXMLElement xmlSQL) {
+        final String currentTimestampId = String.valueOf(FunctionSQL.voltGetCurrentTimestampId());
+        for (VoltXMLElement function : xmlSQL.findChildrenRecursively("function")) {
+            if (currentTimestampId.equals(function.attributes.get("function_id"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private CompiledPlan compileFromXML(VoltXMLElement xmlSQL, String[] paramValues) {
         // Get a parsed statement from the xml
         // The callers of compilePlan are ready to catch any exceptions thrown here.
@@ -452,6 +463,9 @@ public class QueryPlanner implements AutoCloseable {
             bestPlan.getUDFDependees().addAll(dependees);
         }
 
+        // A statement reading the transaction time gives a different result on every call.
+        bestPlan.setUsesCurrentTime(usesCurrentTime(xmlSQL));
+
         if (bestPlan.isReadOnly()) {
             SendPlanNode sendNode = new SendPlanNode();
             // connect the nodes to build the graph
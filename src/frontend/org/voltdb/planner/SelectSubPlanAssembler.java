@@ -21,6 +21,7 @@ import java.util.*;
 
 import org.voltdb.catalog.Database;
 import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.AbstractSubqueryExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.planner.parseinfo.BranchNode;
@@ -32,11 +33,13 @@ import org.voltdb.plannodes.IndexSortablePlanNode;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractReceivePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.IndexUseForOrderBy;
 import org.voltdb.plannodes.MaterializedScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.utils.PermutationGenerator;
 
@@ -57,6 +60,13 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     /** The list of all possible join orders, assembled by queueAllJoinOrders */
     private ArrayDeque<JoinNode> m_joinOrders = new ArrayDeque<>();
 
+    /**
+     * Plan equi-joins whose inner side would be scanned in full for every outer tuple
+     * as hash joins. Off by default, the cost model has no table sizes to tell
+     * when building the hash table pays off.
+     */
+    static boolean s_hashJoinEnabled = Boolean.getBoolean("PLANNER_HASH_JOIN");
+
     private static final Runtime RUN_TIME = Runtime.getRuntime();
     // Number of times generateSubPlanForJoinNode() gets called recursively that we collect an estimate of heap size,
     // and early exit if too large heap size had been used.
@@ -737,7 +747,6 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
             // get all the clauses that join the applicable two tables
             // Copy innerAccessPath.joinExprs to leave it unchanged,
             // avoiding accumulation of redundant expressions when
@@ -778,6 +787,19 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 // the inner node ONLY, that can not be pushed down.
                 joinClauses.addAll(innerAccessPath.otherExprs);
             }
+
+            // An inner IndexScan is only scanned once, so only a full scan of the inner
+            // side is worth replacing with a hash table. The special case join happens on
+            // the coordinator, which expects a nest loop join above the receive node.
+            AbstractJoinPlanNode nljNode = null;
+            if (s_hashJoinEnabled && ! needInnerSendReceive &&
+                    ! (innerPlan instanceof IndexScanPlanNode) &&
+                    ! (innerPlan instanceof NestLoopIndexPlanNode)) {
+                nljNode = getHashJoinPlanNode(joinNode, joinClauses);
+            }
+            if (nljNode == null) {
+                nljNode = new NestLoopPlanNode();
+            }
             nljNode.setJoinPredicate(ExpressionUtil.combinePredicates(joinClauses));
 
             // combine the tails plan graph with the new head node
@@ -825,6 +847,68 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return ajNode;
     }
 
+    /**
+     * Build a hash join on the equality conditions among the join clauses that compare
+     * an expression on the outer tables with an expression of the same type on the inner tables.
+     *
+     * @param joinNode The join being planned.
+     * @param joinClauses The clauses that will make up the join predicate.
+     * @return the hash join node, or null if none of the clauses can be hashed.
+     */
+    private static HashJoinPlanNode getHashJoinPlanNode(JoinNode joinNode,
+            List<AbstractExpression> joinClauses) {
+        Collection<String> outerTables = joinNode.getLeftNode().generateTableJoinOrder();
+        Collection<String> innerTables = joinNode.getRightNode().generateTableJoinOrder();
+        HashJoinPlanNode hjNode = null;
+        for (AbstractExpression clause : joinClauses) {
+            for (AbstractExpression expr : ExpressionUtil.uncombinePredicate(clause)) {
+                if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL) {
+                    continue;
+                }
+                AbstractExpression left = expr.getLeft();
+                AbstractExpression right = expr.getRight();
+                // Values are only hashed alike if they have the same type
+                if (left.getValueType() != right.getValueType() ||
+                        left.getInBytes() != right.getInBytes()) {
+                    continue;
+                }
+                if (isHashableOn(left, outerTables) && isHashableOn(right, innerTables)) {
+                    if (hjNode == null) {
+                        hjNode = new HashJoinPlanNode();
+                    }
+                    hjNode.addHashExpressions(left, right);
+                }
+                else if (isHashableOn(right, outerTables) && isHashableOn(left, innerTables)) {
+                    if (hjNode == null) {
+                        hjNode = new HashJoinPlanNode();
+                    }
+                    hjNode.addHashExpressions(right, left);
+                }
+            }
+        }
+        return hjNode;
+    }
+
+    /**
+     * An expression can be hashed for one side of a join if it only references
+     * columns of the tables on that side.
+     */
+    private static boolean isHashableOn(AbstractExpression expr, Collection<String> tableAliases) {
+        if (expr.hasAnySubexpressionOfClass(AbstractSubqueryExpression.class)) {
+            return false;
+        }
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return false;
+        }
+        for (TupleValueExpression tve : tves) {
+            if ( ! tableAliases.contains(tve.getTableAlias())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A method to filter out single-TVE expressions.
      *
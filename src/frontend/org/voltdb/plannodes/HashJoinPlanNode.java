@@ -0,0 +1,189 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.ScalarValueHints;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.types.PlanNodeType;
+import org.voltdb.types.SortDirectionType;
+
+/**
+ * Joins its children on one or more equality conditions by building a hash table
+ * over the inner child and probing it with each outer tuple.
+ *
+ * The hash expressions are pairs of outer-only and inner-only expressions of the same
+ * type taken from equality conditions in the join predicate. The join predicate is kept
+ * whole and still evaluated for each pair of tuples that share a hash key, so this node
+ * returns exactly what a nest loop join with the same predicates would. Unlike the nest
+ * loop join it doesn't preserve the order of the outer child.
+ */
+public class HashJoinPlanNode extends AbstractJoinPlanNode {
+
+    public enum Members {
+        OUTER_HASH_EXPRESSIONS,
+        INNER_HASH_EXPRESSIONS;
+    }
+
+    // Evaluated against the outer tuple alone
+    private final List<AbstractExpression> m_outerHashExpressions = new ArrayList<>();
+    // Evaluated against the inner tuple alone
+    private final List<AbstractExpression> m_innerHashExpressions = new ArrayList<>();
+
+    public HashJoinPlanNode() {
+        super();
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    /**
+     * Add a pair of expressions whose values have to be equal for an outer and an inner tuple to join.
+     * The expressions are copied, since their column indexes are resolved differently than
+     * the same expressions in the join predicate.
+     */
+    public void addHashExpressions(AbstractExpression outerExpression, AbstractExpression innerExpression) {
+        assert(outerExpression.getValueType() == innerExpression.getValueType());
+        m_outerHashExpressions.add(outerExpression.clone());
+        m_innerHashExpressions.add(innerExpression.clone());
+    }
+
+    public List<AbstractExpression> getOuterHashExpressions() {
+        return m_outerHashExpressions;
+    }
+
+    public List<AbstractExpression> getInnerHashExpressions() {
+        return m_innerHashExpressions;
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+        if (m_outerHashExpressions.isEmpty() ||
+                m_outerHashExpressions.size() != m_innerHashExpressions.size()) {
+            throw new Exception("ERROR: Hash join has " + m_outerHashExpressions.size() +
+                    " outer and " + m_innerHashExpressions.size() + " inner hash expressions");
+        }
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            expr.validate();
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            expr.validate();
+        }
+    }
+
+    @Override
+    public void resolveColumnIndexes() {
+        super.resolveColumnIndexes();
+
+        // Each side's hash expressions are evaluated on that side's tuple only,
+        // so they are both resolved as the first (and only) tuple.
+        resolveHashExpressions(m_outerHashExpressions, m_children.get(0).getOutputSchema());
+        resolveHashExpressions(m_innerHashExpressions, m_children.get(1).getOutputSchema());
+    }
+
+    private static void resolveHashExpressions(List<AbstractExpression> expressions, NodeSchema schema) {
+        for (AbstractExpression expr : expressions) {
+            for (TupleValueExpression tve : ExpressionUtil.getTupleValueExpressions(expr)) {
+                if (tve.setColumnIndexUsingSchema(schema) == -1) {
+                    throw new RuntimeException("Unable to resolve column index for hash join TVE: " +
+                            tve.toString());
+                }
+                tve.setTableIndex(0);
+            }
+        }
+    }
+
+    @Override
+    public void computeCostEstimates(long childOutputTupleCountEstimate,
+                                     DatabaseEstimates estimates,
+                                     ScalarValueHints[] paramHints)
+    {
+        m_estimatedOutputTupleCount = childOutputTupleCountEstimate;
+        // Each input is read once, one to build the hash table and the other to probe it
+        assert(m_children.size() == 2);
+        m_estimatedProcessedTupleCount = discountEstimatedProcessedTupleCount(m_children.get(0)) +
+                m_children.get(1).m_estimatedProcessedTupleCount;
+    }
+
+    @Override
+    public boolean isOutputOrdered (List<AbstractExpression> sortExpressions, List<SortDirectionType> sortDirections) {
+        // Large inputs are joined a partition at a time, so no order survives
+        return false;
+    }
+
+    @Override
+    public void resolveSortDirection() {
+        m_sortDirection = SortDirectionType.INVALID;
+    }
+
+    @Override
+    protected String explainPlanForNode(String indent) {
+        StringBuilder sb = new StringBuilder("HASH " + m_joinType.toString() + " JOIN on ");
+        String separator = "";
+        for (int ii = 0; ii < m_outerHashExpressions.size(); ii++) {
+            sb.append(separator)
+              .append(m_outerHashExpressions.get(ii).explain("!?"))
+              .append(" = ")
+              .append(m_innerHashExpressions.get(ii).explain("!?"));
+            separator = ", ";
+        }
+        return sb.toString() + explainFilters(indent);
+    }
+
+    @Override
+    public void findAllExpressionsOfClass(Class< ? extends AbstractExpression> aeClass, Set<AbstractExpression> collected) {
+        super.findAllExpressionsOfClass(aeClass, collected);
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            collected.addAll(expr.findAllSubexpressionsOfClass(aeClass));
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            collected.addAll(expr.findAllSubexpressionsOfClass(aeClass));
+        }
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException {
+        super.toJSONString(stringer);
+        stringer.key(Members.OUTER_HASH_EXPRESSIONS.name()).array(m_outerHashExpressions);
+        stringer.key(Members.INNER_HASH_EXPRESSIONS.name()).array(m_innerHashExpressions);
+    }
+
+    @Override
+    public void loadFromJSONObject(JSONObject jobj, Database db)
+            throws JSONException {
+        super.loadFromJSONObject(jobj, db);
+        AbstractExpression.loadFromJSONArrayChild(m_outerHashExpressions, jobj,
+                Members.OUTER_HASH_EXPRESSIONS.name(), null);
+        AbstractExpression.loadFromJSONArrayChild(m_innerHashExpressions, jobj,
+                Members.INNER_HASH_EXPRESSIONS.name(), null);
+    }
+
+}
@@ -0,0 +1,74 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+
+/**
+ * First stage of a block writer: compresses and checksums blocks on a dedicated pool of
+ * threads so that several blocks are in flight at once. The second stage is the writer,
+ * which must consume the returned futures in the order the blocks were submitted so the
+ * blocks land on disk in the order they were produced no matter which one finishes first.
+ *
+ * The pool has its own queue rather than sharing the computation service. The queue is not
+ * bounded here, producers are expected to limit the number of blocks they have in flight,
+ * as snapshots do with the pool of snapshot buffers in SnapshotSiteProcessor.
+ */
+public class BlockCompressionPipeline {
+    private final ListeningExecutorService m_es;
+    private final int m_threads;
+
+    public BlockCompressionPipeline(String name, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Must specify > 0 threads");
+        }
+        m_threads = threads;
+        m_es = MoreExecutors.listeningDecorator(
+                new ThreadPoolExecutor(threads, threads,
+                        0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        CoreUtils.getThreadFactory(name)));
+    }
+
+    /**
+     * Compress inBuffer into outBufferC after a 4-byte CRC32C of the compressed bytes,
+     * see {@link CompressionService#compressAndCRC32cBufferAsync(ByteBuffer, BBContainer)}
+     */
+    public ListenableFuture<BBContainer> compressAndCRC32c(ByteBuffer inBuffer, BBContainer outBufferC) {
+        return m_es.submit(CompressionService.compressAndCRC32cTask(inBuffer, outBufferC));
+    }
+
+    public int getThreadCount() {
+        return m_threads;
+    }
+
+    public void shutdown() throws InterruptedException {
+        m_es.shutdown();
+        m_es.awaitTermination(1, TimeUnit.DAYS);
+    }
+}
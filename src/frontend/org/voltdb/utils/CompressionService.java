@@ -129,9 +129,17 @@ public final class CompressionService {
     }
 
     public static Future<BBContainer> compressAndCRC32cBufferAsync(final ByteBuffer inBuffer, final BBContainer outBufferC) {
+        return submitCompressionTask(compressAndCRC32cTask(inBuffer, outBufferC));
+    }
+
+    /**
+     * Task that compresses inBuffer into outBufferC after a 4-byte CRC32C of the compressed
+     * bytes, starting at the current position of outBufferC.
+     */
+    static Callable<BBContainer> compressAndCRC32cTask(final ByteBuffer inBuffer, final BBContainer outBufferC) {
         assert(inBuffer.isDirect());
         assert(outBufferC.b().isDirect());
-        return submitCompressionTask(new Callable<BBContainer>() {
+        return new Callable<BBContainer>() {
 
             @Override
             public BBContainer call() throws Exception {
@@ -147,7 +155,7 @@ public final class CompressionService {
                 return outBufferC;
             }
 
-        });
+        };
     }
 
     public static int compressBuffer(ByteBuffer buffer, ByteBuffer output) throws IOException {
@@ -0,0 +1,198 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.Bits;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DBBPool.RefCountedContainer;
+import org.voltdb.utils.BinaryDeque.OutputContainerFactory;
+
+/**
+ * A segment that serves reads from a memory mapping of the segment file instead of copying
+ * each entry out of the file. Uncompressed entries are handed to the reader as views of the
+ * mapping and compressed entries are decompressed straight out of it. Writes go through the
+ * file channel exactly as they do for {@link PBDRegularSegment}.
+ *
+ * The mapping is private so consumers that patch the buffers they poll, like export, get a
+ * copy on write of the touched page and never modify the file. The mapping covers the file
+ * as it was when it was mapped. While the segment is still being appended to, readers get past
+ * the end of it. Those reads copy out of the file like a regular segment until the file has
+ * doubled in size, and only then is the file mapped again, so a reader tailing the writer
+ * remaps a segment a logarithmic number of times rather than once per entry.
+ *
+ * Entries handed out as views hold a reference to their mapping, and so does the segment until
+ * it remaps or closes. A mapping is unmapped as soon as the last reference is discarded.
+ *
+ * The kernel is told that the mapping will be read sequentially, and pages behind the slowest
+ * reader are periodically dropped from the page cache so draining a large backlog doesn't
+ * evict everything else.
+ */
+public class PBDMMapSegment extends PBDRegularSegment {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    //Bytes consumed by the readers between requests to drop the pages behind them
+    private static final long DROP_BEHIND_BYTES = 1024 * 1024 * 16;
+
+    //The segment's reference to the current mapping
+    private RefCountedContainer m_mapping;
+    //File offset up to which the page cache has already been dropped
+    private long m_droppedTo = 0;
+    private long m_readSinceDrop = 0;
+
+    public PBDMMapSegment(Long index, Long id, File file) {
+        super(index, id, file);
+    }
+
+    @Override
+    protected void readFully(ByteBuffer dst, long offset) throws IOException {
+        final ByteBuffer view = mappedView(offset, dst.remaining());
+        if (view == null) {
+            super.readFully(dst, offset);
+            return;
+        }
+        dst.put(view);
+        dst.flip();
+    }
+
+    @Override
+    protected BBContainer readEntry(long offset, int length, boolean compressed,
+            OutputContainerFactory factory) throws IOException {
+        final ByteBuffer view = mappedView(offset, length);
+        final BBContainer retcont;
+        if (view == null) {
+            retcont = super.readEntry(offset, length, compressed, factory);
+        } else if (compressed) {
+            final int uncompressedLen = CompressionService.uncompressedLength(view);
+            retcont = factory.getContainer(uncompressedLen);
+            retcont.b().limit(uncompressedLen);
+            CompressionService.decompressBuffer(view, retcont.b());
+        } else {
+            retcont = m_mapping.retain(view);
+        }
+
+        m_readSinceDrop += OBJECT_HEADER_BYTES + length;
+        if (m_readSinceDrop > DROP_BEHIND_BYTES) {
+            m_readSinceDrop = 0;
+            dropBehind(lowestReadOffset());
+        }
+        return retcont;
+    }
+
+    /**
+     * Slice of the mapping covering length bytes at offset, or null if the range is past the end of
+     * the current mapping and the file hasn't grown enough since it was mapped to map it again
+     */
+    private ByteBuffer mappedView(long offset, int length) throws IOException {
+        final long end = offset + length;
+        if (m_mapping == null || end > m_mapping.b().capacity()) {
+            final long size = m_fc.size();
+            final long mappedSize = m_mapping == null ? 0 : m_mapping.b().capacity();
+            if (size < end || size < 2 * mappedSize) {
+                return null;
+            }
+            map(size);
+        }
+        final ByteBuffer view = m_mapping.b().duplicate();
+        view.limit((int)end);
+        view.position((int)offset);
+        return view.slice();
+    }
+
+    private void map(long size) throws IOException {
+
+        /*
+         * A private mapping requires a channel that is open for writing even though nothing is
+         * ever written through it, and the segment itself might only be open for reading.
+         * The mapping stays valid after the channel used to create it is closed.
+         */
+        final MappedByteBuffer mapped;
+        RandomAccessFile ras = new RandomAccessFile(m_file, "rw");
+        try {
+            mapped = ras.getChannel().map(MapMode.PRIVATE, 0, size);
+        } finally {
+            ras.close();
+        }
+        releaseMapping();
+        m_mapping = DBBPool.wrapRefCounted(DBBPool.wrapMBB(mapped));
+
+        try {
+            long retval = PosixAdvise.madvise(m_mapping.address(), size, PosixAdvise.POSIX_MADV_SEQUENTIAL);
+            if (retval != 0) {
+                LOG.info("Failed to madvise PBD segment " + m_file + ", this is harmless: " + retval);
+            }
+            retval = PosixAdvise.fadvise(m_ras.getFD(), 0, size, PosixAdvise.POSIX_FADV_SEQUENTIAL);
+            if (retval != 0) {
+                LOG.info("Failed to fadvise PBD segment " + m_file + ", this is harmless: " + retval);
+            }
+        } catch (Throwable t) {
+            LOG.info("Exception attempting to advise PBD segment " + m_file, t);
+        }
+    }
+
+    //Unmaps the current mapping once no entry handed out from it is still in use
+    private void releaseMapping() {
+        if (m_mapping != null) {
+            m_mapping.discard();
+            m_mapping = null;
+        }
+    }
+
+    /**
+     * Ask the kernel to drop the cached pages of the file before offset. Only whole pages are dropped and
+     * the page containing offset is kept because the next entry is read from it.
+     */
+    private void dropBehind(long offset) {
+        if (offset <= 0 || m_ras == null) {
+            return;
+        }
+        final long dropTo = ((offset / Bits.pageSize()) - 1) * Bits.pageSize();
+        final long length = dropTo - m_droppedTo;
+        if (length <= 0) {
+            return;
+        }
+        try {
+            final long retval = PosixAdvise.fadvise(m_ras.getFD(), m_droppedTo, length, PosixAdvise.POSIX_FADV_DONTNEED);
+            if (retval != 0) {
+                LOG.info("Failed to fadvise PBD segment " + m_file + ", this is harmless: " + retval);
+            }
+            m_droppedTo = dropTo;
+        } catch (Throwable t) {
+            LOG.info("Exception attempting fadvise", t);
+        }
+    }
+
+    @Override
+    protected void closeReadersAndFile() throws IOException {
+        if (m_mapping != null) {
+            dropBehind(m_mapping.b().capacity());
+        }
+        releaseMapping();
+        m_droppedTo = 0;
+        m_readSinceDrop = 0;
+        super.closeReadersAndFile();
+    }
+}
@@ -244,7 +244,7 @@ public class PBDRegularSegment extends PBDSegment {
         closeReadersAndFile();
     }
 
-    private void closeReadersAndFile() throws IOException {
+    protected void closeReadersAndFile() throws IOException {
         m_readCursors.clear();
         try {
             if (m_ras != null) {
@@ -379,6 +379,65 @@ public class PBDRegularSegment extends PBDSegment {
         return written;
     }
 
+    /**
+     * Read exactly <code>dst.remaining()</code> bytes starting at offset in the segment file
+     * and flip the buffer. Does not move the write position of the file channel.
+     */
+    protected void readFully(ByteBuffer dst, long offset) throws IOException {
+        long pos = offset;
+        while (dst.hasRemaining()) {
+            int read = m_fc.read(dst, pos);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            pos += read;
+        }
+        dst.flip();
+    }
+
+    /**
+     * Read the payload of the entry that starts at offset, after its header, into a container
+     * obtained from the factory, decompressing it if necessary. The returned buffer is positioned
+     * at the start of the entry and its limit is the end of the uncompressed entry.
+     */
+    protected DBBPool.BBContainer readEntry(long offset, int length, boolean compressed,
+            OutputContainerFactory factory) throws IOException {
+        if (compressed) {
+            final DBBPool.BBContainer compressedBuf = DBBPool.allocateDirectAndPool(length);
+            try {
+                compressedBuf.b().limit(length);
+                readFully(compressedBuf.b(), offset);
+
+                final int uncompressedLen = CompressionService.uncompressedLength(compressedBuf.bDR());
+                final DBBPool.BBContainer retcont = factory.getContainer(uncompressedLen);
+                retcont.b().limit(uncompressedLen);
+                CompressionService.decompressBuffer(compressedBuf.bDR(), retcont.b());
+                return retcont;
+            } finally {
+                compressedBuf.discard();
+            }
+        } else {
+            final DBBPool.BBContainer retcont = factory.getContainer(length);
+            retcont.b().limit(length);
+            readFully(retcont.b(), offset);
+            return retcont;
+        }
+    }
+
+    /**
+     * Lowest read offset of the cursors currently reading this segment,
+     * or -1 if no cursor is reading it
+     */
+    protected long lowestReadOffset() {
+        long lowest = -1;
+        for (SegmentReader reader : m_readCursors.values()) {
+            if (lowest == -1 || reader.m_readOffset < lowest) {
+                lowest = reader.m_readOffset;
+            }
+        }
+        return lowest;
+    }
+
     private class SegmentReader implements PBDSegmentReader {
         private final String m_cursorId;
         private long m_readOffset = SEGMENT_HEADER_BYTES;
@@ -418,83 +477,39 @@ public class PBDRegularSegment extends PBDSegment {
                 return null;
             }
 
-            final long writePos = m_fc.position();
-            m_fc.position(m_readOffset);
+            //Get the length and size prefix and then read the object
+            m_tmpHeaderBuf.b().clear();
+            readFully(m_tmpHeaderBuf.b(), m_readOffset);
+            final int length = m_tmpHeaderBuf.b().getInt();
+            final int flags = m_tmpHeaderBuf.b().getInt();
+            final boolean compressed = (flags & FLAG_COMPRESSED) != 0;
 
-            try {
-                //Get the length and size prefix and then read the object
-                m_tmpHeaderBuf.b().clear();
-                while (m_tmpHeaderBuf.b().hasRemaining()) {
-                    int read = m_fc.read(m_tmpHeaderBuf.b());
-                    if (read == -1) {
-                        throw new EOFException();
-                    }
-                }
-                m_tmpHeaderBuf.b().flip();
-                final int length = m_tmpHeaderBuf.b().getInt();
-                final int flags = m_tmpHeaderBuf.b().getInt();
-                final boolean compressed = (flags & FLAG_COMPRESSED) != 0;
-                final int uncompressedLen;
-
-                if (length < 1) {
-                    throw new IOException("Read an invalid length");
-                }
+            if (length < 1) {
+                throw new IOException("Read an invalid length");
+            }
 
-                final DBBPool.BBContainer retcont;
-                if (compressed) {
-                    final DBBPool.BBContainer compressedBuf = DBBPool.allocateDirectAndPool(length);
-                    try {
-                        while (compressedBuf.b().hasRemaining()) {
-                            int read = m_fc.read(compressedBuf.b());
-                            if (read == -1) {
-                                throw new EOFException();
-                            }
-                        }
-                        compressedBuf.b().flip();
-
-                        uncompressedLen = CompressionService.uncompressedLength(compressedBuf.bDR());
-                        retcont = factory.getContainer(uncompressedLen);
-                        retcont.b().limit(uncompressedLen);
-                        CompressionService.decompressBuffer(compressedBuf.bDR(), retcont.b());
-                    } finally {
-                        compressedBuf.discard();
+            final DBBPool.BBContainer retcont =
+                    readEntry(m_readOffset + OBJECT_HEADER_BYTES, length, compressed, factory);
+            m_readOffset += OBJECT_HEADER_BYTES + length;
+            m_bytesRead += retcont.b().remaining();
+            m_objectReadIndex++;
+
+            return new DBBPool.BBContainer(retcont.b()) {
+                private boolean m_discarded = false;
+
+                @Override
+                public void discard() {
+                    checkDoubleFree();
+                    if (m_discarded) {
+                        LOG.error("PBD Container discarded more than once");
+                        return;
                     }
-                } else {
-                    uncompressedLen = length;
-                    retcont = factory.getContainer(length);
-                    retcont.b().limit(length);
-                    while (retcont.b().hasRemaining()) {
-                        int read = m_fc.read(retcont.b());
-                        if (read == -1) {
-                            throw new EOFException();
-                        }
-                    }
-                    retcont.b().flip();
-                }
-
-                m_bytesRead += uncompressedLen;
-                m_objectReadIndex++;
-
-                return new DBBPool.BBContainer(retcont.b()) {
-                    private boolean m_discarded = false;
-
-                    @Override
-                    public void discard() {
-                        checkDoubleFree();
-                        if (m_discarded) {
-                            LOG.error("PBD Container discarded more than once");
-                            return;
-                        }
 
-                        m_discarded = true;
-                        retcont.discard();
-                        m_discardCount++;
-                    }
-                };
-            } finally {
-                m_readOffset = m_fc.position();
-                m_fc.position(writePos);
-            }
+                    m_discarded = true;
+                    retcont.discard();
+                    m_discardCount++;
+                }
+            };
         }
 
         @Override
@@ -244,6 +244,11 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     public static final OutputContainerFactory UNSAFE_CONTAINER_FACTORY = new UnsafeOutputContainerFactory();
 
+    /**
+     * Serve reads from memory mapped segments, see {@link PBDMMapSegment}
+     */
+    private static final boolean MMAP_SEGMENTS = Boolean.getBoolean("PBD_MMAP_SEGMENTS");
+
     /**
      * Processors also log using this facility.
      */
@@ -251,6 +256,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     private final File m_path;
     private final String m_nonce;
+    private final boolean m_mmapSegments;
     private boolean m_initializedFromExistingFiles = false;
     private boolean m_awaitingTruncation = false;
 
@@ -289,9 +295,24 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * @throws IOException
      */
     public PersistentBinaryDeque(final String nonce, final File path, VoltLogger logger, final boolean deleteEmpty) throws IOException {
+        this(nonce, path, logger, deleteEmpty, MMAP_SEGMENTS);
+    }
+
+    /**
+     * Create a persistent binary deque with the specified nonce and storage back at the specified path.
+     *
+     * @param nonce
+     * @param path
+     * @param deleteEmpty
+     * @param mmapSegments read entries out of memory mapped segment files instead of copying them
+     * @throws IOException
+     */
+    public PersistentBinaryDeque(final String nonce, final File path, VoltLogger logger, final boolean deleteEmpty,
+            final boolean mmapSegments) throws IOException {
         NativeLibraryLoader.loadVoltDB();
         m_path = path;
         m_nonce = nonce;
+        m_mmapSegments = mmapSegments;
         m_usageSpecificLog = logger;
 
         if (!path.exists() || !path.canRead() || !path.canWrite() || !path.canExecute() || !path.isDirectory()) {
@@ -639,6 +660,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     private PBDSegment newSegment(long segmentIndex, long segmentId, File file) {
+        if (m_mmapSegments) {
+            return new PBDMMapSegment(segmentIndex, segmentId, file);
+        }
         return new PBDRegularSegment(segmentIndex, segmentId, file);
     }
 
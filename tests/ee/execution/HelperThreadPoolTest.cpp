@@ -0,0 +1,101 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <atomic>
+#include <stdexcept>
+#include <vector>
+
+#include "harness.h"
+#include "execution/HelperThreadPool.h"
+
+using namespace voltdb;
+
+namespace {
+
+struct AddTask {
+    AddTask(std::atomic<int64_t>& sum, int64_t value) : m_sum(sum), m_value(value) {}
+    void operator()() const { m_sum += m_value; }
+    std::atomic<int64_t>& m_sum;
+    int64_t m_value;
+};
+
+struct ThrowingTask {
+    explicit ThrowingTask(bool fail) : m_fail(fail) {}
+    void operator()() const {
+        if (m_fail) {
+            throw std::runtime_error("task failed");
+        }
+    }
+    bool m_fail;
+};
+
+}
+
+class HelperThreadPoolTest : public Test {
+public:
+    void runSums(HelperThreadPool& pool, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            std::atomic<int64_t> sum(0);
+            std::vector<HelperThreadPool::Task> tasks;
+            for (int ii = 0; ii < 17; ii++) {
+                tasks.push_back(AddTask(sum, ii));
+            }
+            pool.run(tasks);
+            ASSERT_EQ(136, sum);
+        }
+    }
+};
+
+TEST_F(HelperThreadPoolTest, RunsAllTasks) {
+    HelperThreadPool pool(4);
+    ASSERT_EQ(4, pool.threadCount());
+    runSums(pool, 1000);
+}
+
+TEST_F(HelperThreadPoolTest, RunsOnCallerWithoutThreads) {
+    HelperThreadPool pool(0);
+    ASSERT_EQ(0, pool.threadCount());
+    runSums(pool, 10);
+}
+
+TEST_F(HelperThreadPoolTest, RethrowsTaskError) {
+    HelperThreadPool pool(3);
+    std::vector<HelperThreadPool::Task> tasks;
+    for (int ii = 0; ii < 8; ii++) {
+        tasks.push_back(ThrowingTask(ii == 5));
+    }
+    bool caught = false;
+    try {
+        pool.run(tasks);
+    }
+    catch (const std::runtime_error&) {
+        caught = true;
+    }
+    ASSERT_TRUE(caught);
+    // The pool is still usable after a failed batch.
+    runSums(pool, 10);
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -0,0 +1,511 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <limits>
+#include <sstream>
+#include <string>
+#include <vector>
+
+#include "boost/optional.hpp"
+
+#include "harness.h"
+
+#include "test_utils/LargeTempTableTopend.hpp"
+#include "test_utils/Tools.hpp"
+#include "test_utils/UniqueEngine.hpp"
+
+#include "common/LargeTempTableBlockCache.h"
+#include "common/SerializableEEException.h"
+#include "common/executorcontext.hpp"
+#include "common/tabletuple.h"
+#include "execution/ExecutorVector.h"
+#include "storage/AbstractTempTable.hpp"
+#include "storage/table.h"
+#include "storage/tableiterator.h"
+
+using namespace voltdb;
+
+/**
+ * Catalog for a database with just one table:
+ *  create table t (i   bigint not null,
+ *                  g   integer not null,
+ *                  vc  varchar(63 bytes),
+ *                  val varchar(500000));
+ *  partition table t on column g;
+ */
+static const std::string catalogPayload =
+    "add / clusters cluster\n"
+    "set /clusters#cluster localepoch 1199145600\n"
+    "set $PREV securityEnabled false\n"
+    "set $PREV httpdportno -1\n"
+    "set $PREV jsonapi true\n"
+    "set $PREV networkpartition false\n"
+    "set $PREV heartbeatTimeout 90\n"
+    "set $PREV useddlschema false\n"
+    "set $PREV drConsumerEnabled false\n"
+    "set $PREV drProducerEnabled true\n"
+    "set $PREV drRole \"master\"\n"
+    "set $PREV drClusterId 0\n"
+    "set $PREV drProducerPort 5555\n"
+    "set $PREV drMasterHost \"\"\n"
+    "set $PREV drFlushInterval 1000\n"
+    "set $PREV preferredSource 0\n"
+    "add /clusters#cluster databases database\n"
+    "set $PREV isActiveActiveDRed false\n"
+    "set $PREV securityprovider \"hash\"\n"
+    "add /clusters#cluster/databases#database groups administrator\n"
+    "set /clusters#cluster/databases#database/groups#administrator admin true\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database tables T\n"
+    "set /clusters#cluster/databases#database/tables#T isreplicated false\n"
+    "set $PREV partitioncolumn /clusters#cluster/databases#database/tables#T/columns#G\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"T|bivv\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#T columns I\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#I index 0\n"
+    "set $PREV type 6\n"
+    "set $PREV size 8\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"I\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#T columns G\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#G index 1\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"G\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#T columns VC\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#VC index 2\n"
+    "set $PREV type 9\n"
+    "set $PREV size 63\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"VC\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes true\n"
+    "add /clusters#cluster/databases#database/tables#T columns VAL\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#VAL index 3\n"
+    "set $PREV type 9\n"
+    "set $PREV size 500000\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"VAL\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes true\n"
+    "add /clusters#cluster/databases#database snapshotSchedule default\n"
+    "set /clusters#cluster/databases#database/snapshotSchedule#default enabled false\n"
+    "set $PREV frequencyUnit \"h\"\n"
+    "set $PREV frequencyValue 24\n"
+    "set $PREV retain 2\n"
+    "set $PREV prefix \"AUTOSNAP\"\n"
+    "add /clusters#cluster deployment deployment\n"
+    "set /clusters#cluster/deployment#deployment kfactor 0\n"
+    "add /clusters#cluster/deployment#deployment systemsettings systemsettings\n"
+    "set /clusters#cluster/deployment#deployment/systemsettings#systemsettings temptablemaxsize 100\n"
+    "set $PREV snapshotpriority 6\n"
+    "set $PREV elasticduration 50\n"
+    "set $PREV elasticthroughput 2\n"
+    "set $PREV querytimeout 300000\n"
+    "add /clusters#cluster logconfig log\n"
+    "set /clusters#cluster/logconfig#log enabled false\n"
+    "set $PREV synchronous false\n"
+    "set $PREV fsyncInterval 200\n"
+    "set $PREV maxTxns 2147483647\n"
+    "set $PREV logSize 1024";
+
+// This is a hand-written "large" plan for
+//     exec @AdHocLarge
+//         select g, count(*), sum(i), min(val), max(val), count(distinct vc) from t group by g
+// with the hash aggregate as a separate node above the scan.
+static const std::string jsonPlan =
+    "{\n"
+    "   \"PLAN_NODES\":[\n"
+    "      {\n"
+    "         \"ID\":1,\n"
+    "         \"PLAN_NODE_TYPE\":\"HASHAGGREGATE\",\n"
+    "         \"CHILDREN_IDS\":[\n"
+    "            2\n"
+    "         ],\n"
+    "         \"OUTPUT_SCHEMA\":[\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"G\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":5,\n"
+    "                  \"COLUMN_IDX\":1\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"C2\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":6,\n"
+    "                  \"COLUMN_IDX\":1\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"C3\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":6,\n"
+    "                  \"COLUMN_IDX\":2\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"C4\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":500000,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":3\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"C5\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":500000,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":4\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"C6\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":6,\n"
+    "                  \"COLUMN_IDX\":5\n"
+    "               }\n"
+    "            }\n"
+    "         ],\n"
+    "         \"AGGREGATE_COLUMNS\":[\n"
+    "            {\n"
+    "               \"AGGREGATE_TYPE\":\"AGGREGATE_COUNT_STAR\",\n"
+    "               \"AGGREGATE_DISTINCT\":0,\n"
+    "               \"AGGREGATE_OUTPUT_COLUMN\":1\n"
+    "            },\n"
+    "            {\n"
+    "               \"AGGREGATE_TYPE\":\"AGGREGATE_SUM\",\n"
+    "               \"AGGREGATE_DISTINCT\":0,\n"
+    "               \"AGGREGATE_OUTPUT_COLUMN\":2,\n"
+    "               \"AGGREGATE_EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":6,\n"
+    "                  \"COLUMN_IDX\":0\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"AGGREGATE_TYPE\":\"AGGREGATE_MIN\",\n"
+    "               \"AGGREGATE_DISTINCT\":0,\n"
+    "               \"AGGREGATE_OUTPUT_COLUMN\":3,\n"
+    "               \"AGGREGATE_EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":500000,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":3\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"AGGREGATE_TYPE\":\"AGGREGATE_MAX\",\n"
+    "               \"AGGREGATE_DISTINCT\":0,\n"
+    "               \"AGGREGATE_OUTPUT_COLUMN\":4,\n"
+    "               \"AGGREGATE_EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":500000,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":3\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"AGGREGATE_TYPE\":\"AGGREGATE_COUNT\",\n"
+    "               \"AGGREGATE_DISTINCT\":1,\n"
+    "               \"AGGREGATE_OUTPUT_COLUMN\":5,\n"
+    "               \"AGGREGATE_EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":63,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":2\n"
+    "               }\n"
+    "            }\n"
+    "         ],\n"
+    "         \"GROUPBY_EXPRESSIONS\":[\n"
+    "            {\n"
+    "               \"TYPE\":32,\n"
+    "               \"VALUE_TYPE\":5,\n"
+    "               \"COLUMN_IDX\":1\n"
+    "            }\n"
+    "         ]\n"
+    "      },\n"
+    "      {\n"
+    "         \"ID\":2,\n"
+    "         \"PLAN_NODE_TYPE\":\"SEQSCAN\",\n"
+    "         \"OUTPUT_SCHEMA\":[\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"I\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":6,\n"
+    "                  \"COLUMN_IDX\":0\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"G\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":5,\n"
+    "                  \"COLUMN_IDX\":1\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"VC\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":63,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":2\n"
+    "               }\n"
+    "            },\n"
+    "            {\n"
+    "               \"COLUMN_NAME\":\"VAL\",\n"
+    "               \"EXPRESSION\":{\n"
+    "                  \"TYPE\":32,\n"
+    "                  \"VALUE_TYPE\":9,\n"
+    "                  \"VALUE_SIZE\":500000,\n"
+    "                  \"IN_BYTES\":true,\n"
+    "                  \"COLUMN_IDX\":3\n"
+    "               }\n"
+    "            }\n"
+    "         ],\n"
+    "         \"TARGET_TABLE_NAME\":\"T\",\n"
+    "         \"TARGET_TABLE_ALIAS\":\"T\"\n"
+    "      }\n"
+    "   ],\n"
+    "   \"EXECUTE_LIST\":[\n"
+    "      2,\n"
+    "      1\n"
+    "   ],\n"
+    "   \"IS_LARGE_QUERY\":true\n"
+    "}\n";
+
+class AggregateHashSpillTest : public Test {
+protected:
+    // Each of the groups has two rows, r and r + groupCount.
+    // Groups with an even key have the same VC in both rows,
+    // and every fifth group has a NULL VAL in its second row.
+    static int64_t valueOfI(int groupCount, int row) {
+        return row;
+    }
+
+    static std::string valueOfVC(int groupCount, int row) {
+        int group = row % groupCount;
+        if (group % 2 == 0) {
+            return "same";
+        }
+        std::ostringstream oss;
+        oss << "vc " << (row / groupCount);
+        return oss.str();
+    }
+
+    static boost::optional<std::string> valueOfVAL(int groupCount, int row) {
+        int group = row % groupCount;
+        if (group % 5 == 0 && row >= groupCount) {
+            return boost::none;
+        }
+        // Long enough to make the groups big, and to be stored out of line.
+        std::ostringstream oss;
+        oss << "val " << row << " " << std::string(96, 'x');
+        return oss.str();
+    }
+
+    static UniqueEngine buildEngine(int64_t tempTableMemoryLimitInBytes, LargeTempTableTopend** topendOut) {
+        *topendOut = new LargeTempTableTopend();
+        std::unique_ptr<Topend> topend{*topendOut};
+        return UniqueEngineBuilder()
+            .setTopend(std::move(topend))
+            .setTempTableMemoryLimit(tempTableMemoryLimitInBytes)
+            .build();
+    }
+
+    void insertRows(VoltDBEngine* engine, int groupCount, int64_t (*valueOfIFn)(int, int)) {
+        Table* table = engine->getTableByName("T");
+        StandAloneTupleStorage storage{table->schema()};
+        TableTuple tuple = storage.tuple();
+        for (int row = 0; row < 2 * groupCount; ++row) {
+            Tools::setTupleValues(&tuple,
+                                  valueOfIFn(groupCount, row),
+                                  row % groupCount,
+                                  valueOfVC(groupCount, row),
+                                  valueOfVAL(groupCount, row));
+            table->insertTuple(tuple);
+            if (row % 1000 == 0) {
+                ExecutorContext::getTempStringPool()->purge();
+            }
+        }
+        ExecutorContext::getTempStringPool()->purge();
+    }
+
+    void verifyResult(Table* result, int groupCount) {
+        ASSERT_NE(NULL, result);
+        ASSERT_EQ(groupCount, result->activeTupleCount());
+
+        std::vector<bool> seen(groupCount, false);
+        TableTuple tuple(result->schema());
+        TableIterator it = result->iterator();
+        while (it.next(tuple)) {
+            int group = ValuePeeker::peekAsInteger(tuple.getNValue(0));
+            ASSERT_TRUE(group >= 0 && group < groupCount);
+            ASSERT_FALSE(seen[group]);
+            seen[group] = true;
+
+            int firstRow = group;
+            int secondRow = group + groupCount;
+            ASSERT_EQ(2, ValuePeeker::peekAsBigInt(tuple.getNValue(1)));
+            ASSERT_EQ(valueOfI(groupCount, firstRow) + valueOfI(groupCount, secondRow),
+                      ValuePeeker::peekAsBigInt(tuple.getNValue(2)));
+
+            std::string firstVal = *valueOfVAL(groupCount, firstRow);
+            boost::optional<std::string> secondVal = valueOfVAL(groupCount, secondRow);
+            std::string minVal = secondVal && *secondVal < firstVal ? *secondVal : firstVal;
+            std::string maxVal = secondVal && *secondVal > firstVal ? *secondVal : firstVal;
+            ASSERT_EQ(minVal, Tools::nativeFromNValue<std::string>(tuple.getNValue(3)));
+            ASSERT_EQ(maxVal, Tools::nativeFromNValue<std::string>(tuple.getNValue(4)));
+
+            int64_t distinctVCs = group % 2 == 0 ? 1 : 2;
+            ASSERT_EQ(distinctVCs, ValuePeeker::peekAsBigInt(tuple.getNValue(5)));
+        }
+    }
+
+    void verifyBlocksReleased(LargeTempTableTopend* topend) {
+        LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+        ASSERT_EQ(0, lttBlockCache->totalBlockCount());
+        ASSERT_EQ(0, lttBlockCache->allocatedMemory());
+        ASSERT_EQ(0, topend->storedBlockCount());
+    }
+
+    void executeAndVerify(VoltDBEngine* engine, LargeTempTableTopend* topend, int groupCount) {
+        auto ev = ExecutorVector::fromJsonPlan(engine, jsonPlan, 0);
+        ASSERT_NE(NULL, ev.get());
+
+        // Run twice, to check that the executor can run again after spilling.
+        for (int ii = 0; ii < 2; ++ii) {
+            {
+                UniqueTempTableResult result = engine->executePlanFragment(ev.get(), NULL);
+                verifyResult(result.get(), groupCount);
+            }
+            verifyBlocksReleased(topend);
+        }
+    }
+};
+
+TEST_F(AggregateHashSpillTest, MultiLevelSpill) {
+    // A cache of three blocks leaves room for a single partition,
+    // so the groups that don't fit in memory are all spilled together,
+    // and spilled again when that partition is aggregated.
+    LargeTempTableTopend* topend;
+    UniqueEngine engine = buildEngine(24 * 1024 * 1024, &topend);
+    ASSERT_TRUE(engine->loadCatalog(0, catalogPayload));
+
+    const int groupCount = 200000;
+    insertRows(engine.get(), groupCount, valueOfI);
+    executeAndVerify(engine.get(), topend, groupCount);
+}
+
+TEST_F(AggregateHashSpillTest, ManyPartitions) {
+    // A cache of six blocks spills to four partitions.
+    LargeTempTableTopend* topend;
+    UniqueEngine engine = buildEngine(48 * 1024 * 1024, &topend);
+    ASSERT_TRUE(engine->loadCatalog(0, catalogPayload));
+
+    const int groupCount = 200000;
+    insertRows(engine.get(), groupCount, valueOfI);
+    executeAndVerify(engine.get(), topend, groupCount);
+}
+
+// The last group starts after spilling has started, and its sum
+// overflows when the partition it was spilled to is aggregated.
+static int64_t overflowingValueOfI(int groupCount, int row) {
+    if (row % groupCount == groupCount - 1) {
+        return std::numeric_limits<int64_t>::max() - 1;
+    }
+    return row;
+}
+
+TEST_F(AggregateHashSpillTest, ReleaseOnException) {
+    LargeTempTableTopend* topend;
+    UniqueEngine engine = buildEngine(48 * 1024 * 1024, &topend);
+    ASSERT_TRUE(engine->loadCatalog(0, catalogPayload));
+
+    const int groupCount = 200000;
+    insertRows(engine.get(), groupCount, overflowingValueOfI);
+
+    auto ev = ExecutorVector::fromJsonPlan(engine.get(), jsonPlan, 0);
+    ASSERT_NE(NULL, ev.get());
+
+    // Fail twice, to check that a failed execution leaves nothing behind
+    // for the next one.
+    for (int ii = 0; ii < 2; ++ii) {
+        bool caught = false;
+        try {
+            engine->executePlanFragment(ev.get(), NULL);
+        }
+        catch (const SerializableEEException& exc) {
+            caught = true;
+        }
+        ASSERT_TRUE(caught);
+        verifyBlocksReleased(topend);
+    }
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
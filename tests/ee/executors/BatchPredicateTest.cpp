@@ -0,0 +1,240 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+
+#include "test_utils/UniqueTable.hpp"
+
+#include "common/common.h"
+#include "common/ValueFactory.hpp"
+#include "common/tabletuple.h"
+#include "executors/batchpredicate.h"
+#include "expressions/expressions.h"
+#include "expressions/expressionutil.h"
+#include "storage/temptable.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+#include "boost/scoped_ptr.hpp"
+
+#define TUPLES 5000
+
+using namespace voltdb;
+
+class BatchPredicateTest : public Test {
+public:
+    BatchPredicateTest() {
+        srand(0);
+    }
+
+    // Columns are TINYINT, SMALLINT, INTEGER, BIGINT and TIMESTAMP,
+    // each of them null in about one row out of ten.
+    UniqueTable<TempTable> initTable() {
+        std::vector<std::string> columnNames;
+        std::vector<voltdb::ValueType> columnTypes;
+        columnTypes.push_back(VALUE_TYPE_TINYINT);
+        columnTypes.push_back(VALUE_TYPE_SMALLINT);
+        columnTypes.push_back(VALUE_TYPE_INTEGER);
+        columnTypes.push_back(VALUE_TYPE_BIGINT);
+        columnTypes.push_back(VALUE_TYPE_TIMESTAMP);
+        std::vector<int32_t> columnLengths;
+        std::vector<bool> columnAllowNull;
+        for (int ctr = 0; ctr < columnTypes.size(); ctr++) {
+            char name[16];
+            ::snprintf(name, 16, "val%02d", ctr);
+            columnNames.push_back(name);
+            columnLengths.push_back(NValue::getTupleStorageSize(columnTypes[ctr]));
+            columnAllowNull.push_back(true);
+        }
+        TupleSchema *schema = TupleSchema::createTupleSchemaForTest(columnTypes, columnLengths, columnAllowNull);
+
+        auto table = makeUniqueTable(TableFactory::buildTempTable("test_table", schema, columnNames, NULL));
+
+        TableTuple &tuple = table->tempTuple();
+        for (int i = 0; i < TUPLES; ++i) {
+            tuple.setNValue(0, nullOr(ValueFactory::getTinyIntValue(static_cast<int8_t>(rand() % 200 - 100))));
+            tuple.setNValue(1, nullOr(ValueFactory::getSmallIntValue(static_cast<int16_t>(rand() % 2000 - 1000))));
+            tuple.setNValue(2, nullOr(ValueFactory::getIntegerValue(rand() % 100)));
+            tuple.setNValue(3, nullOr(ValueFactory::getBigIntValue(rand() % 1000)));
+            tuple.setNValue(4, nullOr(ValueFactory::getTimestampValue(rand() % 1000000)));
+            table->insertTuple(tuple);
+        }
+        return table;
+    }
+
+    NValue nullOr(const NValue& value) {
+        if (rand() % 10 == 0) {
+            return NValue::getNullValue(ValuePeeker::peekValueType(value));
+        }
+        return value;
+    }
+
+    int countMatches(Table* table, AbstractExpression* predicate) {
+        int count = 0;
+        TableIterator iter = table->iterator();
+        TableTuple match(table->schema());
+        while (iter.next(match)) {
+            if (predicate->eval(&match, NULL).isTrue()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    // Count the way SeqScanExecutor does it when the predicate is batched.
+    int countBatchMatches(Table* table, const BatchPredicate& batchPredicate) {
+        char* batch[BatchPredicate::BATCH_SIZE];
+        uint16_t selection[BatchPredicate::BATCH_SIZE];
+        int count = 0;
+        TableIterator iter = table->iterator();
+        TableTuple match(table->schema());
+        bool more = true;
+        while (more) {
+            int batchCount = 0;
+            while (batchCount < BatchPredicate::BATCH_SIZE && (more = iter.next(match))) {
+                batch[batchCount++] = match.address();
+            }
+            int selected = batchPredicate.filter(batch, batchCount, selection);
+            for (int ii = 0; ii < selected; ii++) {
+                if (ii > 0) {
+                    EXPECT_LT(selection[ii - 1], selection[ii]);
+                }
+                match.move(batch[selection[ii]]);
+                if (batchPredicate.evalResidual(&match)) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    AbstractExpression* compare(ExpressionType type, AbstractExpression* left, AbstractExpression* right) {
+        return ExpressionUtil::comparisonFactory(emptyDom(), type, left, right);
+    }
+
+    AbstractExpression* column(int columnId) {
+        return new TupleValueExpression(0, columnId);
+    }
+
+    AbstractExpression* constant(const NValue& value) {
+        return new ConstantValueExpression(value);
+    }
+
+    PlannerDomValue emptyDom() {
+        return PlannerDomRoot("{}").rootObject();
+    }
+};
+
+TEST_F(BatchPredicateTest, AllTermsBatched) {
+    // WHERE val03 > 500 AND val00 <= 10 AND val01 <> 7
+    AbstractExpression *predicate =
+        ExpressionUtil::conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND,
+            compare(EXPRESSION_TYPE_COMPARE_GREATERTHAN, column(3), constant(ValueFactory::getBigIntValue(500))),
+            ExpressionUtil::conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND,
+                compare(EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO, column(0), constant(ValueFactory::getIntegerValue(10))),
+                compare(EXPRESSION_TYPE_COMPARE_NOTEQUAL, column(1), constant(ValueFactory::getSmallIntValue(7)))));
+    boost::scoped_ptr<AbstractExpression> pred_guard(predicate);
+
+    auto table = initTable();
+    BatchPredicate batchPredicate(predicate, table->schema());
+    ASSERT_TRUE(batchPredicate.isBatchable());
+    ASSERT_TRUE(batchPredicate.bind());
+    int expected = countMatches(table.get(), predicate);
+    ASSERT_TRUE(expected > 0);
+    ASSERT_EQ(expected, countBatchMatches(table.get(), batchPredicate));
+}
+
+TEST_F(BatchPredicateTest, ConstantOnTheLeft) {
+    // Each comparison with the constant first, so the comparison is reversed.
+    ExpressionType types[] = { EXPRESSION_TYPE_COMPARE_EQUAL,
+                               EXPRESSION_TYPE_COMPARE_NOTEQUAL,
+                               EXPRESSION_TYPE_COMPARE_LESSTHAN,
+                               EXPRESSION_TYPE_COMPARE_GREATERTHAN,
+                               EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO,
+                               EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO };
+    auto table = initTable();
+    for (int ii = 0; ii < sizeof(types) / sizeof(types[0]); ii++) {
+        AbstractExpression *predicate =
+            compare(types[ii], constant(ValueFactory::getBigIntValue(42)), column(2));
+        boost::scoped_ptr<AbstractExpression> pred_guard(predicate);
+
+        BatchPredicate batchPredicate(predicate, table->schema());
+        ASSERT_TRUE(batchPredicate.isBatchable());
+        ASSERT_TRUE(batchPredicate.bind());
+        ASSERT_EQ(countMatches(table.get(), predicate), countBatchMatches(table.get(), batchPredicate));
+    }
+}
+
+TEST_F(BatchPredicateTest, ResidualTerms) {
+    // WHERE val04 >= 250000 AND val00 < val01
+    // The comparison of two columns is evaluated row by row.
+    AbstractExpression *predicate =
+        ExpressionUtil::conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND,
+            compare(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO, column(4),
+                    constant(ValueFactory::getTimestampValue(250000))),
+            compare(EXPRESSION_TYPE_COMPARE_LESSTHAN, column(0), column(1)));
+    boost::scoped_ptr<AbstractExpression> pred_guard(predicate);
+
+    auto table = initTable();
+    BatchPredicate batchPredicate(predicate, table->schema());
+    ASSERT_TRUE(batchPredicate.isBatchable());
+    ASSERT_TRUE(batchPredicate.bind());
+    int expected = countMatches(table.get(), predicate);
+    ASSERT_TRUE(expected > 0);
+    ASSERT_EQ(expected, countBatchMatches(table.get(), batchPredicate));
+}
+
+TEST_F(BatchPredicateTest, NullConstant) {
+    // WHERE val02 > NULL never matches.
+    AbstractExpression *predicate =
+        compare(EXPRESSION_TYPE_COMPARE_GREATERTHAN, column(2),
+                constant(NValue::getNullValue(VALUE_TYPE_INTEGER)));
+    boost::scoped_ptr<AbstractExpression> pred_guard(predicate);
+
+    auto table = initTable();
+    BatchPredicate batchPredicate(predicate, table->schema());
+    ASSERT_TRUE(batchPredicate.isBatchable());
+    ASSERT_TRUE(batchPredicate.bind());
+    ASSERT_EQ(0, countMatches(table.get(), predicate));
+    ASSERT_EQ(0, countBatchMatches(table.get(), batchPredicate));
+}
+
+TEST_F(BatchPredicateTest, NotBatchable) {
+    auto table = initTable();
+
+    // A comparison of two columns has nothing to batch.
+    AbstractExpression *predicate = compare(EXPRESSION_TYPE_COMPARE_EQUAL, column(2), column(3));
+    boost::scoped_ptr<AbstractExpression> pred_guard(predicate);
+    ASSERT_FALSE(BatchPredicate(predicate, table->schema()).isBatchable());
+
+    // A double constant can't be compared in batches, which bind reports.
+    AbstractExpression *doublePredicate =
+        compare(EXPRESSION_TYPE_COMPARE_LESSTHAN, column(3), constant(ValueFactory::getDoubleValue(10.5)));
+    boost::scoped_ptr<AbstractExpression> double_guard(doublePredicate);
+    BatchPredicate batchPredicate(doublePredicate, table->schema());
+    ASSERT_TRUE(batchPredicate.isBatchable());
+    ASSERT_FALSE(batchPredicate.bind());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -0,0 +1,372 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <map>
+#include <sstream>
+#include <string>
+#include <utility>
+
+#include "boost/optional.hpp"
+
+#include "harness.h"
+
+#include "test_utils/LargeTempTableTopend.hpp"
+#include "test_utils/Tools.hpp"
+#include "test_utils/UniqueEngine.hpp"
+
+#include "common/LargeTempTableBlockCache.h"
+#include "common/executorcontext.hpp"
+#include "common/tabletuple.h"
+#include "execution/ExecutorVector.h"
+#include "storage/AbstractTempTable.hpp"
+#include "storage/table.h"
+#include "storage/tableiterator.h"
+
+using namespace voltdb;
+
+/**
+ * Catalog for a database with just one table:
+ *  create table t (i   bigint not null,
+ *                  k   integer,
+ *                  val varchar(500000));
+ *  partition table t on column i;
+ */
+static const std::string catalogPayload =
+    "add / clusters cluster\n"
+    "set /clusters#cluster localepoch 1199145600\n"
+    "set $PREV securityEnabled false\n"
+    "set $PREV httpdportno -1\n"
+    "set $PREV jsonapi true\n"
+    "set $PREV networkpartition false\n"
+    "set $PREV heartbeatTimeout 90\n"
+    "set $PREV useddlschema false\n"
+    "set $PREV drConsumerEnabled false\n"
+    "set $PREV drProducerEnabled true\n"
+    "set $PREV drRole \"master\"\n"
+    "set $PREV drClusterId 0\n"
+    "set $PREV drProducerPort 5555\n"
+    "set $PREV drMasterHost \"\"\n"
+    "set $PREV drFlushInterval 1000\n"
+    "set $PREV preferredSource 0\n"
+    "add /clusters#cluster databases database\n"
+    "set $PREV isActiveActiveDRed false\n"
+    "set $PREV securityprovider \"hash\"\n"
+    "add /clusters#cluster/databases#database groups administrator\n"
+    "set /clusters#cluster/databases#database/groups#administrator admin true\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database tables T\n"
+    "set /clusters#cluster/databases#database/tables#T isreplicated false\n"
+    "set $PREV partitioncolumn /clusters#cluster/databases#database/tables#T/columns#I\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"T|biv\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#T columns I\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#I index 0\n"
+    "set $PREV type 6\n"
+    "set $PREV size 8\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"I\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#T columns K\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#K index 1\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"K\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#T columns VAL\n"
+    "set /clusters#cluster/databases#database/tables#T/columns#VAL index 2\n"
+    "set $PREV type 9\n"
+    "set $PREV size 500000\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"VAL\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes true\n"
+    "add /clusters#cluster/databases#database snapshotSchedule default\n"
+    "set /clusters#cluster/databases#database/snapshotSchedule#default enabled false\n"
+    "set $PREV frequencyUnit \"h\"\n"
+    "set $PREV frequencyValue 24\n"
+    "set $PREV retain 2\n"
+    "set $PREV prefix \"AUTOSNAP\"\n"
+    "add /clusters#cluster deployment deployment\n"
+    "set /clusters#cluster/deployment#deployment kfactor 0\n"
+    "add /clusters#cluster/deployment#deployment systemsettings systemsettings\n"
+    "set /clusters#cluster/deployment#deployment/systemsettings#systemsettings temptablemaxsize 100\n"
+    "set $PREV snapshotpriority 6\n"
+    "set $PREV elasticduration 50\n"
+    "set $PREV elasticthroughput 2\n"
+    "set $PREV querytimeout 300000\n"
+    "add /clusters#cluster logconfig log\n"
+    "set /clusters#cluster/logconfig#log enabled false\n"
+    "set $PREV synchronous false\n"
+    "set $PREV fsyncInterval 200\n"
+    "set $PREV maxTxns 2147483647\n"
+    "set $PREV logSize 1024";
+
+namespace {
+
+std::string tve(int tableIdx, int columnIdx, int valueType) {
+    std::ostringstream oss;
+    oss << "{\"TYPE\":32,\"VALUE_TYPE\":" << valueType;
+    if (valueType == 9) {
+        oss << ",\"VALUE_SIZE\":500000,\"IN_BYTES\":true";
+    }
+    oss << ",\"TABLE_IDX\":" << tableIdx << ",\"COLUMN_IDX\":" << columnIdx << "}";
+    return oss.str();
+}
+
+std::string equal(const std::string& left, const std::string& right) {
+    return "{\"TYPE\":10,\"VALUE_TYPE\":23,\"LEFT\":" + left + ",\"RIGHT\":" + right + "}";
+}
+
+std::string outputColumn(const std::string& name, const std::string& expression) {
+    return "{\"COLUMN_NAME\":\"" + name + "\",\"EXPRESSION\":" + expression + "}";
+}
+
+// Scan of T with an inline projection, so that the scan output is a large temp table
+std::string scanNode(int id, const std::string& alias) {
+    std::string columns = outputColumn("I", tve(0, 0, 6)) + "," +
+        outputColumn("K", tve(0, 1, 5)) + "," +
+        outputColumn("VAL", tve(0, 2, 9));
+    std::ostringstream oss;
+    oss << "{\"ID\":" << id << ",\"PLAN_NODE_TYPE\":\"SEQSCAN\","
+        << "\"INLINE_NODES\":[{\"ID\":" << id + 10 << ",\"PLAN_NODE_TYPE\":\"PROJECTION\","
+        << "\"OUTPUT_SCHEMA\":[" << columns << "]}],"
+        << "\"TARGET_TABLE_NAME\":\"T\",\"TARGET_TABLE_ALIAS\":\"" << alias << "\"}";
+    return oss.str();
+}
+
+/**
+ * A hand-written "large" plan for
+ *     select * from t as t1 <joinType> join t as t2 on t1.k = t2.k [and t1.i = t2.i]
+ * as a hash join, or as the nested loop join it replaces.
+ */
+std::string joinPlan(bool hashJoin, const std::string& joinType, bool matchOnI) {
+    std::string joinPredicate = equal(tve(0, 1, 5), tve(1, 1, 5));
+    if (matchOnI) {
+        joinPredicate = "{\"TYPE\":20,\"VALUE_TYPE\":23,\"LEFT\":" + joinPredicate +
+            ",\"RIGHT\":" + equal(tve(0, 0, 6), tve(1, 0, 6)) + "}";
+    }
+    std::ostringstream oss;
+    oss << "{\"PLAN_NODES\":[{\"ID\":1,"
+        << "\"PLAN_NODE_TYPE\":\"" << (hashJoin ? "HASHJOIN" : "NESTLOOP") << "\","
+        << "\"CHILDREN_IDS\":[2,3],"
+        << "\"OUTPUT_SCHEMA\":[" << outputColumn("I", tve(0, 0, 6)) << ","
+        << outputColumn("K", tve(0, 1, 5)) << "," << outputColumn("VAL", tve(0, 2, 9)) << ","
+        << outputColumn("I", tve(0, 3, 6)) << "," << outputColumn("K", tve(0, 4, 5)) << ","
+        << outputColumn("VAL", tve(0, 5, 9)) << "],"
+        << "\"JOIN_TYPE\":\"" << joinType << "\","
+        << "\"PRE_JOIN_PREDICATE\":null,"
+        << "\"JOIN_PREDICATE\":" << joinPredicate << ","
+        << "\"WHERE_PREDICATE\":null";
+    if (hashJoin) {
+        // Each side's key is evaluated on that side's tuple alone
+        oss << ",\"OUTER_HASH_EXPRESSIONS\":[" << tve(0, 1, 5) << "]"
+            << ",\"INNER_HASH_EXPRESSIONS\":[" << tve(0, 1, 5) << "]";
+    }
+    oss << "}," << scanNode(2, "T1") << "," << scanNode(3, "T2") << "],"
+        << "\"EXECUTE_LIST\":[2,3,1],\"IS_LARGE_QUERY\":true}";
+    return oss.str();
+}
+
+// Rows are paired up by the key they join on, -1 stands for a NULL-padded side
+typedef std::map<std::pair<int64_t, int64_t>, int> JoinResult;
+
+const int64_t NULL_ROW = -1;
+
+}
+
+class HashJoinLargeTest : public Test {
+protected:
+    // Long enough that a few thousand rows take up several large temp table blocks
+    static const int VAL_LENGTH = 8000;
+
+    static UniqueEngine buildEngine(int64_t tempTableMemoryLimitInBytes, LargeTempTableTopend** topendOut) {
+        *topendOut = new LargeTempTableTopend();
+        std::unique_ptr<Topend> topend{*topendOut};
+        return UniqueEngineBuilder()
+            .setTopend(std::move(topend))
+            .setTempTableMemoryLimit(tempTableMemoryLimitInBytes)
+            .build();
+    }
+
+    // Every tenth row has a NULL key, the others share their key with one other row
+    static boost::optional<int32_t> pairedKey(int rowCount, int row) {
+        if (row % 10 == 0) {
+            return boost::none;
+        }
+        return row % (rowCount / 2);
+    }
+
+    // Every row but the ones with a NULL key has the same key
+    static boost::optional<int32_t> skewedKey(int rowCount, int row) {
+        if (row % 10 == 0) {
+            return boost::none;
+        }
+        return 7;
+    }
+
+    void insertRows(VoltDBEngine* engine, int rowCount,
+                    boost::optional<int32_t> (*keyFn)(int, int)) {
+        Table* table = engine->getTableByName("T");
+        StandAloneTupleStorage storage{table->schema()};
+        TableTuple tuple = storage.tuple();
+        for (int row = 0; row < rowCount; ++row) {
+            std::ostringstream oss;
+            oss << "val " << row << " " << std::string(VAL_LENGTH, 'x');
+            Tools::setTupleValues(&tuple, (int64_t)row, keyFn(rowCount, row), oss.str());
+            table->insertTuple(tuple);
+            ExecutorContext::getTempStringPool()->purge();
+        }
+    }
+
+    static JoinResult expectedResult(int rowCount, boost::optional<int32_t> (*keyFn)(int, int),
+                                     const std::string& joinType, bool matchOnI) {
+        JoinResult expected;
+        std::vector<bool> innerMatched(rowCount, false);
+        for (int outer = 0; outer < rowCount; ++outer) {
+            bool outerMatched = false;
+            for (int inner = 0; inner < rowCount; ++inner) {
+                boost::optional<int32_t> outerKey = keyFn(rowCount, outer);
+                boost::optional<int32_t> innerKey = keyFn(rowCount, inner);
+                if (outerKey && innerKey && *outerKey == *innerKey && (!matchOnI || outer == inner)) {
+                    ++expected[std::make_pair((int64_t)outer, (int64_t)inner)];
+                    outerMatched = true;
+                    innerMatched[inner] = true;
+                }
+            }
+            if (joinType != "INNER" && !outerMatched) {
+                ++expected[std::make_pair((int64_t)outer, NULL_ROW)];
+            }
+        }
+        if (joinType == "FULL") {
+            for (int inner = 0; inner < rowCount; ++inner) {
+                if (!innerMatched[inner]) {
+                    ++expected[std::make_pair(NULL_ROW, (int64_t)inner)];
+                }
+            }
+        }
+        return expected;
+    }
+
+    static JoinResult actualResult(Table* result) {
+        JoinResult actual;
+        TableTuple tuple(result->schema());
+        TableIterator it = result->iterator();
+        while (it.next(tuple)) {
+            NValue outer = tuple.getNValue(0);
+            NValue inner = tuple.getNValue(3);
+            ++actual[std::make_pair(outer.isNull() ? NULL_ROW : ValuePeeker::peekAsBigInt(outer),
+                                    inner.isNull() ? NULL_ROW : ValuePeeker::peekAsBigInt(inner))];
+        }
+        return actual;
+    }
+
+    void verifyBlocksReleased(LargeTempTableTopend* topend) {
+        LargeTempTableBlockCache* lttBlockCache = ExecutorContext::getExecutorContext()->lttBlockCache();
+        ASSERT_EQ(0, lttBlockCache->totalBlockCount());
+        ASSERT_EQ(0, lttBlockCache->allocatedMemory());
+        ASSERT_EQ(0, topend->storedBlockCount());
+    }
+
+    void executeAndVerify(int64_t tempTableMemoryLimit, int rowCount,
+                          boost::optional<int32_t> (*keyFn)(int, int),
+                          const std::string& joinType, bool matchOnI) {
+        LargeTempTableTopend* topend;
+        UniqueEngine engine = buildEngine(tempTableMemoryLimit, &topend);
+        ASSERT_TRUE(engine->loadCatalog(0, catalogPayload));
+        insertRows(engine.get(), rowCount, keyFn);
+
+        JoinResult expected = expectedResult(rowCount, keyFn, joinType, matchOnI);
+        auto ev = ExecutorVector::fromJsonPlan(engine.get(), joinPlan(true, joinType, matchOnI), 0);
+        ASSERT_NE(NULL, ev.get());
+        // Run twice, to check that the executor can run again after partitioning.
+        for (int ii = 0; ii < 2; ++ii) {
+            {
+                UniqueTempTableResult result = engine->executePlanFragment(ev.get(), NULL);
+                ASSERT_NE(NULL, result.get());
+                ASSERT_TRUE(expected == actualResult(result.get()));
+            }
+            verifyBlocksReleased(topend);
+        }
+    }
+};
+
+// A cache of four blocks leaves room for two pinned inner blocks,
+// so the three block inner input is split into two partitions.
+TEST_F(HashJoinLargeTest, InnerJoinPartitioned) {
+    executeAndVerify(32 * 1024 * 1024, 3000, pairedKey, "INNER", false);
+}
+
+TEST_F(HashJoinLargeTest, LeftJoinPartitioned) {
+    executeAndVerify(32 * 1024 * 1024, 3000, pairedKey, "LEFT", false);
+}
+
+TEST_F(HashJoinLargeTest, FullJoinPartitioned) {
+    executeAndVerify(32 * 1024 * 1024, 3000, pairedKey, "FULL", false);
+}
+
+// Six inner blocks split into two partitions that are still too big,
+// so each of them is split again.
+TEST_F(HashJoinLargeTest, FullJoinRepartitioned) {
+    executeAndVerify(32 * 1024 * 1024, 6000, pairedKey, "FULL", false);
+}
+
+// Hashing can't split a partition whose rows all have the same key,
+// it's joined with a nested loop instead.
+TEST_F(HashJoinLargeTest, SkewedKeysLeftJoin) {
+    executeAndVerify(32 * 1024 * 1024, 3000, skewedKey, "LEFT", true);
+}
+
+TEST_F(HashJoinLargeTest, SkewedKeysFullJoin) {
+    executeAndVerify(32 * 1024 * 1024, 3000, skewedKey, "FULL", true);
+}
+
+// The block cache is too small to hold any partitions
+TEST_F(HashJoinLargeTest, TinyCacheInnerJoin) {
+    executeAndVerify(24 * 1024 * 1024, 3000, pairedKey, "INNER", false);
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
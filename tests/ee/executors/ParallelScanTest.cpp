@@ -0,0 +1,451 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <algorithm>
+#include <limits>
+#include <sstream>
+#include <string>
+#include <vector>
+
+#include "boost/foreach.hpp"
+#include "boost/optional.hpp"
+
+#include "harness.h"
+
+#include "test_utils/Tools.hpp"
+#include "test_utils/UniqueEngine.hpp"
+
+#include "common/ExecuteWithMpMemory.h"
+#include "common/SerializableEEException.h"
+#include "common/SynchronizedThreadLock.h"
+#include "common/ValuePeeker.hpp"
+#include "common/tabletuple.h"
+#include "execution/ExecutorVector.h"
+#include "storage/AbstractTempTable.hpp"
+#include "storage/persistenttable.h"
+#include "storage/table.h"
+#include "storage/tableiterator.h"
+
+using namespace voltdb;
+
+/**
+ * Catalog for a database with just one table:
+ *  create table r (id  bigint not null,
+ *                  g   integer not null,
+ *                  v   bigint,
+ *                  pad varchar(63 bytes));
+ */
+static const std::string catalogPayload =
+    "add / clusters cluster\n"
+    "set /clusters#cluster localepoch 1199145600\n"
+    "set $PREV securityEnabled false\n"
+    "set $PREV httpdportno -1\n"
+    "set $PREV jsonapi true\n"
+    "set $PREV networkpartition false\n"
+    "set $PREV heartbeatTimeout 90\n"
+    "set $PREV useddlschema false\n"
+    "set $PREV drConsumerEnabled false\n"
+    "set $PREV drProducerEnabled true\n"
+    "set $PREV drRole \"master\"\n"
+    "set $PREV drClusterId 0\n"
+    "set $PREV drProducerPort 5555\n"
+    "set $PREV drMasterHost \"\"\n"
+    "set $PREV drFlushInterval 1000\n"
+    "set $PREV preferredSource 0\n"
+    "add /clusters#cluster databases database\n"
+    "set $PREV isActiveActiveDRed false\n"
+    "set $PREV securityprovider \"hash\"\n"
+    "add /clusters#cluster/databases#database groups administrator\n"
+    "set /clusters#cluster/databases#database/groups#administrator admin true\n"
+    "set $PREV defaultproc true\n"
+    "set $PREV defaultprocread true\n"
+    "set $PREV sql true\n"
+    "set $PREV sqlread true\n"
+    "set $PREV allproc true\n"
+    "add /clusters#cluster/databases#database tables R\n"
+    "set /clusters#cluster/databases#database/tables#R isreplicated true\n"
+    "set $PREV partitioncolumn null\n"
+    "set $PREV estimatedtuplecount 0\n"
+    "set $PREV materializer null\n"
+    "set $PREV signature \"R|bibv\"\n"
+    "set $PREV tuplelimit 2147483647\n"
+    "set $PREV isDRed false\n"
+    "add /clusters#cluster/databases#database/tables#R columns ID\n"
+    "set /clusters#cluster/databases#database/tables#R/columns#ID index 0\n"
+    "set $PREV type 6\n"
+    "set $PREV size 8\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"ID\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#R columns G\n"
+    "set /clusters#cluster/databases#database/tables#R/columns#G index 1\n"
+    "set $PREV type 5\n"
+    "set $PREV size 4\n"
+    "set $PREV nullable false\n"
+    "set $PREV name \"G\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#R columns V\n"
+    "set /clusters#cluster/databases#database/tables#R/columns#V index 2\n"
+    "set $PREV type 6\n"
+    "set $PREV size 8\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"V\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes false\n"
+    "add /clusters#cluster/databases#database/tables#R columns PAD\n"
+    "set /clusters#cluster/databases#database/tables#R/columns#PAD index 3\n"
+    "set $PREV type 9\n"
+    "set $PREV size 63\n"
+    "set $PREV nullable true\n"
+    "set $PREV name \"PAD\"\n"
+    "set $PREV defaultvalue null\n"
+    "set $PREV defaulttype 0\n"
+    "set $PREV aggregatetype 0\n"
+    "set $PREV matviewsource null\n"
+    "set $PREV matview null\n"
+    "set $PREV inbytes true\n"
+    "add /clusters#cluster/databases#database snapshotSchedule default\n"
+    "set /clusters#cluster/databases#database/snapshotSchedule#default enabled false\n"
+    "set $PREV frequencyUnit \"h\"\n"
+    "set $PREV frequencyValue 24\n"
+    "set $PREV retain 2\n"
+    "set $PREV prefix \"AUTOSNAP\"\n"
+    "add /clusters#cluster deployment deployment\n"
+    "set /clusters#cluster/deployment#deployment kfactor 0\n"
+    "add /clusters#cluster/deployment#deployment systemsettings systemsettings\n"
+    "set /clusters#cluster/deployment#deployment/systemsettings#systemsettings temptablemaxsize 100\n"
+    "set $PREV snapshotpriority 6\n"
+    "set $PREV elasticduration 50\n"
+    "set $PREV elasticthroughput 2\n"
+    "set $PREV querytimeout 300000\n"
+    "add /clusters#cluster logconfig log\n"
+    "set /clusters#cluster/logconfig#log enabled false\n"
+    "set $PREV synchronous false\n"
+    "set $PREV fsyncInterval 200\n"
+    "set $PREV maxTxns 2147483647\n"
+    "set $PREV logSize 1024";
+
+namespace {
+
+std::string tve(int columnIdx, int valueType) {
+    std::ostringstream oss;
+    oss << "{\"TYPE\":32,\"VALUE_TYPE\":" << valueType;
+    if (valueType == 9) {
+        oss << ",\"VALUE_SIZE\":63,\"IN_BYTES\":true";
+    }
+    oss << ",\"COLUMN_IDX\":" << columnIdx << "}";
+    return oss.str();
+}
+
+// A comparison of a bigint column with a constant
+std::string compare(int expressionType, int columnIdx, int64_t value) {
+    std::ostringstream oss;
+    oss << "{\"TYPE\":" << expressionType << ",\"VALUE_TYPE\":23,\"LEFT\":" << tve(columnIdx, 6)
+        << ",\"RIGHT\":{\"TYPE\":30,\"VALUE_TYPE\":6,\"ISNULL\":false,\"VALUE\":" << value << "}}";
+    return oss.str();
+}
+
+std::string lessThan(int columnIdx, int64_t value) {
+    return compare(12, columnIdx, value);
+}
+
+std::string greaterThanOrEqual(int columnIdx, int64_t value) {
+    return compare(15, columnIdx, value);
+}
+
+std::string outputColumn(const std::string& name, const std::string& expression) {
+    return "{\"COLUMN_NAME\":\"" + name + "\",\"EXPRESSION\":" + expression + "}";
+}
+
+std::string aggregateColumn(const std::string& type, int outputColumn, bool hasExpression) {
+    std::ostringstream oss;
+    oss << "{\"AGGREGATE_TYPE\":\"" << type << "\",\"AGGREGATE_DISTINCT\":0,"
+        << "\"AGGREGATE_OUTPUT_COLUMN\":" << outputColumn;
+    if (hasExpression) {
+        oss << ",\"AGGREGATE_EXPRESSION\":" << tve(2, 6);
+    }
+    oss << "}";
+    return oss.str();
+}
+
+std::string planOf(const std::string& outputSchema, const std::string& inlineNodes,
+                   const std::string& predicate) {
+    std::ostringstream oss;
+    oss << "{\"PLAN_NODES\":[{\"ID\":1,\"PLAN_NODE_TYPE\":\"SEQSCAN\","
+        << "\"OUTPUT_SCHEMA\":[" << outputSchema << "],";
+    if ( ! inlineNodes.empty()) {
+        oss << "\"INLINE_NODES\":[" << inlineNodes << "],";
+    }
+    if ( ! predicate.empty()) {
+        oss << "\"PREDICATE\":" << predicate << ",";
+    }
+    oss << "\"TARGET_TABLE_NAME\":\"R\",\"TARGET_TABLE_ALIAS\":\"R\"}],"
+        << "\"EXECUTE_LIST\":[1]}";
+    return oss.str();
+}
+
+/**
+ * A hand-written plan for
+ *     select * from r where <predicate>
+ */
+std::string scanPlan(const std::string& predicate) {
+    return planOf(outputColumn("ID", tve(0, 6)) + "," + outputColumn("G", tve(1, 5)) + "," +
+                  outputColumn("V", tve(2, 6)) + "," + outputColumn("PAD", tve(3, 9)),
+                  "", predicate);
+}
+
+/**
+ * A hand-written plan for
+ *     select [g,] count(*), count(v), sum(v), avg(v), min(v), max(v), approx_count_distinct(v)
+ *     from r where <predicate> [group by g]
+ * with the aggregate inlined in the scan.
+ */
+std::string aggregatePlan(bool groupByG, const std::string& predicate) {
+    static const char* const aggregateTypes[] = {
+        "AGGREGATE_COUNT_STAR", "AGGREGATE_COUNT", "AGGREGATE_SUM", "AGGREGATE_AVG",
+        "AGGREGATE_MIN", "AGGREGATE_MAX", "AGGREGATE_APPROX_COUNT_DISTINCT"
+    };
+    std::ostringstream columns;
+    std::ostringstream aggregates;
+    int firstAggregate = 0;
+    if (groupByG) {
+        columns << outputColumn("G", tve(1, 5)) << ",";
+        firstAggregate = 1;
+    }
+    for (int ii = 0; ii < 7; ++ii) {
+        std::ostringstream name;
+        name << "C" << ii;
+        columns << (ii > 0 ? "," : "") << outputColumn(name.str(), tve(firstAggregate + ii, 6));
+        aggregates << (ii > 0 ? "," : "") << aggregateColumn(aggregateTypes[ii], firstAggregate + ii, ii > 0);
+    }
+    std::ostringstream aggregateNode;
+    aggregateNode << "{\"ID\":2,\"PLAN_NODE_TYPE\":\"" << (groupByG ? "HASHAGGREGATE" : "AGGREGATE") << "\","
+                  << "\"OUTPUT_SCHEMA\":[" << columns.str() << "],"
+                  << "\"AGGREGATE_COLUMNS\":[" << aggregates.str() << "]";
+    if (groupByG) {
+        aggregateNode << ",\"GROUPBY_EXPRESSIONS\":[" << tve(1, 5) << "]";
+    }
+    aggregateNode << "}";
+    return planOf(columns.str(), aggregateNode.str(), predicate);
+}
+
+}
+
+class ParallelScanTest : public Test {
+public:
+    // More than PARALLEL_SCAN_MIN_TUPLES, and enough blocks for several ranges
+    static const int ROW_COUNT = 200000;
+    // V is NULL in the rows before this one, which fill whole blocks,
+    // so that some ranges aggregate only NULLs
+    static const int FIRST_NON_NULL_ROW = 60000;
+    static const int PARALLEL_SCAN_THREADS = 3;
+
+protected:
+    typedef boost::optional<int64_t> (*ValueFn)(int row);
+
+    static boost::optional<int64_t> valueOfV(int row) {
+        if (row < FIRST_NON_NULL_ROW) {
+            return boost::none;
+        }
+        return (row * 7919) % 100003 - 50000;
+    }
+
+    // Pairs of rows whose sum overflows, in every block, so that the
+    // ranges of the helper threads overflow as well as the site thread's
+    static boost::optional<int64_t> overflowingValueOfV(int row) {
+        if (row % 10000 < 2) {
+            return std::numeric_limits<int64_t>::max() / 2 + 1;
+        }
+        return valueOfV(row);
+    }
+
+    static UniqueEngine buildEngine(int parallelScanThreads, ValueFn valueFn) {
+        UniqueEngine engine = UniqueEngineBuilder()
+            .setParallelScanThreads(parallelScanThreads)
+            .build();
+        engine->loadCatalog(0, catalogPayload);
+        PersistentTable* table = dynamic_cast<PersistentTable*>(engine->getTableByName("R"));
+        StandAloneTupleStorage storage{table->schema()};
+        TableTuple tuple = storage.tuple();
+        {
+            // Replicated tables are written with the lock held, in the MP memory context
+            ScopedReplicatedResourceLock replicatedResourceLock;
+            SynchronizedThreadLock::assumeMpMemoryContext();
+            for (int row = 0; row < ROW_COUNT; ++row) {
+                Tools::setTupleValues(&tuple, (int64_t)row, row % 100, valueFn(row), "pad");
+                // Not undoable, so there is no undo action to synchronize between sites
+                table->insertPersistentTuple(tuple, false);
+            }
+            SynchronizedThreadLock::assumeLocalSiteContext();
+        }
+        return engine;
+    }
+
+    static std::string rowOf(const TableTuple& tuple) {
+        std::ostringstream oss;
+        for (int ii = 0; ii < tuple.getSchema()->columnCount(); ++ii) {
+            NValue value = tuple.getNValue(ii);
+            oss << (value.isNull() ? "NULL" : value.toString()) << "|";
+        }
+        return oss.str();
+    }
+
+    static std::vector<std::string> execute(VoltDBEngine* engine, const std::string& jsonPlan) {
+        auto ev = ExecutorVector::fromJsonPlan(engine, jsonPlan, 0);
+        UniqueTempTableResult result = engine->executePlanFragment(ev.get(), NULL);
+        std::vector<std::string> rows;
+        TableTuple tuple(result->schema());
+        TableIterator it = result->iterator();
+        while (it.next(tuple)) {
+            rows.push_back(rowOf(tuple));
+        }
+        return rows;
+    }
+
+    typedef bool (*Qualifies)(const TableTuple& tuple);
+
+    // Each engine lays out its blocks differently, so the order of a scan
+    // is checked against an iteration of the same engine's table.
+    void executeAndCompareScan(const std::string& predicate, Qualifies qualifies, size_t expectedRowCount) {
+        const int threadCounts[] = { 0, PARALLEL_SCAN_THREADS };
+        BOOST_FOREACH (int parallelScanThreads, threadCounts) {
+            UniqueEngine engine = buildEngine(parallelScanThreads, valueOfV);
+            std::vector<std::string> expected;
+            Table* table = engine->getTableByName("R");
+            TableTuple tuple(table->schema());
+            TableIterator it = table->iterator();
+            while (it.next(tuple)) {
+                if (qualifies(tuple)) {
+                    expected.push_back(rowOf(tuple));
+                }
+            }
+            ASSERT_EQ(expectedRowCount, expected.size());
+            ASSERT_TRUE(expected == execute(engine.get(), scanPlan(predicate)));
+        }
+    }
+
+    // The parallel aggregate gives the same rows as the serial one.
+    // Hash aggregates output their groups in no particular order.
+    void executeAndCompareAggregate(bool groupByG, const std::string& predicate, size_t expectedRowCount) {
+        std::vector<std::string> serial = execute(buildEngine(0, valueOfV).get(),
+                                                  aggregatePlan(groupByG, predicate));
+        std::vector<std::string> parallel = execute(buildEngine(PARALLEL_SCAN_THREADS, valueOfV).get(),
+                                                    aggregatePlan(groupByG, predicate));
+        std::sort(serial.begin(), serial.end());
+        std::sort(parallel.begin(), parallel.end());
+        ASSERT_EQ(expectedRowCount, serial.size());
+        ASSERT_TRUE(serial == parallel);
+    }
+};
+
+static bool negativeV(const TableTuple& tuple) {
+    NValue value = tuple.getNValue(2);
+    return ! value.isNull() && ValuePeeker::peekAsBigInt(value) < 0;
+}
+
+static bool lastTenRows(const TableTuple& tuple) {
+    return ValuePeeker::peekAsBigInt(tuple.getNValue(0)) >= ParallelScanTest::ROW_COUNT - 10;
+}
+
+static bool noRows(const TableTuple& tuple) {
+    return false;
+}
+
+TEST_F(ParallelScanTest, ScanInOrder) {
+    size_t negatives = 0;
+    for (int row = 0; row < ROW_COUNT; ++row) {
+        if (valueOfV(row) && *valueOfV(row) < 0) {
+            ++negatives;
+        }
+    }
+    // Nulls don't qualify, though they are stored as the smallest bigint
+    executeAndCompareScan(lessThan(2, 0), negativeV, negatives);
+}
+
+TEST_F(ParallelScanTest, ScanEmptyRanges) {
+    executeAndCompareScan(greaterThanOrEqual(0, ROW_COUNT - 10), lastTenRows, 10);
+    executeAndCompareScan(lessThan(0, 0), noRows, 0);
+}
+
+TEST_F(ParallelScanTest, SerialAggregate) {
+    executeAndCompareAggregate(false, "", 1);
+}
+
+TEST_F(ParallelScanTest, SerialAggregateAllNullRanges) {
+    // Only the first ranges have qualifying rows, and V is NULL in all of them
+    executeAndCompareAggregate(false, lessThan(0, FIRST_NON_NULL_ROW), 1);
+}
+
+TEST_F(ParallelScanTest, SerialAggregateEmptyRanges) {
+    executeAndCompareAggregate(false, greaterThanOrEqual(0, ROW_COUNT - 10), 1);
+    executeAndCompareAggregate(false, lessThan(0, 0), 1);
+}
+
+TEST_F(ParallelScanTest, HashAggregate) {
+    executeAndCompareAggregate(true, "", 100);
+}
+
+TEST_F(ParallelScanTest, HashAggregateSparseRanges) {
+    executeAndCompareAggregate(true, lessThan(0, FIRST_NON_NULL_ROW), 100);
+    executeAndCompareAggregate(true, greaterThanOrEqual(0, ROW_COUNT - 10), 10);
+    executeAndCompareAggregate(true, lessThan(0, 0), 0);
+}
+
+TEST_F(ParallelScanTest, OverflowOnHelperThread) {
+    // The sums overflow on the helper threads, the error is rethrown on the
+    // site thread, and the engine can run the next fragment.
+    UniqueEngine engine = buildEngine(PARALLEL_SCAN_THREADS, overflowingValueOfV);
+    auto ev = ExecutorVector::fromJsonPlan(engine.get(), aggregatePlan(false, ""), 0);
+    for (int ii = 0; ii < 2; ++ii) {
+        bool caught = false;
+        try {
+            engine->executePlanFragment(ev.get(), NULL);
+        }
+        catch (const SerializableEEException& exc) {
+            caught = true;
+        }
+        ASSERT_TRUE(caught);
+    }
+
+    ev = ExecutorVector::fromJsonPlan(engine.get(), aggregatePlan(false, lessThan(2, 0)), 0);
+    UniqueTempTableResult result = engine->executePlanFragment(ev.get(), NULL);
+    ASSERT_EQ(1, result->activeTupleCount());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
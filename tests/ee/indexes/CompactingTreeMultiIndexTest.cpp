@@ -255,6 +255,66 @@ TEST_F(CompactingTreeMultiIndexTest, SimpleDeleteTuple) {
     delete tuple4;
 }
 
+// A btree index must return the same tuples in the same order as the balanced tree index.
+TEST_F(CompactingTreeMultiIndexTest, BTreeMatchesBalancedTree) {
+    prepareForPerformanceDifference();
+    createSchemaAndIndexForPerformanceDifference();
+
+    // index the random third column
+    vector<int> columnIndices;
+    columnIndices.push_back(2);
+    TableIndexScheme treeScheme("tree_index", BALANCED_TREE_INDEX,
+                                columnIndices, TableIndex::simplyIndexColumns(),
+                                false, true, m_schema);
+    TableIndexScheme btreeScheme("btree_index", BTREE_INDEX,
+                                 columnIndices, TableIndex::simplyIndexColumns(),
+                                 false, true, m_schema);
+    TableIndex *tree = TableIndexFactory::getInstance(treeScheme);
+    TableIndex *btree = TableIndexFactory::getInstance(btreeScheme);
+
+    const int places = 14;
+    char *data = initTuples(m_schema, places);
+    insertTuplesIntoIndex2(tree, m_schema, data, places);
+    insertTuplesIntoIndex2(btree, m_schema, data, places);
+    deleteTuplesFromIndex(tree, m_schema, data, places, 1000);
+    deleteTuplesFromIndex(btree, m_schema, data, places, 1000);
+
+    IndexCursor treeCursor(tree->getTupleSchema());
+    IndexCursor btreeCursor(btree->getTupleSchema());
+    for (int forward = 0; forward < 2; forward++) {
+        tree->moveToEnd(forward, treeCursor);
+        btree->moveToEnd(forward, btreeCursor);
+        int64_t count = 0;
+        TableTuple expected = tree->nextValue(treeCursor);
+        TableTuple actual = btree->nextValue(btreeCursor);
+        while ( ! expected.isNullTuple()) {
+            ASSERT_EQ(expected.address(), actual.address());
+            ++count;
+            expected = tree->nextValue(treeCursor);
+            actual = btree->nextValue(btreeCursor);
+        }
+        ASSERT_TRUE(actual.isNullTuple());
+        ASSERT_EQ(tree->getSize(), count);
+    }
+
+    // rank lookups agree as well
+    TableTuple searchKey(tree->getKeySchema());
+    char searchKeyData[8];
+    searchKey.moveNoHeader(searchKeyData);
+    for (int ii = 0; ii < 100; ii++) {
+        searchKey.setNValue(0, ValueFactory::getBigIntValue(rand()));
+        ASSERT_EQ(tree->getCounterGET(&searchKey, false, treeCursor),
+                  btree->getCounterGET(&searchKey, false, btreeCursor));
+        ASSERT_EQ(tree->getCounterLET(&searchKey, true, treeCursor),
+                  btree->getCounterLET(&searchKey, true, btreeCursor));
+    }
+
+    delete tree;
+    delete btree;
+    delete [] data;
+    freeSchemaAndIndexForPerformanceDifference();
+}
+
 static int VERBOSE = 0;
 
 // create three types of index and test their performace of delete
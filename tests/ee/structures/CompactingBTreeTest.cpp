@@ -0,0 +1,384 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <iostream>
+#include <map>
+#include <algorithm>
+#include <cstdlib>
+#include <cstdio>
+#include <vector>
+#include "harness.h"
+#include "structures/CompactingBTree.h"
+#include "common/FixUnusedAssertHack.h"
+
+using namespace voltdb;
+using namespace std;
+
+class StringComparator {
+public:
+    inline int operator()(const std::string &lhs, const std::string &rhs) const {
+        return lhs.compare(rhs);
+    }
+};
+
+class IntComparator {
+public:
+    inline int operator()(const int &lhs, const int &rhs) const {
+        if (lhs > rhs) return 1;
+        else if (lhs < rhs) return -1;
+        else return 0;
+    }
+
+    // int keys have no tuple pointer, needed for the rank functions.
+    inline int compareWithoutPointer(const int &lhs, const int &rhs) const {
+        return operator()(lhs, rhs);
+    }
+};
+
+typedef CompactingBTree<NormalKeyValuePair<int, int>, IntComparator, false> IntTree;
+typedef CompactingBTree<NormalKeyValuePair<int, int>, IntComparator, true> IntRankTree;
+typedef CompactingBTree<NormalKeyValuePair<std::string, std::string>, StringComparator, false> StringTree;
+
+class CompactingBTreeTest : public Test {
+public:
+    CompactingBTreeTest() {
+    }
+
+    ~CompactingBTreeTest() {
+    }
+
+    std::string keyFromInt(int i) {
+        char buf[256];
+        snprintf(buf, 256, "%010d", i);
+        std::string val = buf;
+        return val;
+    }
+
+    /*
+     * Scan both ways and make sure the tree holds exactly the keys of the
+     * stl map, in the same order.
+     */
+    template <typename StlMap, typename Tree>
+    void verifyScan(StlMap &stl, Tree &volt) {
+        ASSERT_EQ((int64_t)stl.size(), volt.size());
+        typename StlMap::iterator stli = stl.begin();
+        typename Tree::iterator volti = volt.begin();
+        for (; stli != stl.end(); stli++, volti.moveNext()) {
+            ASSERT_FALSE(volti.isEnd());
+            ASSERT_TRUE(stli->first == volti.key());
+        }
+        ASSERT_TRUE(volti.isEnd());
+
+        typename StlMap::reverse_iterator rstli = stl.rbegin();
+        volti = volt.rbegin();
+        for (; rstli != stl.rend(); rstli++, volti.movePrev()) {
+            ASSERT_FALSE(volti.isEnd());
+            ASSERT_TRUE(rstli->first == volti.key());
+        }
+        ASSERT_TRUE(volti.isEnd());
+    }
+};
+
+TEST_F(CompactingBTreeTest, Trivial) {
+    IntTree m(true, IntComparator());
+    ASSERT_TRUE(m.begin().isEnd());
+    ASSERT_TRUE(m.rbegin().isEnd());
+    ASSERT_TRUE(m.lowerBound(1).isEnd());
+    ASSERT_TRUE(m.find(1).isEnd());
+
+    ASSERT_TRUE(m.insert(std::pair<int,int>(2,2)));
+    ASSERT_TRUE(m.insert(std::pair<int,int>(1,1)));
+    ASSERT_TRUE(m.insert(std::pair<int,int>(3,3)));
+    ASSERT_FALSE(m.insert(std::pair<int,int>(2,2)));
+    ASSERT_TRUE(m.verify());
+    ASSERT_EQ(3, m.size());
+
+    // a failed insert of a unique key points at the existing value
+    const int *conflict = m.insert(2, 5);
+    ASSERT_TRUE(conflict != NULL);
+    ASSERT_EQ(2, *conflict);
+
+    IntTree::iterator iter = m.begin();
+    ASSERT_EQ(1, iter.key());
+    iter.movePrev();
+    ASSERT_TRUE(iter.isEnd());
+
+    ASSERT_TRUE(m.erase(2));
+    ASSERT_FALSE(m.erase(2));
+    ASSERT_TRUE(m.erase(1));
+    ASSERT_TRUE(m.erase(3));
+    ASSERT_EQ(0, m.size());
+    ASSERT_TRUE(m.begin().isEnd());
+    ASSERT_TRUE(m.verify());
+
+    IntTree m2(false, IntComparator());
+    for (int i = 0; i < 1000; i++) {
+        ASSERT_TRUE(m2.insert(std::pair<int,int>(1,i)));
+    }
+    ASSERT_TRUE(m2.verify());
+    // duplicates go after the existing ones, and span many leaves
+    std::pair<IntTree::iterator, IntTree::iterator> range = m2.equalRange(1);
+    ASSERT_TRUE(range.first.equals(m2.begin()));
+    ASSERT_TRUE(range.second.isEnd());
+    for (int i = 0; i < 1000; i++) {
+        ASSERT_FALSE(range.first.isEnd());
+        ASSERT_EQ(i, range.first.value());
+        range.first.moveNext();
+    }
+    ASSERT_TRUE(range.first.equals(range.second));
+}
+
+TEST_F(CompactingBTreeTest, RandomUnique) {
+    const int ITERATIONS = 100001;
+    const int BIGGEST_VAL = 10000;
+
+    const int INSERT = 0;
+    const int DELETE = 1;
+
+    std::map<int,int> stl;
+    IntTree volt(true, IntComparator());
+    ASSERT_TRUE(volt.verify());
+
+    std::map<int,int>::const_iterator stli;
+    IntTree::iterator volti;
+
+    srand(0);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+        if ((i % 1000) == 0) {
+            ASSERT_TRUE(volt.verify());
+        }
+
+        // Grow for the first half, then shrink, so the tree gains and loses levels.
+        int op = (rand() % 3 == 0) == (i < ITERATIONS / 2) ? DELETE : INSERT;
+        int val = rand() % BIGGEST_VAL;
+        stli = stl.find(val);
+        volti = volt.find(val);
+        if (stli == stl.end()) {
+            ASSERT_TRUE(volti.isEnd());
+        }
+        else {
+            ASSERT_FALSE(volti.isEnd());
+            ASSERT_EQ(stli->first, volti.key());
+            ASSERT_EQ(stli->second, volti.value());
+        }
+
+        if (op == INSERT) {
+            bool inserted = stl.insert(std::pair<int,int>(val, i)).second;
+            ASSERT_EQ(inserted, volt.insert(std::pair<int,int>(val, i)));
+        }
+        else {
+            bool erased = stl.erase(val) == 1;
+            ASSERT_EQ(erased, volt.erase(val));
+        }
+
+        int bound = rand() % BIGGEST_VAL;
+        stli = stl.lower_bound(bound);
+        volti = volt.lowerBound(bound);
+        ASSERT_EQ(stli == stl.end(), volti.isEnd());
+        if (stli != stl.end()) {
+            ASSERT_EQ(stli->first, volti.key());
+        }
+        stli = stl.upper_bound(bound);
+        volti = volt.upperBound(bound);
+        ASSERT_EQ(stli == stl.end(), volti.isEnd());
+        if (stli != stl.end()) {
+            ASSERT_EQ(stli->first, volti.key());
+        }
+    }
+
+    ASSERT_TRUE(volt.verify());
+    verifyScan(stl, volt);
+}
+
+TEST_F(CompactingBTreeTest, RandomMulti) {
+    const int ITERATIONS = 20001;
+    const int BIGGEST_VAL = 100;
+
+    std::multimap<std::string, std::string> stl;
+    StringTree volt(false, StringComparator());
+
+    srand(0);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+        if ((i % 1000) == 0) {
+            ASSERT_TRUE(volt.verify());
+        }
+
+        std::string key = keyFromInt(rand() % BIGGEST_VAL);
+        std::string value = keyFromInt(i);
+        int op = rand() % 4;
+
+        if (op < 2) {
+            stl.insert(std::pair<std::string, std::string>(key, value));
+            ASSERT_TRUE(volt.insert(std::pair<std::string, std::string>(key, value)));
+        }
+        else if (op == 2) {
+            // erase the first value of a key
+            std::multimap<std::string, std::string>::iterator stli = stl.find(key);
+            StringTree::iterator volti = volt.find(key);
+            ASSERT_EQ(stli == stl.end(), volti.isEnd());
+            if (stli != stl.end()) {
+                ASSERT_TRUE(stli->second == volti.value());
+                stl.erase(stli);
+                ASSERT_TRUE(volt.erase(volti));
+            }
+        }
+        else {
+            // erase a value from the middle of a run of duplicates by iterator
+            std::pair<std::multimap<std::string, std::string>::iterator,
+                      std::multimap<std::string, std::string>::iterator> stlRange = stl.equal_range(key);
+            std::pair<StringTree::iterator, StringTree::iterator> voltRange = volt.equalRange(key);
+            int count = 0;
+            for (; stlRange.first != stlRange.second; ++stlRange.first, voltRange.first.moveNext()) {
+                ASSERT_FALSE(voltRange.first.equals(voltRange.second));
+                ASSERT_TRUE(stlRange.first->second == voltRange.first.value());
+                if (++count == 3) {
+                    stl.erase(stlRange.first);
+                    ASSERT_TRUE(volt.erase(voltRange.first));
+                    break;
+                }
+            }
+            if (count < 3) {
+                ASSERT_TRUE(voltRange.first.equals(voltRange.second));
+            }
+        }
+    }
+
+    ASSERT_TRUE(volt.verify());
+    verifyScan(stl, volt);
+
+    // drain it
+    while (volt.size() > 0) {
+        StringTree::iterator iter = volt.begin();
+        ASSERT_TRUE(volt.erase(iter));
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_TRUE(volt.begin().isEnd());
+}
+
+TEST_F(CompactingBTreeTest, Rank) {
+    const int ITERATIONS = 20000;
+    const int BIGGEST_VAL = 500;
+
+    IntRankTree unique(true, IntComparator());
+    IntRankTree multi(false, IntComparator());
+    std::vector<int> uniqueKeys;
+    std::vector<int> multiKeys;
+
+    srand(0);
+
+    for (int i = 0; i < ITERATIONS; i++) {
+        int val = rand() % BIGGEST_VAL;
+        if (rand() % 3 == 0) {
+            if (unique.erase(val)) {
+                uniqueKeys.erase(std::find(uniqueKeys.begin(), uniqueKeys.end(), val));
+            }
+            if (multi.erase(val)) {
+                multiKeys.erase(std::find(multiKeys.begin(), multiKeys.end(), val));
+            }
+        }
+        else {
+            if (unique.insert(std::pair<int,int>(val, val))) {
+                uniqueKeys.push_back(val);
+            }
+            multi.insert(std::pair<int,int>(val, val));
+            multiKeys.push_back(val);
+        }
+    }
+    ASSERT_TRUE(unique.verify());
+    ASSERT_TRUE(multi.verify());
+
+    std::sort(uniqueKeys.begin(), uniqueKeys.end());
+    std::sort(multiKeys.begin(), multiKeys.end());
+    ASSERT_EQ((int64_t)uniqueKeys.size(), unique.size());
+    ASSERT_EQ((int64_t)multiKeys.size(), multi.size());
+
+    for (int val = 0; val < BIGGEST_VAL; val++) {
+        int64_t lower = std::lower_bound(multiKeys.begin(), multiKeys.end(), val) - multiKeys.begin();
+        int64_t upper = std::upper_bound(multiKeys.begin(), multiKeys.end(), val) - multiKeys.begin();
+        if (lower == upper) {
+            ASSERT_EQ(-1, multi.rankLower(val));
+            ASSERT_EQ(-1, multi.rankUpper(val));
+        }
+        else {
+            ASSERT_EQ(lower + 1, multi.rankLower(val));
+            ASSERT_EQ(upper, multi.rankUpper(val));
+        }
+
+        lower = std::lower_bound(uniqueKeys.begin(), uniqueKeys.end(), val) - uniqueKeys.begin();
+        if (std::binary_search(uniqueKeys.begin(), uniqueKeys.end(), val)) {
+            ASSERT_EQ(lower + 1, unique.rankLower(val));
+            ASSERT_EQ(lower + 1, unique.rankUpper(val));
+        }
+        else {
+            ASSERT_EQ(-1, unique.rankLower(val));
+        }
+    }
+
+    ASSERT_TRUE(multi.findRank(0).isEnd());
+    ASSERT_TRUE(multi.findRank(multi.size() + 1).isEnd());
+    for (int64_t rank = 1; rank <= multi.size(); rank++) {
+        IntRankTree::iterator iter = multi.findRank(rank);
+        ASSERT_FALSE(iter.isEnd());
+        ASSERT_EQ(multiKeys[rank - 1], iter.key());
+    }
+}
+
+TEST_F(CompactingBTreeTest, Compaction) {
+    const int ITERATIONS = 100000;
+
+    IntRankTree volt(true, IntComparator());
+    ASSERT_EQ(0, volt.bytesAllocated());
+
+    // ever increasing keys fill the leaves
+    for (int i = 0; i < ITERATIONS; i++) {
+        ASSERT_TRUE(volt.insert(std::pair<int,int>(i, i)));
+    }
+    ASSERT_TRUE(volt.verify());
+    size_t fullSize = volt.bytesAllocated();
+    ASSERT_TRUE(fullSize > 0);
+    ASSERT_TRUE(fullSize < ITERATIONS * 2 * sizeof(NormalKeyValuePair<int, int>));
+
+    // deleting most entries gives memory back
+    for (int i = 0; i < ITERATIONS; i++) {
+        if (i % 100 != 0) {
+            ASSERT_TRUE(volt.erase(i));
+        }
+    }
+    ASSERT_TRUE(volt.verify());
+    ASSERT_EQ(ITERATIONS / 100, volt.size());
+    ASSERT_TRUE(volt.bytesAllocated() < fullSize / 2);
+
+    IntRankTree::iterator iter = volt.begin();
+    for (int i = 0; i < ITERATIONS; i += 100) {
+        ASSERT_EQ(i, iter.key());
+        ASSERT_EQ(i / 100 + 1, volt.rankLower(i));
+        iter.moveNext();
+    }
+    ASSERT_TRUE(iter.isEnd());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
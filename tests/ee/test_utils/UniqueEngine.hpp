@@ -67,7 +67,8 @@ public:
 private:
 
     UniqueEngine(std::unique_ptr<voltdb::Topend> topend,
-                 int64_t tempTableMemoryLimitInBytes)
+                 int64_t tempTableMemoryLimitInBytes,
+                 int32_t parallelScanThreads)
         : m_topend(topend.release())
         , m_engine(new voltdb::VoltDBEngine(m_topend.get()))
     {
@@ -81,7 +82,9 @@ private:
                              1024,  // defaultDrBufferSize
                              tempTableMemoryLimitInBytes,
                              true, // this is lowest site/engineId
-                             95);   // compaction threshold
+                             95,    // compaction threshold
+                             4*1000, // export flush timeout
+                             parallelScanThreads);
         m_engine->setUndoToken(0);
     }
     UniqueEngine()
@@ -102,6 +105,7 @@ private:
  * Options:
  *   setTempTableMemoryLimit (default is same as product default, 50MB)
  *   setTopend               (DummyTopend is used by default)
+ *   setParallelScanThreads  (default is 0, no parallel scans)
  */
 class UniqueEngineBuilder {
 public:
@@ -109,6 +113,7 @@ public:
     UniqueEngineBuilder()
         : m_tempTableMemoryLimit(voltdb::DEFAULT_TEMP_TABLE_MEMORY)
         , m_topend(new voltdb::DummyTopend())
+        , m_parallelScanThreads(0)
     {
     }
 
@@ -124,15 +129,22 @@ public:
         return *this;
     }
 
+    /** Give the engine helper threads for scans of large replicated tables */
+    UniqueEngineBuilder& setParallelScanThreads(int32_t parallelScanThreads) {
+        m_parallelScanThreads = parallelScanThreads;
+        return *this;
+    }
+
     /** Create an engine */
     UniqueEngine build() {
         assert(m_topend.get() != NULL);
-        return UniqueEngine(std::move(m_topend), m_tempTableMemoryLimit);
+        return UniqueEngine(std::move(m_topend), m_tempTableMemoryLimit, m_parallelScanThreads);
     }
 
 private:
     int64_t m_tempTableMemoryLimit;
     std::unique_ptr<voltdb::Topend> m_topend;
+    int32_t m_parallelScanThreads;
 };
 
 #endif // EE_TESTS_TEST_UTILS_UNIQUEENGINE_HPP
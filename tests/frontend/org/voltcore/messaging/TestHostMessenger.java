@@ -24,12 +24,14 @@
 package org.voltcore.messaging;
 
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -299,6 +301,68 @@ public class TestHostMessenger {
         assertTrue(hostids2.equals(hostids3));
     }
 
+    @Test
+    public void testCoalescedMessagesKeepOrder() throws Exception {
+        MeshProber.Builder jc = MeshProber.builder()
+                .coordinators(coordinators(2))
+                .startAction(StartAction.PROBE)
+                .nodeState(NodeState.INITIALIZING)
+                .bare(true);
+
+        HostMessenger hm1 = createHostMessenger(0, jc.build(), true);
+        HostMessenger hm2 = createHostMessenger(1, jc.build(), false);
+
+        final AtomicReference<Exception> exception = new AtomicReference<Exception>();
+        HostMessengerThread hm2Start = new HostMessengerThread(hm2, exception);
+        hm2Start.start();
+        hm2Start.join();
+        if (exception.get() != null) {
+            fail(exception.get().toString());
+        }
+        prober(hm1).waitForDetermination();
+
+        Mailbox m1 = hm1.createMailbox();
+        Mailbox m2 = hm2.createMailbox();
+
+        final int savedCoalesceBytes = ForeignHost.COALESCE_BYTES;
+        ForeignHost.COALESCE_BYTES = 32 * 1024;
+        try {
+            // Sending from several threads at once leaves the network thread behind, so messages get coalesced
+            final int threads = 4;
+            final int messagesPerThread = 2000;
+            List<Thread> senders = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                final byte sender = (byte)t;
+                senders.add(new Thread() {
+                    @Override
+                    public void run() {
+                        for (int ii = 0; ii < messagesPerThread; ii++) {
+                            m1.send(m2.getHSId(), new BinaryPayloadMessage(new byte[] { sender },
+                                    ByteBuffer.allocate(4).putInt(ii).array()));
+                        }
+                    }
+                });
+            }
+            for (Thread t : senders) {
+                t.start();
+            }
+            for (Thread t : senders) {
+                t.join();
+            }
+
+            int[] expected = new int[threads];
+            for (int ii = 0; ii < threads * messagesPerThread; ii++) {
+                BinaryPayloadMessage bpm = (BinaryPayloadMessage)m2.recvBlocking(60000);
+                assertNotNull(bpm);
+                assertEquals(m1.getHSId(), bpm.m_sourceHSId);
+                int sender = bpm.m_metadata[0];
+                assertEquals(expected[sender]++, ByteBuffer.wrap(bpm.m_payload).getInt());
+            }
+        } finally {
+            ForeignHost.COALESCE_BYTES = savedCoalesceBytes;
+        }
+    }
+
     @Test
     public void testMultiHostProbedRecover() throws Exception {
         MeshProber.Builder jc = MeshProber.builder()
@@ -59,6 +59,8 @@ import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.EstTimeUpdater;
 import org.voltdb.AdmissionControlGroup;
@@ -452,4 +454,65 @@ public class TestNIOWriteStream extends TestCase {
         assertEquals(0, queue.get());
     }
 
+    /**
+     * Message of three 100 byte parts, larger than the pool's buffers
+     */
+    private static class MockContainerSerialization implements DeferredContainerSerialization {
+        private final boolean m_hasContainers;
+
+        MockContainerSerialization(boolean hasContainers) {
+            m_hasContainers = hasContainers;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buf) throws IOException {
+            buf.put(new byte[300]);
+        }
+
+        @Override
+        public void cancel() {}
+
+        @Override
+        public int getSerializedSize() throws IOException {
+            return 300;
+        }
+
+        @Override
+        public boolean hasContainers() {
+            return m_hasContainers;
+        }
+
+        @Override
+        public BBContainer[] serializeToContainers() throws IOException {
+            BBContainer[] containers = new BBContainer[3];
+            for (int ii = 0; ii < containers.length; ii++) {
+                containers[ii] = DBBPool.wrapBB(ByteBuffer.allocate(100));
+                containers[ii].b().position(100);
+            }
+            return containers;
+        }
+    }
+
+    public void testContainerSerialization() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK, 0);
+        MockPort port = new MockPort();
+        VoltNIOWriteStream wstream = new VoltNIOWriteStream(port);
+
+        // Queued as its own three containers but still counted as one message
+        wstream.enqueue(new MockContainerSerialization(true));
+        wstream.serializeQueuedWrites(pool);
+        assertEquals(3, wstream.getOutstandingMessageCount());
+        assertEquals(300, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        assertEquals(1, wstream.getBytesAndMessagesWritten(false)[1]);
+
+        // Without containers the message is copied into the pool's 4 byte buffers
+        wstream.enqueue(new MockContainerSerialization(false));
+        wstream.serializeQueuedWrites(pool);
+        assertEquals(300 / 4, wstream.getOutstandingMessageCount());
+        assertEquals(300, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        wstream.shutdown();
+    }
+
 }
@@ -0,0 +1,348 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.security.KeyStore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltcore.utils.DeferredSerialization;
+
+import junit.framework.TestCase;
+
+/**
+ * Sends messages through the encryption gateway of one TLS connection and the
+ * decryption gateway of its peer, with the cipher pools running the gateways.
+ */
+public class TestTLSGateways extends TestCase {
+
+    private static final String KEYSTORE_RESOURCE = "/org/voltdb/keystore";
+    private static final String KEYSTORE_PASSWD = "password";
+
+    private final Random m_random = new Random(42);
+    private SSLEngine m_client;
+    private SSLEngine m_server;
+
+    private class MockInputHandler extends VoltProtocolHandler {
+        final List<ByteBuffer> m_messages = new ArrayList<ByteBuffer>();
+
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            m_messages.add(message);
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return null;
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return null;
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    // Collects what the encryption adapter writes to the network
+    private static class WireChannel implements GatheringByteChannel {
+        final ByteArrayOutputStream m_bytes = new ByteArrayOutputStream();
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            byte[] data = new byte[length];
+            src.get(data);
+            m_bytes.write(data, 0, length);
+            return length;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += write(srcs[i]);
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = getClass().getResourceAsStream(KEYSTORE_RESOURCE)) {
+            keyStore.load(is, KEYSTORE_PASSWD.toCharArray());
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, KEYSTORE_PASSWD.toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        m_client = context.createSSLEngine();
+        m_client.setUseClientMode(true);
+        m_server = context.createSSLEngine();
+        m_server.setUseClientMode(false);
+        handshake();
+
+        CipherExecutor.CLIENT.startup();
+        CipherExecutor.SERVER.startup();
+    }
+
+    private void handshake() throws IOException {
+        final int packetSize = m_client.getSession().getPacketBufferSize();
+        final int appSize = m_client.getSession().getApplicationBufferSize();
+        ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer serverToClient = ByteBuffer.allocate(packetSize * 4);
+        ByteBuffer app = ByteBuffer.allocate(appSize);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        m_client.beginHandshake();
+        m_server.beginHandshake();
+        for (int round = 0; round < 1000; round++) {
+            boolean clientDone = handshakeStep(m_client, serverToClient, clientToServer, app, empty);
+            boolean serverDone = handshakeStep(m_server, clientToServer, serverToClient, app, empty);
+            if (clientDone && serverDone) {
+                return;
+            }
+        }
+        fail("TLS handshake did not finish");
+    }
+
+    // Returns true once the engine is done with the handshake
+    private static boolean handshakeStep(SSLEngine engine, ByteBuffer in, ByteBuffer out,
+            ByteBuffer app, ByteBuffer empty) throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                break;
+            case NEED_WRAP:
+                engine.wrap(empty, out);
+                break;
+            case NEED_UNWRAP:
+                in.flip();
+                HandshakeStatus before = engine.getHandshakeStatus();
+                app.clear();
+                int consumed = engine.unwrap(in, app).bytesConsumed();
+                in.compact();
+                if (consumed == 0 && engine.getHandshakeStatus() == before) {
+                    // Wait for the peer
+                    return false;
+                }
+                break;
+            default:
+                return true;
+            }
+        }
+    }
+
+    private static DeferredSerialization serialization(final byte[] payload) {
+        return new DeferredSerialization() {
+            @Override
+            public void serialize(ByteBuffer buf) {
+                buf.putInt(payload.length);
+                buf.put(payload);
+            }
+
+            @Override
+            public void cancel() {
+            }
+
+            @Override
+            public int getSerializedSize() {
+                return payload.length + 4;
+            }
+        };
+    }
+
+    private List<byte[]> makeMessages() {
+        List<byte[]> messages = new ArrayList<byte[]>();
+        // Enough small messages to fill more than a gateway task's worth of records
+        for (int i = 0; i < 2000; i++) {
+            byte[] payload = new byte[1 + m_random.nextInt(300)];
+            m_random.nextBytes(payload);
+            messages.add(payload);
+            // Now and then a message that spans several records
+            if (i % 500 == 250) {
+                payload = new byte[3 * CipherExecutor.FRAME_SIZE + m_random.nextInt(CipherExecutor.FRAME_SIZE)];
+                m_random.nextBytes(payload);
+                messages.add(payload);
+            }
+        }
+        return messages;
+    }
+
+    // Encrypt the messages as the client's write stream would, and return the bytes put on the wire
+    private byte[] encrypt(List<byte[]> messages) throws IOException {
+        TLSEncryptionAdapter adapter = new TLSEncryptionAdapter(mock(Connection.class), m_client, CipherExecutor.CLIENT);
+        final int frameMax = Math.min(CipherExecutor.FRAME_SIZE, adapter.applicationBufferSize());
+        WireChannel wire = new WireChannel();
+        try {
+            // Several write stream flushes, each with many messages
+            int next = 0;
+            while (next < messages.size()) {
+                Deque<DeferredSerialization> writes = new ArrayDeque<DeferredSerialization>();
+                int count = 1 + m_random.nextInt(400);
+                for (int i = 0; i < count && next < messages.size(); i++) {
+                    writes.add(serialization(messages.get(next++)));
+                }
+                adapter.encryptBuffers(writes, frameMax);
+                assertTrue(writes.isEmpty());
+            }
+            adapter.waitForPendingEncrypts();
+            adapter.drainEncryptedMessages(wire);
+            adapter.checkForGatewayExceptions();
+            assertTrue(adapter.isEmpty());
+        } finally {
+            adapter.shutdown();
+        }
+        return wire.m_bytes.toByteArray();
+    }
+
+    /*
+     * Decrypt the wire bytes as the server's port would. Each read from the channel returns
+     * at most readSize bytes, which may end in the middle of a record or hold many records.
+     */
+    private List<ByteBuffer> decrypt(byte[] bytes, final int readSize) throws IOException {
+        final ByteBuffer wire = ByteBuffer.wrap(bytes);
+        final int[] allowed = new int[1];
+        SocketChannel channel = mock(SocketChannel.class);
+        doAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                ByteBuffer dst = (ByteBuffer)invocation.getArguments()[0];
+                int length = Math.min(allowed[0], Math.min(dst.remaining(), wire.remaining()));
+                ByteBuffer src = wire.duplicate();
+                src.limit(src.position() + length);
+                dst.put(src);
+                wire.position(wire.position() + length);
+                allowed[0] -= length;
+                return length;
+            }
+        }).when(channel).read(any(ByteBuffer.class));
+
+        MockInputHandler handler = new MockInputHandler();
+        TLSDecryptionAdapter adapter = new TLSDecryptionAdapter(mock(Connection.class), handler, m_server, CipherExecutor.SERVER);
+        NIOReadStream readStream = new NIOReadStream();
+        NetworkDBBPool pool = new NetworkDBBPool(64);
+        try {
+            while (wire.hasRemaining()) {
+                allowed[0] = readSize;
+                adapter.handleInputStreamMessages(true, readStream, channel, pool);
+            }
+            assertEquals(0, readStream.dataAvailable());
+            adapter.waitForPendingDecrypts();
+            adapter.handleInputStreamMessages(false, readStream, channel, pool);
+            adapter.checkForGatewayExceptions();
+        } finally {
+            adapter.die();
+            readStream.shutdown();
+            pool.clear();
+        }
+        return handler.m_messages;
+    }
+
+    private static void checkMessages(List<byte[]> expected, List<ByteBuffer> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ByteBuffer message = actual.get(i);
+            byte[] data = new byte[message.remaining()];
+            message.get(data);
+            assertTrue("message " + i + " differs", Arrays.equals(expected.get(i), data));
+        }
+    }
+
+    // Every read brings in many whole records at once
+    @Test
+    public void testMultiRecordReads() throws Exception {
+        List<byte[]> messages = makeMessages();
+        byte[] wire = encrypt(messages);
+        checkMessages(messages, decrypt(wire, Integer.MAX_VALUE));
+    }
+
+    // Reads end in the middle of record headers and bodies
+    @Test
+    public void testPartialRecordReads() throws Exception {
+        List<byte[]> messages = makeMessages();
+        byte[] wire = encrypt(messages);
+        checkMessages(messages, decrypt(wire, 1000));
+    }
+
+    @Test
+    public void testTinyReads() throws Exception {
+        List<byte[]> messages = makeMessages().subList(0, 300);
+        byte[] wire = encrypt(messages);
+        checkMessages(messages, decrypt(wire, 3));
+    }
+}
@@ -31,9 +31,15 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.netty.buffer.CompositeByteBuf;
 import jsr166y.ThreadLocalRandom;
@@ -308,4 +314,299 @@ public class TestVoltNetwork extends TestCase {
         runInvokeCallbacks(selector, vn, vp);
     }
 
+    public void testInvokeCallbacksSkipsDetachedKey() throws Exception {
+        // A port that moved to another network leaves its key behind without an attachment
+        MockSelector selector = new MockSelector();
+        VoltNetwork vn = new VoltNetwork(selector);
+        MockSelectionKey selectionKey = new MockSelectionKey();
+        selectionKey.readyOps(SelectionKey.OP_READ);
+        selector.setFakeKey(selectionKey);
+        vn.invokeCallbacks(ThreadLocalRandom.current());
+        vn.shutdown();
+    }
+
+    /**
+     * Counts length prefixed sequence numbers and records the first one out of order
+     */
+    private static class SequenceHandler extends VoltProtocolHandler {
+        volatile int m_received = 0;
+        final AtomicReference<String> m_error = new AtomicReference<String>();
+
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            final int seq = message.getInt();
+            if (seq != m_received) {
+                m_error.compareAndSet(null, "Expected " + m_received + " but received " + seq);
+            }
+            if (Thread.currentThread().getId() != ((VoltPort)c).m_network.getThreadId()) {
+                m_error.compareAndSet(null, "Message " + seq + " handled by " + Thread.currentThread().getName());
+            }
+            m_received++;
+        }
+
+        void awaitReceived(int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 60000;
+            while (m_received < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, m_received);
+        }
+
+        @Override
+        public Runnable offBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    /**
+     * Task that holds up a network until it is released
+     */
+    private static class Blocker implements Runnable {
+        final CountDownLatch m_entered = new CountDownLatch(1);
+        final CountDownLatch m_release = new CountDownLatch(1);
+
+        static Blocker queue(VoltNetwork vn) {
+            Blocker blocker = new Blocker();
+            vn.queueTask(blocker);
+            return blocker;
+        }
+
+        @Override
+        public void run() {
+            m_entered.countDown();
+            try {
+                m_release.await();
+            } catch (InterruptedException e) {}
+        }
+    }
+
+    private static void runOn(VoltNetwork vn) throws Exception {
+        FutureTask<Object> ft = new FutureTask<Object>(new Runnable() {
+            @Override
+            public void run() {}
+        }, null);
+        vn.queueTask(ft);
+        ft.get();
+    }
+
+    private static void writeSequence(SocketChannel channel, int seq) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        buf.putInt(4).putInt(seq).flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static boolean migrate(final VoltPort port, final VoltNetwork target) throws Exception {
+        // Runs on the port's current network, which is already the target of any move in progress
+        final VoltNetwork source = port.m_network;
+        FutureTask<Boolean> ft = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return source.migratePort(port, target);
+            }
+        });
+        source.queueTask(ft);
+        return ft.get();
+    }
+
+    public void testMigrationWithTrafficInFlight() throws Exception {
+        final int messages = 100000;
+        VoltNetwork vn1 = new VoltNetwork(1, null, "Test");
+        VoltNetwork vn2 = new VoltNetwork(2, null, "Test");
+        vn1.start();
+        vn2.start();
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        final SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        SocketChannel accepted = server.accept();
+        server.close();
+
+        SequenceHandler handler = new SequenceHandler();
+        final VoltPort port = (VoltPort)vn1.registerChannel(accepted, handler, SelectionKey.OP_READ,
+                ReverseDNSPolicy.NONE, null, null);
+        assertEquals(1, vn1.numPorts());
+
+        // Reads in flight, the client streams to the port
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread clientWriter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ByteBuffer buf = ByteBuffer.allocate(8 * 1000);
+                    for (int ii = 0; ii < messages; ii++) {
+                        buf.putInt(4).putInt(ii);
+                        if (!buf.hasRemaining() || ii == messages - 1) {
+                            buf.flip();
+                            while (buf.hasRemaining()) {
+                                client.write(buf);
+                            }
+                            buf.clear();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        };
+        // Writes in flight, the port streams to the client
+        Thread portWriter = new Thread() {
+            @Override
+            public void run() {
+                for (int ii = 0; ii < messages; ii++) {
+                    ByteBuffer buf = ByteBuffer.allocate(8);
+                    buf.putInt(4).putInt(ii).flip();
+                    port.writeStream().enqueue(buf);
+                }
+            }
+        };
+        final int[] clientReceived = new int[] { 0 };
+        Thread clientReader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ByteBuffer buf = ByteBuffer.allocate(8);
+                    while (clientReceived[0] < messages) {
+                        while (buf.hasRemaining()) {
+                            if (client.read(buf) < 0) {
+                                throw new IOException("Connection closed");
+                            }
+                        }
+                        buf.flip();
+                        assertEquals(4, buf.getInt());
+                        assertEquals(clientReceived[0]++, buf.getInt());
+                        buf.clear();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        };
+        clientWriter.start();
+        portWriter.start();
+        clientReader.start();
+
+        int moves = 0;
+        while (clientWriter.isAlive() || clientReader.isAlive()) {
+            if (migrate(port, port.m_network == vn1 ? vn2 : vn1)) {
+                moves++;
+            }
+        }
+        clientWriter.join();
+        portWriter.join();
+        clientReader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // Reads may still be in the socket after the writer is done
+        handler.awaitReceived(messages);
+        assertNull(handler.m_error.get(), handler.m_error.get());
+        assertEquals(messages, clientReceived[0]);
+        assertTrue(moves > 0);
+
+        // Only the port's current network counts it
+        final VoltNetwork owner = port.m_network;
+        FutureTask<Integer> ft = new FutureTask<Integer>(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return vn1.numPorts() + vn2.numPorts();
+            }
+        });
+        owner.queueTask(ft);
+        assertEquals(1, ft.get().intValue());
+        assertEquals(1, owner.numPorts());
+
+        port.unregister().get();
+        assertEquals(0, vn1.numPorts() + vn2.numPorts());
+        client.close();
+        vn1.shutdown();
+        vn2.shutdown();
+    }
+
+    public void testTasksQueuedBeforeMigrationAreDropped() throws Exception {
+        VoltNetwork vn1 = new VoltNetwork(1, null, "Test");
+        VoltNetwork vn2 = new VoltNetwork(2, null, "Test");
+        vn1.start();
+        vn2.start();
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        final SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        SocketChannel accepted = server.accept();
+        server.close();
+
+        SequenceHandler handler = new SequenceHandler();
+        final VoltPort port = (VoltPort)vn1.registerChannel(accepted, handler, SelectionKey.OP_READ,
+                ReverseDNSPolicy.NONE, null, null);
+        writeSequence(client, 0);
+        handler.awaitReceived(1);
+
+        // Queue an interest change for the port behind its move and hold the old network in between
+        Blocker beforeMove = Blocker.queue(vn1);
+        beforeMove.m_entered.await();
+        final VoltPort movingPort = port;
+        final VoltNetwork target = vn2;
+        FutureTask<Boolean> move = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return movingPort.m_network.migratePort(movingPort, target);
+            }
+        });
+        vn1.queueTask(move);
+        Blocker afterMove = Blocker.queue(vn1);
+        port.enableWriteSelection();
+        beforeMove.m_release.countDown();
+        assertTrue(move.get());
+        afterMove.m_entered.await();
+        assertSame(vn2, port.m_network);
+
+        // The new network reads from the port
+        writeSequence(client, 1);
+        handler.awaitReceived(2);
+
+        // With the new network held up, the stale task must not read the next message on the old one
+        Blocker newNetwork = Blocker.queue(vn2);
+        newNetwork.m_entered.await();
+        writeSequence(client, 2);
+        Thread.sleep(50);
+        afterMove.m_release.countDown();
+        runOn(vn1);
+        newNetwork.m_release.countDown();
+        handler.awaitReceived(3);
+        assertNull(handler.m_error.get(), handler.m_error.get());
+
+        runOn(vn2);
+        assertEquals(0, vn1.numPorts());
+        assertEquals(1, vn2.numPorts());
+
+        port.unregister().get();
+        assertEquals(0, vn2.numPorts());
+        client.close();
+        vn1.shutdown();
+        vn2.shutdown();
+    }
+
 }
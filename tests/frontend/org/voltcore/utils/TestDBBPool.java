@@ -23,6 +23,7 @@
 
 package org.voltcore.utils;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import junit.framework.TestCase;
@@ -30,6 +31,7 @@ import junit.framework.TestCase;
 import org.apache.hadoop_voltpatches.util.PureJavaCrc32C;
 import org.junit.Test;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DBBPool.RefCountedContainer;
 import org.voltdb.NativeLibraryLoader;
 
 public class TestDBBPool extends TestCase {
@@ -64,4 +66,28 @@ public class TestDBBPool extends TestCase {
             assertEquals(javaSum, cSum);
         }
     }
+
+    @Test
+    public void testRefCountedContainer() {
+        BBContainer origin = DBBPool.allocateDirect(1024);
+        origin.b().putInt(42);
+        RefCountedContainer shared = DBBPool.wrapRefCounted(origin);
+        assertEquals(1, shared.refCount());
+
+        ByteBuffer view = shared.b().duplicate();
+        view.position(0);
+        view.limit(4);
+        RefCountedContainer first = shared.retain(view.slice());
+        RefCountedContainer second = shared.retain(shared.b().duplicate());
+        assertEquals(3, shared.refCount());
+        assertEquals(42, first.b().getInt(0));
+
+        shared.discard();
+        first.discard();
+        assertEquals(1, second.refCount());
+        // The last reference still sees the origin's contents
+        assertEquals(42, second.b().getInt(0));
+        second.discard();
+        assertEquals(0, second.refCount());
+    }
 }
@@ -0,0 +1,95 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltcore.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestLongObjectHashMap extends TestCase {
+
+    public void testBasicOperations() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(-1, "minus one"));
+        assertNull(map.put(0, "zero"));
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals(3, map.size());
+        assertEquals("uno", map.get(1));
+        assertEquals("minus one", map.get(-1));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(2));
+        assertEquals("zero", map.remove(0));
+        assertNull(map.remove(0));
+        assertEquals(2, map.size());
+
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertTrue(Arrays.equals(new long[] { -1, 1 }, keys));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+
+        try {
+            map.put(1, null);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    /*
+     * Keys shaped like transaction ids, which share their low bits, churned the
+     * way the schedulers do and checked against a HashMap after every step.
+     */
+    public void testMatchesHashMapUnderChurn() {
+        Random random = new Random(42);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<Long>(4);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        long nextTxnId = 1L << 40;
+        for (int ii = 0; ii < 200000; ii++) {
+            final long key;
+            if (expected.isEmpty() || random.nextInt(3) == 0) {
+                key = nextTxnId;
+                nextTxnId += 1L << 14;
+            } else {
+                key = nextTxnId - ((1 + random.nextInt(64)) << 14);
+            }
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, (long)ii), map.put(key, (long)ii));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertEquals(expected.size(), map.keys().length);
+    }
+}
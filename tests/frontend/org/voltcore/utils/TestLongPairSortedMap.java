@@ -0,0 +1,131 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltcore.utils;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class TestLongPairSortedMap extends TestCase {
+
+    public void testOrderAndNavigation() {
+        LongPairSortedMap<String> map = new LongPairSortedMap<String>();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.floorIndex(5, 5));
+        assertEquals(-1, map.ceilingIndex(5, 5));
+
+        map.put(20, 2, "b");
+        map.put(10, 7, "a");
+        map.put(20, 1, "c");
+        map.put(30, 0, "d");
+        assertEquals("a", map.put(10, 7, "A"));
+        assertEquals(4, map.size());
+
+        long[][] order = { {10, 7}, {20, 1}, {20, 2}, {30, 0} };
+        for (int ii = 0; ii < order.length; ii++) {
+            assertEquals(order[ii][0], map.firstKeyAt(ii));
+            assertEquals(order[ii][1], map.secondKeyAt(ii));
+        }
+        assertEquals("A", map.valueAt(0));
+
+        // Pairs with the same first key, as duplicate counters for one transaction
+        assertEquals(2, map.floorIndex(20, Long.MAX_VALUE));
+        assertEquals(1, map.ceilingIndex(20, 0));
+        assertEquals(0, map.floorIndex(20, 0));
+        assertEquals(-1, map.floorIndex(9, Long.MAX_VALUE));
+        assertEquals(-1, map.ceilingIndex(30, 1));
+
+        assertEquals("c", map.remove(20, 1));
+        assertNull(map.remove(20, 1));
+        assertEquals("b", map.removeAt(1));
+        assertEquals(2, map.size());
+        assertEquals(30, map.firstKeyAt(1));
+
+        try {
+            map.valueAt(2);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {}
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    private static class Pair implements Comparable<Pair> {
+        final long first;
+        final long second;
+
+        Pair(long first, long second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int compareTo(Pair o) {
+            int c = Long.compare(first, o.first);
+            return c != 0 ? c : Long.compare(second, o.second);
+        }
+    }
+
+    public void testMatchesTreeMap() {
+        Random random = new Random(7);
+        LongPairSortedMap<Integer> map = new LongPairSortedMap<Integer>(1);
+        TreeMap<Pair, Integer> expected = new TreeMap<Pair, Integer>();
+        for (int ii = 0; ii < 50000; ii++) {
+            Pair key = new Pair(random.nextInt(200) - 100, random.nextInt(4));
+            switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                assertEquals(expected.put(key, ii), map.put(key.first, key.second, ii));
+                break;
+            case 2:
+                assertEquals(expected.remove(key), map.remove(key.first, key.second));
+                break;
+            default:
+                Map.Entry<Pair, Integer> floor = expected.floorEntry(key);
+                int floorIndex = map.floorIndex(key.first, key.second);
+                if (floor == null) {
+                    assertEquals(-1, floorIndex);
+                } else {
+                    assertEquals(floor.getValue(), map.valueAt(floorIndex));
+                }
+                Map.Entry<Pair, Integer> ceiling = expected.ceilingEntry(key);
+                int ceilingIndex = map.ceilingIndex(key.first, key.second);
+                if (ceiling == null) {
+                    assertEquals(-1, ceilingIndex);
+                } else {
+                    assertEquals(ceiling.getValue(), map.valueAt(ceilingIndex));
+                }
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        int index = 0;
+        for (Map.Entry<Pair, Integer> e : expected.entrySet()) {
+            assertEquals(e.getKey().first, map.firstKeyAt(index));
+            assertEquals(e.getKey().second, map.secondKeyAt(index));
+            assertEquals(e.getValue(), map.valueAt(index));
+            index++;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TestResultCache extends TestCase {
+
+    private static VoltTable table(long value) {
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("C", VoltType.BIGINT));
+        t.addRow(value);
+        return t;
+    }
+
+    @Test
+    public void testHitMissAndCopy() {
+        ResultCache cache = new ResultCache(0, 0, 10, 1024, 1024);
+        cache.addStatement(new long[] { 1 }, "T", "");
+        cache.addStatement(new long[] { 2 }, "T", "");
+        int[] inList = new int[] { 1, 2, 3 };
+        ResultCache.Key key = cache.keyFor(1, ParameterSet.fromArrayNoCopy(5L, "abc", inList));
+        assertNull(cache.get(key));
+        cache.put(key, table(42));
+
+        // equal parameters find the entry, mutating the caller's array afterwards doesn't change the key
+        inList[0] = 7;
+        VoltTable hit = cache.get(cache.keyFor(1, ParameterSet.fromArrayNoCopy(5L, "abc", new int[] { 1, 2, 3 })));
+        assertNotNull(hit);
+        assertTrue(hit.advanceRow());
+        assertEquals(42, hit.getLong(0));
+
+        // each hit is an independent table
+        VoltTable again = cache.get(key);
+        assertTrue(again.advanceRow());
+        assertEquals(42, again.getLong(0));
+
+        // different fragment or parameters miss
+        assertNull(cache.get(cache.keyFor(2, ParameterSet.fromArrayNoCopy(5L, "abc", new int[] { 1, 2, 3 }))));
+        assertNull(cache.get(cache.keyFor(1, ParameterSet.fromArrayNoCopy(6L, "abc", new int[] { 1, 2, 3 }))));
+    }
+
+    @Test
+    public void testEvictionAndInvalidation() {
+        ResultCache cache = new ResultCache(0, 0, 2, 1024, 1024);
+        cache.addStatement(new long[] { 1 }, "T", "");
+        ResultCache.Key k1 = cache.keyFor(1, ParameterSet.fromArrayNoCopy(1L));
+        ResultCache.Key k2 = cache.keyFor(1, ParameterSet.fromArrayNoCopy(2L));
+        ResultCache.Key k3 = cache.keyFor(1, ParameterSet.fromArrayNoCopy(3L));
+        cache.put(k1, table(1));
+        cache.put(k2, table(2));
+        // touch k1 so k2 is the least recently used
+        assertNotNull(cache.get(k1));
+        cache.put(k3, table(3));
+        assertNull(cache.get(k2));
+        assertNotNull(cache.get(k1));
+        assertNotNull(cache.get(k3));
+
+        cache.invalidate();
+        assertNull(cache.get(k1));
+        assertNull(cache.get(k3));
+    }
+
+    @Test
+    public void testLargeResultsNotCached() {
+        ResultCache cache = new ResultCache(0, 0, 10, 16, 1024);
+        cache.addStatement(new long[] { 1 }, "T", "");
+        ResultCache.Key key = cache.keyFor(1, ParameterSet.fromArrayNoCopy(1L));
+        VoltTable big = new VoltTable(new VoltTable.ColumnInfo("C", VoltType.BIGINT));
+        for (int i = 0; i < 10; i++) {
+            big.addRow(i);
+        }
+        cache.put(key, big);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testLargeParametersNotCached() {
+        ResultCache cache = new ResultCache(0, 0, 10, 1024, 16);
+        cache.addStatement(new long[] { 1 }, "T", "");
+        assertNotNull(cache.keyFor(1, ParameterSet.fromArrayNoCopy(1L)));
+        // the parameter limit applies, not the much larger result limit
+        assertNull(cache.keyFor(1, ParameterSet.fromArrayNoCopy("a string longer than sixteen bytes")));
+    }
+
+    @Test
+    public void testUnregisteredFragmentsNotCached() {
+        ResultCache cache = new ResultCache(0, 0, 10, 1024, 1024);
+        ResultCache.Key key = cache.keyFor(1, ParameterSet.fromArrayNoCopy(1L));
+        cache.put(key, table(1));
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testWritesInvalidateTablesTheyModify() {
+        ResultCache cache = new ResultCache(0, 0, 10, 1024, 1024);
+        cache.addStatement(new long[] { 1 }, "A", "");
+        cache.addStatement(new long[] { 2 }, "B", "");
+        cache.addStatement(new long[] { 3 }, "A,B", "");
+        cache.addStatement(new long[] { 10, 11 }, "", "A");
+        ResultCache.Key readA = cache.keyFor(1, ParameterSet.fromArrayNoCopy(1L));
+        ResultCache.Key readB = cache.keyFor(2, ParameterSet.fromArrayNoCopy(1L));
+        ResultCache.Key readAB = cache.keyFor(3, ParameterSet.fromArrayNoCopy(1L));
+        cache.put(readA, table(1));
+        cache.put(readB, table(2));
+        cache.put(readAB, table(3));
+
+        // read fragments in a read-write batch change nothing
+        cache.fragmentsWillRun(1, new long[] { 2 });
+        assertNotNull(cache.get(readA));
+
+        // the collector of a write to A
+        cache.fragmentsWillRun(2, new long[] { 2, 11 });
+        assertNull(cache.get(readA));
+        assertNull(cache.get(readAB));
+        assertNotNull(cache.get(readB));
+
+        // results read after the write are cached again
+        cache.put(readA, table(4));
+        VoltTable hit = cache.get(readA);
+        assertTrue(hit.advanceRow());
+        assertEquals(4, hit.getLong(0));
+
+        // a write the cache doesn't know the tables of drops everything
+        cache.fragmentsWillRun(1, new long[] { 99 });
+        assertNull(cache.get(readA));
+        assertNull(cache.get(readB));
+    }
+}
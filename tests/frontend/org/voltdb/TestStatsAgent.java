@@ -174,6 +174,22 @@ public class TestStatsAgent {
         }
     }
 
+    @Test
+    public void testCollectWithEmptySourceSet() throws Exception {
+        createAndRegisterStats();
+        // Leaves an empty source set behind for another site
+        MockStatsSource removed = new MockStatsSource(new Object[][] {});
+        m_mvoltdb.getStatsAgent().registerStatsSource(StatsSelector.SNAPSHOTSTATUS, 1, removed);
+        m_mvoltdb.getStatsAgent().deregisterStatsSource(StatsSelector.SNAPSHOTSTATUS, 1, removed);
+
+        m_mvoltdb.getStatsAgent().performOpsAction(m_mockConnection, 32, OpsSelector.STATISTICS,
+                subselect("SNAPSHOTSTATUS", 0));
+        ClientResponseImpl response = responses.take();
+
+        assertEquals(ClientResponse.SUCCESS, response.getStatus());
+        assertEquals(2, response.getResults()[0].getRowCount());
+    }
+
     @Test
     public void testCollectUnavailableStats() throws Exception {
         for (StatsSelector selector : StatsSelector.values()) {
@@ -0,0 +1,208 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.voltdb.TransactionTracer.Event;
+
+public class TestTransactionTracer {
+
+    private static final int HOST_ID = 2;
+
+    // A handle with sequence number 0 is always sampled
+    private static long sampledHandle(int partitionId) {
+        return ((long) partitionId) << ClientInterfaceHandleManager.PART_ID_SHIFT;
+    }
+
+    private static Map<String, Object[]> rowsByStage(TransactionTraceStats stats, boolean interval, String procName) {
+        Object[][] rows = stats.getStatsRows(interval, System.currentTimeMillis());
+        Map<String, Object[]> byStage = new HashMap<>();
+        for (Object[] row : rows) {
+            if (procName.equals(row[stats.columnNameToIndex.get("PROCEDURE")])) {
+                byStage.put((String) row[stats.columnNameToIndex.get("STAGE")], row);
+            }
+        }
+        return byStage;
+    }
+
+    private static long column(TransactionTraceStats stats, Object[] row, String column) {
+        return ((Number) row[stats.columnNameToIndex.get(column)]).longValue();
+    }
+
+    @Test
+    public void testSampling() {
+        assertTrue(TransactionTracer.isSampled(sampledHandle(5)));
+        assertFalse(TransactionTracer.isSampled(sampledHandle(5) + 1));
+        assertTrue(TransactionTracer.isSampled(sampledHandle(5) + TransactionTracer.SAMPLE_RATE));
+    }
+
+    @Test
+    public void testStageBreakdown() {
+        TransactionTraceStats stats = new TransactionTraceStats(false);
+        // Start from empty buffers
+        stats.drain(0);
+        stats.drain(TransactionTraceStats.TRACE_EXPIRATION_MS);
+        stats.getStatsRows(true, System.currentTimeMillis());
+
+        final long handle = sampledHandle(1);
+        TransactionTracer.record(handle, HOST_ID, Event.RECEIVED, 1_000_000, "Insert");
+        TransactionTracer.record(handle, HOST_ID, Event.ROUTED, 1_010_000, null);
+        TransactionTracer.record(handle, HOST_ID, Event.SCHEDULED, 1_020_000, "Insert");
+        TransactionTracer.record(handle, HOST_ID, Event.EXECUTE_START, 1_050_000, "Insert");
+        TransactionTracer.record(handle, HOST_ID, Event.EE, 20_000, "Insert");
+        TransactionTracer.record(handle, HOST_ID, Event.EXECUTE_END, 1_100_000, "Insert");
+        TransactionTracer.record(handle, HOST_ID, Event.RESPONDED, 1_200_000, "Insert");
+
+        // The trace is reported on the drain after the one that saw the response
+        stats.drain(0);
+        assertTrue(rowsByStage(stats, false, "Insert").isEmpty());
+        stats.drain(1);
+
+        Map<String, Object[]> rows = rowsByStage(stats, true, "Insert");
+        assertEquals(10, column(stats, rows.get("ROUTE"), "MAX"));
+        assertEquals(30, column(stats, rows.get("QUEUE"), "MAX"));
+        assertEquals(20, column(stats, rows.get("EE"), "MAX"));
+        assertEquals(30, column(stats, rows.get("EXECUTE"), "MAX"));
+        assertEquals(100, column(stats, rows.get("RESPONSE"), "MAX"));
+        assertEquals(200, column(stats, rows.get("TOTAL"), "MAX"));
+        assertEquals(1, column(stats, rows.get("TOTAL"), "COUNT"));
+        assertNull(rows.get("COMMANDLOG"));
+        assertEquals("Insert", rows.get("TOTAL")[stats.columnNameToIndex.get("PROCEDURE")]);
+
+        // Nothing new since the last interval
+        assertTrue(rowsByStage(stats, true, "Insert").isEmpty());
+        assertEquals(1, column(stats, rowsByStage(stats, false, "Insert").get("TOTAL"), "COUNT"));
+    }
+
+    @Test
+    public void testRemoteLeaderTraceExpires() {
+        TransactionTraceStats stats = new TransactionTraceStats(false);
+        stats.drain(0);
+        stats.drain(TransactionTraceStats.TRACE_EXPIRATION_MS);
+        stats.getStatsRows(true, System.currentTimeMillis());
+
+        // Only the leader's side of the transaction is recorded on this host
+        final long handle = sampledHandle(2);
+        TransactionTracer.record(handle, HOST_ID + 1, Event.SCHEDULED, 1_000_000, "Update");
+        TransactionTracer.record(handle, HOST_ID + 1, Event.DURABLE, 1_400_000, "Update");
+        TransactionTracer.record(handle, HOST_ID + 1, Event.EXECUTE_START, 1_500_000, "Update");
+        TransactionTracer.record(handle, HOST_ID + 1, Event.EE, 0, "Update");
+        TransactionTracer.record(handle, HOST_ID + 1, Event.EXECUTE_END, 1_600_000, "Update");
+
+        stats.drain(0);
+        stats.drain(TransactionTraceStats.TRACE_EXPIRATION_MS - 1);
+        assertTrue(rowsByStage(stats, false, "Update").isEmpty());
+        stats.drain(TransactionTraceStats.TRACE_EXPIRATION_MS);
+
+        Map<String, Object[]> rows = rowsByStage(stats, true, "Update");
+        assertEquals(400, column(stats, rows.get("COMMANDLOG"), "MAX"));
+        assertEquals(100, column(stats, rows.get("QUEUE"), "MAX"));
+        assertEquals(100, column(stats, rows.get("EXECUTE"), "MAX"));
+        assertNull(rows.get("TOTAL"));
+        assertNull(rows.get("ROUTE"));
+    }
+
+    @Test
+    public void testEngineTimeIsAccountedToExecutingTransaction() {
+        assertNull(TransactionTracer.executing());
+        final long handle = sampledHandle(3);
+        TransactionTracer.beginExecution(handle, HOST_ID, "Select");
+        TransactionTracer.executing().addEngineTime(300);
+        TransactionTracer.executing().addEngineTime(200);
+        TransactionTracer.endExecution();
+        assertNull(TransactionTracer.executing());
+
+        final long[] ee = new long[] { -1 };
+        TransactionTracer.drain(new TransactionTracer.EventHandler() {
+            @Override
+            public void handle(long ciHandle, int ciHostId, Event event, long value, String procName) {
+                if (ciHandle == handle && event == Event.EE) {
+                    ee[0] = value;
+                }
+            }
+        });
+        assertEquals(500, ee[0]);
+    }
+
+    @Test
+    public void testLappedEntriesAreDropped() {
+        TransactionTracer.TraceBuffer buffer = new TransactionTracer.TraceBuffer(4);
+        for (int ii = 0; ii < 10; ii++) {
+            buffer.add(ii, HOST_ID, Event.RECEIVED, ii, null);
+        }
+        final long[] seen = new long[] { 0, 0 };
+        buffer.drainTo(new TransactionTracer.EventHandler() {
+            @Override
+            public void handle(long ciHandle, int ciHostId, Event event, long value, String procName) {
+                if (seen[0]++ == 0) {
+                    seen[1] = ciHandle;
+                }
+            }
+        });
+        // The oldest slot is the next one the writer will overwrite
+        assertEquals(3, seen[0]);
+        assertEquals(7, seen[1]);
+    }
+
+    @Test
+    public void testBufferOfExitedThreadIsReleased() throws Exception {
+        final long handle = sampledHandle(4);
+        // Start from drained buffers
+        TransactionTracer.drain(new TransactionTracer.EventHandler() {
+            @Override
+            public void handle(long ciHandle, int ciHostId, Event event, long value, String procName) {}
+        });
+        final int buffers = TransactionTracer.bufferCount();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                TransactionTracer.record(handle, HOST_ID, Event.RECEIVED, 1_000_000, "Delete");
+            }
+        };
+        writer.start();
+        writer.join();
+        assertEquals(buffers + 1, TransactionTracer.bufferCount());
+
+        // The last events of the thread are still drained before its buffer goes
+        final int[] seen = new int[] { 0 };
+        TransactionTracer.drain(new TransactionTracer.EventHandler() {
+            @Override
+            public void handle(long ciHandle, int ciHostId, Event event, long value, String procName) {
+                if (ciHandle == handle) {
+                    seen[0]++;
+                }
+            }
+        });
+        assertEquals(1, seen[0]);
+        assertEquals(buffers, TransactionTracer.bufferCount());
+    }
+}
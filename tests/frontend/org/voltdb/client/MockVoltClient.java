@@ -159,6 +159,13 @@ public class MockVoltClient implements Client {
         return false;
     }
 
+    @Override
+    public ClientResponseFuture callProcedureAsync(String procName,
+            Object... parameters) throws NoConnectionsException {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
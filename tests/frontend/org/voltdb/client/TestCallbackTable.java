@@ -0,0 +1,117 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TestCallbackTable extends TestCase {
+
+    static class Value extends CallbackTable.Entry {
+        Value(long handle) {
+            super(handle);
+        }
+    }
+
+    @Test
+    public void testPutRemove() {
+        CallbackTable<Value> table = new CallbackTable<>(8);
+        assertEquals(8, table.capacity());
+        for (long handle = 0; handle < 5; handle++) {
+            table.put(new Value(handle));
+        }
+        assertTrue(table.contains(3));
+        assertFalse(table.contains(5));
+        assertEquals(3, table.remove(3).handle);
+        assertNull(table.remove(3));
+        assertFalse(table.contains(3));
+        assertEquals(4, table.snapshot().size());
+    }
+
+    @Test
+    public void testNegativeHandles() {
+        // Handles for internal calls count down from -1
+        CallbackTable<Value> table = new CallbackTable<>(8);
+        table.put(new Value(-1));
+        table.put(new Value(7));
+        assertEquals(-1, table.remove(-1).handle);
+        assertEquals(7, table.remove(7).handle);
+    }
+
+    @Test
+    public void testOverflow() {
+        CallbackTable<Value> table = new CallbackTable<>(5);
+        assertEquals(8, table.capacity());
+        // Wraps the ring twice so two thirds of the entries end up in the overflow map
+        for (long handle = 0; handle < 24; handle++) {
+            table.put(new Value(handle));
+        }
+        assertEquals(24, table.snapshot().size());
+        for (long handle = 23; handle >= 0; handle--) {
+            assertTrue(table.contains(handle));
+            assertEquals(handle, table.remove(handle).handle);
+        }
+        assertTrue(table.snapshot().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentRemoveClaimsOnce() throws Exception {
+        final CallbackTable<Value> table = new CallbackTable<>(1024);
+        final int count = 100000;
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicInteger nextHandle = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    int handle;
+                    while ((handle = nextHandle.getAndIncrement()) < count) {
+                        table.put(new Value(handle));
+                        // Two racing removers, only one may win
+                        if (table.remove(handle) != null) {
+                            claimed.incrementAndGet();
+                        }
+                        if (table.remove(handle) != null) {
+                            claimed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(count, claimed.get());
+        assertTrue(table.snapshot().isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+
+public class TestClientResponseFuture extends TestCase {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static ClientResponse response(byte status) {
+        return new ClientResponseImpl(status, new VoltTable[0], "");
+    }
+
+    @Test
+    public void testCompletion() throws Exception {
+        ClientResponseFuture future = new ClientResponseFuture();
+        assertFalse(future.isDone());
+        assertNull(future.getResponse());
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {}
+
+        ClientResponse r = response(ClientResponse.SUCCESS);
+        future.clientCallback(r);
+        assertTrue(future.isDone());
+        assertSame(r, future.get());
+        assertSame(r, future.getResponse());
+        assertFalse(future.cancel(true));
+    }
+
+    @Test
+    public void testListenersRunOnce() throws Exception {
+        final ClientResponseFuture future = new ClientResponseFuture();
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(future.isDone());
+                runs.incrementAndGet();
+            }
+        };
+        future.addListener(listener, DIRECT);
+        future.addListener(listener, DIRECT);
+        assertEquals(0, runs.get());
+
+        future.clientCallback(response(ClientResponse.CONNECTION_LOST));
+        assertEquals(2, runs.get());
+
+        // Added after completion runs right away
+        future.addListener(listener, DIRECT);
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    public void testWaiterWakesUp() throws Exception {
+        final ClientResponseFuture future = new ClientResponseFuture();
+        Thread completer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignore) {}
+                future.clientCallback(response(ClientResponse.SUCCESS));
+            }
+        };
+        completer.start();
+        assertEquals(ClientResponse.SUCCESS, future.get(10, TimeUnit.SECONDS).getStatus());
+        completer.join();
+    }
+}
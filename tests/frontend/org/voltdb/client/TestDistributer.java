@@ -23,7 +23,11 @@
 
 package org.voltdb.client;
 
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
@@ -43,6 +47,8 @@ import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.ReverseDNSCache;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltProtocolHandler;
+import org.voltcore.network.WriteStream;
+import org.voltcore.utils.DeferredSerialization;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
@@ -528,6 +534,153 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    @Test
+    public void testQueueWithWriteBatching() throws Exception {
+        // TODO: write a mock server that can grock ssl
+        if (ClientConfig.ENABLE_SSL_FOR_TEST) return;
+
+        MockVolt volt0 = null;
+        int handle = 0;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+
+            Distributer dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, false, null /* subject */, null);
+            // Long window so the byte budget decides most batches
+            dist.setWriteBatching(TimeUnit.MILLISECONDS.toNanos(50), 256);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            assertTrue(volt0.handler != null);
+
+            final int invocations = 20;
+            for (int i = 0; i < invocations; i++) {
+                ProcedureInvocation pi = new ProcedureInvocation(++handle, "i1", new Integer(1));
+                dist.queue(pi, new ProcCallback(), true, System.nanoTime(), 0);
+            }
+            dist.drain();
+
+            assertEquals(invocations, volt0.handler.roundTrips.get());
+            ClientIOStats cios = dist.getIOStatsSnapshot().values().iterator().next();
+            assertEquals(invocations, cios.m_batchedInvocations);
+            assertTrue(cios.m_writeBatches > 0);
+            assertTrue(cios.m_writeBatches < invocations);
+        }
+        finally {
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testWriteBatchDiscardedOnConnectionLost() throws Exception {
+        // TODO: write a mock server that can grock ssl
+        if (ClientConfig.ENABLE_SSL_FOR_TEST) return;
+
+        final int invocations = 5;
+        final AtomicInteger serialized = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final CountDownLatch connectionLost = new CountDownLatch(invocations);
+
+        // Counts what happens to the serialized invocation
+        class TrackedInvocation implements RoutableInvocation {
+            final ProcedureInvocation m_invocation;
+
+            TrackedInvocation(long handle) {
+                m_invocation = new ProcedureInvocation(handle, "i1", new Integer(1));
+            }
+
+            @Override
+            public long getClientHandle() {
+                return m_invocation.getClientHandle();
+            }
+
+            @Override
+            public String getProcName() {
+                return m_invocation.getProcName();
+            }
+
+            @Override
+            public int getPassedParamCount() {
+                return m_invocation.getPassedParamCount();
+            }
+
+            @Override
+            public Object getPartitionParamValue(int index) {
+                return m_invocation.getPartitionParamValue(index);
+            }
+
+            @Override
+            public DeferredSerialization toSerialization() throws IOException {
+                final DeferredSerialization ds = m_invocation.toSerialization();
+                return new DeferredSerialization() {
+                    @Override
+                    public void serialize(ByteBuffer outbuf) throws IOException {
+                        serialized.incrementAndGet();
+                        ds.serialize(outbuf);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        cancelled.incrementAndGet();
+                        ds.cancel();
+                    }
+
+                    @Override
+                    public int getSerializedSize() throws IOException {
+                        return ds.getSerializedSize();
+                    }
+                };
+            }
+        }
+
+        MockVolt volt0 = null;
+        Distributer dist = null;
+        int handle = 0;
+        try {
+            volt0 = new MockVolt(20000);
+            volt0.start();
+
+            dist = new Distributer(false,
+                    ClientConfig.DEFAULT_PROCEDURE_TIMOUT_NANOS,
+                    ClientConfig.DEFAULT_CONNECTION_TIMOUT_MS,
+                    false, false, null /* subject */, null);
+            // The batch is neither full nor due when the connection goes away
+            dist.setWriteBatching(TimeUnit.SECONDS.toNanos(60), 1024 * 1024);
+            dist.createConnection("localhost", "", "", 20000, ClientAuthScheme.HASH_SHA1);
+            assertTrue(volt0.handler != null);
+
+            for (int i = 0; i < invocations; i++) {
+                dist.queue(new TrackedInvocation(++handle), new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        if (clientResponse.getStatus() == ClientResponse.CONNECTION_LOST) {
+                            connectionLost.countDown();
+                        }
+                    }
+                }, true, System.nanoTime(), 0);
+            }
+
+            volt0.shutdown();
+            volt0 = null;
+            assertTrue(connectionLost.await(60, TimeUnit.SECONDS));
+
+            // The pending batch was dropped without being written
+            assertEquals(invocations, cancelled.get());
+            assertEquals(0, serialized.get());
+        }
+        finally {
+            if (dist != null) {
+                dist.shutdown();
+            }
+            if (volt0 != null) {
+                volt0.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testQueueMixed() throws Exception {
         // TODO: write a mock server that can grock ssl
@@ -1115,5 +1268,53 @@ public class TestDistributer extends TestCase {
             volt0.shutdown();
         }
     }
-}
 
+    private static Distributer.NodeConnection createReplica(Distributer dist, int outstanding,
+            boolean backpressure) throws Exception {
+        Distributer.NodeConnection nc = dist.new NodeConnection(new long[0]);
+        WriteStream ws = mock(WriteStream.class);
+        doReturn(backpressure).when(ws).hadBackPressure();
+        Connection c = mock(Connection.class);
+        doReturn(ws).when(c).writeStream();
+        doReturn("localhost").when(c).getHostnameOrIP();
+        nc.setConnection(c);
+        Field callbacks = Distributer.NodeConnection.class.getDeclaredField("m_callbacksToInvoke");
+        callbacks.setAccessible(true);
+        ((AtomicInteger) callbacks.get(nc)).set(outstanding);
+        return nc;
+    }
+
+    @Test
+    public void testPickLeastLoadedReplica() throws Exception {
+        Distributer dist = new Distributer();
+        try {
+            Distributer.NodeConnection busy = createReplica(dist, 10, false);
+            Distributer.NodeConnection idle = createReplica(dist, 2, false);
+            Distributer.NodeConnection blocked = createReplica(dist, 0, true);
+            Distributer.NodeConnection replicas[] =
+                    new Distributer.NodeConnection[] { busy, idle, blocked };
+
+            // Fewest outstanding calls wins, but only among replicas without backpressure,
+            // no matter where the random start lands
+            for (int i = 0; i < 20; i++) {
+                assertSame(idle, dist.pickLeastLoadedReplica(replicas));
+            }
+
+            // Disconnected replicas are never picked
+            idle.stopping(mock(Connection.class));
+            for (int i = 0; i < 20; i++) {
+                assertSame(busy, dist.pickLeastLoadedReplica(replicas));
+            }
+
+            // With every live replica backed up, fall back to the least loaded one
+            busy.stopping(mock(Connection.class));
+            assertSame(blocked, dist.pickLeastLoadedReplica(replicas));
+
+            blocked.stopping(mock(Connection.class));
+            assertNull(dist.pickLeastLoadedReplica(replicas));
+        }
+        finally {
+            dist.shutdown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+
+public class TestInvocationBuilder extends TestCase {
+
+    private static final String STRINGS[] = {
+        "", "ABCDE", "\u00e9t\u00e9", "\u65e5\u672c\u8a9e", "\ud83d\ude00 smile", "bad \ud800 surrogate", "end \udc00"
+    };
+
+    private static byte[] serialize(DeferredSerialization ds) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(ds.getSerializedSize());
+        ds.serialize(buf);
+        assertFalse(buf.hasRemaining());
+        return buf.array();
+    }
+
+    private static byte[] flatten(ProcedureInvocation pi) throws Exception {
+        return serialize(pi.toSerialization());
+    }
+
+    @Test
+    public void testMatchesProcedureInvocation() throws Exception {
+        final BigDecimal decimal = new BigDecimal(7654321).setScale(VoltDecimalHelper.kDefaultScale);
+        final TimestampType timestamp = new TimestampType();
+        final byte bytes[] = new byte[] { 1, 2, 3 };
+
+        InvocationBuilder builder = new InvocationBuilder("invocation1");
+        builder.setByte(0, (byte)2)
+               .setShort(1, Short.MAX_VALUE)
+               .setInt(2, Integer.MIN_VALUE)
+               .setLong(3, Long.MAX_VALUE - 1)
+               .setDouble(4, 5.5)
+               .setString(5, "ABCDE")
+               .setTimestamp(6, timestamp.getTime())
+               .setDecimal(7, decimal)
+               .setVarbinary(8, bytes)
+               .setNull(9);
+        builder.setClientHandle(10);
+        assertEquals(10, builder.getPassedParamCount());
+
+        ProcedureInvocation pi = new ProcedureInvocation(10, "invocation1",
+                (byte)2, Short.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE - 1, 5.5, "ABCDE",
+                timestamp, decimal, bytes, null);
+
+        // affinity routing decodes the parameter from the builder's buffer
+        assertEquals(Integer.MIN_VALUE, builder.getPartitionParamValue(2));
+        assertEquals("ABCDE", builder.getPartitionParamValue(5));
+        assertEquals(decimal, builder.getPartitionParamValue(7));
+        assertNull(builder.getPartitionParamValue(9));
+
+        assertTrue(Arrays.equals(flatten(pi), serialize(builder.toSerialization())));
+        assertEquals(0, builder.getPassedParamCount());
+    }
+
+    @Test
+    public void testReuseAndGrowth() throws Exception {
+        InvocationBuilder builder = new InvocationBuilder("proc");
+        StringBuilder big = new StringBuilder();
+        for (int ii = 0; ii < 1000; ii++) {
+            big.append(ii);
+        }
+        for (int round = 0; round < 3; round++) {
+            builder.setLong(0, round);
+            builder.setString(1, round == 1 ? big : "small");
+            builder.setClientHandle(round);
+            ProcedureInvocation pi = new ProcedureInvocation(round, "proc",
+                    (long)round, round == 1 ? big.toString() : "small");
+            assertTrue(Arrays.equals(flatten(pi), serialize(builder.toSerialization())));
+        }
+        builder.release();
+    }
+
+    @Test
+    public void testStringEncoding() throws Exception {
+        for (String s : STRINGS) {
+            byte expected[] = s.getBytes("UTF-8");
+            assertEquals(expected.length, InvocationBuilder.utf8Length(s));
+            ByteBuffer buf = ByteBuffer.allocate(expected.length);
+            InvocationBuilder.encodeUtf8(s, buf);
+            assertTrue(s, Arrays.equals(expected, buf.array()));
+        }
+    }
+
+    @Test
+    public void testParametersInOrder() throws Exception {
+        InvocationBuilder builder = new InvocationBuilder("proc");
+        try {
+            builder.setLong(1, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        builder.setLong(0, 0);
+        try {
+            builder.setLong(0, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+        builder.release();
+        assertEquals(0, builder.getPassedParamCount());
+    }
+
+    @Test
+    public void testFailedDecimalLeavesBuilderUnchanged() throws Exception {
+        final BigDecimal decimal = new BigDecimal(42).setScale(VoltDecimalHelper.kDefaultScale);
+        InvocationBuilder builder = new InvocationBuilder("proc");
+        builder.setLong(0, 1);
+        try {
+            builder.setDecimal(1, new BigDecimal("1234567890123456789012345678901234567890"));
+            fail();
+        } catch (RuntimeException expected) {}
+        assertEquals(1, builder.getPassedParamCount());
+
+        // the same index can be set again and nothing from the failed value is sent
+        builder.setDecimal(1, decimal);
+        builder.setClientHandle(3);
+        ProcedureInvocation pi = new ProcedureInvocation(3, "proc", 1L, decimal);
+        assertTrue(Arrays.equals(flatten(pi), serialize(builder.toSerialization())));
+    }
+}
@@ -1378,6 +1378,40 @@ public class TestVoltCompiler extends TestCase {
         }
     }
 
+    public void testDDLCompilerBTreeIndexAllowed() {
+        for (int i = 0; i < column_types.length; i++) {
+            String schema =
+                "create table t(id " + column_types[i] + " not null, num integer not null);\n" +
+                "create index idx_t_id_btree on t(id);\n" +
+                "create unique index idx_t_idnum_btree on t(id,num);";
+            VoltCompiler c = compileSchemaForDDLTest(schema, can_be_tree[i]);
+            assertFalse(c.hasErrors());
+            Table tbl = assertTableT(c);
+            assertEquals(IndexType.BTREE.getValue(),
+                        tbl.getIndexes().getIgnoreCase("idx_t_id_btree").getType());
+            assertTrue(tbl.getIndexes().getIgnoreCase("idx_t_id_btree").getCountable());
+            assertEquals(IndexType.BTREE.getValue(),
+                        tbl.getIndexes().getIgnoreCase("idx_t_idnum_btree").getType());
+        }
+    }
+
+    public void testDDLCompilerBTreeIndexNeedsWholeWord() {
+        String schema =
+            "create table t(id integer not null, num integer not null);\n" +
+            "create index idx_t_id_subtree on t(id);\n" +
+            "create index idx_t_num_btrees on t(num);\n" +
+            "create index btree_t_idnum on t(id,num);";
+        VoltCompiler c = compileSchemaForDDLTest(schema, true);
+        assertFalse(c.hasErrors());
+        Table tbl = assertTableT(c);
+        assertEquals(IndexType.BALANCED_TREE.getValue(),
+                    tbl.getIndexes().getIgnoreCase("idx_t_id_subtree").getType());
+        assertEquals(IndexType.BALANCED_TREE.getValue(),
+                    tbl.getIndexes().getIgnoreCase("idx_t_num_btrees").getType());
+        assertEquals(IndexType.BTREE.getValue(),
+                    tbl.getIndexes().getIgnoreCase("btree_t_idnum").getType());
+    }
+
     public void testDDLCompilerTwoIdenticalIndexes() {
         String schema;
         VoltCompiler c;
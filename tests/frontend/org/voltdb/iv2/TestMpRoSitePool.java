@@ -0,0 +1,194 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.BackendTarget;
+import org.voltdb.CatalogContext;
+
+import junit.framework.TestCase;
+
+public class TestMpRoSitePool extends TestCase
+{
+    final int m_cpuCount = CoreUtils.availableProcessors();
+    final int m_maxPoolSize = m_cpuCount + 4;
+
+    // Every site the pool started, in the order it started them
+    List<MpRoSitePool.MpRoSiteContext> m_sites;
+    double m_loadAverage;
+    MpRoSitePool m_dut;
+
+    int m_savedMaxPoolSize;
+    long m_savedTrimInterval;
+    long m_savedLoadCheckInterval;
+
+    @Override
+    public void setUp()
+    {
+        m_savedMaxPoolSize = MpRoSitePool.DEFAULT_MAX_POOL_SIZE;
+        m_savedTrimInterval = MpRoSitePool.TRIM_INTERVAL_MS;
+        m_savedLoadCheckInterval = MpRoSitePool.LOAD_CHECK_INTERVAL_MS;
+        MpRoSitePool.DEFAULT_MAX_POOL_SIZE = m_maxPoolSize;
+        // Trim only when a test asks for it, and check the load on every call
+        MpRoSitePool.TRIM_INTERVAL_MS = Long.MAX_VALUE;
+        MpRoSitePool.LOAD_CHECK_INTERVAL_MS = 0;
+
+        m_sites = new ArrayList<MpRoSitePool.MpRoSiteContext>();
+        m_loadAverage = 0.0;
+        m_dut = new MpRoSitePool(0, BackendTarget.NATIVE_EE_JNI, mock(CatalogContext.class),
+                MpInitiator.MP_INIT_PID, mock(InitiatorMailbox.class)) {
+            @Override
+            MpRoSiteContext createSiteContext()
+            {
+                MpRoSiteContext site = mock(MpRoSiteContext.class);
+                m_sites.add(site);
+                return site;
+            }
+
+            @Override
+            double getSystemLoadAverage()
+            {
+                return m_loadAverage;
+            }
+        };
+    }
+
+    @Override
+    public void tearDown()
+    {
+        MpRoSitePool.DEFAULT_MAX_POOL_SIZE = m_savedMaxPoolSize;
+        MpRoSitePool.TRIM_INTERVAL_MS = m_savedTrimInterval;
+        MpRoSitePool.LOAD_CHECK_INTERVAL_MS = m_savedLoadCheckInterval;
+    }
+
+    // Start reads until the pool turns one away, return how many it took
+    int fillPool(long firstTxnId)
+    {
+        long txnId = firstTxnId;
+        while (m_dut.doWork(txnId, mock(TransactionTask.class))) {
+            txnId++;
+        }
+        return (int) (txnId - firstTxnId);
+    }
+
+    // The pool adds a site only when a read finds none idle, up to its maximum size
+    @Test
+    public void testGrowth()
+    {
+        assertEquals(MpRoSitePool.INITIAL_POOL_SIZE, m_sites.size());
+        for (long txnId = 1; txnId <= m_maxPoolSize; txnId++) {
+            assertTrue(m_dut.canAcceptWork());
+            TransactionTask task = mock(TransactionTask.class);
+            assertTrue(m_dut.doWork(txnId, task));
+            assertEquals(txnId, m_sites.size());
+            verify(m_sites.get((int) txnId - 1)).offer(task);
+        }
+        assertFalse(m_dut.canAcceptWork());
+        assertFalse(m_dut.doWork(m_maxPoolSize + 1, mock(TransactionTask.class)));
+        assertEquals(m_maxPoolSize, m_sites.size());
+
+        // A restarted read goes back to the site running it, even with the pool full
+        TransactionTask restart = mock(TransactionTask.class);
+        assertTrue(m_dut.doWork(1, restart));
+        verify(m_sites.get(0)).offer(restart);
+
+        // A finished read frees its site for the next one
+        m_dut.completeWork(2);
+        assertTrue(m_dut.canAcceptWork());
+        TransactionTask next = mock(TransactionTask.class);
+        assertTrue(m_dut.doWork(m_maxPoolSize + 1, next));
+        verify(m_sites.get(1)).offer(next);
+        assertEquals(m_maxPoolSize, m_sites.size());
+    }
+
+    // Idle sites beyond the peak number of reads since the last trim are shut down,
+    // least recently used first
+    @Test
+    public void testTrimIdleSites()
+    {
+        for (long txnId = 1; txnId <= 4; txnId++) {
+            assertTrue(m_dut.doWork(txnId, mock(TransactionTask.class)));
+        }
+        assertEquals(4, m_sites.size());
+
+        // Nothing is trimmed before the interval is up
+        m_dut.completeWork(1);
+        m_dut.completeWork(2);
+        for (MpRoSitePool.MpRoSiteContext site : m_sites) {
+            verify(site, never()).shutdown();
+        }
+
+        // The first trim keeps the four sites the peak needed
+        MpRoSitePool.TRIM_INTERVAL_MS = 0;
+        m_dut.completeWork(3);
+        for (MpRoSitePool.MpRoSiteContext site : m_sites) {
+            verify(site, never()).shutdown();
+        }
+
+        // Only one read ran since then, so the next trim leaves one site,
+        // the one that finished last
+        m_dut.completeWork(4);
+        verify(m_sites.get(0)).shutdown();
+        verify(m_sites.get(1)).shutdown();
+        verify(m_sites.get(2)).shutdown();
+        verify(m_sites.get(3), never()).shutdown();
+
+        // The remaining site is reused
+        TransactionTask task = mock(TransactionTask.class);
+        assertTrue(m_dut.doWork(5, task));
+        verify(m_sites.get(3)).offer(task);
+        assertEquals(4, m_sites.size());
+    }
+
+    // While the load average is above the core count, no more reads run than there are cores
+    @Test
+    public void testLoadLimit()
+    {
+        m_loadAverage = m_cpuCount + 1;
+        assertEquals(m_cpuCount, m_dut.getConcurrencyLimit());
+        assertEquals(m_cpuCount, fillPool(1));
+
+        // A restarted read still reaches its site
+        TransactionTask restart = mock(TransactionTask.class);
+        assertTrue(m_dut.doWork(1, restart));
+        verify(m_sites.get(0)).offer(restart);
+
+        // Once the load drops, the pool grows to its maximum size
+        m_loadAverage = m_cpuCount - 1;
+        assertEquals(m_maxPoolSize - m_cpuCount, fillPool(100));
+        assertEquals(m_maxPoolSize, m_sites.size());
+
+        // Platforms without a load average report a negative one, which doesn't limit anything
+        m_loadAverage = -1.0;
+        assertEquals(m_maxPoolSize, m_dut.getConcurrencyLimit());
+    }
+}
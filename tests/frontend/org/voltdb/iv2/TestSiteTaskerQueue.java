@@ -0,0 +1,186 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.rejoin.TaskLog;
+
+import junit.framework.TestCase;
+
+public class TestSiteTaskerQueue extends TestCase
+{
+    static class OrderedTask extends SiteTasker {
+        final int producer;
+        final int sequence;
+
+        OrderedTask(int producer, int sequence) {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog) {}
+    }
+
+    private static SiteTaskerQueue getSiteTaskerQueue(int partitionId, int capacity) {
+        SiteTaskerQueue queue = new SiteTaskerQueue(partitionId, capacity);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        queue.setupQueueDepthTracker(0);
+        return queue;
+    }
+
+    public void testCapacityRoundsUpToPowerOfTwo() {
+        assertEquals(8, getSiteTaskerQueue(0, 5).getCapacity());
+        assertEquals(8, getSiteTaskerQueue(0, 8).getCapacity());
+        try {
+            new SiteTaskerQueue(0, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    public void testOrderIsKeptThroughOverflow() {
+        SiteTaskerQueue queue = getSiteTaskerQueue(1, 4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+
+        for (int ii = 0; ii < 10; ii++) {
+            assertTrue(queue.offer(new OrderedTask(0, ii)));
+            assertEquals(ii + 1, queue.size());
+        }
+        for (int ii = 0; ii < 10; ii++) {
+            // Wrap around the ring while the overflow still holds older tasks
+            if (ii == 2) {
+                queue.offer(new OrderedTask(0, 10));
+            }
+            assertEquals(ii, ((OrderedTask)queue.peek()).sequence);
+            assertEquals(ii, ((OrderedTask)queue.poll()).sequence);
+        }
+        assertEquals(10, ((OrderedTask)queue.poll()).sequence);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    public void testSaturationSignal() {
+        final int partitionId = 7;
+        SiteTaskerQueue queue = getSiteTaskerQueue(partitionId, 8);
+        for (int ii = 0; ii < 8; ii++) {
+            queue.offer(new OrderedTask(0, ii));
+        }
+        assertFalse(queue.isSaturated());
+        assertFalse(SiteTaskerQueue.isPartitionSaturated(partitionId));
+
+        queue.offer(new OrderedTask(0, 8));
+        assertTrue(queue.isSaturated());
+        assertTrue(SiteTaskerQueue.isPartitionSaturated(partitionId));
+        assertFalse(SiteTaskerQueue.isPartitionSaturated(partitionId + 1));
+
+        // Saturated until the depth drops under 80% of the capacity
+        queue.poll();
+        queue.poll();
+        queue.poll();
+        assertEquals(6, queue.size());
+        assertTrue(queue.isSaturated());
+        queue.poll();
+        assertFalse(queue.isSaturated());
+        assertFalse(SiteTaskerQueue.isPartitionSaturated(partitionId));
+    }
+
+    public void testTakeWakesUpOnOffer() throws Exception {
+        final SiteTaskerQueue queue = getSiteTaskerQueue(0, 4);
+        final CountDownLatch taken = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                    taken.countDown();
+                } catch (InterruptedException ignore) {}
+            }
+        };
+        consumer.start();
+        assertFalse(taken.await(100, TimeUnit.MILLISECONDS));
+        queue.offer(new OrderedTask(0, 0));
+        assertTrue(taken.await(10, TimeUnit.SECONDS));
+        consumer.join();
+    }
+
+    public void testTakeIsInterruptible() throws Exception {
+        final SiteTaskerQueue queue = getSiteTaskerQueue(0, 4);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                } catch (InterruptedException expected) {
+                    interrupted.countDown();
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(50);
+        consumer.interrupt();
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        consumer.join();
+    }
+
+    public void testConcurrentProducersKeepTheirOrder() throws Exception {
+        final int producerCount = 4;
+        final int tasksPerProducer = 50000;
+        final SiteTaskerQueue queue = getSiteTaskerQueue(0, 64);
+        Thread[] producers = new Thread[producerCount];
+        for (int ii = 0; ii < producerCount; ii++) {
+            final int producer = ii;
+            producers[ii] = new Thread() {
+                @Override
+                public void run() {
+                    for (int jj = 0; jj < tasksPerProducer; jj++) {
+                        queue.offer(new OrderedTask(producer, jj));
+                    }
+                }
+            };
+            producers[ii].start();
+        }
+
+        int[] next = new int[producerCount];
+        for (int ii = 0; ii < producerCount * tasksPerProducer; ii++) {
+            OrderedTask task = (OrderedTask)queue.take();
+            assertEquals(next[task.producer], task.sequence);
+            next[task.producer]++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.isSaturated());
+    }
+}
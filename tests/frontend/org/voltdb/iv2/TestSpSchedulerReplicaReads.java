@@ -0,0 +1,219 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.CommandLog;
+import org.voltdb.MockVoltDB;
+import org.voltdb.ParameterSet;
+import org.voltdb.SnapshotCompletionMonitor;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltDB;
+import org.voltdb.messaging.InitiateResponseMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class TestSpSchedulerReplicaReads
+{
+    Mailbox mbox;
+    SpScheduler dut;
+    StoredProcedureInvocation spi;
+    private static MockVoltDB s_mockVoltDB = new MockVoltDB();
+
+    static final String MockSPName = "MOCKSP";
+    static final long dut_hsid = 11223344l;
+    static final long primary_hsid = 1111l;
+    static final long client_hsid = 2222l;
+
+    @BeforeClass
+    public static void setupClass() {
+        VoltDB.replaceVoltDBInstanceForTest(s_mockVoltDB);
+        s_mockVoltDB.setKFactor(1);
+    }
+
+    @After
+    public void tearDown() {
+        // The lagging replica set is static, promotion takes this partition out of it
+        dut.setLeaderState(true);
+    }
+
+    private static SiteTaskerQueue getSiteTaskerQueue() {
+        SiteTaskerQueue queue = new SiteTaskerQueue(0);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        queue.setupQueueDepthTracker(0);
+        return queue;
+    }
+
+    private void createReplica()
+    {
+        mbox = mock(Mailbox.class);
+        when(mbox.getHSId()).thenReturn(dut_hsid);
+
+        final CommandLog cl = mock(CommandLog.class);
+        doReturn(CoreUtils.COMPLETED_FUTURE).when(cl).log(any(Iv2InitiateTaskMessage.class), anyLong(), any(int[].class),
+                                                          any(CommandLog.DurabilityListener.class),
+                                                          any(TransactionTask.class));
+
+        spi = mock(StoredProcedureInvocation.class);
+        when(spi.getProcName()).thenReturn(MockSPName);
+        when(spi.getParams()).thenReturn(mock(ParameterSet.class));
+
+        dut = new SpScheduler(0, getSiteTaskerQueue(), mock(SnapshotCompletionMonitor.class), true);
+        dut.setMailbox(mbox);
+        dut.setCommandLog(cl);
+        dut.setLock(mbox);
+        dut.setReplicaReads(true);
+    }
+
+    private Iv2InitiateTaskMessage createMsg(long txnId, boolean readOnly, long initiatorHSId)
+    {
+        Iv2InitiateTaskMessage task =
+            new Iv2InitiateTaskMessage(initiatorHSId, // initHSID
+                                       Long.MIN_VALUE, // coordHSID
+                                       txnId - 1, // truncationHandle
+                                       txnId,     // txnId
+                                       UniqueIdGenerator.makeIdFromComponents(System.currentTimeMillis(), 0, 0), // uniqueID
+                                       readOnly, // readonly
+                                       true, // single-part
+                                       spi, // invocation
+                                       Long.MAX_VALUE, // client interface handle
+                                       Long.MAX_VALUE, // connectionId
+                                       false); // isForReplay
+        // sp: sphandle == txnid
+        task.setTxnId(txnId);
+        task.setSpHandle(txnId);
+        return task;
+    }
+
+    // Replicate a write from the leader to the replica
+    private Iv2InitiateTaskMessage replicateWrite(long spHandle)
+    {
+        Iv2InitiateTaskMessage write = createMsg(spHandle, false, primary_hsid);
+        dut.deliver(write);
+        return write;
+    }
+
+    // Route a read to the replica, the replica gives it the handle of the last write it received
+    private InitiateResponseMessage readOnReplica(long lastWrite)
+    {
+        Iv2InitiateTaskMessage read = createMsg(lastWrite, true, client_hsid);
+        dut.deliver(read);
+        InitiateResponseMessage resp = new InitiateResponseMessage(read);
+        dut.deliver(resp);
+        return resp;
+    }
+
+    @Test
+    public void testReplicaReadReleasedAfterCommit() throws Exception
+    {
+        createReplica();
+        TxnEgo ego = TxnEgo.makeZero(0).makeNext();
+        final long w1 = ego.getTxnId();
+        final long w2 = ego.makeNext().getTxnId();
+
+        replicateWrite(w1);
+        replicateWrite(w2);
+        InitiateResponseMessage readResp = readOnReplica(w2);
+        verify(mbox, never()).send(eq(client_hsid), eq(readResp));
+
+        // The read may have seen w2, it waits until the leader reports w2 committed everywhere
+        dut.transactionCommitted(w1);
+        verify(mbox, never()).send(eq(client_hsid), eq(readResp));
+        dut.transactionCommitted(w2);
+        verify(mbox, times(1)).send(eq(client_hsid), eq(readResp));
+    }
+
+    @Test
+    public void testReadReleasedAtOnceWhenCommitted() throws Exception
+    {
+        createReplica();
+        final long w1 = TxnEgo.makeZero(0).makeNext().getTxnId();
+
+        replicateWrite(w1);
+        dut.transactionCommitted(w1);
+        InitiateResponseMessage readResp = readOnReplica(w1);
+        verify(mbox, times(1)).send(eq(client_hsid), eq(readResp));
+    }
+
+    @Test
+    public void testLaggingReplicaRoutesReadsToLeader() throws Exception
+    {
+        createReplica();
+        TxnEgo ego = TxnEgo.makeZero(0).makeNext();
+
+        // A replica that hasn't applied anything yet can't serve reads
+        Iv2InitiateTaskMessage write = replicateWrite(ego.getTxnId());
+        assertFalse(SpScheduler.isReplicaReadable(0));
+        dut.deliver(new InitiateResponseMessage(write));
+        assertTrue(SpScheduler.isReplicaReadable(0));
+
+        // Fall more than the allowed lag behind the leader
+        for (int i = 0; i < SpScheduler.REPLICA_READ_MAX_LAG; i++) {
+            ego = ego.makeNext();
+            write = replicateWrite(ego.getTxnId());
+            assertTrue(SpScheduler.isReplicaReadable(0));
+        }
+        ego = ego.makeNext();
+        Iv2InitiateTaskMessage last = replicateWrite(ego.getTxnId());
+        assertFalse(SpScheduler.isReplicaReadable(0));
+
+        // Catching up to within the allowed lag takes reads again
+        dut.deliver(new InitiateResponseMessage(write));
+        assertTrue(SpScheduler.isReplicaReadable(0));
+        dut.deliver(new InitiateResponseMessage(last));
+        assertTrue(SpScheduler.isReplicaReadable(0));
+    }
+
+    @Test
+    public void testReplicaReadsReleasedOnPromotion() throws Exception
+    {
+        createReplica();
+        final long w1 = TxnEgo.makeZero(0).makeNext().getTxnId();
+
+        replicateWrite(w1);
+        InitiateResponseMessage readResp = readOnReplica(w1);
+        verify(mbox, never()).send(eq(client_hsid), eq(readResp));
+
+        // The new leader has finished repair, everything it applied is committed
+        dut.setLeaderState(true);
+        verify(mbox, times(1)).send(eq(client_hsid), eq(readResp));
+        assertTrue(SpScheduler.isReplicaReadable(0));
+    }
+}
@@ -0,0 +1,320 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.zk.MapCache;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.CommandLog;
+import org.voltdb.MockVoltDB;
+import org.voltdb.ParameterSet;
+import org.voltdb.SnapshotCompletionMonitor;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltDB;
+import org.voltdb.messaging.InitiateResponseMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.SpReplicationBatchMessage;
+
+import com.google_voltpatches.common.collect.ImmutableMap;
+
+public class TestSpSchedulerReplicationBatch
+{
+    Mailbox mbox;
+    SnapshotCompletionMonitor snapMonitor;
+    MapCache iv2masters;
+    SpScheduler dut;
+    private static MockVoltDB s_mockVoltDB = new MockVoltDB();
+
+    static final String MockSPName = "MOCKSP";
+    static final long dut_hsid = 11223344l;
+    static final long primary_hsid = 1111l;
+    static final long replica_hsid = 2l;
+    static final long other_replica_hsid = 3l;
+    static final int BATCH_SIZE = 3;
+
+    @BeforeClass
+    public static void setupClass() {
+        VoltDB.replaceVoltDBInstanceForTest(s_mockVoltDB);
+    }
+
+    @Before
+    public void setup() throws JSONException {
+        s_mockVoltDB.setKFactor(1);
+        createObjs();
+    }
+
+    private static SiteTaskerQueue getSiteTaskerQueue() {
+        SiteTaskerQueue queue = new SiteTaskerQueue(0);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        queue.setupQueueDepthTracker(0);
+        return queue;
+    }
+
+    public void createObjs() throws JSONException
+    {
+        mbox = mock(Mailbox.class);
+        when(mbox.getHSId()).thenReturn(dut_hsid);
+        iv2masters = mock(MapCache.class);
+        snapMonitor = mock(SnapshotCompletionMonitor.class);
+
+        // make fake MapCache of iv2masters
+        HashMap<String,JSONObject> fakecache = new HashMap<String, JSONObject>();
+        fakecache.put("0", new JSONObject("{hsid:0}"));
+        when(iv2masters.pointInTimeCache()).thenReturn(ImmutableMap.copyOf(fakecache));
+
+        final CommandLog cl = mock(CommandLog.class);
+        doReturn(CoreUtils.COMPLETED_FUTURE).when(cl).log(any(Iv2InitiateTaskMessage.class), anyLong(), any(int[].class),
+                                                          any(CommandLog.DurabilityListener.class),
+                                                          any(TransactionTask.class));
+
+        dut = new SpScheduler(0, getSiteTaskerQueue(), snapMonitor, true);
+        dut.setMailbox(mbox);
+        dut.setCommandLog(cl);
+        dut.setReplicationBatchSize(BATCH_SIZE);
+        dut.setLock(mbox);
+    }
+
+    private Iv2InitiateTaskMessage createMsg(long txnId, long destHSId)
+    {
+        // Mock an invocation for MockSPName.
+        StoredProcedureInvocation spi = mock(StoredProcedureInvocation.class);
+        when(spi.getProcName()).thenReturn(MockSPName);
+        ParameterSet bleh = mock(ParameterSet.class);
+        when(spi.getParams()).thenReturn(bleh);
+        Iv2InitiateTaskMessage task =
+            new Iv2InitiateTaskMessage(destHSId, // initHSID
+                                       Long.MIN_VALUE, // coordHSID
+                                       txnId - 1, // truncationHandle
+                                       txnId,     // txnId
+                                       UniqueIdGenerator.makeIdFromComponents(System.currentTimeMillis(), 0, 0), // uniqueID
+                                       false, // readonly
+                                       true, // single-part
+                                       spi, // invocation
+                                       Long.MAX_VALUE, // client interface handle
+                                       Long.MAX_VALUE, // connectionId
+                                       false); // isForReplay
+        // sp: sphandle == txnid
+        task.setTxnId(txnId);
+        task.setSpHandle(txnId);
+        return task;
+    }
+
+    private void makeLeader(Long... replicas)
+    {
+        dut.setLeaderState(true);
+        dut.updateReplicas(new ArrayList<Long>(Arrays.asList(replicas)), null, -1);
+    }
+
+    // Deliver a batch of initiations from the leader the way InitiatorMailbox does
+    private List<Iv2InitiateTaskMessage> deliverBatch(TxnEgo txnEgo, int count)
+    {
+        List<Iv2InitiateTaskMessage> tasks = new ArrayList<Iv2InitiateTaskMessage>();
+        for (int i = 0; i < count; i++) {
+            txnEgo = txnEgo.makeNext();
+            tasks.add(createMsg(txnEgo.getTxnId(), primary_hsid));
+        }
+        SpReplicationBatchMessage batch = new SpReplicationBatchMessage(new ArrayList<VoltMessage>(tasks));
+        dut.startReplicationBatch();
+        for (VoltMessage task : batch.getMessages()) {
+            dut.deliver(task);
+        }
+        dut.endReplicationBatch();
+        return tasks;
+    }
+
+    private List<Iv2InitiateTaskMessage> captureReplicatedBatch(long... replicas)
+    {
+        ArgumentCaptor<SpReplicationBatchMessage> batch = ArgumentCaptor.forClass(SpReplicationBatchMessage.class);
+        verify(mbox, times(1)).send(eq(replicas), batch.capture());
+        List<Iv2InitiateTaskMessage> tasks = new ArrayList<Iv2InitiateTaskMessage>();
+        for (VoltMessage msg : batch.getValue().getMessages()) {
+            tasks.add((Iv2InitiateTaskMessage)msg);
+        }
+        return tasks;
+    }
+
+    private void verifyResponseBatch(long leaderHSId, InitiateResponseMessage... responses)
+    {
+        ArgumentCaptor<SpReplicationBatchMessage> batch = ArgumentCaptor.forClass(SpReplicationBatchMessage.class);
+        verify(mbox, times(1)).send(eq(leaderHSId), batch.capture());
+        assertEquals(Arrays.<VoltMessage>asList(responses), batch.getValue().getMessages());
+    }
+
+    @Test
+    public void testLeaderSendsFullBatch() throws Exception
+    {
+        makeLeader(replica_hsid);
+        TxnEgo txnEgo = TxnEgo.makeZero(0);
+        for (int i = 0; i < BATCH_SIZE - 1; i++) {
+            txnEgo = txnEgo.makeNext();
+            dut.deliver(createMsg(txnEgo.getTxnId(), primary_hsid));
+        }
+        // Held until the batch is full
+        verify(mbox, times(0)).send(any(long[].class), (VoltMessage)anyObject());
+
+        txnEgo = txnEgo.makeNext();
+        dut.deliver(createMsg(txnEgo.getTxnId(), primary_hsid));
+        List<Iv2InitiateTaskMessage> replicated = captureReplicatedBatch(replica_hsid);
+        assertEquals(BATCH_SIZE, replicated.size());
+        for (Iv2InitiateTaskMessage msg : replicated) {
+            assertEquals(dut_hsid, msg.getInitiatorHSId());
+        }
+    }
+
+    @Test
+    public void testLeaderFlushesBeforeOtherMessages() throws Exception
+    {
+        makeLeader(replica_hsid);
+        TxnEgo txnEgo = TxnEgo.makeZero(0).makeNext();
+        Iv2InitiateTaskMessage sptask = createMsg(txnEgo.getTxnId(), primary_hsid);
+        dut.deliver(sptask);
+        txnEgo = txnEgo.makeNext();
+        dut.deliver(createMsg(txnEgo.getTxnId(), primary_hsid));
+        verify(mbox, times(0)).send(any(long[].class), (VoltMessage)anyObject());
+
+        // The leader's own response releases the partial batch, before the
+        // transaction waits on the replica's response
+        InitiateResponseMessage resp = new InitiateResponseMessage(sptask);
+        ClientResponseImpl cr = mock(ClientResponseImpl.class);
+        resp.setResults(cr);
+        resp.m_sourceHSId = dut_hsid;
+        dut.deliver(resp);
+        List<Iv2InitiateTaskMessage> replicated = captureReplicatedBatch(replica_hsid);
+        assertEquals(2, replicated.size());
+        verify(mbox, times(0)).send(eq(primary_hsid), (VoltMessage)anyObject());
+
+        // A response arriving in a batch completes the transaction as usual
+        InitiateResponseMessage replresp = new InitiateResponseMessage(replicated.get(0));
+        replresp.setResults(cr);
+        replresp.m_sourceHSId = replica_hsid;
+        dut.deliver(replresp);
+        verify(mbox, times(1)).send(eq(primary_hsid), any(InitiateResponseMessage.class));
+    }
+
+    @Test
+    public void testLeaderFlushesOnReplicaFailure() throws Exception
+    {
+        makeLeader(replica_hsid, other_replica_hsid);
+        TxnEgo txnEgo = TxnEgo.makeZero(0);
+        for (int i = 0; i < BATCH_SIZE - 1; i++) {
+            txnEgo = txnEgo.makeNext();
+            dut.deliver(createMsg(txnEgo.getTxnId(), primary_hsid));
+        }
+        verify(mbox, times(0)).send(any(long[].class), (VoltMessage)anyObject());
+
+        // The partial batch goes to the replica set it was made for
+        dut.updateReplicas(new ArrayList<Long>(Arrays.asList(replica_hsid)), null, -1);
+        assertEquals(BATCH_SIZE - 1, captureReplicatedBatch(replica_hsid, other_replica_hsid).size());
+    }
+
+    @Test
+    public void testReplicaHoldsResponsesUntilBatchCompletes() throws Exception
+    {
+        List<Iv2InitiateTaskMessage> tasks = deliverBatch(TxnEgo.makeZero(0), BATCH_SIZE);
+        InitiateResponseMessage[] responses = new InitiateResponseMessage[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            verify(mbox, times(0)).send(anyLong(), (VoltMessage)anyObject());
+            responses[i] = new InitiateResponseMessage(tasks.get(i));
+            dut.deliver(responses[i]);
+        }
+        verifyResponseBatch(primary_hsid, responses);
+    }
+
+    @Test
+    public void testReplicaWaitsForEveryTransactionOfBatch() throws Exception
+    {
+        List<Iv2InitiateTaskMessage> tasks = deliverBatch(TxnEgo.makeZero(0), BATCH_SIZE);
+        // The last transaction of the batch finishing first doesn't release the others
+        InitiateResponseMessage last = new InitiateResponseMessage(tasks.get(BATCH_SIZE - 1));
+        dut.deliver(last);
+        verify(mbox, times(0)).send(anyLong(), (VoltMessage)anyObject());
+
+        InitiateResponseMessage[] responses = new InitiateResponseMessage[BATCH_SIZE];
+        responses[0] = last;
+        for (int i = 0; i < BATCH_SIZE - 1; i++) {
+            verify(mbox, times(0)).send(anyLong(), (VoltMessage)anyObject());
+            responses[i + 1] = new InitiateResponseMessage(tasks.get(i));
+            dut.deliver(responses[i + 1]);
+        }
+        verifyResponseBatch(primary_hsid, responses);
+    }
+
+    @Test
+    public void testReplicaFlushesOnNextBatch() throws Exception
+    {
+        List<Iv2InitiateTaskMessage> tasks = deliverBatch(TxnEgo.makeZero(0), BATCH_SIZE);
+        InitiateResponseMessage first = new InitiateResponseMessage(tasks.get(0));
+        InitiateResponseMessage second = new InitiateResponseMessage(tasks.get(1));
+        dut.deliver(first);
+        dut.deliver(second);
+        verify(mbox, times(0)).send(anyLong(), (VoltMessage)anyObject());
+
+        // Responses of a batch don't wait on the next one
+        TxnEgo last = TxnEgo.makeZero(0);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            last = last.makeNext();
+        }
+        deliverBatch(last, BATCH_SIZE);
+        verifyResponseBatch(primary_hsid, first, second);
+    }
+
+    @Test
+    public void testReplicaFlushesOnPromotion() throws Exception
+    {
+        List<Iv2InitiateTaskMessage> tasks = deliverBatch(TxnEgo.makeZero(0), BATCH_SIZE);
+        InitiateResponseMessage first = new InitiateResponseMessage(tasks.get(0));
+        InitiateResponseMessage second = new InitiateResponseMessage(tasks.get(1));
+        dut.deliver(first);
+        dut.deliver(second);
+        verify(mbox, times(0)).send(anyLong(), (VoltMessage)anyObject());
+
+        dut.setLeaderState(true);
+        verifyResponseBatch(primary_hsid, first, second);
+    }
+}
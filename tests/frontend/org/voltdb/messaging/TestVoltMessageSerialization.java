@@ -113,6 +113,38 @@ public class TestVoltMessageSerialization extends TestCase {
         assertTrue(itask.isForReplay());
     }
 
+    public void testSpReplicationBatch() throws IOException {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName("johnisgreat");
+        spi.setParams(57, "gooniestoo", "dudemandude");
+
+        ArrayList<VoltMessage> msgs = new ArrayList<VoltMessage>();
+        for (int i = 0; i < 3; i++) {
+            Iv2InitiateTaskMessage itask = new Iv2InitiateTaskMessage(23, 8, 10L, 100045 + i, 99 + i, false, true, spi, 2101 + i, 3101, false);
+            itask.setSpHandle(31337 + i);
+            msgs.add(itask);
+        }
+        InitiateResponseMessage iresponse = new InitiateResponseMessage((Iv2InitiateTaskMessage) msgs.get(0));
+        iresponse.setResults(new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[0], "woot"));
+        msgs.add(iresponse);
+
+        SpReplicationBatchMessage batch = new SpReplicationBatchMessage(msgs);
+        SpReplicationBatchMessage batch2 = (SpReplicationBatchMessage) checkVoltMessage(batch);
+
+        assertEquals(4, batch2.getMessages().size());
+        for (int i = 0; i < 3; i++) {
+            Iv2InitiateTaskMessage itask2 = (Iv2InitiateTaskMessage) batch2.getMessages().get(i);
+            assertEquals(100045 + i, itask2.getTxnId());
+            assertEquals(31337 + i, itask2.getSpHandle());
+            assertEquals(2101 + i, itask2.getClientInterfaceHandle());
+            assertEquals("johnisgreat", itask2.getStoredProcedureName());
+        }
+        InitiateResponseMessage iresponse2 = (InitiateResponseMessage) batch2.getMessages().get(3);
+        assertEquals(iresponse.getTxnId(), iresponse2.getTxnId());
+        assertEquals(iresponse.getSpHandle(), iresponse2.getSpHandle());
+    }
+
     public void testInitiateResponse() throws IOException {
         StoredProcedureInvocation spi = new StoredProcedureInvocation();
         spi.setClientHandle(25);
@@ -0,0 +1,120 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.List;
+
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
+import org.voltdb.types.JoinType;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansHashJoin extends PlannerTestCase {
+
+    private static HashJoinPlanNode getHashJoin(AbstractPlanNode pn) {
+        List<AbstractPlanNode> hashJoins = pn.findAllNodesOfType(PlanNodeType.HASHJOIN);
+        assertEquals(1, hashJoins.size());
+        return (HashJoinPlanNode) hashJoins.get(0);
+    }
+
+    private static void assertHashColumn(AbstractExpression expr, String tableAlias, String columnName) {
+        assertTrue(expr instanceof TupleValueExpression);
+        TupleValueExpression tve = (TupleValueExpression) expr;
+        assertEquals(tableAlias, tve.getTableAlias());
+        assertEquals(columnName, tve.getColumnName());
+        // Each side is evaluated on its own tuple
+        assertEquals(0, tve.getTableIndex());
+    }
+
+    public void testEquiJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1 JOIN R2 ON R1.C = R2.C");
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+        HashJoinPlanNode hj = getHashJoin(pn);
+        assertEquals(JoinType.INNER, hj.getJoinType());
+        assertEquals(1, hj.getOuterHashExpressions().size());
+        assertEquals(1, hj.getInnerHashExpressions().size());
+        AbstractExpression outer = hj.getOuterHashExpressions().get(0);
+        AbstractExpression inner = hj.getInnerHashExpressions().get(0);
+        assertEquals("C", ((TupleValueExpression) outer).getColumnName());
+        assertEquals("C", ((TupleValueExpression) inner).getColumnName());
+        assertFalse(((TupleValueExpression) outer).getTableAlias().equals(
+                ((TupleValueExpression) inner).getTableAlias()));
+        // The equality is still checked by the join predicate
+        assertNotNull(hj.getJoinPredicate());
+        assertTrue(hj.toExplainPlanString().contains("HASH INNER JOIN"));
+    }
+
+    public void testMultiColumnEquiJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1.C = R2.C AND R2.A = R1.A AND R1.D > R2.A");
+        HashJoinPlanNode hj = getHashJoin(pn);
+        assertEquals(2, hj.getOuterHashExpressions().size());
+        assertEquals(2, hj.getInnerHashExpressions().size());
+        String outerAlias = ((TupleValueExpression) hj.getOuterHashExpressions().get(0)).getTableAlias();
+        String innerAlias = ((TupleValueExpression) hj.getInnerHashExpressions().get(0)).getTableAlias();
+        for (int ii = 0; ii < 2; ii++) {
+            String columnName = ((TupleValueExpression) hj.getOuterHashExpressions().get(ii)).getColumnName();
+            assertHashColumn(hj.getOuterHashExpressions().get(ii), outerAlias, columnName);
+            assertHashColumn(hj.getInnerHashExpressions().get(ii), innerAlias, columnName);
+        }
+    }
+
+    public void testOuterJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1 LEFT JOIN R2 ON R1.C = R2.C AND R1.A > 0");
+        HashJoinPlanNode hj = getHashJoin(pn);
+        assertEquals(JoinType.LEFT, hj.getJoinType());
+        assertHashColumn(hj.getOuterHashExpressions().get(0), "R1", "C");
+        assertHashColumn(hj.getInnerHashExpressions().get(0), "R2", "C");
+        assertNotNull(hj.getPreJoinPredicate());
+
+        pn = compile("SELECT * FROM R1 FULL JOIN R2 ON R1.C = R2.C");
+        hj = getHashJoin(pn);
+        assertEquals(JoinType.FULL, hj.getJoinType());
+    }
+
+    public void testNonEquiJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1.C > R2.C");
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+        assertEquals(1, pn.findAllNodesOfType(PlanNodeType.NESTLOOP).size());
+
+        // Both sides of the equality have to come from different tables
+        pn = compile("SELECT * FROM R1, R2 WHERE R1.C = R1.A + R2.A");
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        SelectSubPlanAssembler.s_hashJoinEnabled = true;
+        setupSchema(TestJoinOrder.class.getResource("testplans-join-ddl.sql"),
+                "testplansjoin", false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SelectSubPlanAssembler.s_hashJoinEnabled = false;
+        super.tearDown();
+    }
+
+}
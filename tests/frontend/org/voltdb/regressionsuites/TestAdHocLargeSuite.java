@@ -24,8 +24,11 @@
 package org.voltdb.regressionsuites;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.voltdb.BackendTarget;
+import org.voltdb.VoltTable;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.compiler.VoltProjectBuilder;
@@ -195,6 +198,71 @@ public class TestAdHocLargeSuite extends RegressionSuite {
         }, cr.getResults()[0]);
     }
 
+    public void testHighCardinalityGroupBy() throws Exception {
+        if (isValgrind()) {
+            // don't run this test under valgrind, as it needs IPC support.
+            return;
+        }
+
+        Client client = getClient();
+        ClientResponse cr;
+
+        cr = client.callProcedure("@AdHoc", "delete from t");
+        assertEquals(ClientResponse.SUCCESS, cr.getStatus());
+
+        final int NUM_ROWS = 500;
+        for (int rowCnt = 0; rowCnt < NUM_ROWS; ++rowCnt) {
+            cr = client.callProcedure("t.Insert", rowCnt,
+                    "short " + rowCnt, "short " + (rowCnt % 2), "long " + rowCnt);
+            assertEquals(ClientResponse.SUCCESS, cr.getStatus());
+        }
+
+        // Each group has two rows of the cross join, which has 125,000 groups.
+        // That is more than fits in 25MB, so the hash aggregate spills the groups
+        // that don't fit to large temp tables.
+        //
+        // RETURN RESULTS TO STORED PROCEDURE
+        //  Hash AGGREGATION ops: COUNT(*), MIN(column#1), MAX(column#1), COUNT(DISTINCT column#2)
+        //   NEST LOOP INNER JOIN
+        //    SEQUENTIAL SCAN of "T (T1)"
+        //    SEQUENTIAL SCAN of "T (T2)"
+        String query =
+                  "select t1.i * 1000 + t2.i / 2 as k, "
+                + "       count(*), "
+                + "       min(t2.longval), "
+                + "       max(t2.longval), "
+                + "       count(distinct t2.inl_vc01) "
+                + "from t as t1, t as t2 "
+                + "group by t1.i * 1000 + t2.i / 2";
+
+        cr = client.callProcedure("@AdHocLarge", query);
+        assertEquals(ClientResponse.SUCCESS, cr.getStatus());
+        VoltTable result = cr.getResults()[0];
+        assertEquals(NUM_ROWS * NUM_ROWS / 2, result.getRowCount());
+
+        Set<Long> keys = new HashSet<>();
+        while (result.advanceRow()) {
+            long key = result.getLong(0);
+            assertTrue(keys.add(key));
+
+            // The group of t1.i and the t2 rows 2 * (key % 1000) and the one after it.
+            long t1i = key / 1000;
+            long t2i = (key % 1000) * 2;
+            assertTrue(t1i < NUM_ROWS && t2i < NUM_ROWS);
+            assertEquals(2, result.getLong(1));
+
+            String first = "long " + t2i;
+            String second = "long " + (t2i + 1);
+            assertEquals(first.compareTo(second) < 0 ? first : second, result.getString(2));
+            assertEquals(first.compareTo(second) < 0 ? second : first, result.getString(3));
+            assertEquals(2, result.getLong(4));
+        }
+
+        // The query is too large to run normally.
+        verifyProcFails(client, "More than 25 MB of temp table memory used while executing SQL",
+                "@AdHoc", query);
+    }
+
     static public junit.framework.Test suite() throws Exception {
         VoltServerConfig config = null;
         MultiConfigSuiteBuilder builder = new MultiConfigSuiteBuilder(TestAdHocLargeSuite.class);
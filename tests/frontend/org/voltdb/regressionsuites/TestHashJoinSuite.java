@@ -0,0 +1,174 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.regressionsuites;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.BackendTarget;
+import org.voltdb.VoltTable;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.compiler.VoltProjectBuilder;
+
+/**
+ * Runs joins with the hash join planner enabled, and checks that they produce
+ * the same rows as the nested loop join the planner would otherwise pick.
+ */
+public class TestHashJoinSuite extends RegressionSuite {
+
+    private static final String[] JOIN_TYPES = { "INNER", "LEFT", "FULL" };
+
+    // An equality the planner hashes on, and the same condition spelled so
+    // that it has to be evaluated by a nested loop join.
+    private static final String HASH_CONDITION = "a.k = b.k";
+    private static final String NEST_LOOP_CONDITION = "a.k >= b.k and a.k <= b.k";
+
+    private static String joinQuery(String joinType, String condition) {
+        // Leaving out the unused column gives the scans an inline projection, so they
+        // produce temp tables, which are large temp tables under @AdHocLarge.
+        // Selecting the length of the long column keeps it in the inner table,
+        // without returning it.
+        return "select a.i, b.i, char_length(b.longval) "
+                + "from a " + joinType + " join b on " + condition;
+    }
+
+    private static List<String> sortedRows(VoltTable table) {
+        List<String> rows = new ArrayList<>();
+        while (table.advanceRow()) {
+            StringBuilder row = new StringBuilder();
+            for (int col = 0; col < table.getColumnCount(); ++col) {
+                Object value = table.get(col, table.getColumnType(col));
+                row.append(table.wasNull() ? "NULL" : value).append('|');
+            }
+            rows.add(row.toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private void checkHashJoins(Client client, String procName, int minRows) throws Exception {
+        for (String joinType : JOIN_TYPES) {
+            String hashQuery = joinQuery(joinType, HASH_CONDITION);
+            String nestLoopQuery = joinQuery(joinType, NEST_LOOP_CONDITION);
+
+            String explain = client.callProcedure("@Explain", hashQuery).getResults()[0].fetchRow(0).getString(0);
+            assertTrue(explain, explain.contains("HASH " + joinType + " JOIN"));
+            explain = client.callProcedure("@Explain", nestLoopQuery).getResults()[0].fetchRow(0).getString(0);
+            assertTrue(explain, explain.contains("NEST LOOP " + joinType + " JOIN"));
+
+            ClientResponse cr = client.callProcedure(procName, hashQuery);
+            assertEquals(ClientResponse.SUCCESS, cr.getStatus());
+            List<String> hashRows = sortedRows(cr.getResults()[0]);
+            cr = client.callProcedure(procName, nestLoopQuery);
+            assertEquals(ClientResponse.SUCCESS, cr.getStatus());
+            List<String> nestLoopRows = sortedRows(cr.getResults()[0]);
+
+            assertTrue(joinType + " join returned " + hashRows.size() + " rows", hashRows.size() >= minRows);
+            assertEquals(joinType + " join", nestLoopRows, hashRows);
+        }
+    }
+
+    // Every tenth row has a NULL key, and every other key is shared by two rows of
+    // each table.  Keys at or above numRows / 2 in B have no match in A.
+    private static void loadTables(Client client, int numRows, int valLength) throws Exception {
+        String val = String.join("", Collections.nCopies(valLength, "x"));
+        for (int i = 0; i < numRows; ++i) {
+            Integer key = i % 10 == 0 ? null : i % (numRows / 2);
+            assertEquals(ClientResponse.SUCCESS,
+                    client.callProcedure("A.insert", i, key, "a " + i, 0).getStatus());
+            key = i % 10 == 0 ? null : i % (numRows / 2) + (i % 3 == 0 ? numRows : 0);
+            assertEquals(ClientResponse.SUCCESS,
+                    client.callProcedure("B.insert", i, key, val, 0).getStatus());
+        }
+    }
+
+    public void testNullKeys() throws Exception {
+        Client client = getClient();
+        client.callProcedure("@AdHoc", "delete from a");
+        client.callProcedure("@AdHoc", "delete from b");
+
+        // Nothing to join
+        checkHashJoins(client, "@AdHoc", 0);
+
+        loadTables(client, 100, 10);
+        checkHashJoins(client, "@AdHoc", 100);
+
+        // Only NULL keys, which never match
+        client.callProcedure("@AdHoc", "update a set k = null");
+        checkHashJoins(client, "@AdHoc", 0);
+    }
+
+    public void testLargeInner() throws Exception {
+        if (isValgrind()) {
+            // don't run this test under valgrind, as it needs IPC support.
+            return;
+        }
+
+        Client client = getClient();
+        client.callProcedure("@AdHoc", "delete from a");
+        client.callProcedure("@AdHoc", "delete from b");
+
+        // 600 rows of 100KB each is about 60MB of inner table, more than
+        // fits in the 25MB of temp table memory, so the hash join splits it
+        // into partitions and joins them one at a time.
+        loadTables(client, 600, 100000);
+        checkHashJoins(client, "@AdHocLarge", 600);
+
+        // Every inner key the same, so the partitions can't be split any further
+        // and the hash join falls back to a nested loop over the inner blocks.
+        client.callProcedure("@AdHoc", "update a set k = 7 where k is not null and i < 20");
+        client.callProcedure("@AdHoc", "update b set k = 7 where k is not null");
+        checkHashJoins(client, "@AdHocLarge", 600);
+    }
+
+    static public junit.framework.Test suite() throws Exception {
+        MultiConfigSuiteBuilder builder = new MultiConfigSuiteBuilder(TestHashJoinSuite.class);
+
+        VoltProjectBuilder project = new VoltProjectBuilder();
+        project.addLiteralSchema(
+                "create table a (i integer not null, k integer, longval varchar(500000), unused integer);"
+                + "create table b (i integer not null, k integer, longval varchar(500000), unused integer);");
+        project.setQueryTimeout(1000 * 60 * 5); // five minutes
+
+        // The servers plan with hash joins enabled
+        Map<String, String> env = new HashMap<>();
+        env.put("PLANNER_HASH_JOIN", "true");
+        env.put("TEMP_TABLE_MAX_SIZE", "25"); // in MB
+        LocalCluster config = new LocalCluster("hashjoin-voltdbBackend.jar", 2, 1, 0,
+                BackendTarget.NATIVE_EE_JNI, env);
+        config.setHasLocalServer(false);
+        assertTrue(config.compile(project));
+        builder.addServerConfig(config);
+
+        return builder;
+    }
+
+    public TestHashJoinSuite(String name) {
+        super(name);
+    }
+}
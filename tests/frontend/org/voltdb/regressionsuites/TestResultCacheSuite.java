@@ -0,0 +1,171 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.regressionsuites;
+
+import java.io.IOException;
+
+import org.voltdb.BackendTarget;
+import org.voltdb.VoltTable;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcCallException;
+import org.voltdb.compiler.VoltProjectBuilder;
+
+/**
+ * Runs single partition reads with the result cache enabled, and checks that they
+ * are served from the cache until something writes to a table they read.
+ */
+public class TestResultCacheSuite extends RegressionSuite {
+
+    // Sum of a column of @Statistics RESULTCACHE over all partitions
+    private static long cacheStat(Client client, String column) throws IOException, ProcCallException {
+        VoltTable stats = client.callProcedure("@Statistics", "RESULTCACHE", 0).getResults()[0];
+        long total = 0;
+        while (stats.advanceRow()) {
+            total += stats.getLong(column);
+        }
+        return total;
+    }
+
+    private static void checkValue(Client client, int key, Long expected) throws IOException, ProcCallException {
+        VoltTable result = client.callProcedure("GetVal", key).getResults()[0];
+        if (expected == null) {
+            assertEquals(0, result.getRowCount());
+        } else {
+            assertEquals(1, result.getRowCount());
+            assertEquals(expected.longValue(), result.asScalarLong());
+        }
+    }
+
+    public void testProcedureReadsHitTheCache() throws Exception {
+        Client client = getClient();
+        client.callProcedure("KV.insert", 1, 10);
+        client.callProcedure("KV.insert", 2, 20);
+
+        long hits = cacheStat(client, "HITS");
+        long misses = cacheStat(client, "MISSES");
+        checkValue(client, 1, 10L);
+        assertEquals(misses + 1, cacheStat(client, "MISSES"));
+        assertEquals(hits, cacheStat(client, "HITS"));
+
+        // Same parameters come from the cache, other parameters don't
+        checkValue(client, 1, 10L);
+        checkValue(client, 1, 10L);
+        assertEquals(hits + 2, cacheStat(client, "HITS"));
+        checkValue(client, 2, 20L);
+        assertEquals(misses + 2, cacheStat(client, "MISSES"));
+        assertEquals(hits + 2, cacheStat(client, "HITS"));
+        assertTrue(cacheStat(client, "ENTRIES") >= 2);
+
+        // Statements reading the current time are never cached
+        hits = cacheStat(client, "HITS");
+        client.callProcedure("GetValAndTime", 1);
+        client.callProcedure("GetValAndTime", 1);
+        assertEquals(hits, cacheStat(client, "HITS"));
+    }
+
+    public void testWritesInvalidate() throws Exception {
+        Client client = getClient();
+        client.callProcedure("KV.insert", 3, 30);
+        checkValue(client, 3, 30L);
+        checkValue(client, 3, 30L);
+
+        // A write procedure
+        long invalidations = cacheStat(client, "INVALIDATIONS");
+        client.callProcedure("SetVal", 31, 3);
+        checkValue(client, 3, 31L);
+        assertTrue(cacheStat(client, "INVALIDATIONS") > invalidations);
+        checkValue(client, 3, 31L);
+
+        // A single partition ad hoc write
+        client.callProcedure("@AdHoc", "update kv set v = 32 where k = 3;");
+        checkValue(client, 3, 32L);
+
+        // A multi partition write
+        client.callProcedure("@AdHoc", "update kv set v = v + 1;");
+        checkValue(client, 3, 33L);
+
+        // A write that fails and rolls back leaves the old value
+        try {
+            client.callProcedure("KV.insert", 3, 99);
+            fail("Expected a constraint violation");
+        } catch (ProcCallException e) {
+            assertEquals(ClientResponse.GRACEFUL_FAILURE, e.getClientResponse().getStatus());
+        }
+        checkValue(client, 3, 33L);
+
+        client.callProcedure("@AdHoc", "delete from kv where k = 3;");
+        checkValue(client, 3, null);
+        client.callProcedure("KV.insert", 3, 34);
+        checkValue(client, 3, 34L);
+    }
+
+    public void testWritesOnlyInvalidateTheirTables() throws Exception {
+        Client client = getClient();
+        client.callProcedure("KV.insert", 4, 40);
+        client.callProcedure("OTHER.insert", 4, 0);
+        checkValue(client, 4, 40L);
+
+        // A write to another table leaves the entry in place
+        long hits = cacheStat(client, "HITS");
+        client.callProcedure("SetOther", 1, 4);
+        checkValue(client, 4, 40L);
+        assertEquals(hits + 1, cacheStat(client, "HITS"));
+
+        // A write to the source table of a view invalidates reads of the view
+        VoltTable total = client.callProcedure("GetTotal", 4).getResults()[0];
+        assertEquals(40, total.asScalarLong());
+        client.callProcedure("SetVal", 41, 4);
+        total = client.callProcedure("GetTotal", 4).getResults()[0];
+        assertEquals(41, total.asScalarLong());
+    }
+
+    static public junit.framework.Test suite() throws Exception {
+        MultiConfigSuiteBuilder builder = new MultiConfigSuiteBuilder(TestResultCacheSuite.class);
+
+        VoltProjectBuilder project = new VoltProjectBuilder();
+        project.addLiteralSchema(
+                "create table kv (k integer not null, v bigint, primary key (k));"
+                + "partition table kv on column k;"
+                + "create view kv_total (k, total) as select k, sum(v) from kv group by k;"
+                + "create table other (k integer not null, v bigint, primary key (k));"
+                + "partition table other on column k;");
+        project.addStmtProcedure("GetVal", "select v from kv where k = ?;", "KV.K: 0");
+        project.addStmtProcedure("GetValAndTime", "select v, now from kv where k = ?;", "KV.K: 0");
+        project.addStmtProcedure("SetVal", "update kv set v = ? where k = ?;", "KV.K: 1");
+        project.addStmtProcedure("GetTotal", "select total from kv_total where k = ?;", "KV.K: 0");
+        project.addStmtProcedure("SetOther", "update other set v = ? where k = ?;", "OTHER.K: 1");
+        project.setResultCache(100);
+
+        LocalCluster config = new LocalCluster("resultcache-onesite.jar", 2, 1, 0, BackendTarget.NATIVE_EE_JNI);
+        assertTrue(config.compile(project));
+        builder.addServerConfig(config);
+
+        return builder;
+    }
+
+    public TestResultCacheSuite(String name) {
+        super(name);
+    }
+}
@@ -0,0 +1,106 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+
+/**
+ * Compares how fast a backlog can be drained out of a PBD made of regular segments
+ * and one made of memory mapped segments. Run it by hand, it only prints the rates.
+ */
+public class PBDSegmentBenchmark extends TestCase {
+    private static final VoltLogger logger = new VoltLogger("EXPORT");
+    private static final String NONCE = "pbd_bench";
+    private static final String CURSOR_ID = "bench";
+
+    //Roughly the size of an export buffer
+    private static final int ENTRY_SIZE = 1024 * 1024 * 2;
+    //About 1 GB of backlog
+    private static final int ENTRIES = 512;
+
+    static ByteBuffer filledBuffer(int size) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(size);
+        long value = 0;
+        while (buf.remaining() > 7) {
+            buf.putLong(value++);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    void runDrainBenchmark(boolean mmap, boolean compress) throws Exception {
+        TestPersistentBinaryDeque.setupTestDir();
+        File dir = TestPersistentBinaryDeque.TEST_DIR;
+        ByteBuffer entry = filledBuffer(ENTRY_SIZE);
+
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque(NONCE, dir, logger, true, mmap);
+        for (int i = 0; i < ENTRIES; i++) {
+            entry.clear();
+            pbd.offer(DBBPool.wrapBB(entry), compress);
+        }
+        pbd.sync();
+        pbd.close();
+
+        System.gc();
+        pbd = new PersistentBinaryDeque(NONCE, dir, logger, true, mmap);
+        BinaryDequeReader reader = pbd.openForRead(CURSOR_ID);
+        long bytes = 0;
+        long checksum = 0;
+        long start = System.nanoTime();
+        BBContainer cont;
+        while ((cont = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY)) != null) {
+            ByteBuffer b = cont.b();
+            bytes += b.remaining();
+            //Touch the data like a consumer would
+            for (int i = b.position(); i < b.limit(); i += 4096) {
+                checksum += b.get(i);
+            }
+            cont.discard();
+        }
+        long finish = System.nanoTime();
+        pbd.close();
+
+        double seconds = (finish - start) / (1000d * 1000d * 1000d);
+        System.out.printf("%s segments, compression %s, drained %.2f MB/sec (checksum %d)\n",
+                mmap ? "Mapped" : "Regular", compress ? "on" : "off",
+                (bytes / (1024d * 1024d)) / seconds, checksum);
+    }
+
+    public void testDrain() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            runDrainBenchmark(false, false);
+            runDrainBenchmark(true, false);
+            runDrainBenchmark(false, true);
+            runDrainBenchmark(true, true);
+        }
+    }
+}
@@ -24,7 +24,13 @@
 package org.voltdb.utils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 
 import junit.framework.TestCase;
@@ -47,4 +53,38 @@ public class TestCompressionService extends TestCase {
 
         assertEquals(someText, result);
     }
+
+    public void testPipelineMatchesCompressionService() throws Exception {
+        BlockCompressionPipeline pipeline = new BlockCompressionPipeline("Test compression", 4);
+        try {
+            //More blocks than threads so some wait in the queue
+            List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+            List<Future<BBContainer>> expected = new ArrayList<Future<BBContainer>>();
+            List<Future<BBContainer>> actual = new ArrayList<Future<BBContainer>>();
+            for (int ii = 0; ii < 32; ii++) {
+                ByteBuffer block = ByteBuffer.allocateDirect(1024 * 64);
+                while (block.remaining() > 7) {
+                    block.putLong(ii * block.position());
+                }
+                block.flip();
+                blocks.add(block);
+                BBContainer out = DBBPool.allocateDirect(CompressionService.maxCompressedLength(block.remaining()) + 4);
+                expected.add(CompressionService.compressAndCRC32cBufferAsync(block.duplicate(), out));
+                out = DBBPool.allocateDirect(CompressionService.maxCompressedLength(block.remaining()) + 4);
+                actual.add(pipeline.compressAndCRC32c(block.duplicate(), out));
+            }
+
+            for (int ii = 0; ii < blocks.size(); ii++) {
+                BBContainer e = expected.get(ii).get();
+                BBContainer a = actual.get(ii).get();
+                e.b().position(0);
+                a.b().position(0);
+                assertEquals(e.b(), a.b());
+                e.discard();
+                a.discard();
+            }
+        } finally {
+            pipeline.shutdown();
+        }
+    }
 }
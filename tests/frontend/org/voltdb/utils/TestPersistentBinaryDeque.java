@@ -764,6 +764,41 @@ public class TestPersistentBinaryDeque {
         assertEquals( 1, listing.size());
     }
 
+    @Test
+    public void testOfferThenPollMMapSegments() throws Exception {
+        System.out.println("Running testOfferThenPollMMapSegments");
+        m_pbd.close();
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger, true, true );
+        BinaryDequeReader reader = m_pbd.openForRead(CURSOR_ID);
+
+        //Alternate compressed and uncompressed entries over several segments
+        for (int ii = 0; ii < 96; ii++) {
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(ii)), ii % 2 == 0);
+        }
+
+        //Poll from the tail segment while it is appended to so it has to be remapped
+        for (int ii = 0; ii < 96; ii++) {
+            BBContainer retval = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertTrue(getFilledBuffer(ii).equals(retval.b()));
+            //Consumers are allowed to modify what they poll
+            retval.b().putLong(0, -1);
+            retval.discard();
+            m_pbd.offer(DBBPool.wrapBB(getFilledBuffer(96 + ii)), ii % 2 == 0);
+        }
+        m_pbd.sync();
+        m_pbd.close();
+
+        //The entries offered while polling survive a reopen
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, logger, true, true );
+        reader = m_pbd.openForRead(CURSOR_ID);
+        for (int ii = 96; ii < 192; ii++) {
+            BBContainer retval = reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+            assertTrue(getFilledBuffer(ii).equals(retval.b()));
+            retval.discard();
+        }
+        assertNull(reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY));
+    }
+
     @Test
     public void testInvalidDirectory() throws Exception {
         System.out.println("Running testInvalidDirectory");
@@ -0,0 +1,108 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.BinaryDeque.BinaryDequeReader;
+import org.voltdb.utils.PersistentBinaryDeque;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Offering an export sized buffer to a PersistentBinaryDeque and polling it back,
+ * with regular and memory mapped segments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PBDBenchmark {
+    private static final VoltLogger LOG = new VoltLogger("EXPORT");
+
+    @Param({"1024", "2097152"})
+    public int entrySize;
+
+    @Param({"false", "true"})
+    public boolean mmap;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private File m_dir;
+    private PersistentBinaryDeque m_pbd;
+    private BinaryDequeReader m_reader;
+    private ByteBuffer m_entry;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        m_dir = Files.createTempDirectory("pbd_jmh").toFile();
+        m_pbd = new PersistentBinaryDeque("pbd_jmh", m_dir, LOG, true, mmap);
+        m_reader = m_pbd.openForRead("jmh");
+        m_entry = ByteBuffer.allocateDirect(entrySize);
+        long value = 0;
+        while (m_entry.remaining() > 7) {
+            m_entry.putLong(value++);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        m_pbd.close();
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    @Benchmark
+    public int offerThenPoll() throws IOException {
+        m_entry.clear();
+        m_pbd.offer(DBBPool.wrapBB(m_entry), compress);
+        BBContainer cont = m_reader.poll(PersistentBinaryDeque.UNSAFE_CONTAINER_FACTORY);
+        try {
+            return cont.b().remaining();
+        } finally {
+            cont.discard();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.voltdb.ParameterSet;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+import org.voltdb.types.TimestampType;
+
+/**
+ * FastSerializer/FastDeserializer of primitive values and flattening and parsing
+ * the kind of ParameterSet a typical procedure invocation carries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private FastSerializer m_serializer;
+    private byte[] m_serialized;
+
+    private ParameterSet m_params;
+    private ByteBuffer m_flattenedParams;
+    private ByteBuffer m_paramsBuffer;
+
+    @Setup
+    public void setup() throws IOException {
+        m_serializer = new FastSerializer();
+        writeValues(m_serializer);
+        m_serialized = m_serializer.getBytes();
+
+        m_params = ParameterSet.fromArrayNoCopy(
+                42L, 7, "customer name", 3.14159, new TimestampType(1500000000000000L),
+                new byte[64], new long[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        m_paramsBuffer = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_flattenedParams = ByteBuffer.allocate(m_params.getSerializedSize());
+        m_params.flattenToBuffer(m_flattenedParams);
+        m_flattenedParams.flip();
+    }
+
+    @TearDown
+    public void tearDown() {
+        m_serializer.discard();
+    }
+
+    private static void writeValues(FastSerializer fs) throws IOException {
+        for (int ii = 0; ii < 16; ii++) {
+            fs.writeLong(ii);
+            fs.writeInt(ii);
+            fs.writeDouble(ii);
+            fs.writeString("value");
+        }
+    }
+
+    @Benchmark
+    public int fastSerializerWrite() throws IOException {
+        m_serializer.clear();
+        writeValues(m_serializer);
+        return m_serializer.size();
+    }
+
+    @Benchmark
+    public void fastDeserializerRead(Blackhole bh) throws IOException {
+        FastDeserializer fds = new FastDeserializer(m_serialized);
+        for (int ii = 0; ii < 16; ii++) {
+            bh.consume(fds.readLong());
+            bh.consume(fds.readInt());
+            bh.consume(fds.readDouble());
+            bh.consume(fds.readString());
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer parameterSetFlatten() throws IOException {
+        m_paramsBuffer.clear();
+        m_params.flattenToBuffer(m_paramsBuffer);
+        return m_paramsBuffer;
+    }
+
+    @Benchmark
+    public ParameterSet parameterSetParse() throws IOException {
+        return ParameterSet.fromByteBuffer(m_flattenedParams.duplicate());
+    }
+}
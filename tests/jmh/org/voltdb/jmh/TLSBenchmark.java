@@ -0,0 +1,224 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.network.CipherExecutor;
+import org.voltcore.utils.ssl.SSLBufferEncrypter;
+import org.voltdb.common.Constants;
+
+/**
+ * Cost of writing a batch of client responses with and without TLS. {@code plaintext} copies
+ * the responses into a direct buffer the way the write stream serializes them,
+ * {@code tlsRecordPerResponse} wraps every response in its own TLS record and
+ * {@code tlsPacked} packs them into records of up to {@link CipherExecutor#FRAME_SIZE} bytes
+ * the way TLSEncryptionAdapter does. Each operation is one batch, so the scores compare
+ * directly as batches per second.
+ *
+ * The server key comes from tests/frontend/org/voltdb/keystore unless javax.net.ssl.keyStore is set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLSBenchmark {
+
+    @Param({"64", "1024"})
+    public int responseSize;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private ByteBuffer[] m_responses;
+    private ByteBuffer m_plaintext;
+    private ByteBuffer m_frame;
+    private ByteBuffer m_encrypted;
+    private SSLBufferEncrypter m_encrypter;
+
+    @Setup
+    public void setup() throws Exception {
+        Random r = new Random(0);
+        m_responses = new ByteBuffer[batchSize];
+        for (int i = 0; i < batchSize; ++i) {
+            byte[] response = new byte[responseSize];
+            r.nextBytes(response);
+            m_responses[i] = ByteBuffer.allocateDirect(responseSize);
+            m_responses[i].put(response).flip();
+        }
+        m_plaintext = ByteBuffer.allocateDirect(responseSize * batchSize);
+        m_frame = ByteBuffer.allocateDirect(CipherExecutor.FRAME_SIZE);
+
+        SSLEngine server = serverContext().createSSLEngine();
+        server.setUseClientMode(false);
+        SSLEngine client = clientContext().createSSLEngine();
+        client.setUseClientMode(true);
+        handshake(client, server);
+
+        m_encrypted = ByteBuffer.allocateDirect(server.getSession().getPacketBufferSize());
+        m_encrypter = new SSLBufferEncrypter(server);
+    }
+
+    @Benchmark
+    public int plaintext() {
+        m_plaintext.clear();
+        for (ByteBuffer response : m_responses) {
+            m_plaintext.put(response.duplicate());
+        }
+        return m_plaintext.position();
+    }
+
+    @Benchmark
+    public int tlsRecordPerResponse() {
+        int written = 0;
+        for (ByteBuffer response : m_responses) {
+            written += wrap(response.duplicate());
+        }
+        return written;
+    }
+
+    @Benchmark
+    public int tlsPacked() {
+        int written = 0;
+        m_frame.clear();
+        for (ByteBuffer response : m_responses) {
+            if (m_frame.remaining() < response.remaining()) {
+                m_frame.flip();
+                written += wrap(m_frame);
+                m_frame.clear();
+            }
+            m_frame.put(response.duplicate());
+        }
+        m_frame.flip();
+        return written + wrap(m_frame);
+    }
+
+    private int wrap(ByteBuffer src) {
+        m_encrypted.clear();
+        m_encrypter.tlswrap(src, m_encrypted);
+        return m_encrypted.limit();
+    }
+
+    private static SSLContext serverContext() throws Exception {
+        String path = System.getProperty("javax.net.ssl.keyStore", "tests/frontend/org/voltdb/keystore");
+        String password = System.getProperty("javax.net.ssl.keyStorePassword", Constants.DEFAULT_KEYSTORE_PASSWD);
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = new FileInputStream(path)) {
+            keyStore.load(in, password.toCharArray());
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password.toCharArray());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] { trustAll }, null);
+        return context;
+    }
+
+    /*
+     * Run the handshake in memory, each engine reads what the other one wrote.
+     */
+    private static void handshake(SSLEngine client, SSLEngine server) throws Exception {
+        ByteBuffer toServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+        ByteBuffer toClient = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+        ByteBuffer app = ByteBuffer.allocate(Math.max(client.getSession().getApplicationBufferSize(),
+                                                      server.getSession().getApplicationBufferSize()));
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 1000; ++i) {
+            boolean progress = step(client, toClient, toServer, app);
+            progress |= step(server, toServer, toClient, app);
+            if (client.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING &&
+                server.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING) {
+                return;
+            }
+            if (!progress) {
+                break;
+            }
+        }
+        throw new IllegalStateException("TLS handshake did not complete");
+    }
+
+    private static boolean step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer app) throws Exception {
+        switch (engine.getHandshakeStatus()) {
+        case NEED_WRAP:
+            return engine.wrap(ByteBuffer.allocate(0), out).bytesProduced() > 0;
+        case NEED_UNWRAP:
+            in.flip();
+            SSLEngineResult result = engine.unwrap(in, app);
+            in.compact();
+            app.clear();
+            return result.bytesConsumed() > 0;
+        case NEED_TASK:
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            return true;
+        default:
+            return false;
+        }
+    }
+}
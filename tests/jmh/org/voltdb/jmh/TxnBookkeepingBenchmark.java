@@ -0,0 +1,142 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltcore.utils.LongObjectHashMap;
+import org.voltcore.utils.LongPairSortedMap;
+
+/**
+ * The bookkeeping SpScheduler does for each replicated single partition write on the leader:
+ * track the transaction state and a duplicate counter, look the counter up once per replica
+ * response, then drop both. {@code outstanding} transactions stay in flight behind the current one.
+ *
+ * Run with -Djmh.args="-prof gc TxnBookkeeping" and compare gc.alloc.rate.norm, the boxed
+ * variant allocates the Long keys, map nodes and duplicate counter keys of every transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TxnBookkeepingBenchmark {
+
+    // Mirrors SpScheduler.DuplicateCounterKey as it was used as a TreeMap key
+    static final class CounterKey implements Comparable<CounterKey> {
+        final long m_txnId;
+        final long m_spHandle;
+
+        CounterKey(long txnId, long spHandle) {
+            m_txnId = txnId;
+            m_spHandle = spHandle;
+        }
+
+        @Override
+        public int compareTo(CounterKey o) {
+            int c = Long.compare(m_txnId, o.m_txnId);
+            return c != 0 ? c : Long.compare(m_spHandle, o.m_spHandle);
+        }
+    }
+
+    private static final Object STATE = new Object();
+    private static final Object COUNTER = new Object();
+    // Transaction ids keep the partition in the low 14 bits
+    private static final long TXN_ID_STEP = 1L << 14;
+
+    @Param({"2"})
+    public int kfactor;
+
+    @Param({"16", "256"})
+    public int outstanding;
+
+    private long m_nextTxnId;
+
+    private final HashMap<Long, Object> m_boxedTxns = new HashMap<Long, Object>();
+    private final TreeMap<CounterKey, Object> m_boxedCounters = new TreeMap<CounterKey, Object>();
+    private final LongObjectHashMap<Object> m_txns = new LongObjectHashMap<Object>();
+    private final LongPairSortedMap<Object> m_counters = new LongPairSortedMap<Object>();
+
+    @Setup
+    public void setup() {
+        m_nextTxnId = TXN_ID_STEP * 1000;
+        for (int ii = 0; ii < outstanding; ii++) {
+            long txnId = m_nextTxnId + ii * TXN_ID_STEP;
+            m_boxedTxns.put(txnId, STATE);
+            m_boxedCounters.put(new CounterKey(txnId, txnId), COUNTER);
+            m_txns.put(txnId, STATE);
+            m_counters.put(txnId, txnId, COUNTER);
+        }
+    }
+
+    @Benchmark
+    public int boxed() {
+        final long done = m_nextTxnId;
+        final long txnId = done + outstanding * TXN_ID_STEP;
+        m_nextTxnId += TXN_ID_STEP;
+        m_boxedTxns.put(txnId, STATE);
+        m_boxedCounters.put(new CounterKey(txnId, txnId), COUNTER);
+        int found = 0;
+        for (int ii = 0; ii <= kfactor; ii++) {
+            if (m_boxedCounters.get(new CounterKey(done, done)) != null && m_boxedTxns.get(done) != null) {
+                found++;
+            }
+        }
+        m_boxedCounters.remove(new CounterKey(done, done));
+        m_boxedTxns.remove(done);
+        return found;
+    }
+
+    @Benchmark
+    public int primitive() {
+        final long done = m_nextTxnId;
+        final long txnId = done + outstanding * TXN_ID_STEP;
+        m_nextTxnId += TXN_ID_STEP;
+        m_txns.put(txnId, STATE);
+        m_counters.put(txnId, txnId, COUNTER);
+        int found = 0;
+        for (int ii = 0; ii <= kfactor; ii++) {
+            if (m_counters.get(done, done) != null && m_txns.get(done) != null) {
+                found++;
+            }
+        }
+        m_counters.remove(done, done);
+        m_txns.remove(done);
+        return found;
+    }
+}
@@ -0,0 +1,96 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Building a VoltTable row by row and iterating over its rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoltTableBenchmark {
+
+    private static final ColumnInfo[] COLUMNS = new ColumnInfo[] {
+        new ColumnInfo("ID", VoltType.BIGINT),
+        new ColumnInfo("COUNT", VoltType.INTEGER),
+        new ColumnInfo("PRICE", VoltType.FLOAT),
+        new ColumnInfo("NAME", VoltType.STRING)
+    };
+
+    @Param({"10", "1000"})
+    public int rows;
+
+    private VoltTable m_table;
+
+    @Setup
+    public void setup() {
+        m_table = build(rows);
+    }
+
+    private static VoltTable build(int rows) {
+        VoltTable table = new VoltTable(COLUMNS);
+        for (int ii = 0; ii < rows; ii++) {
+            table.addRow(ii, ii, ii * 1.5, "row name");
+        }
+        return table;
+    }
+
+    @Benchmark
+    public VoltTable construct() {
+        return build(rows);
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        m_table.resetRowPosition();
+        while (m_table.advanceRow()) {
+            sum += m_table.getLong(0);
+            sum += m_table.getLong(1);
+            sum += (long)m_table.getDouble(2);
+            sum += m_table.getString(3).length();
+        }
+        return sum;
+    }
+}